@@ -1,9 +1,19 @@
 package edu.illinois.library.metaslurper;
 
+import edu.illinois.library.metaslurper.harvest.Checkpoint;
+import edu.illinois.library.metaslurper.harvest.DeadLetterFile;
+import edu.illinois.library.metaslurper.harvest.DeadLetterSource;
 import edu.illinois.library.metaslurper.harvest.Harvest;
+import edu.illinois.library.metaslurper.harvest.HarvestJob;
+import edu.illinois.library.metaslurper.harvest.HashLedger;
+import edu.illinois.library.metaslurper.harvest.JobFile;
+import edu.illinois.library.metaslurper.harvest.QueueWorker;
+import edu.illinois.library.metaslurper.harvest.WorkQueue;
+import edu.illinois.library.metaslurper.service.Service;
 import edu.illinois.library.metaslurper.service.SinkService;
 import edu.illinois.library.metaslurper.service.SourceService;
 import edu.illinois.library.metaslurper.service.ServiceFactory;
+import edu.illinois.library.metaslurper.service.Shard;
 import edu.illinois.library.metaslurper.harvest.Harvester;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -17,20 +27,48 @@ import org.apache.logging.log4j.core.config.Configurator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.stream.Collectors;
 
 public final class Application {
 
     private enum Argument {
+        ADAPTIVE("a", "adaptive", false, "Adjust the number of active threads according to service health, starting at -threads and going up to this maximum"),
+        CHECKPOINT("c", "checkpoint", false, "Record progress in this new checkpoint file, so that the harvest can be resumed with -resume if it is interrupted"),
+        DEAD_LETTER("d", "dead_letter", false, "Append entities that could not be ingested to this file, for use with -replay"),
         INCREMENTAL("i", "incremental", false, "Last-modified epoch second"),
+        JOB("j", "job", false, "Harvest all of the sources listed in this job file at once; see JobFile for the format"),
+        IN_FLIGHT("f", "in_flight", false, "Harvest each entity in a virtual thread, with at most this many requests in flight against the source and sink, e.g. 200 or 200,50 (source,sink)"),
+        LEDGER("l", "ledger", false, "Skip entities whose content hasn't changed since they were ingested with this ledger file, and record the ones that are ingested in it"),
         LOG_LEVEL("v", "log_level", false, "Log level: error, warn, info, debug (default), trace"),
         MAX_NUM_ENTITIES("m", "max_entities", false, "Maximum number of entities to harvest"),
-        SOURCE_SERVICE("s", "source", true, "Source service key"),
+        QUEUE("q", "queue", false, "Claim and harvest units of work from the queue in this shared directory until none are left; with -units, create the queue instead"),
+        PIPELINE("p", "pipeline", false, "Fetch, transform, and ingest in separate stages using the given comma-separated numbers of threads, e.g. 4,1,4"),
+        REPLAY("rp", "replay", false, "Ingest the entities in this dead letter file instead of harvesting a source"),
+        RESUME("r", "resume", false, "Resume the harvest recorded in this checkpoint file, and continue recording progress in it"),
+        RETRIES("rt", "retries", false, "Maximum number of times to retry ingesting an entity after a transient sink error (default = 0)"),
+        SHARD("sh", "shard", false, "Zero-based index of the part of the source(s) to harvest when splitting a harvest among -shards processes"),
+        SHARDS("shs", "shards", false, "Number of processes to split the harvest among, each given a different -shard (default = 1)"),
+        SNAPSHOTS("sn", "snapshots", false, "Keep a snapshot of each source's listing in this directory, and harvest only the entities that are new or changed since the last harvest that used it (dls and idb only)"),
+        SINK_BURST("kb", "sink_burst", false, "Number of sink requests that may be sent back to back after a pause (default = 1)"),
+        SINK_RATE("kr", "sink_rate", false, "Maximum sink requests per second across all threads (default = unlimited)"),
+        SOURCE_BURST("sb", "source_burst", false, "Number of source requests that may be sent back to back after a pause (default = 1)"),
+        SOURCE_RATE("sr", "source_rate", false, "Maximum source requests per second across all threads (default = unlimited)"),
+        STATUS_INTERVAL("u", "status_interval", false, "Seconds between harvest status updates sent to the sink (default = 10)"),
+        SOURCE_SERVICE("s", "source", false, "Source service key (required unless -sources, -job, or -replay is given)"),
+        SOURCE_SERVICES("ss", "sources", false, "Harvest all of these comma-separated sources at once, e.g. dls,idnc,ideals"),
         SINK_SERVICE("k", "sink", true, "Sink service key"),
-        THREADS("t", "threads", false, "Number of harvesting threads (default = 1)"),
-        THROTTLE("h", "throttle", false, "Milliseconds to wait between items (default = 0)");
+        THREADS("t", "threads", false, "Number of harvesting threads, shared by all sources in a job (default = 1, or in a job, the sum of the sources' thread counts)"),
+        UNITS("un", "units", false, "Create a -queue of the -source divided into this many units of work, for any number of workers to harvest, and exit"),
+        THROTTLE("h", "throttle", false, "Milliseconds to wait between source requests across all threads; shorthand for -source_rate 1000/n (default = 0)");
 
         private String shortArg, longArg, description;
         private boolean isRequired;
@@ -49,8 +87,7 @@ public final class Application {
     private static final Logger LOGGER =
             LoggerFactory.getLogger(Application.class);
 
-    private static int numThreads   = 1;
-    private static int throttleMsec = 0;
+    private static int numThreads = 1;
 
     /**
      * @param args See {@link Argument}.
@@ -88,25 +125,45 @@ public final class Application {
                     numThreads;
             numThreads = Math.max(numThreads, 1);
 
-            // Set throttle time
-            throttleMsec = cmd.hasOption(Argument.THROTTLE.longArg) ?
-                    Integer.parseInt(cmd.getOptionValue(Argument.THROTTLE.longArg)) :
-                    throttleMsec;
-
             String sourceStr = cmd.getOptionValue(Argument.SOURCE_SERVICE.longArg);
             String sinkStr = cmd.getOptionValue(Argument.SINK_SERVICE.longArg);
 
+            if (cmd.hasOption(Argument.JOB.longArg) ||
+                    cmd.hasOption(Argument.SOURCE_SERVICES.longArg)) {
+                runJob(cmd, sinkStr);
+                return;
+            } else if (cmd.hasOption(Argument.QUEUE.longArg)) {
+                runQueue(cmd, sourceStr, sinkStr);
+                return;
+            } else if (sourceStr == null &&
+                    !cmd.hasOption(Argument.REPLAY.longArg)) {
+                throw new ParseException("Missing required option: " +
+                        Argument.SOURCE_SERVICE.longArg);
+            }
+
             try (SinkService sink = ServiceFactory.getSinkService(sinkStr)) {
                 if (sink != null) {
-                    try (SourceService source = ServiceFactory.getSourceService(sourceStr)) {
+                    try (SourceService source = newSourceService(cmd, sourceStr)) {
                         if (source != null) {
+                            setShard(source, getShard(cmd));
                             if (cmd.hasOption(Argument.INCREMENTAL.longArg)) {
                                 long second = Long.parseLong(
                                         cmd.getOptionValue(Argument.INCREMENTAL.longArg));
                                 Instant lastModified = Instant.ofEpochSecond(second);
                                 source.setLastModified(lastModified);
                             }
-                            new Harvester().harvest(source, sink, newHarvest(cmd));
+                            setListingSnapshot(cmd, source, true);
+                            try (Checkpoint checkpoint = openCheckpoint(cmd);
+                                 DeadLetterFile deadLetters = openDeadLetterFile(cmd);
+                                 HashLedger ledger = openHashLedger(cmd)) {
+                                Harvester harvester = newHarvester(cmd);
+                                harvester.setCheckpoint(checkpoint);
+                                harvester.setDeadLetterFile(deadLetters);
+                                harvester.setHashLedger(ledger);
+                                harvester.harvest(source, sink, newHarvest(cmd));
+                            } catch (IOException e) {
+                                LOGGER.error(e.getMessage(), e);
+                            }
                         } else {
                             System.err.println("Unrecognized source service key: " + sourceStr);
                             printSourceServices();
@@ -136,10 +193,6 @@ public final class Application {
         return numThreads;
     }
 
-    public static int getThrottleMsec() {
-        return throttleMsec;
-    }
-
     private static Options getOptions() {
         final Options options = new Options();
         Arrays.stream(Argument.values()).forEach(arg ->
@@ -154,15 +207,505 @@ public final class Application {
         return options;
     }
 
-    private static Harvest newHarvest(CommandLine cmd) {
+    /**
+     * @return Source service specified by the {@link Argument#REPLAY} argument
+     *         if present, or else by the given key. May be {@code null}.
+     */
+    private static SourceService newSourceService(CommandLine cmd,
+                                                  String sourceStr)
+            throws ParseException {
+        if (!cmd.hasOption(Argument.REPLAY.longArg)) {
+            return ServiceFactory.getSourceService(sourceStr);
+        } else if (cmd.hasOption(Argument.INCREMENTAL.longArg)) {
+            throw new ParseException("-" + Argument.INCREMENTAL.longArg +
+                    " is not supported with -" + Argument.REPLAY.longArg);
+        }
+        try {
+            return new DeadLetterSource(
+                    Path.of(cmd.getOptionValue(Argument.REPLAY.longArg)));
+        } catch (IOException | RuntimeException e) {
+            throw new ParseException("Unable to read dead letter file: " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * @return Dead letter file specified by the {@link Argument#DEAD_LETTER}
+     *         argument, or {@code null} if it is not present.
+     */
+    private static DeadLetterFile openDeadLetterFile(CommandLine cmd)
+            throws ParseException {
+        if (!cmd.hasOption(Argument.DEAD_LETTER.longArg)) {
+            return null;
+        }
+        final Path file = Path.of(cmd.getOptionValue(Argument.DEAD_LETTER.longArg));
+        if (cmd.hasOption(Argument.REPLAY.longArg) &&
+                file.toAbsolutePath().normalize().equals(
+                        Path.of(cmd.getOptionValue(Argument.REPLAY.longArg))
+                                .toAbsolutePath().normalize())) {
+            throw new ParseException("-" + Argument.DEAD_LETTER.longArg +
+                    " must be different from -" + Argument.REPLAY.longArg);
+        }
+        try {
+            return DeadLetterFile.open(file);
+        } catch (IOException e) {
+            throw new ParseException("Unable to open dead letter file: " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * @return Ledger specified by the {@link Argument#LEDGER} argument, or
+     *         {@code null} if it is not present.
+     */
+    private static HashLedger openHashLedger(CommandLine cmd)
+            throws ParseException {
+        if (!cmd.hasOption(Argument.LEDGER.longArg)) {
+            return null;
+        }
+        try {
+            return HashLedger.open(
+                    Path.of(cmd.getOptionValue(Argument.LEDGER.longArg)));
+        } catch (IOException e) {
+            throw new ParseException("Unable to open ledger: " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * @return Checkpoint specified by the {@link Argument#CHECKPOINT} or
+     *         {@link Argument#RESUME} argument, or {@code null} if neither is
+     *         present.
+     */
+    private static Checkpoint openCheckpoint(CommandLine cmd)
+            throws ParseException {
+        final boolean isResuming = cmd.hasOption(Argument.RESUME.longArg);
+        if (!isResuming && !cmd.hasOption(Argument.CHECKPOINT.longArg)) {
+            return null;
+        } else if (isResuming && cmd.hasOption(Argument.CHECKPOINT.longArg)) {
+            throw new ParseException("-" + Argument.CHECKPOINT.longArg +
+                    " and -" + Argument.RESUME.longArg +
+                    " are mutually exclusive");
+        } else if (cmd.hasOption(Argument.PIPELINE.longArg)) {
+            throw new ParseException("Checkpoints are not supported with -" +
+                    Argument.PIPELINE.longArg);
+        }
+        final Path file = Path.of(cmd.getOptionValue(isResuming ?
+                Argument.RESUME.longArg : Argument.CHECKPOINT.longArg));
+        try {
+            return Checkpoint.open(file, isResuming);
+        } catch (IOException e) {
+            throw new ParseException("Unable to open checkpoint file: " +
+                    e.getMessage());
+        }
+    }
+
+    private static Harvester newHarvester(CommandLine cmd)
+            throws ParseException {
+        Harvester harvester = new Harvester();
+        harvester.setSourceRate(getSourceRate(cmd),
+                parseInt(cmd, Argument.SOURCE_BURST, 1));
+        harvester.setSinkRate(parseDouble(cmd, Argument.SINK_RATE),
+                parseInt(cmd, Argument.SINK_BURST, 1));
+        if (cmd.hasOption(Argument.STATUS_INTERVAL.longArg)) {
+            harvester.setStatusInterval(getStatusInterval(cmd));
+        }
+        harvester.setMaxRetries(parseInt(cmd, Argument.RETRIES, 0));
+
+        // Each of these selects a different harvest mode.
+        Argument mode = null;
+        for (Argument arg : new Argument[] { Argument.PIPELINE,
+                Argument.IN_FLIGHT, Argument.ADAPTIVE }) {
+            if (!cmd.hasOption(arg.longArg)) {
+                continue;
+            } else if (mode != null) {
+                throw new ParseException("-" + arg.longArg +
+                        " is not supported with -" + mode.longArg);
+            }
+            mode = arg;
+        }
+        if (cmd.hasOption(Argument.PIPELINE.longArg)) {
+            String value = cmd.getOptionValue(Argument.PIPELINE.longArg);
+            String[] parts = value.split(",");
+            if (parts.length != 3) {
+                throw new ParseException("Invalid pipeline argument: " + value);
+            }
+            try {
+                harvester.setNumFetchThreads(Integer.parseInt(parts[0].trim()));
+                harvester.setNumTransformThreads(Integer.parseInt(parts[1].trim()));
+                harvester.setNumIngestThreads(Integer.parseInt(parts[2].trim()));
+            } catch (NumberFormatException e) {
+                throw new ParseException("Invalid pipeline argument: " + value);
+            }
+            harvester.setPipelined(true);
+        } else if (cmd.hasOption(Argument.IN_FLIGHT.longArg)) {
+            String value = cmd.getOptionValue(Argument.IN_FLIGHT.longArg);
+            String[] parts = value.split(",");
+            try {
+                int maxSourceRequests = Integer.parseInt(parts[0].trim());
+                int maxSinkRequests   = (parts.length > 1) ?
+                        Integer.parseInt(parts[1].trim()) : maxSourceRequests;
+                harvester.setMaxSourceRequests(maxSourceRequests);
+                harvester.setMaxSinkRequests(maxSinkRequests);
+            } catch (NumberFormatException e) {
+                throw new ParseException("Invalid in-flight argument: " + value);
+            }
+            harvester.setVirtualThreaded(true);
+        } else if (cmd.hasOption(Argument.ADAPTIVE.longArg)) {
+            String value = cmd.getOptionValue(Argument.ADAPTIVE.longArg);
+            try {
+                harvester.setAdaptiveMaxThreads(Integer.parseInt(value.trim()));
+            } catch (NumberFormatException e) {
+                throw new ParseException("Invalid adaptive argument: " + value);
+            }
+        }
+        return harvester;
+    }
+
+    /**
+     * @return Source requests per second, or {@code 0} for no limit.
+     */
+    private static double getSourceRate(CommandLine cmd)
+            throws ParseException {
+        if (cmd.hasOption(Argument.SOURCE_RATE.longArg)) {
+            return parseDouble(cmd, Argument.SOURCE_RATE);
+        } else if (cmd.hasOption(Argument.THROTTLE.longArg)) {
+            double throttleMsec = parseDouble(cmd, Argument.THROTTLE);
+            if (throttleMsec > 0) {
+                return 1000 / throttleMsec;
+            }
+        }
+        return 0;
+    }
+
+    private static Duration getStatusInterval(CommandLine cmd)
+            throws ParseException {
+        return Duration.ofMillis(Math.round(
+                1000 * parseDouble(cmd, Argument.STATUS_INTERVAL)));
+    }
+
+    /**
+     * @return Numeric value of the given argument, or {@code 0} if it is not
+     *         present.
+     */
+    private static double parseDouble(CommandLine cmd, Argument arg)
+            throws ParseException {
+        String value = cmd.getOptionValue(arg.longArg);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new ParseException("Invalid " + arg.longArg +
+                    " argument: " + value);
+        }
+    }
+
+    /**
+     * @param min Smallest valid value.
+     * @return    Integer value of the given argument, or {@code min} if it is
+     *            not present.
+     */
+    private static int parseInt(CommandLine cmd, Argument arg, int min)
+            throws ParseException {
+        String value = cmd.getOptionValue(arg.longArg);
+        if (value == null) {
+            return min;
+        }
+        try {
+            int intValue = Integer.parseInt(value.trim());
+            if (intValue >= min) {
+                return intValue;
+            }
+        } catch (NumberFormatException ignore) {
+        }
+        throw new ParseException("Invalid " + arg.longArg +
+                " argument: " + value);
+    }
+
+    private static Harvest newHarvest(CommandLine cmd) throws ParseException {
         Harvest harvest = new Harvest();
         if (cmd.hasOption(Argument.MAX_NUM_ENTITIES.longArg)) {
             harvest.setMaxNumEntities(Integer.parseInt(
                     cmd.getOptionValue(Argument.MAX_NUM_ENTITIES.longArg)));
         }
+        harvest.setShard(getShard(cmd));
         return harvest;
     }
 
+    /**
+     * @return Shard specified by the {@link Argument#SHARD} and {@link
+     *         Argument#SHARDS} arguments, or {@link Shard#ALL} if they are
+     *         not present.
+     */
+    private static Shard getShard(CommandLine cmd) throws ParseException {
+        final boolean hasIndex = cmd.hasOption(Argument.SHARD.longArg);
+        final boolean hasCount = cmd.hasOption(Argument.SHARDS.longArg);
+        if (!hasIndex && !hasCount) {
+            return Shard.ALL;
+        } else if (hasIndex != hasCount) {
+            throw new ParseException("-" + Argument.SHARD.longArg + " and -" +
+                    Argument.SHARDS.longArg + " must be used together");
+        }
+        try {
+            return new Shard(
+                    Integer.parseInt(cmd.getOptionValue(Argument.SHARD.longArg).trim()),
+                    Integer.parseInt(cmd.getOptionValue(Argument.SHARDS.longArg).trim()));
+        } catch (IllegalArgumentException e) {
+            throw new ParseException("Invalid shard: " + e.getMessage());
+        }
+    }
+
+    private static void setShard(SourceService source,
+                                 Shard shard) throws ParseException {
+        if (shard.isAll()) {
+            return;
+        }
+        try {
+            source.setShard(shard);
+            LOGGER.info("Harvesting shard {} of {}", shard, source);
+        } catch (UnsupportedOperationException e) {
+            throw new ParseException(source + " does not support sharding");
+        }
+    }
+
+    /**
+     * Sets a listing snapshot file named after the source in the directory
+     * given in the {@link Argument#SNAPSHOTS} argument, if present.
+     *
+     * @param isStrict Whether a source that doesn't support snapshots is an
+     *                 error, as opposed to a warning. Jobs are not strict, as
+     *                 they ignore the arguments that they don't support.
+     */
+    private static void setListingSnapshot(CommandLine cmd,
+                                           SourceService source,
+                                           boolean isStrict) throws ParseException {
+        if (!cmd.hasOption(Argument.SNAPSHOTS.longArg)) {
+            return;
+        }
+        for (Argument arg : new Argument[] { Argument.CHECKPOINT,
+                Argument.INCREMENTAL, Argument.REPLAY, Argument.RESUME,
+                Argument.SHARD, Argument.SHARDS }) {
+            final boolean isIgnoredInJob = arg == Argument.CHECKPOINT ||
+                    arg == Argument.REPLAY || arg == Argument.RESUME;
+            if (cmd.hasOption(arg.longArg) && (isStrict || !isIgnoredInJob)) {
+                throw new ParseException("-" + arg.longArg +
+                        " is not supported with -" + Argument.SNAPSHOTS.longArg);
+            }
+        }
+        final Path dir = Path.of(cmd.getOptionValue(Argument.SNAPSHOTS.longArg));
+        try {
+            Files.createDirectories(dir);
+            source.setListingSnapshot(dir.resolve(source.getKey() + ".snapshot"));
+        } catch (UnsupportedOperationException e) {
+            if (isStrict) {
+                throw new ParseException(source +
+                        " does not support listing snapshots");
+            }
+            LOGGER.warn("{} does not support listing snapshots; harvesting " +
+                    "all of it", source);
+        } catch (IOException e) {
+            throw new ParseException("Unable to open listing snapshot: " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Harvests all of the sources given in the {@link Argument#JOB} or {@link
+     * Argument#SOURCE_SERVICES} argument concurrently, each into a new
+     * instance of the given sink service.
+     */
+    private static void runJob(CommandLine cmd, String sinkStr)
+            throws ParseException {
+        // Only check the key, as each source gets its own sink instance.
+        if (ServiceFactory.allSinkServices().stream()
+                .noneMatch(s -> s.getKey() != null &&
+                        s.getKey().equalsIgnoreCase(sinkStr))) {
+            System.err.println("Unrecognized sink service key: " + sinkStr);
+            printSinkServices();
+            System.exit(-1);
+        }
+        for (Argument arg : new Argument[] { Argument.ADAPTIVE,
+                Argument.CHECKPOINT, Argument.IN_FLIGHT, Argument.PIPELINE,
+                Argument.QUEUE, Argument.REPLAY, Argument.RESUME }) {
+            if (cmd.hasOption(arg.longArg)) {
+                LOGGER.warn("-{} is not supported in a job and will be " +
+                        "ignored.", arg.longArg);
+            }
+        }
+
+        final List<JobFile.Entry> entries;
+        try {
+            if (cmd.hasOption(Argument.JOB.longArg)) {
+                entries = JobFile.read(
+                        Path.of(cmd.getOptionValue(Argument.JOB.longArg)));
+            } else {
+                entries = JobFile.parse(Arrays.asList(cmd.getOptionValue(
+                        Argument.SOURCE_SERVICES.longArg).split(",")));
+            }
+        } catch (IOException e) {
+            throw new ParseException("Unable to read job file: " +
+                    e.getMessage());
+        } catch (IllegalArgumentException e) {
+            throw new ParseException(e.getMessage());
+        }
+
+        final int jobThreads = cmd.hasOption(Argument.THREADS.longArg) ?
+                numThreads :
+                entries.stream()
+                        .mapToInt(e -> Math.max(e.getNumThreads(), 1))
+                        .sum();
+        final double sourceRate = getSourceRate(cmd);
+        final int sourceBurst   = parseInt(cmd, Argument.SOURCE_BURST, 1);
+        final HarvestJob job    = new HarvestJob();
+        job.setSinkRate(parseDouble(cmd, Argument.SINK_RATE),
+                parseInt(cmd, Argument.SINK_BURST, 1));
+        if (cmd.hasOption(Argument.STATUS_INTERVAL.longArg)) {
+            job.setStatusInterval(getStatusInterval(cmd));
+        }
+        job.setMaxRetries(parseInt(cmd, Argument.RETRIES, 0));
+        final DeadLetterFile deadLetters = openDeadLetterFile(cmd);
+        job.setDeadLetterFile(deadLetters);
+        final HashLedger ledger = openHashLedger(cmd);
+        job.setHashLedger(ledger);
+
+        final List<Service> services = new ArrayList<>();
+        try {
+            for (JobFile.Entry entry : entries) {
+                SourceService source =
+                        ServiceFactory.getSourceService(entry.getSourceKey());
+                if (source == null) {
+                    System.err.println("Unrecognized source service key: " +
+                            entry.getSourceKey());
+                    printSourceServices();
+                    System.exit(-1);
+                }
+                services.add(source);
+                setShard(source, getShard(cmd));
+                SinkService sink = ServiceFactory.newSinkService(sinkStr);
+                services.add(sink);
+                if (cmd.hasOption(Argument.INCREMENTAL.longArg)) {
+                    long second = Long.parseLong(
+                            cmd.getOptionValue(Argument.INCREMENTAL.longArg));
+                    source.setLastModified(Instant.ofEpochSecond(second));
+                }
+                setListingSnapshot(cmd, source, false);
+                job.addLane(source, sink, newHarvest(cmd),
+                        (entry.getNumThreads() > 0) ?
+                                entry.getNumThreads() : jobThreads,
+                        (entry.getRate() >= 0) ? entry.getRate() : sourceRate,
+                        (entry.getBurst() > 0) ? entry.getBurst() : sourceBurst);
+            }
+            job.run(jobThreads);
+        } finally {
+            for (Service service : services) {
+                service.close();
+            }
+            for (Closeable file : Arrays.asList(deadLetters, ledger)) {
+                if (file == null) {
+                    continue;
+                }
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    LOGGER.error(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the queue given in the {@link Argument#QUEUE} argument if the
+     * {@link Argument#UNITS} argument is present, or else works from it until
+     * it is finished.
+     */
+    private static void runQueue(CommandLine cmd,
+                                 String sourceStr,
+                                 String sinkStr) throws ParseException {
+        for (Argument arg : new Argument[] { Argument.CHECKPOINT,
+                Argument.REPLAY, Argument.RESUME, Argument.SHARD,
+                Argument.SHARDS, Argument.SNAPSHOTS }) {
+            if (cmd.hasOption(arg.longArg)) {
+                throw new ParseException("-" + arg.longArg +
+                        " is not supported with -" + Argument.QUEUE.longArg);
+            }
+        }
+        final Path dir = Path.of(cmd.getOptionValue(Argument.QUEUE.longArg));
+
+        if (cmd.hasOption(Argument.UNITS.longArg)) {
+            if (sourceStr == null) {
+                throw new ParseException("Missing required option: " +
+                        Argument.SOURCE_SERVICE.longArg);
+            }
+            final int numUnits = (int) parseDouble(cmd, Argument.UNITS);
+            if (numUnits < 1) {
+                throw new ParseException("-" + Argument.UNITS.longArg +
+                        " must be positive");
+            }
+            try (SourceService source = ServiceFactory.getSourceService(sourceStr)) {
+                if (source == null) {
+                    System.err.println("Unrecognized source service key: " + sourceStr);
+                    printSourceServices();
+                    System.exit(-1);
+                }
+                setShard(source, new Shard(0, numUnits));
+            }
+            try {
+                WorkQueue queue = WorkQueue.create(dir, sourceStr, numUnits);
+                LOGGER.info("Created {} with {} units of {}",
+                        queue, numUnits, sourceStr);
+            } catch (IOException e) {
+                throw new ParseException("Unable to create queue: " +
+                        e.getMessage());
+            }
+            return;
+        }
+
+        final WorkQueue queue;
+        try {
+            queue = WorkQueue.open(dir);
+        } catch (IOException e) {
+            throw new ParseException("Unable to open queue: " + e.getMessage());
+        }
+        if (sourceStr != null && !sourceStr.equals(queue.getSourceKey())) {
+            throw new ParseException(queue + " is a queue of " +
+                    queue.getSourceKey() + ", not " + sourceStr);
+        }
+        final Harvest template = newHarvest(cmd);
+        try (SinkService sink = ServiceFactory.getSinkService(sinkStr);
+             SourceService source = ServiceFactory.getSourceService(queue.getSourceKey())) {
+            if (sink == null) {
+                System.err.println("Unrecognized sink service key: " + sinkStr);
+                printSinkServices();
+                System.exit(-1);
+            } else if (source == null) {
+                System.err.println("Unrecognized source service key: " +
+                        queue.getSourceKey());
+                printSourceServices();
+                System.exit(-1);
+            }
+            if (cmd.hasOption(Argument.INCREMENTAL.longArg)) {
+                long second = Long.parseLong(
+                        cmd.getOptionValue(Argument.INCREMENTAL.longArg));
+                source.setLastModified(Instant.ofEpochSecond(second));
+            }
+            try (DeadLetterFile deadLetters = openDeadLetterFile(cmd);
+                 HashLedger ledger = openHashLedger(cmd)) {
+                Harvester harvester = newHarvester(cmd);
+                harvester.setDeadLetterFile(deadLetters);
+                harvester.setHashLedger(ledger);
+                new QueueWorker(queue, harvester).run(source, sink, () -> {
+                    Harvest harvest = new Harvest();
+                    harvest.setMaxNumEntities(template.getMaxNumEntities());
+                    return harvest;
+                });
+            } catch (IOException e) {
+                LOGGER.error(e.getMessage(), e);
+            }
+        }
+    }
+
     private static void printSourceServices() {
         String allSources = ServiceFactory.allSourceServices()
                 .stream()
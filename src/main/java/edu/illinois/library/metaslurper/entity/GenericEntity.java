@@ -9,7 +9,7 @@ import java.util.Set;
 public class GenericEntity implements ConcreteEntity {
 
     private String containerName, containerSinkID, fullText, mediaType,
-            sourceID, sinkID, serviceKey, sourceURI;
+            parentSinkID, sourceID, sinkID, serviceKey, sourceURI;
     private Variant variant = Variant.UNKNOWN;
 
     private final Set<Image> accessImages = new HashSet<>();
@@ -67,7 +67,7 @@ public class GenericEntity implements ConcreteEntity {
 
     @Override
     public String getParentSinkID() {
-        return null;
+        return parentSinkID;
     }
 
     @Override
@@ -79,6 +79,10 @@ public class GenericEntity implements ConcreteEntity {
         this.accessImages.add(image);
     }
 
+    public void setContainerName(String name) {
+        this.containerName = name;
+    }
+
     public void setContainerSinkID(String id) {
         this.containerSinkID = id;
     }
@@ -91,6 +95,10 @@ public class GenericEntity implements ConcreteEntity {
         this.mediaType = mediaType;
     }
 
+    public void setParentSinkID(String id) {
+        this.parentSinkID = id;
+    }
+
     /**
      * @throws IllegalArgumentException if the argument is {@literal null} or
      *         empty.
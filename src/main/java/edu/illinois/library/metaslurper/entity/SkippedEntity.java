@@ -0,0 +1,13 @@
+package edu.illinois.library.metaslurper.entity;
+
+/**
+ * Counterpart of {@link ConcreteEntity} representing an entity that a source
+ * service included in its count but that turned out not to be meant for
+ * harvesting, such as a test entity. It is counted as skipped rather than
+ * harvested or failed.
+ *
+ * @see ConcreteEntity
+ */
+public interface SkippedEntity extends Entity {
+
+}
@@ -0,0 +1,210 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.service.HTTPException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+/**
+ * <p>Limits the number of entities being harvested at once using an
+ * additive-increase/multiplicative-decrease (AIMD) algorithm.</p>
+ *
+ * <p>The limit grows by one after each limit's worth of successes as long as
+ * latency and error rate stay healthy, and is cut by {@link #BACKOFF_FACTOR}
+ * when a service responds with an HTTP 5xx or 429 or times out. Latency is
+ * considered healthy when its moving average is within {@link
+ * #LATENCY_TOLERANCE} times the lowest average seen so far.</p>
+ */
+final class AdaptiveLimiter {
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(AdaptiveLimiter.class);
+
+    /**
+     * The limit is multiplied by this upon an overload.
+     */
+    static final double BACKOFF_FACTOR = 0.5;
+
+    /**
+     * Latency is healthy when its moving average is less than this multiple
+     * of the baseline.
+     */
+    static final double LATENCY_TOLERANCE = 2;
+
+    /**
+     * The error rate is healthy when its moving average is less than this.
+     */
+    static final double MAX_ERROR_RATE = 0.05;
+
+    private static final double LATENCY_SMOOTHING    = 0.2;
+    private static final double ERROR_RATE_SMOOTHING = 0.05;
+
+    /**
+     * After a decrease, further overloads are ignored for at least this long
+     * (or the average latency, if longer) so that a single burst of failures
+     * only counts once.
+     */
+    private static final long MIN_COOLDOWN_NANOS = 1_000_000_000L;
+
+    private final Lock lock           = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final int minLimit, maxLimit;
+    private final IntConsumer listener;
+
+    private int limit, numInFlight, numHealthySuccesses;
+    private double avgLatencyNanos = -1, baselineLatencyNanos = -1;
+    private double avgErrorRate;
+    private long lastDecreaseNanos;
+
+    /**
+     * @param initialLimit Initial limit.
+     * @param minLimit     Limit will not go below this.
+     * @param maxLimit     Limit will not go above this.
+     * @param listener     Notified of every limit change. May be {@code
+     *                     null}.
+     */
+    AdaptiveLimiter(int initialLimit,
+                    int minLimit,
+                    int maxLimit,
+                    IntConsumer listener) {
+        this.minLimit = Math.max(minLimit, 1);
+        this.maxLimit = Math.max(maxLimit, this.minLimit);
+        this.limit    = Math.min(Math.max(initialLimit, this.minLimit),
+                this.maxLimit);
+        this.listener = listener;
+        this.lastDecreaseNanos = System.nanoTime() - MIN_COOLDOWN_NANOS;
+        if (listener != null) {
+            listener.accept(limit);
+        }
+    }
+
+    /**
+     * @return Whether the given error indicates that a service is overloaded.
+     */
+    static boolean isOverload(Throwable t) {
+        for (Throwable cause = t; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HTTPException) {
+                int code = ((HTTPException) cause).getStatusCode().orElse(0);
+                if (code >= 500 || code == 429) {
+                    return true;
+                }
+            } else if (cause instanceof InterruptedIOException) {
+                return true; // includes SocketTimeoutException
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Blocks until the number of entities in flight is below the limit.
+     */
+    void acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (numInFlight >= limit) {
+                available.await();
+            }
+            numInFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called once for every completed {@link #acquire()}.
+     */
+    void release() {
+        lock.lock();
+        try {
+            numInFlight--;
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a successful request.
+     *
+     * @param latencyNanos How long it took.
+     */
+    void onSuccess(long latencyNanos) {
+        lock.lock();
+        try {
+            avgErrorRate *= (1 - ERROR_RATE_SMOOTHING);
+            avgLatencyNanos = (avgLatencyNanos < 0) ? latencyNanos :
+                    LATENCY_SMOOTHING * latencyNanos +
+                            (1 - LATENCY_SMOOTHING) * avgLatencyNanos;
+            if (baselineLatencyNanos < 0 ||
+                    avgLatencyNanos < baselineLatencyNanos) {
+                baselineLatencyNanos = avgLatencyNanos;
+            }
+            if (avgLatencyNanos <= baselineLatencyNanos * LATENCY_TOLERANCE &&
+                    avgErrorRate < MAX_ERROR_RATE) {
+                if (++numHealthySuccesses >= limit && limit < maxLimit) {
+                    setLimit(limit + 1, "healthy");
+                }
+            } else {
+                numHealthySuccesses = 0;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a failed request. The limit is decreased if the error indicates
+     * an {@link #isOverload(Throwable) overload}.
+     */
+    void onFailure(Throwable t) {
+        lock.lock();
+        try {
+            avgErrorRate = ERROR_RATE_SMOOTHING +
+                    (1 - ERROR_RATE_SMOOTHING) * avgErrorRate;
+            numHealthySuccesses = 0;
+            if (isOverload(t)) {
+                final long now      = System.nanoTime();
+                final long cooldown = Math.max(MIN_COOLDOWN_NANOS,
+                        (long) avgLatencyNanos);
+                if (now - lastDecreaseNanos >= cooldown) {
+                    lastDecreaseNanos = now;
+                    setLimit((int) (limit * BACKOFF_FACTOR), t.getMessage());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called while holding {@link #lock}.
+     */
+    private void setLimit(int newLimit, String reason) {
+        newLimit = Math.min(Math.max(newLimit, minLimit), maxLimit);
+        numHealthySuccesses = 0;
+        if (newLimit != limit) {
+            LOGGER.info("Concurrency limit changed from {} to {} ({})",
+                    limit, newLimit, reason);
+            limit = newLimit;
+            available.signalAll();
+            if (listener != null) {
+                listener.accept(limit);
+            }
+        }
+    }
+
+}
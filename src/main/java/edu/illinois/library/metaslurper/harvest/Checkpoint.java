@@ -0,0 +1,446 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.entity.Entity;
+import edu.illinois.library.metaslurper.service.ConcurrentIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>Append-only journal that enables an interrupted harvest to be resumed
+ * where it left off.</p>
+ *
+ * <p>The journal records the {@link Entity#getSinkID() sink ID} of every
+ * entity that has been ingested successfully, and, from time to time, a
+ * {@link ConcurrentIterator#cursor() cursor} into the source. Because entities
+ * are harvested concurrently and complete out of order, a cursor is only
+ * written once every entity that the iterator had returned at the time it was
+ * observed has been completed. A resumed harvest then starts at the last
+ * cursor and skips over the entities that were ingested after it. Each of
+ * those is remembered until the resumed iterator has returned it again, and
+ * then until the iterator has passed it, so that it is skipped even if it
+ * was ingested far ahead of the cursor or is returned in a different
+ * order.</p>
+ *
+ * <p>The journal is compacted periodically to contain only the last cursor and
+ * the sink IDs that are still needed.</p>
+ *
+ * <p>Journal lines are either:</p>
+ *
+ * <dl>
+ *     <dt>{@literal A <s> <sink ID>}</dt>
+ *     <dd>The entity with sequence number {@literal s} was ingested.</dd>
+ *     <dt>{@literal C <n> <s> <cursor>}</dt>
+ *     <dd>A cursor was confirmed, before which {@literal n} entities were
+ *     ingested. {@literal s} is the sequence number of the first entity
+ *     after it.</dd>
+ * </dl>
+ *
+ * <p>Sequence numbers count the entities returned by the iterator since the
+ * start of the run. A resumed run starts counting again at the cursor, and
+ * the journal is rewritten in terms of it, with {@link Long#MAX_VALUE} for
+ * the entities after the cursor that haven't been returned again yet.</p>
+ */
+public final class Checkpoint implements Closeable {
+
+    /**
+     * An entity returned from {@link #next(ConcurrentIterator)}, which must be
+     * passed to {@link #complete(Ticket, String)} once it is done.
+     */
+    public static final class Ticket {
+
+        private final long sequence;
+        private final Entity entity;
+
+        private Ticket(long sequence, Entity entity) {
+            this.sequence = sequence;
+            this.entity   = entity;
+        }
+
+        public Entity getEntity() {
+            return entity;
+        }
+
+    }
+
+    /**
+     * A cursor that will be written once all entities returned before it was
+     * observed are done.
+     */
+    private static final class Candidate {
+
+        private final long sequence;
+        private final String cursor;
+
+        private Candidate(long sequence, String cursor) {
+            this.sequence = sequence;
+            this.cursor   = cursor;
+        }
+
+    }
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(Checkpoint.class);
+
+    /**
+     * Sequence number of an entity ingested in a previous run that hasn't
+     * been returned again in this one.
+     */
+    private static final long NOT_RETURNED = Long.MAX_VALUE;
+
+    /**
+     * The iterator's cursor is observed after every this many entities.
+     */
+    static final int CURSOR_INTERVAL = 100;
+
+    /**
+     * The journal is compacted after this many lines have been appended to
+     * it.
+     */
+    static final int COMPACTION_INTERVAL = 10000;
+
+    private final Path file;
+
+    /**
+     * Held for reading during {@link ConcurrentIterator#next()} and for
+     * writing while observing the cursor, so that the cursor is consistent
+     * with the entities that have been returned.
+     */
+    private final ReadWriteLock iteratorLock = new ReentrantReadWriteLock();
+
+    /**
+     * Guards everything below it.
+     */
+    private final Lock journalLock = new ReentrantLock();
+
+    private final AtomicLong nextSequence          = new AtomicLong();
+    private final ConcurrentSkipListSet<Long> inFlight =
+            new ConcurrentSkipListSet<>();
+    private final Queue<Candidate> candidates     = new ArrayDeque<>();
+    private BufferedWriter writer;
+    private int numLinesSinceCompaction;
+    private boolean isCursorSupported = true;
+
+    /**
+     * Sink IDs of entities that have been ingested after the last confirmed
+     * cursor, mapped to their sequence numbers. Those from previous runs are
+     * mapped to {@link #NOT_RETURNED} until they are returned again.
+     */
+    private final Map<String, Long> acknowledged = new HashMap<>();
+
+    /**
+     * Number of entities before {@link #confirmedCursor} that were ingested.
+     */
+    private long numAcknowledgedBeforeCursor;
+
+    private String confirmedCursor;
+
+    /**
+     * Sequence number of the first entity after {@link #confirmedCursor}.
+     */
+    private long confirmedSequence;
+
+    /**
+     * Number of entities ingested in previous runs.
+     */
+    private final long numResumed;
+
+    /**
+     * @param file   Journal file.
+     * @param resume Whether to resume from the journal file, if it exists.
+     *               If {@code false}, any existing file is overwritten.
+     * @return       New instance.
+     */
+    public static Checkpoint open(Path file, boolean resume)
+            throws IOException {
+        return new Checkpoint(file, resume);
+    }
+
+    private Checkpoint(Path file, boolean resume) throws IOException {
+        this.file = file;
+        if (resume && Files.exists(file)) {
+            numResumed = read(Files.readAllLines(file, StandardCharsets.UTF_8));
+            LOGGER.info("Resuming from {}: {} entities already ingested; " +
+                    "cursor: {}", file, numResumed, confirmedCursor);
+            // Rewrite the journal to make sure it doesn't end in a partial
+            // line.
+            compact();
+        } else {
+            numResumed = 0;
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Reads the given journal lines into the instance.
+     *
+     * @return Number of entities ingested.
+     */
+    private long read(List<String> lines) {
+        final Map<String, Long> sequences = new HashMap<>();
+        long cursorSequence = 0;
+        for (String line : lines) {
+            final String[] parts = line.split(" ", line.startsWith("C ") ? 4 : 3);
+            try {
+                if (parts[0].equals("A") && parts.length == 3) {
+                    sequences.put(parts[2], Long.parseLong(parts[1]));
+                } else if (parts[0].equals("C") && parts.length == 4) {
+                    final long numBefore = Long.parseLong(parts[1]);
+                    cursorSequence = Long.parseLong(parts[2]);
+                    numAcknowledgedBeforeCursor = numBefore;
+                    confirmedCursor = parts[3];
+                } else {
+                    LOGGER.warn("Ignoring invalid checkpoint line: {}", line);
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Ignoring invalid checkpoint line: {}", line);
+            }
+        }
+        // Those before the cursor are already counted. Those after it will be
+        // returned again, in an order that may differ.
+        for (Map.Entry<String, Long> entry : sequences.entrySet()) {
+            if (entry.getValue() >= cursorSequence) {
+                acknowledged.put(entry.getKey(), NOT_RETURNED);
+            }
+        }
+        return numAcknowledgedBeforeCursor + acknowledged.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        journalLock.lock();
+        try {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * @return Cursor to resume from, or {@code null} to start from the
+     *         beginning.
+     */
+    public String getCursor() {
+        journalLock.lock();
+        try {
+            return confirmedCursor;
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of entities ingested in previous runs.
+     */
+    public long getNumResumed() {
+        return numResumed;
+    }
+
+    /**
+     * @return Whether the entity with the given sink ID has already been
+     *         ingested.
+     */
+    public boolean isAcknowledged(String sinkID) {
+        journalLock.lock();
+        try {
+            return acknowledged.containsKey(sinkID);
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * Wraps {@link ConcurrentIterator#next()}. If it throws an exception, the
+     * entity is considered complete.
+     */
+    public Ticket next(ConcurrentIterator<? extends Entity> it)
+            throws Exception {
+        final long sequence;
+        final Entity entity;
+        iteratorLock.readLock().lock();
+        try {
+            sequence = nextSequence.getAndIncrement();
+            inFlight.add(sequence);
+            try {
+                entity = it.next();
+            } catch (Exception e) {
+                complete(sequence, null);
+                throw e;
+            }
+        } finally {
+            iteratorLock.readLock().unlock();
+        }
+        if (isCursorSupported && (sequence + 1) % CURSOR_INTERVAL == 0) {
+            observeCursor(it);
+        }
+        return new Ticket(sequence, entity);
+    }
+
+    /**
+     * Must be called exactly once for each {@link Ticket}.
+     *
+     * @param ticket Ticket of the completed entity.
+     * @param sinkID Sink ID of the entity if it was ingested successfully, or
+     *               {@code null} if it was not.
+     */
+    public void complete(Ticket ticket, String sinkID) {
+        complete(ticket.sequence, ticket.entity, sinkID);
+    }
+
+    private void complete(long sequence, String sinkID) {
+        complete(sequence, null, sinkID);
+    }
+
+    /**
+     * @param entity Completed entity, or {@code null}.
+     */
+    private void complete(long sequence, Entity entity, String sinkID) {
+        journalLock.lock();
+        try {
+            if (sinkID == null && entity != null &&
+                    Long.valueOf(NOT_RETURNED).equals(
+                            acknowledged.get(entity.getSinkID()))) {
+                // An entity ingested in a previous run has been returned
+                // again, so it can now be forgotten once the iterator has
+                // passed it.
+                sinkID = entity.getSinkID();
+            }
+            if (sinkID != null) {
+                acknowledged.put(sinkID, sequence);
+                append("A " + sequence + " " + sinkID);
+            }
+            inFlight.remove(sequence);
+            confirmCandidates();
+            if (numLinesSinceCompaction >= COMPACTION_INTERVAL &&
+                    isCursorSupported) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    private void observeCursor(ConcurrentIterator<? extends Entity> it) {
+        final long sequence;
+        final String cursor;
+        iteratorLock.writeLock().lock();
+        try {
+            sequence = nextSequence.get();
+            cursor   = it.cursor();
+        } finally {
+            iteratorLock.writeLock().unlock();
+        }
+        journalLock.lock();
+        try {
+            if (cursor == null) {
+                // The journal will have to keep all sink IDs.
+                isCursorSupported = false;
+            } else {
+                candidates.add(new Candidate(sequence, cursor));
+            }
+        } finally {
+            journalLock.unlock();
+        }
+    }
+
+    /**
+     * Writes the most recent candidate cursor before which all entities are
+     * complete, if any. Must be called while holding {@link #journalLock}.
+     */
+    private void confirmCandidates() throws IOException {
+        final long lowWatermark = inFlight.isEmpty() ?
+                nextSequence.get() : inFlight.first();
+        Candidate confirmed = null;
+        while (!candidates.isEmpty() &&
+                candidates.peek().sequence <= lowWatermark) {
+            confirmed = candidates.remove();
+        }
+        if (confirmed == null) {
+            return;
+        }
+        final long watermark = confirmed.sequence;
+        final Set<String> before = new HashSet<>();
+        acknowledged.forEach((id, seq) -> {
+            if (seq < watermark) {
+                before.add(id);
+            }
+        });
+        before.forEach(acknowledged::remove);
+        numAcknowledgedBeforeCursor += before.size();
+        confirmedCursor   = confirmed.cursor;
+        confirmedSequence = watermark;
+        append(cursorLine());
+    }
+
+    private String cursorLine() {
+        return "C " + numAcknowledgedBeforeCursor + " " + confirmedSequence +
+                " " + confirmedCursor;
+    }
+
+    /**
+     * Must be called while holding {@link #journalLock}.
+     */
+    private void append(String line) throws IOException {
+        writer.write(line);
+        writer.newLine();
+        writer.flush();
+        numLinesSinceCompaction++;
+    }
+
+    /**
+     * Replaces the journal with one containing only the sink IDs that are
+     * still needed followed by the current cursor. Must be called while
+     * holding {@link #journalLock}, if there is any chance of contention.
+     */
+    private void compact() throws IOException {
+        final Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter tempWriter = Files.newBufferedWriter(tempFile,
+                StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> entry : acknowledged.entrySet()) {
+                tempWriter.write("A " + entry.getValue() + " " + entry.getKey());
+                tempWriter.newLine();
+            }
+            if (confirmedCursor != null) {
+                tempWriter.write(cursorLine());
+                tempWriter.newLine();
+            }
+        }
+        if (writer != null) {
+            writer.close();
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+        numLinesSinceCompaction = 0;
+        LOGGER.debug("Compacted {} ({} sink IDs)", file, acknowledged.size());
+    }
+
+}
@@ -0,0 +1,178 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.entity.ConcreteEntity;
+import edu.illinois.library.metaslurper.entity.Element;
+import edu.illinois.library.metaslurper.entity.GenericEntity;
+import edu.illinois.library.metaslurper.entity.Image;
+import edu.illinois.library.metaslurper.entity.Variant;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>File of entities that could not be ingested into a sink, which can be
+ * replayed later using a {@link DeadLetterSource} without contacting the
+ * source service again.</p>
+ *
+ * <p>The file contains one JSON object per line, with {@literal time},
+ * {@literal source_key}, {@literal error}, and {@literal entity} keys. New
+ * entries are always appended.</p>
+ */
+public final class DeadLetterFile implements Closeable {
+
+    private final Path file;
+    private final BufferedWriter writer;
+    // N.B.: a lock is used instead of a synchronized block so as not to pin
+    // virtual threads while writing.
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * @param file File to append to, which is created if it does not exist.
+     * @return     New instance.
+     */
+    public static DeadLetterFile open(Path file) throws IOException {
+        return new DeadLetterFile(file);
+    }
+
+    private DeadLetterFile(Path file) throws IOException {
+        this.file   = file;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Serializes all of the properties of the given entity.
+     */
+    static JSONObject toJSON(ConcreteEntity entity) {
+        final JSONObject jobj = new JSONObject();
+        jobj.put("service_key", entity.getServiceKey());
+        jobj.put("source_id", entity.getSourceID());
+        jobj.put("source_uri", entity.getSourceURI());
+        jobj.put("sink_id", entity.getSinkID());
+        jobj.put("parent_sink_id", entity.getParentSinkID());
+        jobj.put("container_sink_id", entity.getContainerSinkID());
+        jobj.put("container_name", entity.getContainerName());
+        jobj.put("full_text", entity.getFullText());
+        jobj.put("media_type", entity.getMediaType());
+        jobj.put("variant", entity.getVariant().name());
+        final JSONArray elements = new JSONArray();
+        for (Element element : entity.getElements()) {
+            final JSONObject jelement = new JSONObject();
+            jelement.put("name", element.getName());
+            jelement.put("value", element.getValue());
+            elements.put(jelement);
+        }
+        jobj.put("elements", elements);
+        final JSONArray images = new JSONArray();
+        for (Image image : entity.getAccessImages()) {
+            final JSONObject jimage = new JSONObject();
+            jimage.put("uri", image.getURI());
+            jimage.put("crop", image.getCrop().name());
+            jimage.put("size", image.getSize());
+            jimage.put("master", image.isMaster());
+            images.put(jimage);
+        }
+        jobj.put("access_images", images);
+        return jobj;
+    }
+
+    /**
+     * Inverse of {@link #toJSON(ConcreteEntity)}.
+     */
+    static GenericEntity fromJSON(JSONObject jobj) {
+        final GenericEntity entity = new GenericEntity();
+        entity.setSinkID(jobj.getString("sink_id"));
+        if (jobj.has("service_key")) {
+            entity.setServiceKey(jobj.getString("service_key"));
+        }
+        if (jobj.has("source_id")) {
+            entity.setSourceID(jobj.getString("source_id"));
+        }
+        if (jobj.has("source_uri")) {
+            entity.setSourceURI(jobj.getString("source_uri"));
+        }
+        entity.setParentSinkID(jobj.optString("parent_sink_id", null));
+        entity.setContainerSinkID(jobj.optString("container_sink_id", null));
+        entity.setContainerName(jobj.optString("container_name", null));
+        entity.setFullText(jobj.optString("full_text", null));
+        entity.setMediaType(jobj.optString("media_type", null));
+        entity.setVariant(Variant.valueOf(jobj.getString("variant")));
+        final JSONArray elements = jobj.optJSONArray("elements");
+        if (elements != null) {
+            for (int i = 0; i < elements.length(); i++) {
+                final JSONObject jelement = elements.getJSONObject(i);
+                entity.getElements().add(new Element(
+                        jelement.getString("name"),
+                        jelement.optString("value", null)));
+            }
+        }
+        final JSONArray images = jobj.optJSONArray("access_images");
+        if (images != null) {
+            for (int i = 0; i < images.length(); i++) {
+                final JSONObject jimage = images.getJSONObject(i);
+                entity.addAccessImage(new Image(
+                        jimage.getString("uri"),
+                        Image.Crop.valueOf(jimage.getString("crop")),
+                        jimage.getInt("size"),
+                        jimage.getBoolean("master")));
+            }
+        }
+        return entity;
+    }
+
+    /**
+     * Appends an entry to the file.
+     *
+     * @param entity    Entity that could not be ingested.
+     * @param sourceKey Key of the source service the entity came from.
+     * @param error     Error from the last attempt to ingest it.
+     */
+    public void add(ConcreteEntity entity,
+                    String sourceKey,
+                    Throwable error) throws IOException {
+        final JSONObject jobj = new JSONObject();
+        jobj.put("time", Instant.now().toString());
+        jobj.put("source_key", sourceKey);
+        jobj.put("error", String.valueOf(error));
+        jobj.put("entity", toJSON(entity));
+        final String line = jobj.toString();
+        lock.lock();
+        try {
+            writer.write(line);
+            writer.newLine();
+            writer.flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            writer.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+
+}
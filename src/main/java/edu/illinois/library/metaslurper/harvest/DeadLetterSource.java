@@ -0,0 +1,115 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.entity.Entity;
+import edu.illinois.library.metaslurper.service.ConcurrentIterator;
+import edu.illinois.library.metaslurper.service.EndOfIterationException;
+import edu.illinois.library.metaslurper.service.SourceService;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Source service that provides the entities in a {@link DeadLetterFile}, so
+ * that they can be ingested again without contacting the service they
+ * originally came from.
+ */
+public final class DeadLetterSource implements SourceService {
+
+    private final Path file;
+    private final String key;
+    private final List<BufferedReader> readers = new ArrayList<>();
+
+    /**
+     * @param file Dead letter file.
+     */
+    public DeadLetterSource(Path file) throws IOException {
+        this.file = file;
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            this.key = lines
+                    .filter(line -> !line.isBlank())
+                    .findFirst()
+                    .map(line -> new JSONObject(line).getString("source_key"))
+                    .orElse(null);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (BufferedReader reader : readers) {
+            try {
+                reader.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * @return Key of the source service that the first entity in the file
+     *         came from. (It is assumed that they all came from the same
+     *         one.)
+     */
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public String getName() {
+        return "Dead letters (" + file + ")";
+    }
+
+    @Override
+    public int numEntities() throws IOException {
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            return (int) lines.filter(line -> !line.isBlank()).count();
+        }
+    }
+
+    @Override
+    public ConcurrentIterator<? extends Entity> entities() throws IOException {
+        final BufferedReader reader =
+                Files.newBufferedReader(file, StandardCharsets.UTF_8);
+        readers.add(reader);
+        final Lock lock = new ReentrantLock();
+        return () -> {
+            String line;
+            lock.lock();
+            try {
+                do {
+                    line = reader.readLine();
+                } while (line != null && line.isBlank());
+            } finally {
+                lock.unlock();
+            }
+            if (line == null) {
+                throw new EndOfIterationException();
+            }
+            return DeadLetterFile.fromJSON(
+                    new JSONObject(line).getJSONObject("entity"));
+        };
+    }
+
+    /**
+     * Does nothing, as dead letters don't record when their entities were
+     * last modified. All of them are always replayed.
+     */
+    @Override
+    public void setLastModified(Instant lastModified) {
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+
+}
@@ -1,8 +1,15 @@
 package edu.illinois.library.metaslurper.harvest;
 
+import edu.illinois.library.metaslurper.service.HTTPCache;
+import edu.illinois.library.metaslurper.service.Shard;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 /**
  * Thread-safe class for tracking the status of a harvest.
@@ -11,14 +18,105 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public final class Harvest {
 
+    /**
+     * Message with a sequence number that is unique within its harvest and
+     * greater than that of any message added before it.
+     */
+    public static final class Message {
+
+        private final long sequence;
+        private final String text;
+
+        private Message(long sequence, String text) {
+            this.sequence = sequence;
+            this.text     = text;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+
+    }
+
+    /**
+     * Immutable snapshot of the depths of the queues between the stages of a
+     * {@link Harvester#setPipelined(boolean) pipelined} harvest.
+     */
+    public static final class QueueDepths {
+
+        private final int numFetched, numPrepared;
+        private final int maxNumFetched, maxNumPrepared;
+
+        QueueDepths(int numFetched, int numPrepared,
+                    int maxNumFetched, int maxNumPrepared) {
+            this.numFetched     = numFetched;
+            this.numPrepared    = numPrepared;
+            this.maxNumFetched  = maxNumFetched;
+            this.maxNumPrepared = maxNumPrepared;
+        }
+
+        /**
+         * @return Number of entities waiting to be transformed.
+         */
+        public int getNumFetched() {
+            return numFetched;
+        }
+
+        /**
+         * @return Number of entities waiting to be ingested.
+         */
+        public int getNumPrepared() {
+            return numPrepared;
+        }
+
+        /**
+         * @return Greatest number of entities that have been waiting to be
+         *         transformed at any one time.
+         */
+        public int getMaxNumFetched() {
+            return maxNumFetched;
+        }
+
+        /**
+         * @return Greatest number of entities that have been waiting to be
+         *         ingested at any one time.
+         */
+        public int getMaxNumPrepared() {
+            return maxNumPrepared;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%d fetched (max %d)] [%d prepared (max %d)]",
+                    numFetched, maxNumFetched, numPrepared, maxNumPrepared);
+        }
+
+    }
+
     private static final int MAX_MESSAGES    = 100;
 
     private Lifecycle lifecycle              = Lifecycle.NEW;
     private int numEntities                  = 0;
     private int maxNumEntities               = -1;
+    private volatile int concurrencyLimit    = -1;
     private final AtomicInteger numSucceeded = new AtomicInteger();
     private final AtomicInteger numFailed    = new AtomicInteger();
-    private final Queue<String> messages     = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger numSkipped   = new AtomicInteger();
+    private final Queue<Message> messages    = new ConcurrentLinkedQueue<>();
+    private long lastMessageSequence;
+    private volatile double throughput;
+    private volatile Shard shard             = Shard.ALL;
+    private volatile HTTPCache.Counts cacheCounts = HTTPCache.Counts.ZERO;
+    private volatile Pipeline pipeline;
 
     /**
      * Cancels a harvest before all entities have been harvested.
@@ -28,7 +126,7 @@ public final class Harvest {
             final int canonicalNumEntities = getCanonicalNumEntities();
             // Set the failure count to the number of items remaining.
             final int delta = canonicalNumEntities - numSucceeded.get() -
-                    numFailed.get();
+                    numFailed.get() - numSkipped.get();
             if (delta > 0) {
                 numFailed.addAndGet(delta);
                 addMessage("Harvest aborted with " + delta + " items left.");
@@ -37,13 +135,25 @@ public final class Harvest {
         setLifecycle(Lifecycle.ABORTED);
     }
 
-    public void addMessage(String message) {
-        messages.add(message);
+    /**
+     * Adds a message to the queue, evicting the oldest one if the queue is
+     * full.
+     */
+    public synchronized void addMessage(String message) {
+        messages.add(new Message(++lastMessageSequence, message));
         if (messages.size() > MAX_MESSAGES) {
             messages.poll();
         }
     }
 
+    /**
+     * Credits the harvest with entities that were ingested before it started,
+     * as when resuming from a {@link Checkpoint}.
+     */
+    void addNumSucceeded(int count) {
+        numSucceeded.addAndGet(count);
+    }
+
     /**
      * Ends the harvest.
      */
@@ -52,15 +162,16 @@ public final class Harvest {
             final int canonicalNumEntities = getCanonicalNumEntities();
             int numSucceededInt            = numSucceeded.get();
             int numFailedInt               = numFailed.get();
+            int numSkippedInt              = numSkipped.get();
             final int delta                = canonicalNumEntities -
-                    numSucceededInt - numFailedInt;
+                    numSucceededInt - numFailedInt - numSkippedInt;
             if (delta > 0) {
                 numFailed.addAndGet(delta);
                 addMessage("Added " + delta + " to the failure count " +
                         "due to a discrepancy between the number of items " +
                         "reported present in the service (" +
                         canonicalNumEntities + ") and the number found (" +
-                        (numSucceededInt + numFailedInt) + ").");
+                        (numSucceededInt + numFailedInt + numSkippedInt) + ").");
             }
             setLifecycle(Lifecycle.SUCCEEDED);
         }
@@ -82,6 +193,23 @@ public final class Harvest {
         return tmp;
     }
 
+    /**
+     * @return Counts of the source service's requests that were served from
+     *         the {@link HTTPCache} and that weren't, during the harvest.
+     */
+    public HTTPCache.Counts getCacheCounts() {
+        return cacheCounts;
+    }
+
+    /**
+     * @return The number of entities currently allowed to be harvested at
+     *         once, or {@code -1} if concurrency is not adaptive.
+     * @see Harvester#setAdaptiveMaxThreads(int)
+     */
+    public int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
     public synchronized Lifecycle getLifecycle() {
         return lifecycle;
     }
@@ -94,13 +222,57 @@ public final class Harvest {
     }
 
     /**
-     * N.B.: Do not mutate the return value; use {@link #addMessage(String)}
-     * instead.
-     *
-     * @return All messages in the queue.
+     * @return Estimated time at which the harvest will end, based on the
+     *         {@link #getThroughput() throughput}. This will be empty if the
+     *         throughput or the number of entities is unknown.
+     */
+    public Optional<Instant> getETA() {
+        final double rate = throughput;
+        final int numEntities = getCanonicalNumEntities();
+        if (rate <= 0 || numEntities < 0) {
+            return Optional.empty();
+        }
+        final int numRemaining = Math.max(numEntities -
+                getNumCompleted(), 0);
+        return Optional.of(Instant.now().plusMillis(
+                Math.round(1000 * numRemaining / rate)));
+    }
+
+    /**
+     * @return Current and maximum depths of the queues between the stages of
+     *         a {@link Harvester#setPipelined(boolean) pipelined} harvest.
+     *         This will be empty if the harvest isn't pipelined.
+     */
+    public Optional<QueueDepths> getQueueDepths() {
+        final Pipeline pipeline = this.pipeline;
+        if (pipeline == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new QueueDepths(
+                pipeline.getFetchedQueueDepth(),
+                pipeline.getPreparedQueueDepth(),
+                pipeline.getMaxFetchedQueueDepth(),
+                pipeline.getMaxPreparedQueueDepth()));
+    }
+
+    /**
+     * @return All messages in the queue, oldest first.
+     */
+    public List<String> getMessages() {
+        return messages.stream()
+                .map(Message::getText)
+                .collect(Collectors.toUnmodifiableList());
+    }
+
+    /**
+     * @param sequence Sequence number of the last message already seen.
+     * @return         Messages in the queue that were added after the one with
+     *                 the given sequence number, oldest first.
      */
-    public Queue<String> getMessages() {
-        return messages;
+    public List<Message> getMessagesSince(long sequence) {
+        return messages.stream()
+                .filter(m -> m.getSequence() > sequence)
+                .collect(Collectors.toUnmodifiableList());
     }
 
     /**
@@ -113,18 +285,54 @@ public final class Harvest {
         return numEntities;
     }
 
+    /**
+     * @return The number of entities that have succeeded, failed, or been
+     *         skipped.
+     */
+    public int getNumCompleted() {
+        return getNumSucceeded() + getNumFailed() + getNumSkipped();
+    }
+
     public int getNumFailed() {
         return numFailed.get();
     }
 
+    /**
+     * @return The number of entities that were not ingested because they
+     *         had not changed since they were last ingested.
+     * @see HashLedger
+     */
+    public int getNumSkipped() {
+        return numSkipped.get();
+    }
+
     public int getNumSucceeded() {
         return numSucceeded.get();
     }
 
+    /**
+     * @return Shard of the source service being harvested.
+     */
+    public Shard getShard() {
+        return shard;
+    }
+
+    /**
+     * @return Moving average of the number of entities harvested per second,
+     *         or {@code 0} if not yet known.
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
     void incrementNumFailed() {
         numFailed.incrementAndGet();
     }
 
+    void incrementNumSkipped() {
+        numSkipped.incrementAndGet();
+    }
+
     void incrementNumSucceeded() {
         numSucceeded.incrementAndGet();
     }
@@ -139,7 +347,7 @@ public final class Harvest {
         // actually present.
         return getLifecycle().isOpen() &&
                 ((getMaxNumEntities() > 0 &&
-                        getNumFailed() + getNumSucceeded() < getMaxNumEntities()) ||
+                        getNumCompleted() < getMaxNumEntities()) ||
                 getMaxNumEntities() < 1);
     }
 
@@ -147,6 +355,22 @@ public final class Harvest {
         return messages.size();
     }
 
+    void setCacheCounts(HTTPCache.Counts counts) {
+        this.cacheCounts = counts;
+    }
+
+    void setConcurrencyLimit(int limit) {
+        this.concurrencyLimit = limit;
+    }
+
+    /**
+     * @param pipeline Pipeline the harvest is running in, whose {@link
+     *                 #getQueueDepths() queue depths} are to be reported.
+     */
+    void setPipeline(Pipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
     synchronized void setLifecycle(Lifecycle lifecycle) {
         this.lifecycle = lifecycle;
     }
@@ -167,14 +391,28 @@ public final class Harvest {
         this.numEntities = numEntities;
     }
 
+    /**
+     * @param shard Shard of the source service being harvested, when a
+     *              harvest is split among several processes that each
+     *              report their own counts.
+     */
+    public void setShard(Shard shard) {
+        this.shard = shard;
+    }
+
+    void setThroughput(double entitiesPerSecond) {
+        this.throughput = entitiesPerSecond;
+    }
+
     @Override
     public String toString() {
-        return String.format("%s: %s [%s total] [%d succeeded] [%d failed]",
+        return String.format("%s: %s [%s total] [%d succeeded] [%d failed] [%d skipped]",
                 getClass().getSimpleName(),
                 getLifecycle(),
                 (getNumEntities() > -1) ? getNumEntities() : "unknown",
                 getNumSucceeded(),
-                getNumFailed());
+                getNumFailed(),
+                getNumSkipped());
     }
 
 }
@@ -0,0 +1,391 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.entity.Entity;
+import edu.illinois.library.metaslurper.service.ConcurrentIterator;
+import edu.illinois.library.metaslurper.service.EndOfIterationException;
+import edu.illinois.library.metaslurper.service.HTTPCache;
+import edu.illinois.library.metaslurper.service.SinkService;
+import edu.illinois.library.metaslurper.service.SourceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Harvests any number of source services concurrently, each into its own
+ * sink service instance, using one shared pool of threads.</p>
+ *
+ * <p>Each source is harvested in a "lane" with its own {@link Harvest},
+ * maximum number of threads, and request rate. Threads are assigned to lanes
+ * one entity at a time, always to the lane that is using the smallest
+ * fraction of its maximum. So, when one lane finishes, the threads that were
+ * working in it move on to lanes that still have work.</p>
+ *
+ * <p>Usage:</p>
+ *
+ * <ol>
+ *     <li>Call {@link #addLane} for each source.</li>
+ *     <li>Call {@link #run(int)}.</li>
+ * </ol>
+ *
+ * @see Harvester
+ */
+public final class HarvestJob {
+
+    private enum LaneState {
+        NEW, STARTING, RUNNING, FINISHING, DONE
+    }
+
+    /**
+     * Harvests one source service into one sink service.
+     */
+    private final class Lane {
+
+        private final SourceService source;
+        private final SinkService sink;
+        private final Harvest harvest;
+        private final int maxThreads;
+        private final RateLimiter sourceRateLimiter;
+
+        // These are guarded by the job lock.
+        private LaneState state = LaneState.NEW;
+        private int numActiveThreads;
+
+        private volatile boolean isExhausted;
+        private ConcurrentIterator<? extends Entity> iterator;
+        private SinkService ingestSink;
+        private StatusReporter reporter;
+        private HTTPCache.Counts cacheBaseline = HTTPCache.Counts.ZERO;
+
+        Lane(SourceService source,
+             SinkService sink,
+             Harvest harvest,
+             int maxThreads,
+             RateLimiter sourceRateLimiter) {
+            this.source            = source;
+            this.sink              = sink;
+            this.harvest           = harvest;
+            this.maxThreads        = Math.max(maxThreads, 1);
+            this.sourceRateLimiter = sourceRateLimiter;
+        }
+
+        /**
+         * Does the same setup as {@link Harvester#harvest}. Invoked by
+         * whichever thread gets to the lane first.
+         */
+        void start() {
+            cacheBaseline = HTTPCache.counts(source.getKey());
+            try {
+                int numEntities = Harvester.startHarvest(source, sink, harvest);
+                reporter   = new StatusReporter(sink, harvest, statusInterval);
+                ingestSink = Harvester.withRetries(sink, source, retryPolicy,
+                        deadLetterFile, null);
+                if (numEntities != 0) {
+                    LOGGER.info("Harvesting {} entities from {} into {} " +
+                                    "using up to {} threads at {}",
+                            harvest.getCanonicalNumEntities(), source, sink,
+                            maxThreads, sourceRateLimiter);
+                    iterator = source.entities();
+                } else {
+                    LOGGER.info("Nothing to harvest from {}", source);
+                    isExhausted = true;
+                }
+            } catch (IOException | RuntimeException e) {
+                harvest.setLifecycle(Lifecycle.FAILED);
+                LOGGER.error("Failed to start harvesting {}: {}",
+                        source, e.getMessage(), e);
+                isExhausted = true;
+            }
+        }
+
+        /**
+         * Harvests one entity.
+         */
+        void step() {
+            if (!harvest.isOpen()) {
+                isExhausted = true;
+                return;
+            }
+            try {
+                sourceRateLimiter.acquire();
+                Entity entity = iterator.next();
+                if (Harvester.harvestEntity(harvest, source, ingestSink, entity,
+                        hashLedger, sinkRateLimiter) ==
+                        Harvester.Outcome.CLOSED) {
+                    isExhausted = true;
+                }
+            } catch (EndOfIterationException e) {
+                isExhausted = true;
+            } catch (HarvestClosedException e) {
+                harvest.abort();
+                LOGGER.info("Harvest of {} closed: {}", source, e.getMessage());
+                isExhausted = true;
+            } catch (Exception e) {
+                Harvester.reportSourceError(harvest, e);
+            }
+        }
+
+        /**
+         * Does the same teardown as {@link Harvester#harvest}. Invoked by the
+         * last thread to leave the lane.
+         */
+        void finish() {
+            Harvester.finishHarvest(source, sink, harvest, reporter,
+                    cacheBaseline);
+            LOGGER.info("Finished harvesting {}: {}", source, harvest);
+        }
+
+        /**
+         * @return Whether a thread may be assigned to the lane. Must be called
+         *         while holding the job lock.
+         */
+        boolean isAvailable() {
+            return (state == LaneState.NEW ||
+                    (state == LaneState.RUNNING && !isExhausted)) &&
+                    numActiveThreads < maxThreads;
+        }
+
+        /**
+         * @return Fraction of the lane's maximum number of threads that are
+         *         in use. Must be called while holding the job lock.
+         */
+        double getLoad() {
+            return numActiveThreads / (double) maxThreads;
+        }
+
+        @Override
+        public String toString() {
+            return source.toString();
+        }
+    }
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(HarvestJob.class);
+
+    private final List<Lane> lanes    = new ArrayList<>();
+    private final Lock lock           = new ReentrantLock();
+    private final Condition laneFreed = lock.newCondition();
+    private RateLimiter sinkRateLimiter = RateLimiter.UNLIMITED;
+    private Duration statusInterval     = Duration.ofSeconds(10);
+    private RetryPolicy retryPolicy;
+    private DeadLetterFile deadLetterFile;
+    private HashLedger hashLedger;
+
+    /**
+     * @param source            Service to harvest.
+     * @param sink              Service to harvest into. This must be a
+     *                          different instance for every lane.
+     * @param harvest           Object for status tracking.
+     * @param maxThreads        Maximum number of threads to harvest the
+     *                          source with at once.
+     * @param requestsPerSecond Maximum sustained rate of requests to the
+     *                          source. Supply {@code 0} for no limit.
+     * @param burst             Number of source requests that may be sent
+     *                          back to back after a period of inactivity.
+     */
+    public void addLane(SourceService source,
+                        SinkService sink,
+                        Harvest harvest,
+                        int maxThreads,
+                        double requestsPerSecond,
+                        int burst) {
+        for (Lane lane : lanes) {
+            if (lane.sink == sink) {
+                throw new IllegalArgumentException(
+                        "Each lane must have its own sink instance");
+            }
+        }
+        lanes.add(new Lane(source, sink, harvest, maxThreads,
+                new RateLimiter(requestsPerSecond, burst)));
+    }
+
+    /**
+     * @return Harvests of all lanes, in the order they were added.
+     */
+    public List<Harvest> getHarvests() {
+        final List<Harvest> harvests = new ArrayList<>(lanes.size());
+        lanes.forEach(lane -> harvests.add(lane.harvest));
+        return Collections.unmodifiableList(harvests);
+    }
+
+    /**
+     * Harvests all lanes and returns when they are all done.
+     *
+     * @param numThreads Total number of threads shared by all lanes.
+     */
+    public void run(int numThreads) {
+        numThreads = Math.max(numThreads, 1);
+        LOGGER.info("Harvesting {} sources using {} threads", lanes.size(),
+                numThreads);
+        final ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try {
+            for (int i = 0; i < numThreads; i++) {
+                pool.submit(this::work);
+            }
+        } finally {
+            pool.shutdown();
+        }
+        try {
+            while (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.debug("Still harvesting: {}", getHarvests());
+            }
+        } catch (InterruptedException e) {
+            LOGGER.info(e.getMessage(), e);
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * @param file Dead letter file shared by all lanes, which the caller must
+     *             close.
+     * @see Harvester#setDeadLetterFile(DeadLetterFile)
+     */
+    public void setDeadLetterFile(DeadLetterFile file) {
+        this.deadLetterFile = file;
+    }
+
+    /**
+     * @param ledger Ledger shared by all lanes, which the caller must close.
+     * @see Harvester#setHashLedger(HashLedger)
+     */
+    public void setHashLedger(HashLedger ledger) {
+        this.hashLedger = ledger;
+    }
+
+    /**
+     * @param maxRetries Maximum number of retries per entity. The retry
+     *                   budget is shared by all lanes.
+     * @see Harvester#setMaxRetries(int)
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.retryPolicy = (maxRetries > 0) ? new RetryPolicy(maxRetries) : null;
+    }
+
+    /**
+     * Sets the maximum rate of requests to the sink service, shared by all
+     * lanes. By default, there is no limit.
+     *
+     * @param requestsPerSecond Sustained rate. Supply {@code 0} for no limit.
+     * @param burst             Number of requests that may be sent back to
+     *                          back after a period of inactivity.
+     */
+    public void setSinkRate(double requestsPerSecond, int burst) {
+        this.sinkRateLimiter = new RateLimiter(requestsPerSecond, burst);
+    }
+
+    /**
+     * @param interval Time between status updates sent to each sink while it
+     *                 is being harvested into.
+     * @see Harvester#setStatusInterval(Duration)
+     */
+    public void setStatusInterval(Duration interval) {
+        this.statusInterval = interval;
+    }
+
+    /**
+     * Worker loop run by each thread in the pool.
+     */
+    private void work() {
+        try {
+            Lane lane;
+            while ((lane = claimLane()) != null) {
+                try {
+                    if (lane.state == LaneState.STARTING) {
+                        lane.start();
+                    } else {
+                        lane.step();
+                    }
+                } finally {
+                    releaseLane(lane);
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.info(e.getMessage(), e);
+        } catch (RuntimeException e) {
+            LOGGER.error("Harvest worker failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Blocks until a lane is available and assigns the calling thread to it.
+     *
+     * @return Lane to work on, or {@code null} if all lanes are done.
+     */
+    private Lane claimLane() throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                Lane best         = null;
+                boolean isAllDone = true;
+                for (Lane lane : lanes) {
+                    if (lane.state != LaneState.DONE) {
+                        isAllDone = false;
+                    }
+                    if (lane.isAvailable() &&
+                            (best == null || lane.getLoad() < best.getLoad())) {
+                        best = lane;
+                    }
+                }
+                if (isAllDone) {
+                    return null;
+                } else if (best != null) {
+                    if (best.state == LaneState.NEW) {
+                        best.state = LaneState.STARTING;
+                    }
+                    best.numActiveThreads++;
+                    return best;
+                }
+                laneFreed.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Unassigns the calling thread from the given lane, and finishes the lane
+     * if it is exhausted and the calling thread is the last one in it.
+     */
+    private void releaseLane(Lane lane) {
+        boolean isFinishing = false;
+        lock.lock();
+        try {
+            lane.numActiveThreads--;
+            if (lane.state == LaneState.STARTING) {
+                lane.state = LaneState.RUNNING;
+            }
+            if (lane.isExhausted && lane.state == LaneState.RUNNING &&
+                    lane.numActiveThreads == 0) {
+                lane.state  = LaneState.FINISHING;
+                isFinishing = true;
+            }
+            laneFreed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (isFinishing) {
+            try {
+                lane.finish();
+            } finally {
+                lock.lock();
+                try {
+                    lane.state = LaneState.DONE;
+                    laneFreed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+}
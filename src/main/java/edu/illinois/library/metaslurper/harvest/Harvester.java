@@ -4,8 +4,10 @@ import edu.illinois.library.metaslurper.Application;
 import edu.illinois.library.metaslurper.entity.ConcreteEntity;
 import edu.illinois.library.metaslurper.entity.Entity;
 import edu.illinois.library.metaslurper.entity.PlaceholderEntity;
+import edu.illinois.library.metaslurper.entity.SkippedEntity;
 import edu.illinois.library.metaslurper.service.ConcurrentIterator;
 import edu.illinois.library.metaslurper.service.EndOfIterationException;
+import edu.illinois.library.metaslurper.service.HTTPCache;
 import edu.illinois.library.metaslurper.service.HTTPException;
 import edu.illinois.library.metaslurper.service.SinkService;
 import edu.illinois.library.metaslurper.service.SourceService;
@@ -15,13 +17,18 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 /**
@@ -29,16 +36,70 @@ import java.util.stream.Collectors;
  */
 public final class Harvester {
 
+    /**
+     * Outcome of {@link #harvestEntity}.
+     */
+    enum Outcome {
+
+        /**
+         * The entity was ingested into the sink.
+         */
+        INGESTED,
+
+        /**
+         * The entity was skipped because it hasn't changed since it was last
+         * ingested.
+         */
+        UNCHANGED,
+
+        /**
+         * The source returned a {@link SkippedEntity}, which was counted as
+         * skipped.
+         */
+        SKIPPED,
+
+        /**
+         * The entity could not be acquired from the source or could not be
+         * ingested into the sink, and was counted as failed.
+         */
+        FAILED,
+
+        /**
+         * The harvest was no longer open, so the entity was left alone.
+         */
+        CLOSED;
+
+        /**
+         * @return Whether the entity is up to date in the sink.
+         */
+        boolean isIngested() {
+            return this == INGESTED || this == UNCHANGED;
+        }
+    }
+
     private static final Logger LOGGER =
             LoggerFactory.getLogger(Harvester.class);
 
     private static final String NEWLINE = "(\\n|\\r|\\r\\n)";
 
     /**
-     * Update the sink status after a multiple of this many entities are
-     * ingested.
+     * Default time between status updates sent to the sink.
      */
-    private static final short STATUS_UPDATE_INCREMENT = 25;
+    private static final Duration DEFAULT_STATUS_INTERVAL =
+            Duration.ofSeconds(10);
+
+    private boolean isPipelined, isVirtualThreaded;
+    private int numFetchThreads = 1, numTransformThreads = 1,
+            numIngestThreads = 1;
+    private int maxSourceRequests = 1, maxSinkRequests = 1;
+    private int maxAdaptiveThreads;
+    private RateLimiter sourceRateLimiter = RateLimiter.UNLIMITED;
+    private RateLimiter sinkRateLimiter   = RateLimiter.UNLIMITED;
+    private Duration statusInterval       = DEFAULT_STATUS_INTERVAL;
+    private Checkpoint checkpoint;
+    private RetryPolicy retryPolicy;
+    private DeadLetterFile deadLetterFile;
+    private HashLedger hashLedger;
 
     /**
      * @param source  Service to harvest.
@@ -48,28 +109,70 @@ public final class Harvester {
     public void harvest(final SourceService source,
                         final SinkService sink,
                         final Harvest harvest) {
-        ExecutorService pool = null;
+        ExecutorService pool    = null;
+        StatusReporter reporter = null;
+        final HTTPCache.Counts cacheBaseline = HTTPCache.counts(source.getKey());
         try {
-            int numEntities = getNumEntities(source);
-            harvest.setNumEntities(numEntities);
-            harvest.setLifecycle(Lifecycle.RUNNING);
-            sink.setNumEntitiesToIngest(numEntities);
-            sink.setSourceKey(source.getKey());
+            int numEntities = startHarvest(source, sink, harvest);
+            LOGGER.debug("Request rate limits: {} for {}; {} for {}",
+                    sourceRateLimiter, source, sinkRateLimiter, sink);
+            if (checkpoint != null) {
+                if (isPipelined) {
+                    LOGGER.warn("Checkpoints are not supported in pipelined " +
+                            "harvests; ignoring");
+                } else {
+                    resume(source, harvest);
+                }
+            }
+            reporter = new StatusReporter(sink, harvest, statusInterval);
 
-            if (numEntities != 0) {
+            if (numEntities != 0 && isPipelined) {
+                numEntities = harvest.getCanonicalNumEntities();
+                LOGGER.info("Harvesting {} entities from {} into {} using " +
+                                "{} fetch, {} transform, and {} ingest threads",
+                        numEntities, source, sink, numFetchThreads,
+                        numTransformThreads, numIngestThreads);
+                new Pipeline(harvest, source, withRetries(sink, source, null),
+                        numFetchThreads,
+                        numTransformThreads, numIngestThreads,
+                        sourceRateLimiter, sinkRateLimiter, hashLedger)
+                        .run(source.entities());
+            } else if (numEntities != 0 && isVirtualThreaded) {
                 numEntities = harvest.getCanonicalNumEntities();
+                LOGGER.info("Harvesting {} entities from {} into {} using " +
+                                "virtual threads with up to {} source and " +
+                                "{} sink requests in flight",
+                        numEntities, source, sink, maxSourceRequests,
+                        maxSinkRequests);
+                harvestInVirtualThreads(harvest, source,
+                        withRetries(sink, source, null), source.entities());
+            } else if (numEntities != 0) {
+                numEntities = harvest.getCanonicalNumEntities();
+                final int maxThreads = (maxAdaptiveThreads > 0) ?
+                        maxAdaptiveThreads : Application.getNumThreads();
                 final int numThreads = (numEntities > 0) ?
-                        Math.min(numEntities, Application.getNumThreads()) :
-                        Application.getNumThreads();
-                LOGGER.info("Harvesting {} entities from {} into {} using {} threads",
-                        numEntities, source, sink, numThreads);
+                        Math.min(numEntities, maxThreads) : maxThreads;
+                final AdaptiveLimiter limiter;
+                if (maxAdaptiveThreads > 0) {
+                    limiter = new AdaptiveLimiter(Application.getNumThreads(),
+                            1, numThreads, harvest::setConcurrencyLimit);
+                    LOGGER.info("Harvesting {} entities from {} into {} using " +
+                                    "{} threads, of which {} are initially active",
+                            numEntities, source, sink, numThreads,
+                            limiter.getLimit());
+                } else {
+                    limiter = null;
+                    LOGGER.info("Harvesting {} entities from {} into {} using {} threads",
+                            numEntities, source, sink, numThreads);
+                }
 
                 final CountDownLatch latch = new CountDownLatch(numThreads);
                 pool = Executors.newFixedThreadPool(numThreads);
                 final ConcurrentIterator<? extends Entity> it = source.entities();
+                final SinkService ingestSink = withRetries(sink, source, limiter);
                 for (int i = 0; i < numThreads; i++) {
-                    pool.submit(() -> harvestInThread(harvest, source, sink, it,
-                            latch));
+                    pool.submit(() -> harvestInThread(harvest, source,
+                            ingestSink, it, limiter, latch));
                 }
                 try {
                     latch.await();
@@ -83,12 +186,8 @@ public final class Harvester {
             harvest.setLifecycle(Lifecycle.FAILED);
             LOGGER.error(e.getMessage(), e);
         } finally {
-            harvest.end();
             try {
-                sink.updateHarvest(harvest);
-            } catch (IOException e) {
-                LOGGER.error("Failed to update final harvest status: {}",
-                        e.getMessage(), e);
+                finishHarvest(source, sink, harvest, reporter, cacheBaseline);
             } finally {
                 if (pool != null) {
                     pool.shutdown();
@@ -97,46 +196,43 @@ public final class Harvester {
         }
     }
 
+    /**
+     * @param limiter May be {@code null} to use all threads all the time.
+     */
     private void harvestInThread(Harvest harvest,
                                  SourceService source,
                                  SinkService sink,
                                  ConcurrentIterator<? extends Entity> it,
+                                 AdaptiveLimiter limiter,
                                  CountDownLatch latch) {
         try {
             // Will break on an EndOfIterationException or
             // HarvestClosedException.
-            while (throttle()) {
-                updateStatus(sink, harvest);
+            while (true) {
+                if (limiter != null) {
+                    limiter.acquire();
+                }
+                Checkpoint.Ticket ticket = null;
+                String ingestedSinkID    = null;
                 try {
                     // Pull an Entity from the source service.
-                    Entity entity = it.next();
+                    sourceRateLimiter.acquire();
+                    Entity entity;
+                    if (checkpoint != null) {
+                        ticket = checkpoint.next(it);
+                        entity = ticket.getEntity();
+                    } else {
+                        entity = it.next();
+                    }
                     // Push it into the sink service.
-                    if (entity instanceof ConcreteEntity) {
-                        ConcreteEntity concEntity = (ConcreteEntity) entity;
-                        if (harvest.isOpen()) {
-                            try {
-                                sink.ingest(concEntity);
-                                harvest.incrementNumSucceeded();
-
-                                int index = harvest.getNumSucceeded() +
-                                        harvest.getNumFailed();
-                                LOGGER.debug("Harvested {} {} from {} into {} [{}/{}] [{}]",
-                                        concEntity.getVariant().name().toLowerCase(),
-                                        concEntity, source, sink,
-                                        index,
-                                        harvest.getNumEntities(),
-                                        NumberUtils.percent(index + 1, harvest.getNumEntities()));
-                            } catch (HarvestClosedException e) {
-                                throw e;
-                            } catch (IOException e) {
-                                reportSinkError(harvest, concEntity, e);
-                            }
-                        } else {
+                    if (!isAlreadyIngested(entity)) {
+                        Outcome outcome = harvestEntity(harvest, source, sink,
+                                entity, hashLedger, sinkRateLimiter);
+                        if (outcome == Outcome.CLOSED) {
                             break; // This thread is done.
+                        } else if (outcome.isIngested()) {
+                            ingestedSinkID = entity.getSinkID();
                         }
-                    } else {
-                        reportSourceError(harvest,
-                                (PlaceholderEntity) entity);
                     }
                 } catch (EndOfIterationException ignore) {
                     break; // This thread is done.
@@ -145,33 +241,373 @@ public final class Harvester {
                     LOGGER.info("Harvest closed: {}", e.getMessage());
                     break; // This thread is done.
                 } catch (Exception e) {
+                    if (limiter != null) {
+                        limiter.onFailure(e);
+                    }
                     reportSourceError(harvest, e);
+                } finally {
+                    if (ticket != null) {
+                        checkpoint.complete(ticket, ingestedSinkID);
+                    }
+                    if (limiter != null) {
+                        limiter.release();
+                    }
                 }
             }
+        } catch (InterruptedException e) {
+            LOGGER.info(e.getMessage(), e);
         } finally {
             latch.countDown();
         }
     }
 
-    private static void updateStatus(SinkService sink,
-                                     Harvest harvest) {
+    /**
+     * Harvests each entity in its own virtual thread. Concurrency is limited
+     * not by the number of threads but by the number of requests allowed in
+     * flight against the source and sink.
+     */
+    private void harvestInVirtualThreads(final Harvest harvest,
+                                         final SourceService source,
+                                         final SinkService sink,
+                                         final ConcurrentIterator<? extends Entity> it) {
+        final String sourceHost = source.getKey();
+        final String sinkHost   = sink.getKey();
+        final Map<String, Integer> limits = new HashMap<>();
+        limits.put(sourceHost, maxSourceRequests);
+        limits.put(sinkHost, maxSinkRequests);
+        final HostPermits permits = new HostPermits(limits, 1);
+        // Fetched entities waiting for a sink permit also count against this,
+        // so that a slow sink can't cause them to pile up.
+        final Semaphore inFlight =
+                new Semaphore(maxSourceRequests + maxSinkRequests);
+        final AtomicBoolean isDone = new AtomicBoolean();
+        final int maxNumEntities   = harvest.getMaxNumEntities();
+        int numStarted             = 0;
+
+        try (ExecutorService executor =
+                     Executors.newVirtualThreadPerTaskExecutor()) {
+            while (!isDone.get() && harvest.isOpen() &&
+                    (maxNumEntities < 1 || numStarted < maxNumEntities)) {
+                inFlight.acquire();
+                permits.acquire(sourceHost);
+                if (isDone.get()) {
+                    permits.release(sourceHost);
+                    inFlight.release();
+                    break;
+                }
+                numStarted++;
+                executor.submit(() -> {
+                    try {
+                        harvestInVirtualThread(harvest, source, sink, it,
+                                permits, isDone);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            LOGGER.info(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Harvests one entity. The caller must have acquired a source permit,
+     * which this method releases.
+     */
+    private void harvestInVirtualThread(Harvest harvest,
+                                        SourceService source,
+                                        SinkService sink,
+                                        ConcurrentIterator<? extends Entity> it,
+                                        HostPermits permits,
+                                        AtomicBoolean isDone) {
+        final String sourceHost  = source.getKey();
+        final String sinkHost    = sink.getKey();
+        Checkpoint.Ticket ticket = null;
+        String ingestedSinkID    = null;
+        Entity entity;
         try {
-            if ((harvest.getNumSucceeded() + harvest.getNumFailed()) %
-                    STATUS_UPDATE_INCREMENT == 0) {
-                sink.updateHarvest(harvest);
+            try {
+                sourceRateLimiter.acquire();
+                if (checkpoint != null) {
+                    ticket = checkpoint.next(it);
+                    entity = ticket.getEntity();
+                } else {
+                    entity = it.next();
+                }
+            } catch (EndOfIterationException e) {
+                isDone.set(true);
+                return;
+            } catch (HarvestClosedException e) {
+                isDone.set(true);
+                harvest.abort();
+                LOGGER.info("Harvest closed: {}", e.getMessage());
+                return;
+            } catch (Exception e) {
+                reportSourceError(harvest, e);
+                return;
+            } finally {
+                permits.release(sourceHost);
+            }
+
+            if (isAlreadyIngested(entity)) {
+                return;
+            }
+            // Placeholders don't go to the sink, so they don't need a permit.
+            final boolean needsPermit = (entity instanceof ConcreteEntity);
+            if (needsPermit) {
+                try {
+                    permits.acquire(sinkHost);
+                } catch (InterruptedException e) {
+                    LOGGER.info(e.getMessage(), e);
+                    return;
+                }
             }
+            try {
+                if (harvestEntity(harvest, source, sink, entity, hashLedger,
+                        sinkRateLimiter).isIngested()) {
+                    ingestedSinkID = entity.getSinkID();
+                }
+            } catch (HarvestClosedException e) {
+                isDone.set(true);
+                harvest.abort();
+                LOGGER.info("Harvest closed: {}", e.getMessage());
+            } finally {
+                if (needsPermit) {
+                    permits.release(sinkHost);
+                }
+            }
+        } finally {
+            if (ticket != null) {
+                checkpoint.complete(ticket, ingestedSinkID);
+            }
+        }
+    }
+
+    /**
+     * @param limiter Limiter to report the outcome of each ingest attempt to.
+     *                May be {@code null}.
+     * @return        Sink to ingest into, which retries and/or adds failures
+     *                to the dead letter file if either of those is enabled.
+     */
+    private SinkService withRetries(SinkService sink,
+                                    SourceService source,
+                                    AdaptiveLimiter limiter) {
+        return withRetries(sink, source, retryPolicy, deadLetterFile, limiter);
+    }
+
+    /**
+     * @param retryPolicy    May be {@code null}.
+     * @param deadLetterFile May be {@code null}.
+     * @param limiter        Limiter to report the outcome of each ingest
+     *                       attempt to. May be {@code null}.
+     * @return               Sink to ingest into, which retries and/or adds
+     *                       failures to the dead letter file if either of
+     *                       those is enabled, and reports to the limiter if
+     *                       there is one.
+     */
+    static SinkService withRetries(SinkService sink,
+                                   SourceService source,
+                                   RetryPolicy retryPolicy,
+                                   DeadLetterFile deadLetterFile,
+                                   AdaptiveLimiter limiter) {
+        if (retryPolicy == null && deadLetterFile == null && limiter == null) {
+            return sink;
+        }
+        return new RetryingSinkService(sink, retryPolicy, deadLetterFile,
+                source.getKey(), limiter);
+    }
+
+    /**
+     * Does the setup that is common to all harvests of a source into a sink.
+     *
+     * @return Number of entities in the source, or {@code -1} if unknown.
+     */
+    static int startHarvest(SourceService source,
+                            SinkService sink,
+                            Harvest harvest) throws IOException {
+        int numEntities = getNumEntities(source);
+        harvest.setNumEntities(numEntities);
+        harvest.setLifecycle(Lifecycle.RUNNING);
+        sink.setNumEntitiesToIngest(numEntities);
+        sink.setSourceKey(source.getKey());
+        return numEntities;
+    }
+
+    /**
+     * Does the teardown that is common to all harvests of a source into a
+     * sink, including sending the final status to the sink.
+     *
+     * @param reporter      May be {@code null}.
+     * @param cacheBaseline HTTP cache counts of the source from before the
+     *                      harvest started.
+     */
+    static void finishHarvest(SourceService source,
+                              SinkService sink,
+                              Harvest harvest,
+                              StatusReporter reporter,
+                              HTTPCache.Counts cacheBaseline) {
+        if (reporter != null) {
+            reporter.close();
+        }
+        harvest.end();
+        harvest.setCacheCounts(
+                HTTPCache.counts(source.getKey()).minus(cacheBaseline));
+        if (!harvest.getCacheCounts().isEmpty()) {
+            LOGGER.info("HTTP cache usage of {}: {}",
+                    source, harvest.getCacheCounts());
+        }
+        try {
+            sink.updateHarvest(harvest);
         } catch (IOException e) {
-            LOGGER.error("Failed to update harvest status: {}",
+            LOGGER.error("Failed to update final harvest status: {}",
                     e.getMessage(), e);
         }
     }
 
+    /**
+     * <p>Does everything that is done with an entity returned by a source
+     * iterator: a {@link PlaceholderEntity} is reported as a source error,
+     * a {@link SkippedEntity} is counted as skipped, and a {@link
+     * ConcreteEntity} is skipped if it {@link #skipIfUnchanged hasn't
+     * changed}, and otherwise ingested into the sink.</p>
+     *
+     * <p>This is the per-entity step of every harvest mode except the
+     * pipelined one, which splits it across stages.</p>
+     *
+     * @param ledger          May be {@code null}.
+     * @param sinkRateLimiter Limiter to acquire before sending a request to
+     *                        the sink.
+     * @throws HarvestClosedException if the sink reports that the harvest has
+     *                                been closed.
+     */
+    static Outcome harvestEntity(Harvest harvest,
+                                 SourceService source,
+                                 SinkService sink,
+                                 Entity entity,
+                                 HashLedger ledger,
+                                 RateLimiter sinkRateLimiter) throws HarvestClosedException {
+        if (entity instanceof PlaceholderEntity) {
+            reportSourceError(harvest, (PlaceholderEntity) entity);
+            return Outcome.FAILED;
+        } else if (entity instanceof SkippedEntity) {
+            reportSkipped(harvest, (SkippedEntity) entity);
+            return Outcome.SKIPPED;
+        } else if (!(entity instanceof ConcreteEntity)) {
+            reportSourceError(harvest,
+                    new IllegalStateException("Iterator returned " + entity));
+            return Outcome.FAILED;
+        }
+        final ConcreteEntity concEntity = (ConcreteEntity) entity;
+        if (!harvest.isOpen()) {
+            return Outcome.CLOSED;
+        } else if (skipIfUnchanged(harvest, ledger, concEntity)) {
+            return Outcome.UNCHANGED;
+        }
+        sinkRateLimiter.acquire();
+        return ingest(harvest, source, sink, concEntity, ledger) ?
+                Outcome.INGESTED : Outcome.FAILED;
+    }
+
+    /**
+     * @return Whether the given entity was ingested in a previous run
+     *         according to the {@link #setCheckpoint(Checkpoint) checkpoint}.
+     */
+    private boolean isAlreadyIngested(Entity entity) {
+        if (checkpoint != null && entity instanceof ConcreteEntity &&
+                checkpoint.isAcknowledged(entity.getSinkID())) {
+            LOGGER.debug("Skipping {}, which was already ingested", entity);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Counts the given entity as skipped if the given ledger says that it
+     * hasn't changed since it was last ingested.
+     *
+     * @param ledger May be {@code null}, in which case nothing is skipped.
+     * @return       Whether the entity was skipped.
+     */
+    static boolean skipIfUnchanged(Harvest harvest,
+                                   HashLedger ledger,
+                                   ConcreteEntity entity) {
+        if (ledger != null && ledger.isUnchanged(entity)) {
+            LOGGER.debug("Skipping {}, which hasn't changed since it was " +
+                    "last ingested", entity);
+            harvest.incrementNumSkipped();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Prepares to resume a harvest from the {@link #setCheckpoint(Checkpoint)
+     * checkpoint}, by crediting the harvest with the entities that were
+     * already ingested and moving the source to the checkpoint's cursor.
+     */
+    private void resume(SourceService source, Harvest harvest) {
+        harvest.addNumSucceeded((int) checkpoint.getNumResumed());
+        final String cursor = checkpoint.getCursor();
+        if (cursor != null) {
+            try {
+                source.setCursor(cursor);
+                LOGGER.info("Resuming {} from cursor: {}", source, cursor);
+            } catch (UnsupportedOperationException e) {
+                LOGGER.info("{} does not support cursors; resuming from the " +
+                        "beginning", source);
+            }
+        }
+    }
+
+    /**
+     * Ingests an entity into a sink service and records the outcome in the
+     * given harvest.
+     *
+     * @param ledger Ledger in which to record the entity if it is ingested
+     *               successfully. May be {@code null}.
+     * @return       Whether the entity was ingested successfully.
+     * @throws HarvestClosedException if the sink reports that the harvest has
+     *                                been closed.
+     */
+    static boolean ingest(Harvest harvest,
+                          SourceService source,
+                          SinkService sink,
+                          ConcreteEntity entity,
+                          HashLedger ledger) throws HarvestClosedException {
+        try {
+            sink.ingest(entity);
+            harvest.incrementNumSucceeded();
+            if (ledger != null) {
+                try {
+                    ledger.record(entity);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to record {} in {}: {}",
+                            entity, ledger, e.getMessage());
+                }
+            }
+
+            int index = harvest.getNumCompleted();
+            LOGGER.debug("Harvested {} {} from {} into {} [{}/{}] [{}]",
+                    entity.getVariant().name().toLowerCase(),
+                    entity, source, sink,
+                    index,
+                    harvest.getNumEntities(),
+                    NumberUtils.percent(index + 1, harvest.getNumEntities()));
+            return true;
+        } catch (HarvestClosedException e) {
+            throw e;
+        } catch (IOException e) {
+            reportSinkError(harvest, entity, e);
+            return false;
+        }
+    }
+
     /**
      * @return The number of entities available in the given service,
      *         disregarding any limit set in the application configuration. If
      *         the count is unknown, {@code -1} is returned.
      */
-    private static int getNumEntities(SourceService source) throws IOException {
+    static int getNumEntities(SourceService source) throws IOException {
         int numEntities;
         try {
             numEntities = source.numEntities();
@@ -181,22 +617,11 @@ public final class Harvester {
         return numEntities;
     }
 
-    /**
-     * @return {@code} true.
-     */
-    private static boolean throttle() {
-        try {
-            Thread.sleep(Application.getThrottleMsec());
-        } catch (InterruptedException ignore) {
-        }
-        return true;
-    }
-
     /**
      * Reports a failure to acquire an {@link Entity} from a {@link
      * SourceService}.
      */
-    private static void reportSourceError(Harvest harvest, Throwable t) {
+    static void reportSourceError(Harvest harvest, Throwable t) {
         final List<String> lines = new ArrayList<>();
         lines.add("******** SOURCE ERROR ********");
         lines.add("Time: " + Instant.now());
@@ -208,13 +633,23 @@ public final class Harvester {
         LOGGER.error("Failed to retrieve from source: {}", message, t);
     }
 
+    /**
+     * Counts a {@link SkippedEntity} returned by a source iterator as
+     * skipped.
+     */
+    static void reportSkipped(Harvest harvest, SkippedEntity entity) {
+        LOGGER.debug("Skipping {}, which is not meant to be harvested",
+                entity);
+        harvest.incrementNumSkipped();
+    }
+
     /**
      * Reports a failure to acquire a {@link ConcreteEntity} from a {@link
      * SourceService}; i.e. the iterator returned by {@link
      * SourceService#entities()} has returned a {@link PlaceholderEntity}.
      */
-    private static void reportSourceError(Harvest harvest,
-                                          PlaceholderEntity entity) {
+    static void reportSourceError(Harvest harvest,
+                                  PlaceholderEntity entity) {
         String message = String.format(
                 "******** SOURCE ERROR ********\n" +
                         "Time: %s\n" +
@@ -231,9 +666,9 @@ public final class Harvester {
      * Reports a failure to ingest a {@link ConcreteEntity} into a {@link
      * SinkService}.
      */
-    private static void reportSinkError(Harvest harvest,
-                                        ConcreteEntity entity,
-                                        Throwable t) {
+    static void reportSinkError(Harvest harvest,
+                                ConcreteEntity entity,
+                                Throwable t) {
         final List<String> lines = new ArrayList<>();
         lines.add("******** SINK ERROR ********");
         lines.add("Time: " + Instant.now());
@@ -247,6 +682,198 @@ public final class Harvester {
         LOGGER.error("Failed to ingest into sink: {}", message, t);
     }
 
+    /**
+     * <p>Enables adaptive concurrency in the standard (neither {@link
+     * #setPipelined(boolean) pipelined} nor {@link #setVirtualThreaded(boolean)
+     * virtual-threaded}) harvest mode. The harvest starts out using {@link
+     * Application#getNumThreads()} threads and adds more, up to the given
+     * maximum, for as long as sink latency and error rate stay healthy. When
+     * either service responds with an HTTP 5xx or 429 or times out, the
+     * number of active threads is halved.</p>
+     *
+     * <p>The current limit is available via {@link
+     * Harvest#getConcurrencyLimit()}.</p>
+     *
+     * @param maxThreads Maximum number of threads. Supply {@code 0} to
+     *                   disable adaptive concurrency (the default).
+     */
+    public void setAdaptiveMaxThreads(int maxThreads) {
+        this.maxAdaptiveThreads = Math.max(maxThreads, 0);
+    }
+
+    /**
+     * <p>Sets a checkpoint journal to record progress in, and, if it was
+     * opened for resuming, to resume from. Entities that the journal records
+     * as already ingested are skipped and counted as succeeded, and the
+     * source is moved to the journal's cursor, if it supports {@link
+     * SourceService#setCursor(String) cursors}.</p>
+     *
+     * <p>Checkpoints are not supported in {@link #setPipelined(boolean)
+     * pipelined} harvests.</p>
+     *
+     * @param checkpoint Checkpoint, which the caller must close. Supply
+     *                   {@code null} to disable checkpointing (the default).
+     */
+    public void setCheckpoint(Checkpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Sets a file to which entities that could not be ingested into the sink,
+     * even after any {@link #setMaxRetries(int) retries}, are added, so that
+     * they can be replayed later using a {@link DeadLetterSource}.
+     *
+     * @param file Dead letter file, which the caller must close. Supply
+     *             {@code null} to disable (the default).
+     */
+    public void setDeadLetterFile(DeadLetterFile file) {
+        this.deadLetterFile = file;
+    }
+
+    /**
+     * Sets a ledger of the content of previously ingested entities. Entities
+     * whose content is the same as recorded in the ledger are not ingested,
+     * and are counted as {@link Harvest#getNumSkipped() skipped}. Entities
+     * that are ingested successfully are recorded in it.
+     *
+     * @param ledger Ledger, which the caller must close. Supply {@code null}
+     *               to ingest all entities (the default).
+     */
+    public void setHashLedger(HashLedger ledger) {
+        this.hashLedger = ledger;
+    }
+
+    /**
+     * <p>Enables retrying of failed sink requests that may succeed later
+     * (HTTP 408, 429, and 5xx, and network errors). Retries are delayed with
+     * jittered exponential backoff, honor {@literal Retry-After}, and are
+     * drawn from a budget shared by all threads so that they can't add more
+     * than a fraction to the load on a failing sink.</p>
+     *
+     * <p>An entity is only counted as failed once it has run out of
+     * retries.</p>
+     *
+     * @param maxRetries Maximum number of retries per entity. Supply {@code
+     *                   0} to disable retrying (the default).
+     */
+    public void setMaxRetries(int maxRetries) {
+        this.retryPolicy = (maxRetries > 0) ? new RetryPolicy(maxRetries) : null;
+    }
+
+    /**
+     * Package-private variant of {@link #setMaxRetries(int)} for testing.
+     */
+    void setRetryPolicy(RetryPolicy policy) {
+        this.retryPolicy = policy;
+    }
+
+    /**
+     * Enables or disables pipelined harvesting, in which fetching from the
+     * source, transforming, and ingesting into the sink happen in separate
+     * stages, each with its own threads. When disabled (the default), each
+     * thread does all three in sequence for each entity.
+     *
+     * @param isPipelined Whether to harvest in a pipeline.
+     * @see #setNumFetchThreads(int)
+     * @see #setNumTransformThreads(int)
+     * @see #setNumIngestThreads(int)
+     */
+    public void setPipelined(boolean isPipelined) {
+        this.isPipelined = isPipelined;
+    }
+
+    /**
+     * Sets the maximum number of requests to have in flight against the sink
+     * service in a {@link #setVirtualThreaded(boolean) virtual-threaded}
+     * harvest.
+     *
+     * @param maxRequests Maximum number of concurrent sink requests.
+     */
+    public void setMaxSinkRequests(int maxRequests) {
+        this.maxSinkRequests = Math.max(maxRequests, 1);
+    }
+
+    /**
+     * Sets the maximum number of requests to have in flight against the
+     * source service in a {@link #setVirtualThreaded(boolean)
+     * virtual-threaded} harvest.
+     *
+     * @param maxRequests Maximum number of concurrent source requests.
+     */
+    public void setMaxSourceRequests(int maxRequests) {
+        this.maxSourceRequests = Math.max(maxRequests, 1);
+    }
+
+    /**
+     * Limits the rate of requests to the sink service across all threads, in
+     * all harvest modes. By default, there is no limit.
+     *
+     * @param requestsPerSecond Sustained rate. Supply {@code 0} for no limit.
+     * @param burst             Number of requests that may be sent back to
+     *                          back after a period of inactivity.
+     */
+    public void setSinkRate(double requestsPerSecond, int burst) {
+        this.sinkRateLimiter = new RateLimiter(requestsPerSecond, burst);
+    }
+
+    /**
+     * Limits the rate of requests to the source service across all threads,
+     * in all harvest modes. By default, there is no limit.
+     *
+     * @param requestsPerSecond Sustained rate. Supply {@code 0} for no limit.
+     * @param burst             Number of requests that may be sent back to
+     *                          back after a period of inactivity.
+     */
+    public void setSourceRate(double requestsPerSecond, int burst) {
+        this.sourceRateLimiter = new RateLimiter(requestsPerSecond, burst);
+    }
+
+    /**
+     * @param numThreads Number of threads in the fetch stage of a {@link
+     *                   #setPipelined(boolean) pipelined} harvest.
+     */
+    public void setNumFetchThreads(int numThreads) {
+        this.numFetchThreads = Math.max(numThreads, 1);
+    }
+
+    /**
+     * @param numThreads Number of threads in the ingest stage of a {@link
+     *                   #setPipelined(boolean) pipelined} harvest.
+     */
+    public void setNumIngestThreads(int numThreads) {
+        this.numIngestThreads = Math.max(numThreads, 1);
+    }
+
+    /**
+     * @param numThreads Number of threads in the transform stage of a {@link
+     *                   #setPipelined(boolean) pipelined} harvest.
+     */
+    public void setNumTransformThreads(int numThreads) {
+        this.numTransformThreads = Math.max(numThreads, 1);
+    }
+
+    /**
+     * @param interval Time between status updates sent to the sink while a
+     *                 harvest is running. A final update is always sent at
+     *                 the end.
+     */
+    public void setStatusInterval(Duration interval) {
+        this.statusInterval = interval;
+    }
+
+    /**
+     * Enables or disables virtual-threaded harvesting, in which each entity
+     * is harvested in its own virtual thread. Concurrency is then limited by
+     * {@link #setMaxSourceRequests(int)} and {@link #setMaxSinkRequests(int)}
+     * rather than by a number of threads, which makes it practical to have
+     * hundreds of requests in flight.
+     *
+     * @param isVirtualThreaded Whether to harvest using virtual threads.
+     */
+    public void setVirtualThreaded(boolean isVirtualThreaded) {
+        this.isVirtualThreaded = isVirtualThreaded;
+    }
+
     private static String getMessage(Throwable t) {
         final List<String> lines = new ArrayList<>();
         lines.add("Exception: " + t.getClass().getName());
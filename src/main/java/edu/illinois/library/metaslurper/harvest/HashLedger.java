@@ -0,0 +1,330 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.entity.ConcreteEntity;
+import edu.illinois.library.metaslurper.entity.Element;
+import edu.illinois.library.metaslurper.entity.Image;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <p>Persistent map of sink IDs to hashes of the content of the entities that
+ * were last ingested under them, used to skip entities that haven't changed
+ * since the last harvest.</p>
+ *
+ * <p>The map is an open-addressing hash table in a memory-mapped file, so
+ * opening and closing it cost nothing regardless of its size, and only the
+ * pages that are in use need to be in memory. Each entry takes 16 bytes: a
+ * 64-bit hash of the sink ID and a 64-bit hash of the content. The IDs
+ * themselves are not stored; the odds of two of them having the same hash are
+ * negligible even across many millions of entities, and the consequence of
+ * that would normally be only a redundant ingest.</p>
+ *
+ * <p>Entities are only {@link #record(ConcreteEntity) recorded} after they
+ * have been ingested successfully, so an entity that failed will be tried
+ * again next time even if it hasn't changed.</p>
+ */
+public final class HashLedger implements Closeable {
+
+    private static final int MAGIC   = 0x4d534c47; // "MSLG"
+    private static final int VERSION = 1;
+
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int SIZE_OFFSET     = 16;
+    private static final int HEADER_SIZE     = 32;
+    private static final int SLOT_SIZE       = 16;
+
+    /**
+     * Initial number of slots. Must be a power of 2.
+     */
+    static final long INITIAL_CAPACITY = 1 << 16;
+
+    /**
+     * Largest number of slots that fits in one mapping.
+     */
+    private static final long MAX_CAPACITY = 1 << 26;
+
+    /**
+     * The table is doubled in size when it becomes this full.
+     */
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME  = 0x100000001b3L;
+
+    private final Path file;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long capacity, size;
+
+    /**
+     * @param file File to open, which is created if it does not exist.
+     * @return     New instance.
+     * @throws IOException if the file exists but is not a ledger.
+     */
+    public static HashLedger open(Path file) throws IOException {
+        return new HashLedger(file);
+    }
+
+    private HashLedger(Path file) throws IOException {
+        this.file = file;
+        final boolean exists = Files.exists(file) && Files.size(file) > 0;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (exists) {
+                final MappedByteBuffer header = channel.map(
+                        FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                capacity = header.getLong(CAPACITY_OFFSET);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION ||
+                        Long.bitCount(capacity) != 1 || capacity > MAX_CAPACITY) {
+                    throw new IOException(file + " is not a hash ledger");
+                }
+                buffer   = map(channel, capacity);
+                size     = buffer.getLong(SIZE_OFFSET);
+            } else {
+                capacity = INITIAL_CAPACITY;
+                buffer   = map(channel, capacity);
+                writeHeader(buffer, capacity);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return Hash of all of the properties of the given entity. Elements and
+     *         images are hashed independently of their order.
+     */
+    static long hash(ConcreteEntity entity) {
+        long h = FNV_OFFSET;
+        h = update(h, entity.getServiceKey());
+        h = update(h, entity.getSourceID());
+        h = update(h, entity.getSourceURI());
+        h = update(h, entity.getSinkID());
+        h = update(h, entity.getParentSinkID());
+        h = update(h, entity.getContainerSinkID());
+        h = update(h, entity.getContainerName());
+        h = update(h, entity.getFullText());
+        h = update(h, entity.getMediaType());
+        h = update(h, (entity.getVariant() != null) ?
+                entity.getVariant().name() : null);
+        long elementsHash = 0;
+        for (Element element : entity.getElements()) {
+            long eh = update(FNV_OFFSET, element.getName());
+            eh = update(eh, element.getValue());
+            elementsHash += mix(eh);
+        }
+        h = update(h, elementsHash);
+        long imagesHash = 0;
+        for (Image image : entity.getAccessImages()) {
+            long ih = update(FNV_OFFSET, image.getURI());
+            ih = update(ih, image.getCrop().name());
+            ih = update(ih, image.getSize());
+            ih = update(ih, image.isMaster() ? 1 : 0);
+            imagesHash += mix(ih);
+        }
+        h = update(h, imagesHash);
+        return mix(h);
+    }
+
+    /**
+     * @return Hash of the given sink ID, which is never {@code 0} (that being
+     *         the marker of an empty slot).
+     */
+    private static long hashID(String sinkID) {
+        final long h = mix(update(FNV_OFFSET, sinkID));
+        return (h != 0) ? h : 1;
+    }
+
+    /**
+     * Feeds a string into an FNV-1a hash, preceded by its length so that
+     * adjacent strings can't run together.
+     */
+    private static long update(long h, String s) {
+        if (s == null) {
+            return update(h, -1);
+        }
+        h = update(h, s.length());
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    private static long update(long h, long value) {
+        for (int i = 0; i < 8; i++) {
+            h = (h ^ (value & 0xff)) * FNV_PRIME;
+            value >>>= 8;
+        }
+        return h;
+    }
+
+    /**
+     * MurmurHash3 finalizer, which spreads the bits of an FNV hash so that the
+     * low ones can be used as a table index.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel,
+                                        long capacity) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + capacity * SLOT_SIZE);
+    }
+
+    private static void writeHeader(MappedByteBuffer buffer, long capacity) {
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putLong(CAPACITY_OFFSET, capacity);
+        buffer.putLong(SIZE_OFFSET, 0);
+    }
+
+    /**
+     * @return Offset of the slot that contains the given key, or of the empty
+     *         slot where it would go.
+     */
+    private static int probe(MappedByteBuffer buffer, long capacity, long key) {
+        final long mask = capacity - 1;
+        long index = key & mask;
+        while (true) {
+            final int offset = (int) (HEADER_SIZE + index * SLOT_SIZE);
+            final long slotKey = buffer.getLong(offset);
+            if (slotKey == 0 || slotKey == key) {
+                return offset;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Doubles the capacity of the table by rehashing it into a new file that
+     * then replaces the current one.
+     */
+    private void grow() throws IOException {
+        final long newCapacity = capacity * 2;
+        if (newCapacity > MAX_CAPACITY) {
+            throw new IOException(file + " is full");
+        }
+        final Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        final FileChannel newChannel = FileChannel.open(tmpFile,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            final MappedByteBuffer newBuffer = map(newChannel, newCapacity);
+            writeHeader(newBuffer, newCapacity);
+            for (long i = 0; i < capacity; i++) {
+                final int offset = (int) (HEADER_SIZE + i * SLOT_SIZE);
+                final long key = buffer.getLong(offset);
+                if (key != 0) {
+                    final int newOffset = probe(newBuffer, newCapacity, key);
+                    newBuffer.putLong(newOffset + 8, buffer.getLong(offset + 8));
+                    newBuffer.putLong(newOffset, key);
+                }
+            }
+            newBuffer.putLong(SIZE_OFFSET, size);
+            newBuffer.force();
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            channel.close();
+            channel  = newChannel;
+            buffer   = newBuffer;
+            capacity = newCapacity;
+        } catch (IOException | RuntimeException e) {
+            newChannel.close();
+            Files.deleteIfExists(tmpFile);
+            throw e;
+        }
+    }
+
+    /**
+     * @return Whether the given entity has the same content as it did the
+     *         last time it was {@link #record(ConcreteEntity) recorded}.
+     */
+    boolean isUnchanged(ConcreteEntity entity) {
+        final long key  = hashID(entity.getSinkID());
+        final long hash = hash(entity);
+        lock.readLock().lock();
+        try {
+            final int offset = probe(buffer, capacity, key);
+            return buffer.getLong(offset) == key &&
+                    buffer.getLong(offset + 8) == hash;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Records the current content of the given entity, which should have just
+     * been ingested successfully.
+     */
+    void record(ConcreteEntity entity) throws IOException {
+        final long key  = hashID(entity.getSinkID());
+        final long hash = hash(entity);
+        lock.writeLock().lock();
+        try {
+            if (size + 1 > capacity * MAX_LOAD_FACTOR) {
+                grow();
+            }
+            final int offset = probe(buffer, capacity, key);
+            // The value is written before the key so that an entry that was
+            // interrupted by a crash won't match anything.
+            buffer.putLong(offset + 8, hash);
+            if (buffer.getLong(offset) == 0) {
+                buffer.putLong(offset, key);
+                buffer.putLong(SIZE_OFFSET, ++size);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of entities in the ledger.
+     */
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            buffer.force();
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public String toString() {
+        return file.toString();
+    }
+
+}
@@ -0,0 +1,58 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * <p>Limits the number of requests that may be in flight against each of any
+ * number of hosts at once.</p>
+ *
+ * <p>The {@link Harvester} treats each service as a host, since each one
+ * talks to a single host.</p>
+ */
+final class HostPermits {
+
+    private final Map<String, Semaphore> semaphores = new ConcurrentHashMap<>();
+    private final Map<String, Integer> limits;
+    private final int defaultLimit;
+
+    /**
+     * @param limits       Maximum number of concurrent requests for
+     *                     particular hosts.
+     * @param defaultLimit Maximum number of concurrent requests for any other
+     *                     host.
+     */
+    HostPermits(Map<String, Integer> limits, int defaultLimit) {
+        this.limits       = Map.copyOf(limits);
+        this.defaultLimit = defaultLimit;
+    }
+
+    /**
+     * Blocks until a request may be sent to the given host.
+     */
+    void acquire(String host) throws InterruptedException {
+        getSemaphore(host).acquire();
+    }
+
+    /**
+     * @return Number of requests that may currently be sent to the given host
+     *         without blocking.
+     */
+    int available(String host) {
+        return getSemaphore(host).availablePermits();
+    }
+
+    /**
+     * Must be called after a request to the given host has completed.
+     */
+    void release(String host) {
+        getSemaphore(host).release();
+    }
+
+    private Semaphore getSemaphore(String host) {
+        return semaphores.computeIfAbsent(host, h ->
+                new Semaphore(limits.getOrDefault(h, defaultLimit), true));
+    }
+
+}
@@ -0,0 +1,143 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>Describes a {@link HarvestJob}. The file format is one source per line,
+ * consisting of a source service key followed by any of the following
+ * optional settings, separated by whitespace:</p>
+ *
+ * <dl>
+ *     <dt>{@literal threads=n}</dt>
+ *     <dd>Maximum number of threads to harvest the source with at once.</dd>
+ *     <dt>{@literal rate=n}</dt>
+ *     <dd>Maximum requests per second to the source.</dd>
+ *     <dt>{@literal burst=n}</dt>
+ *     <dd>Number of requests that may be sent to the source back to back
+ *     after a pause.</dd>
+ * </dl>
+ *
+ * <p>Blank lines and lines beginning with {@literal #} are ignored.
+ * Example:</p>
+ *
+ * <pre>
+ * # key     settings
+ * dls       threads=4 rate=20 burst=5
+ * idnc      threads=8
+ * ideals</pre>
+ */
+public final class JobFile {
+
+    /**
+     * One line of a job file.
+     */
+    public static final class Entry {
+
+        private final String sourceKey;
+        private int numThreads, burst;
+        private double rate = -1;
+
+        private Entry(String sourceKey) {
+            this.sourceKey = sourceKey;
+        }
+
+        /**
+         * @return Maximum number of source requests that may be sent back to
+         *         back, or {@code 0} if not specified.
+         */
+        public int getBurst() {
+            return burst;
+        }
+
+        /**
+         * @return Maximum number of threads, or {@code 0} if not specified.
+         */
+        public int getNumThreads() {
+            return numThreads;
+        }
+
+        /**
+         * @return Maximum source requests per second, or a negative number if
+         *         not specified.
+         */
+        public double getRate() {
+            return rate;
+        }
+
+        public String getSourceKey() {
+            return sourceKey;
+        }
+
+    }
+
+    private JobFile() {}
+
+    /**
+     * @param lines Lines of a job file.
+     * @return      Entries in the order they appear.
+     * @throws IllegalArgumentException if any of the lines are invalid, or if
+     *         a source appears more than once.
+     */
+    public static List<Entry> parse(List<String> lines) {
+        final List<Entry> entries = new ArrayList<>();
+        final Set<String> keys    = new HashSet<>();
+        int lineNumber = 0;
+        for (String line : lines) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] tokens = line.split("\\s+");
+            final Entry entry     = new Entry(tokens[0]);
+            if (!keys.add(entry.sourceKey.toLowerCase())) {
+                throw new IllegalArgumentException("Line " + lineNumber +
+                        ": duplicate source: " + entry.sourceKey);
+            }
+            for (int i = 1; i < tokens.length; i++) {
+                final String[] kv = tokens[i].split("=", 2);
+                try {
+                    if (kv.length != 2) {
+                        throw new IllegalArgumentException();
+                    }
+                    switch (kv[0]) {
+                        case "threads":
+                            entry.numThreads = Integer.parseInt(kv[1]);
+                            break;
+                        case "rate":
+                            entry.rate = Double.parseDouble(kv[1]);
+                            break;
+                        case "burst":
+                            entry.burst = Integer.parseInt(kv[1]);
+                            break;
+                        default:
+                            throw new IllegalArgumentException();
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Line " + lineNumber +
+                            ": invalid setting: " + tokens[i]);
+                }
+            }
+            entries.add(entry);
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @param file Job file.
+     * @return     Entries in the order they appear.
+     * @see #parse(List)
+     */
+    public static List<Entry> read(Path file) throws IOException {
+        return parse(Files.readAllLines(file, StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,323 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.entity.ConcreteEntity;
+import edu.illinois.library.metaslurper.entity.Entity;
+import edu.illinois.library.metaslurper.entity.PlaceholderEntity;
+import edu.illinois.library.metaslurper.entity.SkippedEntity;
+import edu.illinois.library.metaslurper.service.ConcurrentIterator;
+import edu.illinois.library.metaslurper.service.EndOfIterationException;
+import edu.illinois.library.metaslurper.service.SinkService;
+import edu.illinois.library.metaslurper.service.SourceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Harvests in three stages joined by bounded queues, each stage with its
+ * own threads:</p>
+ *
+ * <ol>
+ *     <li>Fetch: pulls entities from the source service's iterator.</li>
+ *     <li>Transform: {@link SinkService#prepare(ConcreteEntity) prepares}
+ *     them for ingest, which is CPU-bound.</li>
+ *     <li>Ingest: {@link SinkService#ingest(ConcreteEntity) ingests} them into
+ *     the sink service.</li>
+ * </ol>
+ *
+ * <p>This keeps both the source and the sink busy at the same time, so that
+ * e.g. a slow sink doesn't stall fetching from the source, and vice
+ * versa.</p>
+ *
+ * @see Harvester#setPipelined(boolean)
+ */
+final class Pipeline {
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(Pipeline.class);
+
+    /**
+     * Each queue can hold this many entities for each of the threads
+     * consuming it.
+     */
+    private static final int QUEUE_CAPACITY_PER_THREAD = 4;
+
+    /**
+     * Blocked queue operations time out after this long in order to check
+     * whether the pipeline has been stopped.
+     */
+    private static final long QUEUE_TIMEOUT_MSEC = 100;
+
+    private final Harvest harvest;
+    private final SourceService source;
+    private final SinkService sink;
+    private final int numFetchThreads, numTransformThreads, numIngestThreads;
+    private final RateLimiter sourceRateLimiter, sinkRateLimiter;
+    private final HashLedger hashLedger;
+
+    /**
+     * Entities that have been fetched but not yet transformed.
+     */
+    private final BlockingQueue<ConcreteEntity> fetchedQueue;
+
+    /**
+     * Entities that have been transformed but not yet ingested.
+     */
+    private final BlockingQueue<ConcreteEntity> preparedQueue;
+
+    private final AtomicInteger numActiveFetchThreads     = new AtomicInteger();
+    private final AtomicInteger numActiveTransformThreads = new AtomicInteger();
+    private final AtomicInteger numFetched                = new AtomicInteger();
+    private final AtomicInteger maxFetchedQueueDepth      = new AtomicInteger();
+    private final AtomicInteger maxPreparedQueueDepth     = new AtomicInteger();
+    private final AtomicBoolean isStopped                 = new AtomicBoolean();
+
+    Pipeline(Harvest harvest,
+             SourceService source,
+             SinkService sink,
+             int numFetchThreads,
+             int numTransformThreads,
+             int numIngestThreads,
+             RateLimiter sourceRateLimiter,
+             RateLimiter sinkRateLimiter,
+             HashLedger hashLedger) {
+        this.harvest             = harvest;
+        this.source              = source;
+        this.sink                = sink;
+        this.numFetchThreads     = numFetchThreads;
+        this.numTransformThreads = numTransformThreads;
+        this.numIngestThreads    = numIngestThreads;
+        this.sourceRateLimiter   = sourceRateLimiter;
+        this.sinkRateLimiter     = sinkRateLimiter;
+        this.hashLedger          = hashLedger;
+        this.fetchedQueue        = new ArrayBlockingQueue<>(
+                QUEUE_CAPACITY_PER_THREAD * numTransformThreads);
+        this.preparedQueue       = new ArrayBlockingQueue<>(
+                QUEUE_CAPACITY_PER_THREAD * numIngestThreads);
+        harvest.setPipeline(this);
+    }
+
+    /**
+     * @return Number of entities waiting to be transformed.
+     */
+    int getFetchedQueueDepth() {
+        return fetchedQueue.size();
+    }
+
+    /**
+     * @return Number of entities waiting to be ingested.
+     */
+    int getPreparedQueueDepth() {
+        return preparedQueue.size();
+    }
+
+    /**
+     * @return Greatest number of entities that have been waiting to be
+     *         transformed at any one time.
+     */
+    int getMaxFetchedQueueDepth() {
+        return maxFetchedQueueDepth.get();
+    }
+
+    /**
+     * @return Greatest number of entities that have been waiting to be
+     *         ingested at any one time.
+     */
+    int getMaxPreparedQueueDepth() {
+        return maxPreparedQueueDepth.get();
+    }
+
+    /**
+     * Harvests all entities from the given iterator and returns when done.
+     */
+    void run(ConcurrentIterator<? extends Entity> it) {
+        final int numThreads = numFetchThreads + numTransformThreads +
+                numIngestThreads;
+        final CountDownLatch latch = new CountDownLatch(numThreads);
+        final ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        numActiveFetchThreads.set(numFetchThreads);
+        numActiveTransformThreads.set(numTransformThreads);
+        try {
+            for (int i = 0; i < numFetchThreads; i++) {
+                pool.submit(() -> runStage(latch, () -> fetch(it),
+                        numActiveFetchThreads));
+            }
+            for (int i = 0; i < numTransformThreads; i++) {
+                pool.submit(() -> runStage(latch, this::transform,
+                        numActiveTransformThreads));
+            }
+            for (int i = 0; i < numIngestThreads; i++) {
+                pool.submit(() -> runStage(latch, this::ingest, null));
+            }
+            latch.await();
+        } catch (InterruptedException e) {
+            LOGGER.info(e.getMessage(), e);
+        } finally {
+            pool.shutdown();
+            harvest.getQueueDepths().ifPresent(depths ->
+                    LOGGER.debug("Queue depths: {}", depths));
+        }
+    }
+
+    private void runStage(CountDownLatch latch,
+                          Runnable stage,
+                          AtomicInteger numActiveStageThreads) {
+        try {
+            stage.run();
+        } catch (RuntimeException e) {
+            LOGGER.error("Pipeline stage failed: {}", e.getMessage(), e);
+            stop();
+        } finally {
+            if (numActiveStageThreads != null) {
+                numActiveStageThreads.decrementAndGet();
+            }
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Fetch stage. Pulls entities from the iterator until it is exhausted or
+     * enough have been pulled.
+     */
+    private void fetch(ConcurrentIterator<? extends Entity> it) {
+        while (!isStopped.get()) {
+            final int maxNumEntities = harvest.getMaxNumEntities();
+            if (maxNumEntities > 0 &&
+                    numFetched.getAndIncrement() >= maxNumEntities) {
+                break;
+            }
+            try {
+                sourceRateLimiter.acquire();
+                Entity entity = it.next();
+                if (entity instanceof ConcreteEntity) {
+                    if (!put(fetchedQueue, (ConcreteEntity) entity,
+                            maxFetchedQueueDepth)) {
+                        break;
+                    }
+                } else if (entity instanceof PlaceholderEntity) {
+                    Harvester.reportSourceError(harvest,
+                            (PlaceholderEntity) entity);
+                } else if (entity instanceof SkippedEntity) {
+                    Harvester.reportSkipped(harvest, (SkippedEntity) entity);
+                } else {
+                    Harvester.reportSourceError(harvest,
+                            new IllegalStateException("Iterator returned " + entity));
+                }
+            } catch (EndOfIterationException e) {
+                break;
+            } catch (HarvestClosedException e) {
+                close(e);
+                break;
+            } catch (Exception e) {
+                Harvester.reportSourceError(harvest, e);
+            }
+        }
+    }
+
+    /**
+     * Transform stage.
+     */
+    private void transform() {
+        ConcreteEntity entity;
+        while ((entity = take(fetchedQueue, numActiveFetchThreads)) != null) {
+            if (Harvester.skipIfUnchanged(harvest, hashLedger, entity)) {
+                continue;
+            }
+            try {
+                entity = sink.prepare(entity);
+            } catch (RuntimeException e) {
+                Harvester.reportSinkError(harvest, entity, e);
+                continue;
+            }
+            if (!put(preparedQueue, entity, maxPreparedQueueDepth)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Ingest stage.
+     */
+    private void ingest() {
+        ConcreteEntity entity;
+        while ((entity = take(preparedQueue, numActiveTransformThreads)) != null) {
+            if (!harvest.isOpen()) {
+                stop();
+                break;
+            }
+            try {
+                sinkRateLimiter.acquire();
+                Harvester.ingest(harvest, source, sink, entity, hashLedger);
+            } catch (HarvestClosedException e) {
+                close(e);
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return Whether the entity was added to the queue, which it won't be if
+     *         the pipeline is stopped.
+     */
+    private boolean put(BlockingQueue<ConcreteEntity> queue,
+                        ConcreteEntity entity,
+                        AtomicInteger maxDepth) {
+        try {
+            while (!isStopped.get()) {
+                if (queue.offer(entity, QUEUE_TIMEOUT_MSEC,
+                        TimeUnit.MILLISECONDS)) {
+                    maxDepth.accumulateAndGet(queue.size(), Math::max);
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            stop();
+        }
+        return false;
+    }
+
+    /**
+     * @param queue                 Queue to take from.
+     * @param numActiveProducers    Number of threads still adding to the
+     *                              queue.
+     * @return                      Next entity in the queue, or {@code null}
+     *                              if the queue has been drained and will not
+     *                              receive any more, or if the pipeline has
+     *                              been stopped.
+     */
+    private ConcreteEntity take(BlockingQueue<ConcreteEntity> queue,
+                                AtomicInteger numActiveProducers) {
+        try {
+            while (!isStopped.get()) {
+                ConcreteEntity entity = queue.poll(QUEUE_TIMEOUT_MSEC,
+                        TimeUnit.MILLISECONDS);
+                if (entity != null) {
+                    return entity;
+                } else if (numActiveProducers.get() < 1 && queue.isEmpty()) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            stop();
+        }
+        return null;
+    }
+
+    private void close(HarvestClosedException e) {
+        harvest.abort();
+        LOGGER.info("Harvest closed: {}", e.getMessage());
+        stop();
+    }
+
+    private void stop() {
+        isStopped.set(true);
+    }
+
+}
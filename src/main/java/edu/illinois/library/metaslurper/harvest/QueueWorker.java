@@ -0,0 +1,191 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.service.SinkService;
+import edu.illinois.library.metaslurper.service.SourceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * <p>Repeatedly claims a unit of work from a {@link WorkQueue}, harvests it,
+ * and marks it complete, until there are no units left.</p>
+ *
+ * <p>Each unit is harvested into its own {@link Harvest}, whose {@link
+ * Harvest#getShard() shard} is the unit, so that the sink receives counts
+ * per unit, and a unit that is harvested again after its lease expired
+ * replaces its counts rather than adding to them.</p>
+ *
+ * <p>When there are no pending units but others are still leased, the
+ * worker waits in case their leases expire, so that units claimed by workers
+ * that died are finished as long as any worker is left.</p>
+ */
+public final class QueueWorker {
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(QueueWorker.class);
+
+    static final Duration DEFAULT_LEASE_TIMEOUT = Duration.ofMinutes(2);
+    static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(10);
+
+    /**
+     * The worker gives up after this many units in a row fail, so as not to
+     * spin through the queue while the source or sink is down.
+     */
+    static final int MAX_CONSECUTIVE_FAILURES = 3;
+
+    private final WorkQueue queue;
+    private final Harvester harvester;
+    private final String workerID;
+    private Duration leaseTimeout = DEFAULT_LEASE_TIMEOUT;
+    private Duration pollInterval = DEFAULT_POLL_INTERVAL;
+
+    /**
+     * @return ID consisting of the host name and process ID.
+     */
+    private static String defaultWorkerID() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "unknown";
+        }
+        return host + "-" + ProcessHandle.current().pid();
+    }
+
+    /**
+     * @param queue     Queue to work from.
+     * @param harvester Harvester with which to harvest each unit.
+     */
+    public QueueWorker(WorkQueue queue, Harvester harvester) {
+        this(queue, harvester, defaultWorkerID());
+    }
+
+    /**
+     * @param queue     Queue to work from.
+     * @param harvester Harvester with which to harvest each unit.
+     * @param workerID  ID that is unique among all of the queue's workers.
+     */
+    QueueWorker(WorkQueue queue, Harvester harvester, String workerID) {
+        this.queue     = queue;
+        this.harvester = harvester;
+        this.workerID  = workerID;
+    }
+
+    /**
+     * Works until the queue is finished.
+     *
+     * @param source          Source service whose key is the {@link
+     *                        WorkQueue#getSourceKey() queue's}. Its shard is
+     *                        set to each unit in turn.
+     * @param sink            Sink service.
+     * @param harvestSupplier Supplies a new harvest for each unit.
+     * @return                Number of units completed by this worker.
+     */
+    public int run(SourceService source,
+                   SinkService sink,
+                   Supplier<Harvest> harvestSupplier) throws IOException {
+        final ScheduledExecutorService heartbeats =
+                Executors.newSingleThreadScheduledExecutor(r -> {
+                    Thread thread = new Thread(r, "lease-heartbeat");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        int numCompleted = 0, numConsecutiveFailures = 0;
+        try {
+            while (true) {
+                queue.reissueExpired(leaseTimeout);
+                final Optional<WorkQueue.Lease> optLease = queue.claim(workerID);
+                if (optLease.isEmpty()) {
+                    if (queue.isFinished()) {
+                        break;
+                    }
+                    LOGGER.debug("Waiting for leased units to finish or expire");
+                    Thread.sleep(pollInterval.toMillis());
+                    continue;
+                }
+                final WorkQueue.Lease lease = optLease.get();
+                final Harvest harvest = harvestSupplier.get();
+                harvest.setShard(lease.getUnit());
+                source.setShard(lease.getUnit());
+                LOGGER.info("Harvesting {}", lease);
+
+                final AtomicBoolean isLost = new AtomicBoolean();
+                final long heartbeatMsec = Math.max(leaseTimeout.toMillis() / 4, 1);
+                final ScheduledFuture<?> heartbeat = heartbeats.scheduleWithFixedDelay(() -> {
+                    try {
+                        if (!lease.heartbeat() && !isLost.getAndSet(true)) {
+                            LOGGER.warn("Lost the lease on {}; it will be " +
+                                    "harvested again by another worker", lease);
+                        }
+                    } catch (IOException e) {
+                        LOGGER.error("Failed to renew the lease on {}: {}",
+                                lease, e.getMessage());
+                    }
+                }, heartbeatMsec, heartbeatMsec, TimeUnit.MILLISECONDS);
+                try {
+                    harvester.harvest(source, sink, harvest);
+                } finally {
+                    heartbeat.cancel(false);
+                }
+
+                switch (harvest.getLifecycle()) {
+                    case SUCCEEDED:
+                        numConsecutiveFailures = 0;
+                        if (lease.complete()) {
+                            numCompleted++;
+                        }
+                        break;
+                    case ABORTED:
+                        // The sink has closed the harvest, so there is no
+                        // point in continuing.
+                        lease.release();
+                        LOGGER.info("Harvest aborted; stopping");
+                        return numCompleted;
+                    default:
+                        lease.release();
+                        if (++numConsecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+                            LOGGER.error("{} units failed in a row; stopping",
+                                    numConsecutiveFailures);
+                            return numCompleted;
+                        }
+                        break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            heartbeats.shutdownNow();
+        }
+        LOGGER.info("{} is finished; completed {} units", queue, numCompleted);
+        return numCompleted;
+    }
+
+    /**
+     * @param timeout Time after which a lease that has not been renewed is
+     *                re-issued. Leases are renewed at a quarter of this
+     *                interval. All workers of a queue should use the same
+     *                value.
+     */
+    void setLeaseTimeout(Duration timeout) {
+        this.leaseTimeout = timeout;
+    }
+
+    /**
+     * @param interval Time to wait before checking the queue again when
+     *                 there are no pending units.
+     */
+    void setPollInterval(Duration interval) {
+        this.pollInterval = interval;
+    }
+
+}
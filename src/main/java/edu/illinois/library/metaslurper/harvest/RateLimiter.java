@@ -0,0 +1,104 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Lock-free token bucket, implemented using the generic cell rate
+ * algorithm (GCRA), that limits the rate at which any number of threads may
+ * proceed.</p>
+ *
+ * <p>Instead of a token count that would have to be refilled, only the
+ * theoretical arrival time of the next request is stored, and each call to
+ * {@link #acquire()} advances it by one emission interval using
+ * compare-and-set. A caller that arrives early sleeps until its reserved
+ * time.</p>
+ */
+final class RateLimiter {
+
+    /**
+     * Instance that never waits.
+     */
+    static final RateLimiter UNLIMITED = new RateLimiter(0, 1);
+
+    private final double ratePerSecond;
+    private final int burst;
+    private final long intervalNanos;
+    private final long toleranceNanos;
+
+    /**
+     * Theoretical arrival time of the next request, in {@link
+     * System#nanoTime()} units.
+     */
+    private final AtomicLong nextArrivalNanos = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param ratePerSecond Sustained number of permits per second. Supply
+     *                      {@code 0} or less for no limit.
+     * @param burst         Number of permits that may be acquired back to back
+     *                      after a period of inactivity.
+     */
+    RateLimiter(double ratePerSecond, int burst) {
+        this.ratePerSecond  = ratePerSecond;
+        this.burst          = Math.max(burst, 1);
+        this.intervalNanos  = (ratePerSecond > 0) ?
+                Math.max((long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond), 1) : 0;
+        this.toleranceNanos = intervalNanos * this.burst;
+    }
+
+    /**
+     * Blocks until a permit is available. If the thread is interrupted while
+     * waiting, it returns early with its interrupt status set.
+     */
+    void acquire() {
+        if (intervalNanos == 0) {
+            return;
+        }
+        final long waitNanos = reserve(System.nanoTime());
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    int getBurst() {
+        return burst;
+    }
+
+    double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    boolean isUnlimited() {
+        return intervalNanos == 0;
+    }
+
+    /**
+     * Reserves the next permit.
+     *
+     * @param nowNanos Current time.
+     * @return         Number of nanoseconds until the reserved permit may be
+     *                 used.
+     */
+    long reserve(long nowNanos) {
+        while (true) {
+            final long arrival = nextArrivalNanos.get();
+            final long base = (arrival == Long.MIN_VALUE || arrival - nowNanos < 0) ?
+                    nowNanos : arrival;
+            final long next = base + intervalNanos;
+            if (nextArrivalNanos.compareAndSet(arrival, next)) {
+                return next - toleranceNanos - nowNanos;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return isUnlimited() ? "unlimited" :
+                String.format("%.3f/s (burst %d)", ratePerSecond, burst);
+    }
+
+}
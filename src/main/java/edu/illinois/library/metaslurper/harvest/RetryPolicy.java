@@ -0,0 +1,141 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.service.HTTPException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Decides whether and when a failed sink request should be retried.</p>
+ *
+ * <p>Delays grow exponentially from a base delay up to a maximum, with "full
+ * jitter" (a random delay between zero and the exponential value) so that
+ * requests that failed together don't retry together. If the server sent a
+ * {@literal Retry-After} header, the delay is at least that long.</p>
+ *
+ * <p>All retries are also drawn from a budget that is shared by every thread
+ * using the instance. Each first attempt deposits {@link #BUDGET_RATIO} of a
+ * retry into it, up to {@link #BUDGET_CAPACITY}, so that over time, retries
+ * can't add more than that fraction to the load on a service that is
+ * failing.</p>
+ */
+final class RetryPolicy {
+
+    static final Duration DEFAULT_BASE_DELAY = Duration.ofSeconds(1);
+    static final Duration DEFAULT_MAX_DELAY  = Duration.ofSeconds(60);
+
+    /**
+     * Longest {@literal Retry-After} value that will be honored.
+     */
+    static final Duration MAX_RETRY_AFTER = Duration.ofMinutes(5);
+
+    static final double BUDGET_RATIO = 0.1;
+    static final int BUDGET_CAPACITY = 100;
+
+    /**
+     * Budget units per retry. The budget is stored as an integer to enable
+     * compare-and-set.
+     */
+    private static final long RETRY_COST = 1000;
+
+    private final int maxRetries;
+    private final long baseDelayMsec, maxDelayMsec;
+    private final AtomicLong budget =
+            new AtomicLong(BUDGET_CAPACITY * RETRY_COST);
+
+    /**
+     * @param maxRetries Maximum number of retries per request.
+     */
+    RetryPolicy(int maxRetries) {
+        this(maxRetries, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param maxRetries Maximum number of retries per request.
+     * @param baseDelay  Maximum delay before the first retry.
+     * @param maxDelay   Maximum delay before any retry, not counting {@literal
+     *                   Retry-After}.
+     */
+    RetryPolicy(int maxRetries, Duration baseDelay, Duration maxDelay) {
+        this.maxRetries    = Math.max(maxRetries, 0);
+        this.baseDelayMsec = Math.max(baseDelay.toMillis(), 1);
+        this.maxDelayMsec  = Math.max(maxDelay.toMillis(), baseDelayMsec);
+    }
+
+    /**
+     * @return Whether the given error may go away on its own: an HTTP 408,
+     *         429, or 5xx, or an I/O error without a response.
+     */
+    static boolean isRetryable(Throwable t) {
+        if (t instanceof HarvestClosedException) {
+            return false;
+        } else if (t instanceof HTTPException) {
+            return ((HTTPException) t).getStatusCode()
+                    .map(code -> code == 408 || code == 429 || code >= 500)
+                    .orElse(true);
+        }
+        return t instanceof IOException;
+    }
+
+    int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * @return Number of retries currently available in the budget.
+     */
+    double getBudget() {
+        return budget.get() / (double) RETRY_COST;
+    }
+
+    /**
+     * Must be called before the first attempt of every request.
+     */
+    void onFirstAttempt() {
+        final long deposit  = Math.round(BUDGET_RATIO * RETRY_COST);
+        final long capacity = BUDGET_CAPACITY * RETRY_COST;
+        budget.getAndUpdate(b -> Math.min(b + deposit, capacity));
+    }
+
+    /**
+     * Decides whether to retry, withdrawing from the budget if so.
+     *
+     * @param error       Error from the most recent attempt.
+     * @param retryNumber One-based number of the retry in question.
+     * @return            Whether to retry.
+     */
+    boolean shouldRetry(Throwable error, int retryNumber) {
+        if (retryNumber > maxRetries || !isRetryable(error)) {
+            return false;
+        }
+        while (true) {
+            final long b = budget.get();
+            if (b < RETRY_COST) {
+                return false;
+            } else if (budget.compareAndSet(b, b - RETRY_COST)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param error       Error from the most recent attempt.
+     * @param retryNumber One-based number of the retry in question.
+     * @return            Time to wait before retrying.
+     */
+    Duration getDelay(Throwable error, int retryNumber) {
+        final long ceiling = (retryNumber >= 31) ? maxDelayMsec :
+                Math.min(maxDelayMsec, baseDelayMsec << (retryNumber - 1));
+        long msec = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        if (error instanceof HTTPException) {
+            final long retryAfterMsec = ((HTTPException) error).getRetryAfter()
+                    .map(d -> Math.min(d.toMillis(), MAX_RETRY_AFTER.toMillis()))
+                    .orElse(0L);
+            msec = Math.max(msec, retryAfterMsec);
+        }
+        return Duration.ofMillis(msec);
+    }
+
+}
@@ -0,0 +1,141 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.entity.ConcreteEntity;
+import edu.illinois.library.metaslurper.service.SinkService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Wraps a sink service to retry failed {@link #ingest(ConcreteEntity)
+ * ingests} according to a {@link RetryPolicy}, to add entities that still
+ * can't be ingested to a {@link DeadLetterFile}, and to report the outcome of
+ * each attempt to an {@link AdaptiveLimiter}. All other methods are delegated
+ * unmodified.
+ */
+final class RetryingSinkService implements SinkService {
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(RetryingSinkService.class);
+
+    private final SinkService sink;
+    private final RetryPolicy policy;
+    private final DeadLetterFile deadLetters;
+    private final String sourceKey;
+    private final AdaptiveLimiter limiter;
+
+    /**
+     * @param sink          Service to wrap.
+     * @param policy        Retry policy. May be {@code null} to never retry.
+     * @param deadLetters   Dead letter file. May be {@code null}.
+     * @param sourceKey     Key of the source being harvested, for the dead
+     *                      letter file.
+     * @param limiter       Limiter to report the outcome of each attempt
+     *                      to, with the latency of that attempt alone, not
+     *                      counting retry delays. May be {@code null}.
+     */
+    RetryingSinkService(SinkService sink,
+                        RetryPolicy policy,
+                        DeadLetterFile deadLetters,
+                        String sourceKey,
+                        AdaptiveLimiter limiter) {
+        this.sink        = sink;
+        this.policy      = policy;
+        this.deadLetters = deadLetters;
+        this.sourceKey   = sourceKey;
+        this.limiter     = limiter;
+    }
+
+    @Override
+    public void close() {
+        sink.close();
+    }
+
+    @Override
+    public String getKey() {
+        return sink.getKey();
+    }
+
+    @Override
+    public String getName() {
+        return sink.getName();
+    }
+
+    @Override
+    public void ingest(ConcreteEntity entity) throws IOException {
+        if (policy != null) {
+            policy.onFirstAttempt();
+        }
+        for (int retryNumber = 1; ; retryNumber++) {
+            final long start = System.nanoTime();
+            try {
+                sink.ingest(entity);
+                if (limiter != null) {
+                    limiter.onSuccess(System.nanoTime() - start);
+                }
+                return;
+            } catch (HarvestClosedException e) {
+                throw e;
+            } catch (IOException e) {
+                if (limiter != null) {
+                    limiter.onFailure(e);
+                }
+                if (policy == null || !policy.shouldRetry(e, retryNumber)) {
+                    addDeadLetter(entity, e);
+                    throw e;
+                }
+                final Duration delay = policy.getDelay(e, retryNumber);
+                LOGGER.warn("Retrying {} in {} ms (retry {} of {}): {}",
+                        entity, delay.toMillis(), retryNumber,
+                        policy.getMaxRetries(), e.getMessage());
+                try {
+                    Thread.sleep(delay.toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    addDeadLetter(entity, e);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private void addDeadLetter(ConcreteEntity entity, IOException e) {
+        if (deadLetters == null) {
+            return;
+        }
+        try {
+            deadLetters.add(entity, sourceKey, e);
+        } catch (IOException | RuntimeException e2) {
+            LOGGER.error("Failed to add {} to {}: {}",
+                    entity, deadLetters, e2.getMessage(), e2);
+        }
+    }
+
+    @Override
+    public ConcreteEntity prepare(ConcreteEntity entity) {
+        return sink.prepare(entity);
+    }
+
+    @Override
+    public void setNumEntitiesToIngest(int numEntitiesToIngest) {
+        sink.setNumEntitiesToIngest(numEntitiesToIngest);
+    }
+
+    @Override
+    public void setSourceKey(String sourceKey) throws IOException {
+        sink.setSourceKey(sourceKey);
+    }
+
+    @Override
+    public void updateHarvest(Harvest harvest) throws IOException {
+        sink.updateHarvest(harvest);
+    }
+
+    @Override
+    public String toString() {
+        return sink.toString();
+    }
+
+}
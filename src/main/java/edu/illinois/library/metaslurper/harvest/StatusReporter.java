@@ -0,0 +1,114 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.service.SinkService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Periodically sends the status of a harvest to a sink service from a
+ * single background thread, so that harvesting threads never have to wait on
+ * it and updates are never sent concurrently.</p>
+ *
+ * <p>Each update also refreshes the harvest's {@link Harvest#getThroughput()
+ * throughput}, which is an exponentially weighted moving average of the
+ * number of entities completed per second.</p>
+ */
+final class StatusReporter implements AutoCloseable {
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(StatusReporter.class);
+
+    /**
+     * Weight of the most recent interval in the throughput average.
+     */
+    private static final double THROUGHPUT_SMOOTHING = 0.3;
+
+    private final SinkService sink;
+    private final Harvest harvest;
+    private final Duration interval;
+    private final ScheduledExecutorService executor;
+
+    // These are only accessed from the executor thread.
+    private long lastNanos;
+    private int lastNumCompleted;
+
+    /**
+     * Creates an instance and starts reporting.
+     *
+     * @param sink     Service to report to.
+     * @param harvest  Harvest to report on.
+     * @param interval Time between reports.
+     */
+    StatusReporter(SinkService sink, Harvest harvest, Duration interval) {
+        this.sink     = sink;
+        this.harvest  = harvest;
+        this.interval = interval;
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "status-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lastNanos        = System.nanoTime();
+        this.lastNumCompleted = harvest.getNumCompleted();
+        final long msec = Math.max(interval.toMillis(), 1);
+        executor.scheduleWithFixedDelay(this::report, msec, msec,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops reporting, waiting for any report in progress to complete. The
+     * final status is left for the caller to send.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(interval.toMillis() + 60000,
+                    TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void report() {
+        updateThroughput();
+        try {
+            sink.updateHarvest(harvest);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Failed to update harvest status: {}",
+                    e.getMessage(), e);
+        }
+    }
+
+    private void updateThroughput() {
+        final long nanos        = System.nanoTime();
+        final int numCompleted  = harvest.getNumCompleted();
+        final double seconds    = (nanos - lastNanos) / 1e9;
+        if (seconds <= 0) {
+            return;
+        }
+        final double rate       = (numCompleted - lastNumCompleted) / seconds;
+        final double throughput = harvest.getThroughput();
+        harvest.setThroughput((throughput > 0) ?
+                THROUGHPUT_SMOOTHING * rate +
+                        (1 - THROUGHPUT_SMOOTHING) * throughput :
+                rate);
+        lastNanos        = nanos;
+        lastNumCompleted = numCompleted;
+        harvest.getETA().ifPresent(eta ->
+                LOGGER.debug("{} entities/second; ETA {}",
+                        String.format("%.2f", harvest.getThroughput()), eta));
+        harvest.getQueueDepths().ifPresent(depths ->
+                LOGGER.debug("Queue depths: {}", depths));
+    }
+
+}
@@ -0,0 +1,304 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.service.Shard;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * <p>Queue of units of work in a directory that any number of worker
+ * processes can share, e.g. on a network filesystem, so that they can split
+ * up a harvest dynamically without any coordinating service.</p>
+ *
+ * <p>Each unit is one {@link Shard} of a source service, and is a file that
+ * moves between these subdirectories:</p>
+ *
+ * <dl>
+ *     <dt>{@literal pending}</dt>
+ *     <dd>Units waiting to be {@link #claim(String) claimed}.</dd>
+ *     <dt>{@literal leased}</dt>
+ *     <dd>Units being worked on, with the worker's ID appended to their
+ *     names. Workers {@link Lease#heartbeat() update} their files'
+ *     last-modified times periodically, and units whose times are older than
+ *     the lease timeout are {@link #reissueExpired(Duration) re-issued}.</dd>
+ *     <dt>{@literal done}</dt>
+ *     <dd>Completed units.</dd>
+ * </dl>
+ *
+ * <p>All moves are atomic renames, so only one worker can succeed in moving a
+ * given file. The clocks of the workers' hosts must be roughly synchronized
+ * relative to the lease timeout.</p>
+ *
+ * @see QueueWorker
+ */
+public final class WorkQueue {
+
+    /**
+     * A claim on one unit of work by one worker.
+     */
+    public final class Lease {
+
+        private final Shard unit;
+        private final Path file;
+
+        private Lease(Shard unit, Path file) {
+            this.unit = unit;
+            this.file = file;
+        }
+
+        /**
+         * Moves the unit to the {@literal done} directory.
+         *
+         * @return Whether the lease was still held.
+         */
+        public boolean complete() throws IOException {
+            return move(file, doneDir.resolve(unitName(unit.getIndex())));
+        }
+
+        public Shard getUnit() {
+            return unit;
+        }
+
+        /**
+         * Renews the lease.
+         *
+         * @return Whether the lease was still held. If not, the unit has been
+         *         re-issued.
+         */
+        public boolean heartbeat() throws IOException {
+            try {
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+                return true;
+            } catch (NoSuchFileException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Returns the unit to the queue for another worker to claim.
+         */
+        public void release() throws IOException {
+            move(file, pendingDir.resolve(unitName(unit.getIndex())));
+        }
+
+        @Override
+        public String toString() {
+            return "unit " + unit + " of " + WorkQueue.this;
+        }
+
+    }
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(WorkQueue.class);
+
+    /**
+     * Contains the source key and number of units. It is written last, so a
+     * queue is not visible to workers until it is complete.
+     */
+    private static final String INFO_FILE = "queue.json";
+
+    /**
+     * Separates a unit's name from the worker ID in the name of a lease file.
+     */
+    private static final String LEASE_SEPARATOR = "@";
+
+    private final Path dir, pendingDir, leasedDir, doneDir;
+    private final String sourceKey;
+    private final int numUnits;
+
+    /**
+     * Creates a queue of all of the shards of the given source service.
+     *
+     * @param dir       Directory in which to create the queue. It is created
+     *                  if it does not exist.
+     * @param sourceKey Key of the source service to be harvested.
+     * @param numUnits  Number of shards to divide it into.
+     * @return          New instance.
+     * @throws FileAlreadyExistsException if a queue already exists in the
+     *         directory.
+     */
+    public static WorkQueue create(Path dir,
+                                   String sourceKey,
+                                   int numUnits) throws IOException {
+        final Path infoFile = dir.resolve(INFO_FILE);
+        if (Files.exists(infoFile)) {
+            throw new FileAlreadyExistsException(infoFile.toString());
+        }
+        final WorkQueue queue = new WorkQueue(dir, sourceKey, numUnits);
+        Files.createDirectories(queue.pendingDir);
+        Files.createDirectories(queue.leasedDir);
+        Files.createDirectories(queue.doneDir);
+        for (int i = 0; i < numUnits; i++) {
+            writeAtomically(queue.pendingDir.resolve(unitName(i)), "");
+        }
+        final JSONObject jobj = new JSONObject();
+        jobj.put("source_key", sourceKey);
+        jobj.put("num_units", numUnits);
+        writeAtomically(infoFile, jobj.toString());
+        return queue;
+    }
+
+    /**
+     * @param dir Directory of a queue previously {@link #create created}.
+     * @return    New instance.
+     * @throws NoSuchFileException if there is no queue in the directory.
+     */
+    public static WorkQueue open(Path dir) throws IOException {
+        final JSONObject jobj = new JSONObject(
+                Files.readString(dir.resolve(INFO_FILE), StandardCharsets.UTF_8));
+        return new WorkQueue(dir, jobj.getString("source_key"),
+                jobj.getInt("num_units"));
+    }
+
+    private static String unitName(int index) {
+        return String.format("%06d", index);
+    }
+
+    /**
+     * Writes to a temporary file and renames it, so that other processes
+     * never see the file partially written.
+     */
+    private static void writeAtomically(Path file,
+                                        String content) throws IOException {
+        final Path tmpFile = file.resolveSibling("." + file.getFileName() + ".tmp");
+        Files.writeString(tmpFile, content, StandardCharsets.UTF_8);
+        Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return Whether the file was moved, i.e. whether it still existed.
+     */
+    private static boolean move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private static List<Path> list(Path dir) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path file : stream) {
+                if (!file.getFileName().toString().startsWith(".")) {
+                    files.add(file);
+                }
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private WorkQueue(Path dir, String sourceKey, int numUnits) {
+        this.dir        = dir;
+        this.pendingDir = dir.resolve("pending");
+        this.leasedDir  = dir.resolve("leased");
+        this.doneDir    = dir.resolve("done");
+        this.sourceKey  = sourceKey;
+        this.numUnits   = numUnits;
+    }
+
+    /**
+     * Claims the first pending unit that no other worker claims first.
+     *
+     * @param workerID ID that is unique to the calling worker.
+     * @return         Lease on the unit, or an empty instance if there are no
+     *                 pending units.
+     */
+    public Optional<Lease> claim(String workerID) throws IOException {
+        final String suffix = LEASE_SEPARATOR +
+                workerID.replaceAll("[^A-Za-z0-9._-]", "_");
+        for (Path file : list(pendingDir)) {
+            final String name = file.getFileName().toString();
+            final Path leaseFile = leasedDir.resolve(name + suffix);
+            try {
+                // Renaming preserves the last-modified time, so update it
+                // first in order for the new lease not to look expired.
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+            } catch (NoSuchFileException e) {
+                continue; // Another worker claimed it.
+            }
+            if (move(file, leaseFile)) {
+                final Shard unit = new Shard(Integer.parseInt(name), numUnits);
+                LOGGER.debug("{} claimed unit {}", workerID, unit);
+                return Optional.of(new Lease(unit, leaseFile));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * @return Whether there are no units pending or leased.
+     */
+    public boolean isFinished() throws IOException {
+        return list(pendingDir).isEmpty() && list(leasedDir).isEmpty();
+    }
+
+    /**
+     * @return Number of completed units.
+     */
+    public int numDone() throws IOException {
+        return list(doneDir).size();
+    }
+
+    public int numUnits() {
+        return numUnits;
+    }
+
+    public String getSourceKey() {
+        return sourceKey;
+    }
+
+    /**
+     * Returns units whose leases have not been renewed within the given
+     * timeout, presumably because their workers died, to the queue.
+     *
+     * @param timeout Lease timeout.
+     * @return        Number of units re-issued.
+     */
+    public int reissueExpired(Duration timeout) throws IOException {
+        final Instant cutoff = Instant.now().minus(timeout);
+        int count = 0;
+        for (Path file : list(leasedDir)) {
+            final Instant lastModified;
+            try {
+                lastModified = Files.getLastModifiedTime(file).toInstant();
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+            if (lastModified.isBefore(cutoff)) {
+                final String name = file.getFileName().toString();
+                final String unitName =
+                        name.substring(0, name.indexOf(LEASE_SEPARATOR));
+                if (move(file, pendingDir.resolve(unitName))) {
+                    LOGGER.info("Re-issuing expired lease: {}", name);
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return dir.toString();
+    }
+
+}
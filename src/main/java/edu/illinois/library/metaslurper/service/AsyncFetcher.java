@@ -0,0 +1,451 @@
+package edu.illinois.library.metaslurper.service;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * <p>Fetches the resources at the URIs supplied by a {@link PagePrefetcher}
+ * or a list asynchronously, keeping up to a given number of requests in flight, and
+ * hands out the results to any number of consumers in the order in which they
+ * complete. This way, a few harvesting threads can keep many requests
+ * outstanding, instead of each one waiting out a full round trip per
+ * entity.</p>
+ *
+ * <p>The in-flight window also bounds the number of results that have
+ * completed but not yet been {@link #take() taken}, so a slow consumer
+ * throttles the requests.</p>
+ *
+ * <p>Because results are taken out of order, a single position can't say
+ * which of them have been taken. The {@link #cursor() cursor} therefore also
+ * lists the positions after it whose results have been taken, which a
+ * resumed instance {@link #setSkippedPositions(Collection) skips}.</p>
+ *
+ * @param <T> Result type.
+ */
+final class AsyncFetcher<T> implements Closeable {
+
+    /**
+     * Converts a response into a result.
+     */
+    @FunctionalInterface
+    interface ResponseParser<T> {
+
+        /**
+         * @param uri      Request URI.
+         * @param response Response, which is closed by the caller.
+         * @return         Result.
+         * @throws HTTPException if the response is an error.
+         */
+        T parse(String uri, Response response) throws IOException;
+
+    }
+
+    /**
+     * Supplies URIs to the dispatcher thread.
+     */
+    @FunctionalInterface
+    private interface URISource {
+
+        /**
+         * @return Next URI.
+         * @throws EndOfIterationException if there are no more URIs.
+         * @throws IOException if the URIs that would have come next could
+         *         not be obtained.
+         */
+        String take() throws EndOfIterationException, IOException,
+                InterruptedException;
+
+        default void close() {}
+
+    }
+
+    /**
+     * Element of the result queue: a result, an error, or the end of
+     * iteration.
+     */
+    private static final class Result<T> {
+
+        /**
+         * Position of the URI in the iteration, or {@literal -1} for an error
+         * that didn't come from a request.
+         */
+        private final long position;
+        private final String uri;
+        private final T value;
+        private final IOException error;
+
+        private Result(long position, String uri, T value, IOException error) {
+            this.position = position;
+            this.uri      = uri;
+            this.value    = value;
+            this.error    = error;
+        }
+
+    }
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(AsyncFetcher.class);
+
+    static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    private final String name;
+    private final URISource uris;
+    private final OkHttpClient client;
+    private final Function<String, Request> requestFactory;
+    private final ResponseParser<T> parser;
+    private final int maxInFlight;
+    private final Semaphore permits;
+    private final BlockingQueue<Result<T>> results = new LinkedBlockingQueue<>();
+    private final Result<T> endResult = new Result<>(-1, null, null, null);
+    private final AtomicBoolean isClosed = new AtomicBoolean();
+    private final Thread dispatcher;
+
+    /**
+     * Position of the next URI to be requested.
+     */
+    private final AtomicLong nextPosition;
+
+    /**
+     * Positions of URIs that have been requested but whose results have not
+     * been taken yet.
+     */
+    private final ConcurrentSkipListSet<Long> outstanding =
+            new ConcurrentSkipListSet<>();
+
+    /**
+     * Positions of URIs that are not to be requested.
+     */
+    private final Set<Long> skipped = new ConcurrentSkipListSet<>();
+
+    private volatile Consumer<String> takeListener = uri -> {};
+
+    /**
+     * @param name           Name used in the dispatcher thread name and log
+     *                       messages.
+     * @param uris           URIs to fetch, which are only read by the
+     *                       dispatcher thread.
+     * @param firstPosition  Position of the first URI in the iteration.
+     * @param client         Client to send requests with. Its dispatcher
+     *                       should allow at least {@literal maxInFlight}
+     *                       requests per host.
+     * @param requestFactory Creates a request for a URI.
+     * @param parser         Converts each response into a result.
+     * @param maxInFlight    Maximum number of requests in flight plus results
+     *                       waiting to be taken.
+     */
+    AsyncFetcher(String name,
+                 List<String> uris,
+                 long firstPosition,
+                 OkHttpClient client,
+                 Function<String, Request> requestFactory,
+                 ResponseParser<T> parser,
+                 int maxInFlight) {
+        this(name, iterate(uris), firstPosition, client, requestFactory,
+                parser, maxInFlight);
+    }
+
+    /**
+     * @param name           Name used in the dispatcher thread name and log
+     *                       messages.
+     * @param uris           URIs to fetch.
+     * @param firstPosition  Position of the first URI in the iteration.
+     * @param client         Client to send requests with. Its dispatcher
+     *                       should allow at least {@literal maxInFlight}
+     *                       requests per host.
+     * @param requestFactory Creates a request for a URI.
+     * @param parser         Converts each response into a result.
+     * @param maxInFlight    Maximum number of requests in flight plus results
+     *                       waiting to be taken.
+     */
+    AsyncFetcher(String name,
+                 PagePrefetcher<String> uris,
+                 long firstPosition,
+                 OkHttpClient client,
+                 Function<String, Request> requestFactory,
+                 ResponseParser<T> parser,
+                 int maxInFlight) {
+        this(name, new URISource() {
+            @Override
+            public String take() throws EndOfIterationException,
+                    IOException, InterruptedException {
+                return uris.take();
+            }
+
+            @Override
+            public void close() {
+                uris.close();
+            }
+        }, firstPosition, client, requestFactory, parser, maxInFlight);
+    }
+
+    private AsyncFetcher(String name,
+                         URISource uris,
+                         long firstPosition,
+                         OkHttpClient client,
+                         Function<String, Request> requestFactory,
+                         ResponseParser<T> parser,
+                         int maxInFlight) {
+        this.name           = name;
+        this.uris           = uris;
+        this.nextPosition   = new AtomicLong(firstPosition);
+        this.client         = client;
+        this.requestFactory = requestFactory;
+        this.parser         = parser;
+        this.maxInFlight    = Math.max(maxInFlight, 1);
+        this.permits        = new Semaphore(this.maxInFlight);
+        this.dispatcher     = new Thread(this::dispatch, name + "-dispatch");
+        this.dispatcher.setDaemon(true);
+    }
+
+    private static URISource iterate(List<String> uris) {
+        final Iterator<String> it = uris.iterator();
+        return () -> {
+            if (!it.hasNext()) {
+                throw new EndOfIterationException();
+            }
+            return it.next();
+        };
+    }
+
+    /**
+     * Starts fetching.
+     *
+     * @return The instance.
+     */
+    AsyncFetcher<T> start() {
+        dispatcher.start();
+        return this;
+    }
+
+    /**
+     * Stops fetching, including any URI prefetcher. Consumers blocked in
+     * {@link #take()} are released with an {@link EndOfIterationException}.
+     */
+    @Override
+    public void close() {
+        if (isClosed.getAndSet(true)) {
+            return;
+        }
+        dispatcher.interrupt();
+        uris.close();
+        results.clear();
+        results.offer(endResult);
+    }
+
+    /**
+     * @return Position before which all results have been {@link #take()
+     *         taken}. Results after it may have been taken as well, as they
+     *         are handed out in completion order.
+     */
+    long lowWaterMark() {
+        // Read in the opposite order from that in which dispatch() writes, so
+        // that a URI being dispatched concurrently is never skipped.
+        return lowWaterMark(nextPosition.get());
+    }
+
+    private long lowWaterMark(long next) {
+        try {
+            return Math.min(next, outstanding.first());
+        } catch (NoSuchElementException e) {
+            return next;
+        }
+    }
+
+    /**
+     * <p>Returns a cursor from which to resume, consisting of the {@link
+     * #lowWaterMark() low water mark} followed by the positions after it
+     * whose results have already been taken (or that were skipped), separated
+     * by spaces. Resuming at the first position and {@link
+     * #setSkippedPositions(Collection) skipping} the others will return
+     * exactly the results that haven't been taken.</p>
+     *
+     * <p>This is only exact if {@link #take()} is not being called
+     * concurrently.</p>
+     */
+    String cursor() {
+        final long next = nextPosition.get();
+        final long mark = lowWaterMark(next);
+        final Set<Long> taken = new TreeSet<>();
+        for (long position = mark; position < next; position++) {
+            if (!outstanding.contains(position)) {
+                taken.add(position);
+            }
+        }
+        for (long position : skipped) {
+            if (position >= mark) {
+                taken.add(position);
+            }
+        }
+        final StringBuilder builder = new StringBuilder().append(mark);
+        taken.forEach(position -> builder.append(" ").append(position));
+        return builder.toString();
+    }
+
+    /**
+     * @param cursor Value of {@link #cursor()}.
+     * @return       Position at which to resume.
+     * @throws NumberFormatException if the cursor is invalid.
+     */
+    static long parseFirstPosition(String cursor) {
+        return Long.parseLong(cursor.trim().split(" ")[0]);
+    }
+
+    /**
+     * @param cursor Value of {@link #cursor()}.
+     * @return       Positions to {@link #setSkippedPositions(Collection)
+     *               skip} when resuming.
+     * @throws NumberFormatException if the cursor is invalid.
+     */
+    static Set<Long> parseSkippedPositions(String cursor) {
+        final String[] parts = cursor.trim().split(" ");
+        final Set<Long> positions = new TreeSet<>();
+        for (int i = 1; i < parts.length; i++) {
+            positions.add(Long.parseLong(parts[i]));
+        }
+        return positions;
+    }
+
+    /**
+     * @param positions Positions of URIs not to request, typically those
+     *                  whose results were taken before resuming. Must be
+     *                  called before {@link #start()}.
+     * @return          The instance.
+     */
+    AsyncFetcher<T> setSkippedPositions(Collection<Long> positions) {
+        skipped.addAll(positions);
+        return this;
+    }
+
+    /**
+     * @param listener Called with the request URI of each successful result
+     *                 as it is {@link #take() taken}. Unlike the {@link
+     *                 ResponseParser parser}, which runs as soon as a
+     *                 response arrives, it is never called for results that
+     *                 are fetched ahead but not taken. Must be called before
+     *                 {@link #start()}.
+     * @return         The instance.
+     */
+    AsyncFetcher<T> setTakeListener(Consumer<String> listener) {
+        this.takeListener = listener;
+        return this;
+    }
+
+    /**
+     * Blocks until the next result is available.
+     *
+     * @return Next completed result.
+     * @throws EndOfIterationException if there are no more results.
+     * @throws IOException if the next request to complete failed.
+     */
+    T take() throws EndOfIterationException, IOException,
+            InterruptedException {
+        final Result<T> result = results.take();
+        if (result == endResult) {
+            // Put it back for any other consumers.
+            results.offer(endResult);
+            throw new EndOfIterationException();
+        }
+        if (result.position >= 0) {
+            outstanding.remove(result.position);
+        }
+        permits.release();
+        if (result.error != null) {
+            throw result.error;
+        }
+        takeListener.accept(result.uri);
+        return result.value;
+    }
+
+    /**
+     * Runs in the dispatcher thread, sending a request for each URI whenever
+     * the window allows.
+     */
+    private void dispatch() {
+        try {
+            while (!isClosed.get()) {
+                permits.acquire();
+                final String uri;
+                try {
+                    uri = uris.take();
+                } catch (EndOfIterationException e) {
+                    permits.release();
+                    break;
+                } catch (IOException e) {
+                    // A listing page failed. Pass the error on in place of
+                    // its URIs.
+                    results.put(new Result<>(-1, null, null, e));
+                    continue;
+                }
+                final long position = nextPosition.get();
+                if (skipped.contains(position)) {
+                    nextPosition.incrementAndGet();
+                    permits.release();
+                    continue;
+                }
+                outstanding.add(position);
+                nextPosition.incrementAndGet();
+                send(uri, position);
+            }
+            // Wait for all of the outstanding results to be taken.
+            permits.acquire(maxInFlight);
+            results.put(endResult);
+        } catch (InterruptedException e) {
+            LOGGER.debug("{}: stopping", name);
+        }
+    }
+
+    private void send(String uri, long position) {
+        final Request request;
+        try {
+            request = requestFactory.apply(uri);
+        } catch (RuntimeException e) {
+            results.add(new Result<>(position, uri, null,
+                    new HTTPException("GET", uri, e)));
+            return;
+        }
+        LOGGER.trace("{}: requesting {}", name, uri);
+        client.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                results.add(new Result<>(position, uri, null, (e instanceof HTTPException) ?
+                        e : new HTTPException("GET", uri, e)));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    results.add(new Result<>(position, uri,
+                            parser.parse(uri, response), null));
+                } catch (IOException e) {
+                    onFailure(call, e);
+                } catch (RuntimeException e) {
+                    results.add(new Result<>(position, uri, null,
+                            new HTTPException("GET", uri, e)));
+                }
+            }
+        });
+    }
+
+}
@@ -14,11 +14,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Queue;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -145,19 +147,69 @@ final class BookTrackerService implements SourceService {
 
     private OkHttpClient client;
 
+    /**
+     * Overrides the endpoint URI from the configuration.
+     */
+    private String endpointURI;
+
     private final AtomicBoolean isClosed = new AtomicBoolean();
 
-    private int numEntities = -1, windowSize = -1;
+    /**
+     * Total number of results, regardless of {@link #shard}.
+     */
+    private int numResults = -1, windowSize = -1;
 
     private Instant lastModified;
 
-    private static String getEndpointURI() {
-        Configuration config = Configuration.getInstance();
-        String endpoint = config.getString("SERVICE_SOURCE_BOOK_TRACKER_ENDPOINT");
+    private Shard shard = Shard.ALL;
+
+    /**
+     * Number of entities to skip in {@link #entities()}.
+     */
+    private int startOffset;
+
+    /**
+     * Fetches pages for the most recent {@link #entities()} iterator.
+     */
+    private PagePrefetcher<Entity> pages;
+
+    private String getEndpointURI() {
+        String endpoint = endpointURI;
+        if (endpoint == null) {
+            Configuration config = Configuration.getInstance();
+            endpoint = config.getString("SERVICE_SOURCE_BOOK_TRACKER_ENDPOINT");
+        }
         return (endpoint.endsWith("/")) ?
                 endpoint.substring(0, endpoint.length() - 1) : endpoint;
     }
 
+    /**
+     * @return Number of pages to fetch at once.
+     */
+    private static int getNumPrefetchPages() {
+        Configuration config = Configuration.getInstance();
+        String value = config.getString("SERVICE_SOURCE_BOOK_TRACKER_PREFETCH_PAGES");
+        if (value != null) {
+            try {
+                return Math.max(Integer.parseInt(value.trim()), 1);
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid SERVICE_SOURCE_BOOK_TRACKER_PREFETCH_PAGES: {}",
+                        value);
+            }
+        }
+        return PagePrefetcher.DEFAULT_NUM_PAGES_AHEAD;
+    }
+
+    /**
+     * @return Whether to iterate books in page order, rather than as pages
+     *         arrive.
+     */
+    private static boolean isOrdered() {
+        Configuration config = Configuration.getInstance();
+        String value = config.getString("SERVICE_SOURCE_BOOK_TRACKER_ORDERED");
+        return value == null || !"false".equalsIgnoreCase(value.trim());
+    }
+
     private static String getKeyFromConfiguration() {
         Configuration config = Configuration.getInstance();
         return config.getString("SERVICE_SOURCE_BOOK_TRACKER_KEY");
@@ -166,6 +218,9 @@ final class BookTrackerService implements SourceService {
     @Override
     public void close() {
         isClosed.set(true);
+        if (pages != null) {
+            pages.close();
+        }
         if (client != null) {
             // If OkHttp isn't shut down manually, it will keep the app running
             // for a time after a harvest instead of immediately exiting.
@@ -198,13 +253,22 @@ final class BookTrackerService implements SourceService {
 
     @Override
     public int numEntities() throws IOException {
-        if (numEntities < 0) {
-            fetchNumEntities();
+        fetchCounts();
+        if (shard.isAll()) {
+            return numResults;
         }
-        return numEntities;
+        return Math.min((getEndPage() - 1) * windowSize, numResults) -
+                (getStartPage() - 1) * windowSize;
     }
 
-    private void fetchNumEntities() throws IOException {
+    /**
+     * Populates {@link #numResults} and {@link #windowSize} if they haven't
+     * been already.
+     */
+    private void fetchCounts() throws IOException {
+        if (numResults >= 0) {
+            return;
+        }
         String uri = getEndpointURI() + "/books?" + QUERY_FILTER;
         if (lastModified != null) {
             uri += "&last_modified_after=" + lastModified.getEpochSecond();
@@ -216,47 +280,137 @@ final class BookTrackerService implements SourceService {
                 .url(uri);
         Request request = builder.build();
         try (Response response = getClient().newCall(request).execute()) {
-            JSONObject jobj = new JSONObject(response.body().string());
-            numEntities = jobj.getInt("numResults");
+            // Only the counts are needed, not the results.
+            JSONObject jobj = StreamingJSONParser.parseObject(
+                    response.body().charStream(), "results", result -> {});
+            numResults = jobj.getInt("numResults");
             windowSize = jobj.getInt("windowSize");
         }
     }
 
-    @Override
-    public ConcurrentIterator<? extends Entity> entities() {
-        final Queue<Entity> batch      = new ConcurrentLinkedQueue<>();
-        final AtomicInteger pageNumber = new AtomicInteger(1);
+    private int getNumPages() {
+        return (int) Math.ceil(numResults / (double) windowSize);
+    }
+
+    /**
+     * @return Number of the first page in the {@link #shard}.
+     */
+    private int getStartPage() {
+        return shard.getStart(getNumPages()) + 1;
+    }
+
+    /**
+     * @return Number of the page after the last one in the {@link #shard}.
+     *         When not sharding, iteration continues until an empty page is
+     *         returned instead, in case entities were added during the
+     *         harvest.
+     */
+    private int getEndPage() {
+        return shard.isAll() ?
+                Integer.MAX_VALUE : shard.getEnd(getNumPages()) + 1;
+    }
 
-        // Return an iterator that consumes the queue.
+    /**
+     * <p>Pages are fetched several at a time in the background, and by
+     * default, their books are iterated in page order. The number of pages to
+     * fetch at once and the ordering are configurable.</p>
+     *
+     * <p>A full harvest that isn't resuming paginates by {@link
+     * KeysetPageFetcher key}, so that books added or removed during the
+     * harvest don't shift the pages, unless the server doesn't support it.
+     * Each page then depends on the previous one, so pages are fetched one
+     * at a time instead of several, until the second page shows that the
+     * server doesn't support it.</p>
+     */
+    @Override
+    public ConcurrentIterator<? extends Entity> entities() throws IOException {
+        fetchCounts();
+        final int firstOffset   = Math.max(startOffset,
+                (getStartPage() - 1) * windowSize);
+        final int firstPage     = firstOffset / windowSize; // zero-based
+        // Number of books to discard from the first page when resuming.
+        final int numToSkip     = firstOffset % windowSize;
+        final boolean isKeyset  = (firstOffset == 0 && shard.isAll());
+        final int numPagesAhead = getNumPrefetchPages();
+        final boolean isOrdered = isOrdered();
+        // Takes zero-based page indexes.
+        final PagePrefetcher.PageFetcher<Entity> pageFetcher = isKeyset ?
+                new KeysetPageFetcher<>(getClass().getSimpleName(),
+                        (pageIndex, afterID) -> fetchBatch(pageIndex + 1, afterID)) :
+                pageIndex -> {
+                    List<Entity> books = fetchBatch(pageIndex + 1, null).getElements();
+                    return (pageIndex == firstPage && numToSkip > 0) ?
+                            books.subList(Math.min(numToSkip, books.size()), books.size()) :
+                            books;
+                };
+        if (pages != null) {
+            pages.close();
+        }
+        // The end is decided by the page count, and when not sharding, by the
+        // first empty page after it, in case books were added during the
+        // harvest.
+        final PagePrefetcher<Entity> pages = new PagePrefetcher<>(
+                getClass().getSimpleName(),
+                pageFetcher,
+                firstPage,
+                Math.min(getEndPage() - 1, getNumPages()),
+                shard.isAll(),
+                numPagesAhead,
+                numPagesAhead * windowSize);
+        pages.setOrdered(isOrdered);
+        this.pages = pages.start();
+        // Offset of the next entity to be taken, which is also the iterator's
+        // cursor.
+        final AtomicInteger offset = new AtomicInteger(firstOffset);
+
+        // Return an iterator that consumes the prefetcher.
         return new ConcurrentIterator<>() {
             @Override
             public Entity next() throws Exception {
-                // If the queue is empty, fetch the next batch.
-                synchronized (this) {
-                    if (batch.peek() == null) {
-                        fetchBatch(batch, pageNumber.getAndIncrement());
-                    }
-                }
-                if (batch.peek() == null) {
-                    throw new EndOfIterationException();
-                }
-                return batch.remove();
+                final Entity entity = pages.take();
+                offset.incrementAndGet();
+                return entity;
+            }
+
+            /**
+             * When pages are iterated out of order, the offset at which
+             * iteration started, as there is no offset before which all books
+             * are known to have been taken.
+             */
+            @Override
+            public String cursor() {
+                return String.valueOf(isOrdered ? offset.get() : firstOffset);
             }
         };
     }
 
-    private void fetchBatch(final Queue<Entity> batch,
-                            final int pageNumber) throws IOException {
+    /**
+     * @param pageNumber One-based page number.
+     * @param afterID    ID of the last book on the previous page, if
+     *                   paginating by key, or {@code null} to paginate by
+     *                   page number.
+     * @return           Books on the page, which is empty if the instance
+     *                   has been closed, keyed by ID.
+     */
+    private KeysetPageFetcher.Page<Entity> fetchBatch(final int pageNumber,
+                                                      final String afterID)
+            throws IOException {
+        final List<Entity> batch = new ArrayList<>();
+        String firstID = null, lastID = null;
         if (isClosed.get()) {
             LOGGER.debug("fetchBatch(): stopping");
-            return;
+            return new KeysetPageFetcher.Page<>(batch, null, null);
         }
 
-        final int numResults = numEntities();
-        final int numPages = (int) Math.ceil(numResults / (float) windowSize);
+        fetchCounts();
+        final int numPages = getNumPages();
 
-        String uri = String.format("%s/books?page=%d&%s",
-                getEndpointURI(), pageNumber, QUERY_FILTER);
+        String uri = (afterID != null) ?
+                String.format("%s/books?after_id=%s&%s", getEndpointURI(),
+                        URLEncoder.encode(afterID, StandardCharsets.UTF_8),
+                        QUERY_FILTER) :
+                String.format("%s/books?page=%d&%s",
+                        getEndpointURI(), pageNumber, QUERY_FILTER);
         if (lastModified != null) {
             uri += "&last_modified_after=" + lastModified.getEpochSecond();
         }
@@ -268,28 +422,58 @@ final class BookTrackerService implements SourceService {
                 .header("Accept", "application/json")
                 .url(uri);
         Request request = builder.build();
+        final List<String> ids = new ArrayList<>();
         try (Response response = getClient().newCall(request).execute()) {
-            final String bodyStr = response.body().string();
             if (response.code() == 200) {
-                JSONObject jobj = new JSONObject(bodyStr);
-                JSONArray jarr = jobj.getJSONArray("results");
-                for (int i = 0; i < jarr.length(); i++) {
-                    jobj = jarr.getJSONObject(i);
-                    batch.add(new BookTrackerEntity(jobj));
+                StreamingJSONParser.parseObject(response.body().charStream(),
+                        "results", result -> {
+                    batch.add(new BookTrackerEntity(result));
+                    ids.add(result.optString("id", null));
+                });
+                if (!ids.isEmpty()) {
+                    firstID = ids.get(0);
+                    lastID  = ids.get(ids.size() - 1);
                 }
             } else {
-                throw new HTTPException(
-                        "GET", uri, response.code(), null, bodyStr);
+                throw new HTTPException("GET", uri, response.code(), null,
+                        response.body().string());
             }
         }
         LOGGER.debug("Fetched {} results", batch.size());
+        return new KeysetPageFetcher.Page<>(batch, firstID, lastID);
+    }
+
+    /**
+     * @param cursor Offset into the results, from which the page to resume
+     *               from is derived.
+     */
+    @Override
+    public void setCursor(String cursor) {
+        this.startOffset = Integer.parseInt(cursor);
     }
 
     @Override
     public void setLastModified(Instant lastModified)
             throws UnsupportedOperationException {
         this.lastModified = lastModified;
-        this.numEntities  = -1;
+        this.numResults   = -1;
+    }
+
+    /**
+     * @param uri Base URI of the service, overriding the one in the
+     *            configuration.
+     */
+    void setEndpointURI(String uri) {
+        this.endpointURI = uri;
+        this.numResults  = -1;
+    }
+
+    /**
+     * Each shard gets a contiguous range of results pages.
+     */
+    @Override
+    public void setShard(Shard shard) {
+        this.shard = shard;
     }
 
     @Override
@@ -20,4 +20,20 @@ public interface ConcurrentIterator<T> {
      */
     T next() throws Exception;
 
+    /**
+     * <p>Returns an opaque position from which iteration could be resumed by
+     * {@link SourceService#setCursor(String)}, such that all elements
+     * returned by {@link #next()} so far would be skipped and all others
+     * would be returned.</p>
+     *
+     * <p>This is called while no invocations of {@link #next()} are in
+     * progress.</p>
+     *
+     * @return Cursor, or {@code null} if the iterator does not support
+     *         resuming.
+     */
+    default String cursor() {
+        return null;
+    }
+
 }
@@ -0,0 +1,239 @@
+package edu.illinois.library.metaslurper.service;
+
+import edu.illinois.library.metaslurper.config.Configuration;
+import okhttp3.Cache;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>Disk cache of source service responses, shared by the HTTP clients of all
+ * of the source services that {@link #configure(OkHttpClient.Builder)
+ * use it}, so that harvesting the same source again doesn't download
+ * representations that haven't changed.</p>
+ *
+ * <p>Cached responses that are still fresh are served from disk. Stale ones
+ * are revalidated with {@literal If-None-Match} and/or {@literal
+ * If-Modified-Since}, and served from disk if the server responds with HTTP
+ * 304. When the cache exceeds its maximum size, the least recently used
+ * responses are evicted.</p>
+ *
+ * <p>The cache is disabled unless {@literal SERVICE_SOURCE_HTTP_CACHE_DIR} is
+ * set. Hits, misses, and bytes served from disk are counted per source
+ * service, for inclusion in harvest reports.</p>
+ */
+public final class HTTPCache {
+
+    /**
+     * Immutable snapshot of a source service's cache counters.
+     */
+    public static final class Counts {
+
+        public static final Counts ZERO = new Counts(0, 0, 0);
+
+        private final long numHits, numMisses, numBytesSaved;
+
+        private Counts(long numHits, long numMisses, long numBytesSaved) {
+            this.numHits       = numHits;
+            this.numMisses     = numMisses;
+            this.numBytesSaved = numBytesSaved;
+        }
+
+        /**
+         * @return Number of bytes of response bodies that were served from
+         *         disk instead of being downloaded.
+         */
+        public long getNumBytesSaved() {
+            return numBytesSaved;
+        }
+
+        /**
+         * @return Number of responses served from disk, either because they
+         *         were fresh or because the server responded with HTTP 304.
+         */
+        public long getNumHits() {
+            return numHits;
+        }
+
+        /**
+         * @return Number of responses that had to be downloaded.
+         */
+        public long getNumMisses() {
+            return numMisses;
+        }
+
+        /**
+         * @return Whether any requests have been counted.
+         */
+        public boolean isEmpty() {
+            return numHits == 0 && numMisses == 0;
+        }
+
+        /**
+         * @param other Earlier counts.
+         * @return      Counts since the given ones.
+         */
+        public Counts minus(Counts other) {
+            return new Counts(numHits - other.numHits,
+                    numMisses - other.numMisses,
+                    numBytesSaved - other.numBytesSaved);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("[%d hits] [%d misses] [%d bytes saved]",
+                    numHits, numMisses, numBytesSaved);
+        }
+
+    }
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(HTTPCache.class);
+
+    private static final long DEFAULT_MAX_SIZE_MB = 1024;
+
+    private static final Map<String, HTTPCache> INSTANCES =
+            new ConcurrentHashMap<>();
+
+    private static final Lock CACHE_LOCK = new ReentrantLock();
+
+    private static Cache cache;
+
+    private static boolean isCacheInitialized;
+
+    private final String sourceKey;
+    private final AtomicLong numHits       = new AtomicLong();
+    private final AtomicLong numMisses     = new AtomicLong();
+    private final AtomicLong numBytesSaved = new AtomicLong();
+
+    /**
+     * @param sourceKey Source service key.
+     * @return          Counters of the given source service, which are
+     *                  {@link Counts#ZERO} if it doesn't use the cache or the
+     *                  cache is disabled. They accumulate over the lifetime of
+     *                  the process.
+     */
+    public static Counts counts(String sourceKey) {
+        final HTTPCache instance = INSTANCES.get(sourceKey);
+        return (instance != null) ? instance.counts() : Counts.ZERO;
+    }
+
+    /**
+     * @param sourceKey Source service key.
+     * @return          Instance that counts requests on behalf of the given
+     *                  source service.
+     */
+    static HTTPCache forSource(String sourceKey) {
+        return INSTANCES.computeIfAbsent(sourceKey, HTTPCache::new);
+    }
+
+    /**
+     * @return The shared cache, or {@code null} if it is disabled.
+     */
+    private static Cache getCache() {
+        CACHE_LOCK.lock();
+        try {
+            if (!isCacheInitialized) {
+                isCacheInitialized = true;
+                Configuration config = Configuration.getInstance();
+                String dir = config.getString("SERVICE_SOURCE_HTTP_CACHE_DIR");
+                if (dir != null && !dir.isBlank()) {
+                    long maxSizeMB = DEFAULT_MAX_SIZE_MB;
+                    String value = config.getString("SERVICE_SOURCE_HTTP_CACHE_MAX_SIZE");
+                    if (value != null) {
+                        try {
+                            maxSizeMB = Math.max(Long.parseLong(value.trim()), 1);
+                        } catch (NumberFormatException e) {
+                            LOGGER.warn("Invalid SERVICE_SOURCE_HTTP_CACHE_MAX_SIZE: {}",
+                                    value);
+                        }
+                    }
+                    cache = new Cache(new File(dir), maxSizeMB * 1024 * 1024);
+                    LOGGER.info("Caching source responses in {} (up to {} MB)",
+                            dir, maxSizeMB);
+                }
+            }
+            return cache;
+        } finally {
+            CACHE_LOCK.unlock();
+        }
+    }
+
+    private HTTPCache(String sourceKey) {
+        this.sourceKey = sourceKey;
+    }
+
+    /**
+     * Makes a client use the shared cache, if it is enabled, and count its
+     * requests.
+     *
+     * @param builder Client builder.
+     * @return        The given builder.
+     */
+    OkHttpClient.Builder configure(OkHttpClient.Builder builder) {
+        return configure(builder, getCache());
+    }
+
+    /**
+     * @param cache Cache to use, or {@code null} to leave the builder alone.
+     */
+    OkHttpClient.Builder configure(OkHttpClient.Builder builder, Cache cache) {
+        if (cache != null) {
+            builder.cache(cache).addInterceptor(this::intercept);
+        }
+        return builder;
+    }
+
+    Counts counts() {
+        return new Counts(numHits.get(), numMisses.get(), numBytesSaved.get());
+    }
+
+    private Response intercept(Interceptor.Chain chain) throws IOException {
+        final Response response = chain.proceed(chain.request());
+        final Response networkResponse = response.networkResponse();
+        if (response.cacheResponse() == null ||
+                (networkResponse != null && networkResponse.code() != 304)) {
+            numMisses.incrementAndGet();
+            return response;
+        }
+        numHits.incrementAndGet();
+        LOGGER.trace("{}: served {} from the cache", sourceKey,
+                response.request().url());
+        final ResponseBody body = response.body();
+        if (body == null) {
+            return response;
+        }
+        // Count the body's bytes as they are read, as cached responses don't
+        // necessarily have a Content-Length.
+        final ForwardingSource countingSource =
+                new ForwardingSource(body.source()) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                final long numRead = super.read(sink, byteCount);
+                if (numRead > 0) {
+                    numBytesSaved.addAndGet(numRead);
+                }
+                return numRead;
+            }
+        };
+        return response.newBuilder()
+                .body(ResponseBody.create(Okio.buffer(countingSource),
+                        body.contentType(), body.contentLength()))
+                .build();
+    }
+
+}
@@ -1,6 +1,11 @@
 package edu.illinois.library.metaslurper.service;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Optional;
 
 /**
@@ -11,6 +16,32 @@ public class HTTPException extends IOException {
 
     private Integer statusCode; // allow null
     private String method, requestBody, responseBody, uri;
+    private Duration retryAfter;
+
+    /**
+     * @param value Value of a {@literal Retry-After} header, which may be
+     *              either a number of seconds or an HTTP date.
+     * @return      Time to wait, which is never negative, or {@code null} if
+     *              the argument is {@code null} or invalid.
+     */
+    public static Duration parseRetryAfter(String value) {
+        if (value == null) {
+            return null;
+        }
+        value = value.trim();
+        try {
+            return Duration.ofSeconds(Math.max(Long.parseLong(value), 0));
+        } catch (NumberFormatException e) {
+            try {
+                Instant date = ZonedDateTime.parse(value,
+                        DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+                Duration duration = Duration.between(Instant.now(), date);
+                return duration.isNegative() ? Duration.ZERO : duration;
+            } catch (DateTimeParseException e2) {
+                return null;
+            }
+        }
+    }
 
     /**
      * Variant to use for failed requests.
@@ -76,6 +107,14 @@ public class HTTPException extends IOException {
         return Optional.ofNullable(requestBody);
     }
 
+    /**
+     * @return Time that the server asked to wait before retrying the request,
+     *         via a {@literal Retry-After} header.
+     */
+    public Optional<Duration> getRetryAfter() {
+        return Optional.ofNullable(retryAfter);
+    }
+
     public Optional<String> getResponseBody() {
         return Optional.ofNullable(responseBody);
     }
@@ -88,4 +127,12 @@ public class HTTPException extends IOException {
         return uri;
     }
 
+    /**
+     * @param retryAfter Time to wait before retrying. May be {@code null}.
+     * @see #parseRetryAfter(String)
+     */
+    public void setRetryAfter(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
 }
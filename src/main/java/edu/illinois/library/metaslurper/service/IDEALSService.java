@@ -9,7 +9,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 
 /**
  * Harvests metadata from the OAI-PMH endpoint of
@@ -24,8 +26,31 @@ final class IDEALSService implements SourceService {
 
     private static final String PRIVATE_NAME = "IDEALS";
 
+    private static final String SETS_CURSOR           = "sets";
+    private static final String RECORDS_CURSOR_PREFIX = "records ";
+
     private final Harvester harvester = new Harvester();
     private int numEntities = -1;
+    private Instant lastModified;
+    private Shard shard = Shard.ALL;
+
+    /**
+     * Whether the {@link #harvester}'s date range has been set to that of
+     * the {@link #shard}.
+     */
+    private boolean isWindowConfigured;
+
+    /**
+     * Whether the {@link #shard}'s date range is empty, which happens when
+     * there are more shards than days to divide among them.
+     */
+    private boolean isWindowEmpty;
+
+    /**
+     * Cursor of the record iterator to resume from, or {@code null} to start
+     * with the sets.
+     */
+    private String recordsCursor;
 
     static String getKeyFromConfiguration() {
         Configuration config = Configuration.getInstance();
@@ -37,6 +62,34 @@ final class IDEALSService implements SourceService {
         String endpointURI = config.getString("SERVICE_SOURCE_IDEALS_ENDPOINT");
         harvester.setEndpointURI(endpointURI);
         harvester.setMetadataPrefix("native");
+        Integer value = getInt("SERVICE_SOURCE_IDEALS_PREFETCH_PAGES");
+        if (value != null) {
+            harvester.setNumPagesAhead(value);
+        }
+        value = getInt("SERVICE_SOURCE_IDEALS_WINDOWS");
+        if (value != null) {
+            harvester.setNumWindows(value);
+        }
+        value = getInt("SERVICE_SOURCE_IDEALS_CONCURRENT_SETS");
+        if (value != null) {
+            harvester.setNumConcurrentSets(value);
+        }
+    }
+
+    /**
+     * @return Integer value of the given configuration key, or {@code null}
+     *         if it is not set or invalid.
+     */
+    private static Integer getInt(String key) {
+        String value = Configuration.getInstance().getString(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid {}: {}", key, value);
+            }
+        }
+        return null;
     }
 
     @Override
@@ -54,33 +107,140 @@ final class IDEALSService implements SourceService {
         return PRIVATE_NAME;
     }
 
+    /**
+     * <p>Restricts the {@link #harvester} to the {@link #shard}'s window of
+     * datestamps, if it hasn't been already. The time from the earliest
+     * datestamp (or the last-modified time, if set) to the present is divided
+     * into whole UTC days, which are divided evenly among the shards. The
+     * last shard's window is open-ended.</p>
+     *
+     * <p>Because the division depends on the current date, all shards must
+     * be started on the same day.</p>
+     */
+    private void configureWindow() throws IOException {
+        if (shard.isAll() || isWindowConfigured) {
+            return;
+        }
+        final Instant start = (lastModified != null) ?
+                lastModified : harvester.earliestDatestamp();
+        final Instant startDay = start.truncatedTo(ChronoUnit.DAYS);
+        final Instant today    = Instant.now().truncatedTo(ChronoUnit.DAYS);
+        final int numDays = (int) Duration.between(startDay, today).toDays() + 1;
+        final int firstDay = shard.getStart(numDays);
+        final int endDay   = shard.getEnd(numDays);
+        isWindowEmpty = (firstDay == endDay);
+        // The first shard starts at the given start time, and the last one is
+        // open-ended.
+        harvester.setFrom((shard.getIndex() == 0) ?
+                lastModified : startDay.plus(firstDay, ChronoUnit.DAYS));
+        // OAI-PMH until dates are inclusive.
+        harvester.setUntil((shard.getIndex() == shard.getCount() - 1) ? null :
+                startDay.plus(endDay, ChronoUnit.DAYS).minusSeconds(1));
+        isWindowConfigured = true;
+        LOGGER.debug("Shard {} covers {} days starting {}",
+                shard, endDay - firstDay, startDay.plus(firstDay, ChronoUnit.DAYS));
+    }
+
+    /**
+     * <p>Iterates over all sets followed by all records. The iterator's
+     * cursor is either {@link #SETS_CURSOR}, while iterating over sets, or
+     * the records iterator's cursor prefixed with {@link
+     * #RECORDS_CURSOR_PREFIX}.</p>
+     *
+     * <p>When {@link #setShard(Shard) sharding}, the sets are all in the
+     * first shard, and the records are divided by datestamp as described in
+     * {@link #configureWindow()}.</p>
+     *
+     * <p>If {@literal SERVICE_SOURCE_IDEALS_CONCURRENT_SETS} is set, the
+     * records are harvested set by set, several sets at a time; see {@link
+     * Harvester#setNumConcurrentSets(int)}.</p>
+     */
     @Override
     public ConcurrentIterator<? extends Entity> entities() throws IOException {
-        final ConcurrentIterator<PMHRecord> records =
-                harvester.records(new NativeElementTransformer());
-        final ConcurrentIterator<PMHSet> sets = harvester.sets();
+        configureWindow();
+        final ConcurrentIterator<PMHRecord> records = isWindowEmpty ?
+                () -> { throw new EndOfIterationException(); } :
+                harvester.records(new NativeElementTransformer(), recordsCursor);
+        // When resuming into the records, the sets have all been harvested.
+        final ConcurrentIterator<PMHSet> sets =
+                (recordsCursor == null && shard.getIndex() == 0) ?
+                harvester.sets() : () -> { throw new EndOfIterationException(); };
+
+        return new ConcurrentIterator<>() {
+            private volatile boolean isSetsExhausted;
+
+            @Override
+            public Entity next() throws Exception {
+                try {
+                    return new IDEALSSet(sets.next());
+                } catch (EndOfIterationException e) {
+                    isSetsExhausted = true;
+                    return new IDEALSRecord(records.next());
+                }
+            }
 
-        return () -> {
-            try {
-                return new IDEALSSet(sets.next());
-            } catch (EndOfIterationException e) {
-                return new IDEALSRecord(records.next());
+            @Override
+            public String cursor() {
+                return isSetsExhausted ?
+                        RECORDS_CURSOR_PREFIX + records.cursor() : SETS_CURSOR;
             }
         };
     }
 
+    /**
+     * Counts the entities using the first {@literal ListRecords} and
+     * {@literal ListSets} pages, which the {@link #harvester} holds on to for
+     * {@link #entities()}.
+     *
+     * @throws UnsupportedOperationException if either page has a resumption
+     *         token without a {@literal completeListSize}, in which case the
+     *         harvest proceeds without a count.
+     */
     @Override
     public int numEntities() throws IOException {
         if (numEntities < 0) {
-            numEntities = harvester.numRecords() + harvester.numSets();
+            configureWindow();
+            final int numRecords = isWindowEmpty ? 0 : harvester.numRecords();
+            final int numSets = (shard.getIndex() == 0) ? harvester.numSets() : 0;
+            if (numRecords < 0 || numSets < 0) {
+                throw new UnsupportedOperationException(
+                        "The list size is not available");
+            }
+            numEntities = numRecords + numSets;
         }
         return numEntities;
     }
 
+    @Override
+    public void setCursor(String cursor) {
+        if (cursor.startsWith(RECORDS_CURSOR_PREFIX)) {
+            recordsCursor = cursor.substring(RECORDS_CURSOR_PREFIX.length());
+        } else if (SETS_CURSOR.equals(cursor)) {
+            recordsCursor = null;
+        } else {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
     @Override
     public void setLastModified(Instant lastModified) {
+        this.lastModified = lastModified;
+        harvester.setFrom(lastModified);
+        numEntities        = -1;
+        isWindowConfigured = false;
+    }
+
+    /**
+     * Each shard gets a window of record datestamps, and the first one also
+     * gets all of the sets. See {@link #configureWindow()}.
+     */
+    @Override
+    public void setShard(Shard shard) {
+        this.shard         = shard;
+        numEntities        = -1;
+        isWindowConfigured = false;
         harvester.setFrom(lastModified);
-        numEntities = -1;
+        harvester.setUntil(null);
     }
 
     @Override
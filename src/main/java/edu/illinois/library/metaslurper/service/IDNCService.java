@@ -28,6 +28,9 @@ import java.util.NoSuchElementException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <p>Service for the <a href="https://idnc.library.illinois.edu">Illinois
@@ -89,9 +92,28 @@ final class IDNCService implements SourceService {
 
         private Path harvestResultsFile;
         private XMLStreamReader xmlReader;
+        // N.B.: a lock is used instead of a synchronized block so as not to
+        // pin virtual threads while reading.
+        private final Lock readerLock = new ReentrantLock();
+        // Position in the results file, i.e. the number of <link>s consumed,
+        // including those in other shards.
+        private final AtomicInteger linkIndex = new AtomicInteger();
+        private int numLinksToSkip;
 
-        private PageIterator(Path harvestResultsFile) {
+        /**
+         * @param harvestResultsFile Harvest results file.
+         * @param startLinkIndex     Number of links at the beginning of the
+         *                           file to skip.
+         */
+        private PageIterator(Path harvestResultsFile, int startLinkIndex) {
             this.harvestResultsFile = harvestResultsFile;
+            this.numLinksToSkip     = startLinkIndex;
+            this.linkIndex.set(startLinkIndex);
+        }
+
+        @Override
+        public String cursor() {
+            return String.valueOf(linkIndex.get());
         }
 
         private void close() {
@@ -113,7 +135,8 @@ final class IDNCService implements SourceService {
 
             String pageURI;
 
-            synchronized (this) {
+            readerLock.lock();
+            try {
                 if (xmlReader == null) {
                     close();
                     XMLInputFactory factory = XMLInputFactory.newInstance();
@@ -127,13 +150,21 @@ final class IDNCService implements SourceService {
                         if (xmlReader.getEventType() == XMLStreamReader.START_ELEMENT &&
                                 "link".equals(xmlReader.getLocalName())) {
                             pageURI = xmlReader.getElementText();
-                            break;
+                            if (numLinksToSkip > 0) {
+                                numLinksToSkip--;
+                                continue;
+                            }
+                            if (shard.contains(linkIndex.getAndIncrement())) {
+                                break;
+                            }
                         }
                     }
                 } catch (NoSuchElementException e) {
                     close();
                     throw new EndOfIterationException();
                 }
+            } finally {
+                readerLock.unlock();
             }
 
             return fetchPage(pageURI);
@@ -215,14 +246,22 @@ final class IDNCService implements SourceService {
 
     private Path harvestResultsFile;
 
+    /**
+     * Number of links in the harvest results to skip in {@link #entities()}.
+     */
+    private int startLinkIndex;
+
+    private Shard shard = Shard.ALL;
+
     private synchronized OkHttpClient getClient() {
         if (client == null) {
-            client = new OkHttpClient.Builder()
+            OkHttpClient.Builder builder = new OkHttpClient.Builder()
                     .followRedirects(true)
                     .connectTimeout(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS)
                     .readTimeout(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS)
-                    .writeTimeout(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS)
-                    .build();
+                    .writeTimeout(REQUEST_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            HTTPCache.forSource(getKeyFromConfiguration()).configure(builder);
+            client = builder.build();
         }
         return client;
     }
@@ -286,8 +325,9 @@ final class IDNCService implements SourceService {
         fetchHarvestResults(harvestResultsURI);
         Path resultsFile = fetchHarvestResults(harvestResultsURI);
 
-        // Count the number of <link> elements in the harvest results.
-        int count = 0;
+        // Count the number of <link> elements in the harvest results that are
+        // in the shard.
+        int index = 0, count = 0;
         XMLInputFactory factory = XMLInputFactory.newInstance();
         XMLStreamReader xmlReader = null;
         try (Reader reader = Files.newBufferedReader(resultsFile)) {
@@ -296,7 +336,9 @@ final class IDNCService implements SourceService {
                 xmlReader.next();
                 if (xmlReader.getEventType() == XMLStreamReader.START_ELEMENT &&
                         "link".equals(xmlReader.getLocalName())) {
-                    count++;
+                    if (shard.contains(index++)) {
+                        count++;
+                    }
                 }
             }
             return count;
@@ -323,7 +365,7 @@ final class IDNCService implements SourceService {
         waitForHarvestResults(harvestResultsURI);
         Path resultsFile = fetchHarvestResults(harvestResultsURI);
 
-        return new PageIterator(resultsFile);
+        return new PageIterator(resultsFile, startLinkIndex);
     }
 
     /**
@@ -473,6 +515,18 @@ final class IDNCService implements SourceService {
         return harvestResultsFile;
     }
 
+    /**
+     * N.B.: the harvest results are regenerated by the server for every
+     * harvest, so resuming relies on them being in the same order as they
+     * were when the cursor was obtained.
+     *
+     * @param cursor Number of links in the harvest results to skip.
+     */
+    @Override
+    public void setCursor(String cursor) {
+        this.startLinkIndex = Integer.parseInt(cursor);
+    }
+
     @Override
     public void setLastModified(Instant lastModified) {
         Date date = Date.from(lastModified);
@@ -480,6 +534,15 @@ final class IDNCService implements SourceService {
         this.lastModified = Integer.parseInt(formatter.format(date));
     }
 
+    /**
+     * Each shard gets every {@literal N}th link in the harvest results. (Each
+     * shard's instance still requests its own copy of the results.)
+     */
+    @Override
+    public void setShard(Shard shard) {
+        this.shard = shard;
+    }
+
     @Override
     public String toString() {
         return getClass().getSimpleName();
@@ -4,7 +4,9 @@ import edu.illinois.library.metaslurper.config.Configuration;
 import edu.illinois.library.metaslurper.entity.ConcreteEntity;
 import edu.illinois.library.metaslurper.entity.Element;
 import edu.illinois.library.metaslurper.entity.Entity;
+import edu.illinois.library.metaslurper.entity.SkippedEntity;
 import edu.illinois.library.metaslurper.entity.Variant;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -14,13 +16,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Queue;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.TreeMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Alex Dolski UIUC
@@ -141,6 +148,61 @@ final class IllinoisDataBankService implements SourceService {
 
     }
 
+    /**
+     * Test data set that the listing didn't say was one, returned in its
+     * place so that it is counted as skipped.
+     */
+    private static class TestDataSet implements SkippedEntity {
+
+        private final String identifier, uri;
+
+        private TestDataSet(String identifier, String uri) {
+            this.identifier = identifier;
+            this.uri        = uri;
+        }
+
+        @Override
+        public String getServiceKey() {
+            return getKeyFromConfiguration();
+        }
+
+        @Override
+        public String getSourceID() {
+            return identifier;
+        }
+
+        @Override
+        public String getSourceURI() {
+            return uri;
+        }
+
+        @Override
+        public String getSinkID() {
+            return null;
+        }
+
+        @Override
+        public String getParentSinkID() {
+            return null;
+        }
+
+        @Override
+        public String getContainerSinkID() {
+            return null;
+        }
+
+        @Override
+        public String getContainerName() {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return identifier + " (test)";
+        }
+
+    }
+
     private static final Logger LOGGER =
             LoggerFactory.getLogger(IllinoisDataBankService.class);
 
@@ -149,22 +211,104 @@ final class IllinoisDataBankService implements SourceService {
 
     private static final long REQUEST_TIMEOUT = 60;
 
+    /**
+     * Default maximum number of data set requests to have in flight at once.
+     * This is lower than for other services as the service is small.
+     */
+    private static final int DEFAULT_MAX_IN_FLIGHT = 8;
+
     private OkHttpClient client;
 
+    /**
+     * Overrides {@literal SERVICE_SOURCE_IDB_ENDPOINT} if set.
+     */
+    private String endpointURI;
+
     private final AtomicBoolean isClosed = new AtomicBoolean();
 
     /**
      * Populated by {@link #fetchDataSetURIs()}.
      */
-    private final Queue<String> dataSetURIs = new ConcurrentLinkedQueue<>();
+    private List<String> dataSetURIs;
 
-    private static String getEndpointURI() {
-        Configuration config = Configuration.getInstance();
-        String endpoint = config.getString("SERVICE_SOURCE_IDB_ENDPOINT");
+    private AsyncFetcher<Entity> fetcher;
+
+    private Shard shard = Shard.ALL;
+
+    private ListingSnapshot snapshot;
+
+    private Instant lastModified;
+
+    /**
+     * Fingerprints of the listing entries of data sets, used in incremental
+     * harvests to tell which data sets without an {@literal updated_at} have
+     * changed. Opened by {@link #setLastModified(Instant)}, if configured.
+     * The store covers the whole listing, so it is not used when
+     * sharding.
+     */
+    private ListingSnapshot fingerprints;
+
+    private String getEndpointURI() {
+        String endpoint = endpointURI;
+        if (endpoint == null) {
+            Configuration config = Configuration.getInstance();
+            endpoint = config.getString("SERVICE_SOURCE_IDB_ENDPOINT");
+        }
         return (endpoint.endsWith("/")) ?
                 endpoint.substring(0, endpoint.length() - 1) : endpoint;
     }
 
+    /**
+     * @return Maximum number of data set requests to have in flight at once.
+     */
+    private static int getMaxInFlight() {
+        Configuration config = Configuration.getInstance();
+        String value = config.getString("SERVICE_SOURCE_IDB_MAX_IN_FLIGHT");
+        if (value != null) {
+            try {
+                return Math.max(Integer.parseInt(value.trim()), 1);
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid SERVICE_SOURCE_IDB_MAX_IN_FLIGHT: {}", value);
+            }
+        }
+        return DEFAULT_MAX_IN_FLIGHT;
+    }
+
+    /**
+     * @return Fingerprint store file, or {@code null} if not configured.
+     */
+    private static Path getFingerprintFile() {
+        Configuration config = Configuration.getInstance();
+        String value = config.getString("SERVICE_SOURCE_IDB_FINGERPRINT_FILE");
+        return (value != null && !value.isBlank()) ? Path.of(value) : null;
+    }
+
+    /**
+     * @param dataSet Listing entry.
+     * @return        Its last-modified time, or {@code null} if it doesn't
+     *                have a valid one.
+     */
+    private static Instant getUpdatedAt(JSONObject dataSet) {
+        final String value = dataSet.optString("updated_at", null);
+        if (value != null) {
+            try {
+                return OffsetDateTime.parse(value).toInstant();
+            } catch (DateTimeParseException e) {
+                LOGGER.debug("Invalid updated_at: {}", value);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param dataSet Listing entry.
+     * @return        Fingerprint of its content that doesn't depend on the
+     *                order of its keys.
+     */
+    private static String getContentFingerprint(JSONObject dataSet) {
+        return new TreeMap<>(dataSet.toMap()).toString();
+    }
+
     private static String getKeyFromConfiguration() {
         Configuration config = Configuration.getInstance();
         return config.getString("SERVICE_SOURCE_IDB_KEY");
@@ -173,12 +317,26 @@ final class IllinoisDataBankService implements SourceService {
     @Override
     public void close() {
         isClosed.set(true);
+        if (fetcher != null) {
+            fetcher.close();
+        }
         if (client != null) {
             // If OkHttp isn't shut down manually, it will keep the app running
             // for a time after a harvest instead of immediately exiting.
             client.dispatcher().executorService().shutdown();
             client.connectionPool().evictAll();
         }
+        for (ListingSnapshot store : new ListingSnapshot[] { snapshot, fingerprints }) {
+            if (store == null) {
+                continue;
+            }
+            try {
+                store.save();
+            } catch (IOException e) {
+                LOGGER.error("Failed to save {}: {}",
+                        store.getFile(), e.getMessage(), e);
+            }
+        }
     }
 
     private void checkClosed() {
@@ -199,51 +357,104 @@ final class IllinoisDataBankService implements SourceService {
 
     private synchronized OkHttpClient getClient() {
         if (client == null) {
+            // Data sets are fetched asynchronously, so the dispatcher has to
+            // allow the whole in-flight window to the one host.
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(getMaxInFlight());
+            dispatcher.setMaxRequestsPerHost(getMaxInFlight());
             OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                    .dispatcher(dispatcher)
                     .followRedirects(true)
                     .connectTimeout(REQUEST_TIMEOUT, TimeUnit.SECONDS)
                     .readTimeout(REQUEST_TIMEOUT, TimeUnit.SECONDS)
                     .writeTimeout(REQUEST_TIMEOUT, TimeUnit.SECONDS);
+            final String key = getKeyFromConfiguration();
+            if (key != null) {
+                HTTPCache.forSource(key).configure(builder);
+            }
             client = builder.build();
         }
         return client;
     }
 
+    /**
+     * @return Number of data sets, which is exact if the listing says which
+     *         ones are test data sets, and otherwise includes them, in which
+     *         case they are iterated as {@link SkippedEntity skipped
+     *         entities}.
+     */
     @Override
     public synchronized int numEntities() throws IOException {
         checkClosed();
-        if (dataSetURIs.isEmpty()) {
+        if (dataSetURIs == null) {
             fetchDataSetURIs();
         }
         return dataSetURIs.size();
     }
 
+    /**
+     * Data sets are fetched several at a time in the background and returned
+     * in the order in which they arrive. They are recorded in the {@link
+     * #snapshot} and {@link #fingerprints fingerprint store} as they are
+     * returned, so that any that are fetched ahead but not returned before
+     * the harvest ends are still new or changed the next time.
+     */
     @Override
     public synchronized ConcurrentIterator<? extends Entity> entities()
             throws IOException {
         checkClosed();
-        if (dataSetURIs.isEmpty()) {
+        if (dataSetURIs == null) {
             fetchDataSetURIs();
         }
-        return () -> {
-            if (dataSetURIs.peek() == null) {
-                throw new EndOfIterationException();
+        if (fetcher != null) {
+            fetcher.close();
+        }
+        // The URIs are already in memory, so they are fed straight to the
+        // fetcher.
+        final AsyncFetcher<Entity> dataSets = new AsyncFetcher<>(
+                getClass().getSimpleName(),
+                dataSetURIs,
+                0,
+                getClient(),
+                IllinoisDataBankService::newDataSetRequest,
+                IllinoisDataBankService::parseDataSet,
+                getMaxInFlight());
+        dataSets.setTakeListener(uri -> {
+            if (snapshot != null) {
+                snapshot.record(uri);
+            }
+            if (fingerprints != null) {
+                fingerprints.record(uri);
             }
-            DataSet dataSet;
-            do {
-                dataSet = fetchDataSet(dataSetURIs.remove());
-            } while (dataSet == null);
-            return dataSet;
-        };
+        });
+        fetcher = dataSets.start();
+        return dataSets::take;
     }
 
     /**
-     * Fetches all data set URIs from {@literal /datasets} into {@link
-     * #dataSetURIs}. (We don't want to use the data set representations at
+     * Fetches all data set URIs in the {@link #shard} from {@literal
+     * /datasets} into {@link #dataSetURIs}. (We don't want to use the data set representations at
      * {@literal /datasets} because the ones at {@literal /datasets/:id} are
-     * more detailed.)
+     * more detailed.) Test data sets are left out if the listing says which
+     * ones they are. With a {@link #snapshot}, only the data sets that are
+     * new or changed since it are included. When {@link #lastModified} is
+     * set, only the ones that have changed since then are included; see
+     * {@link #isModified(String, JSONObject)}.
      */
     private void fetchDataSetURIs() throws IOException {
+        if (snapshot != null && (!shard.isAll() || lastModified != null)) {
+            throw new IllegalStateException("Listing snapshots are not " +
+                    "compatible with sharding or incremental harvesting");
+        }
+        if (fingerprints != null && !shard.isAll()) {
+            // Each shard only lists its own data sets, so saving the store
+            // would drop the other shards' fingerprints.
+            LOGGER.warn("The fingerprint store at {} is not compatible with " +
+                    "sharding and will not be used; data sets without an " +
+                    "updated_at will all be harvested",
+                    fingerprints.getFile());
+            fingerprints = null;
+        }
         final String uri = String.format("%s/datasets", getEndpointURI());
         LOGGER.debug("Fetching data sets: {}", uri);
         Request.Builder builder = new Request.Builder()
@@ -252,50 +463,157 @@ final class IllinoisDataBankService implements SourceService {
                 .url(uri);
         Request request = builder.build();
         try (Response response = getClient().newCall(request).execute()) {
-            final String bodyStr = response.body().string();
             if (response.code() == 200) {
-                JSONArray results = new JSONArray(bodyStr);
-                for (int i = 0; i < results.length(); i++) {
-                    JSONObject dataSet = results.getJSONObject(i);
-                    dataSetURIs.add(dataSet.getString("url"));
+                // The listing is unpaginated, so it is streamed rather than
+                // read into memory all at once.
+                final List<String> uris   = new ArrayList<>();
+                final AtomicInteger index = new AtomicInteger();
+                final AtomicInteger numTest = new AtomicInteger();
+                StreamingJSONParser.parseArray(response.body().charStream(), dataSet -> {
+                    if (!shard.contains(index.getAndIncrement())) {
+                        return;
+                    } else if (dataSet.optBoolean("is_test", false)) {
+                        numTest.incrementAndGet();
+                        return;
+                    }
+                    String url = dataSet.getString("url");
+                    if (lastModified != null) {
+                        if (isModified(url, dataSet)) {
+                            uris.add(url);
+                        }
+                    } else if (snapshot == null || snapshot.list(url,
+                            dataSet.optString("updated_at", null))) {
+                        uris.add(url);
+                    }
+                });
+                dataSetURIs = uris;
+                if (fingerprints != null) {
+                    fingerprints.completeListing();
+                }
+                if (lastModified != null) {
+                    LOGGER.info("{} of {} data sets have changed since {}",
+                            uris.size(), index.get(), lastModified);
+                }
+                if (numTest.get() > 0) {
+                    LOGGER.debug("Left out {} test data sets", numTest.get());
+                }
+                if (snapshot != null) {
+                    snapshot.completeListing();
+                    LOGGER.info("Listed {} data sets, of which {} are new " +
+                                    "or changed since the last snapshot of {}",
+                            index.get(), dataSetURIs.size(),
+                            snapshot.numPrevious());
                 }
                 LOGGER.debug("Fetched {} data sets", dataSetURIs.size());
             } else {
-                throw new HTTPException(
-                        "GET", uri, response.code(), null, bodyStr);
+                throw new HTTPException("GET", uri, response.code(), null,
+                        response.body().string());
             }
         }
     }
 
     /**
-     * Fetches and returns the data set at the given URI.
+     * <p>Decides whether a data set has changed since {@link #lastModified}.
+     * If its listing entry has an {@literal updated_at}, that decides.
+     * Otherwise, if a {@link #fingerprints fingerprint store} is configured,
+     * the data set has changed if its entry differs from the one in the
+     * store; if not, it is assumed to have changed.</p>
      *
-     * @return Data set, or {@code null} if the data set at the given URI is
-     *         a test data set.
+     * <p>All data sets are listed in the fingerprint store, so that it stays
+     * complete.</p>
      */
-    private DataSet fetchDataSet(String uri) throws IOException {
+    boolean isModified(String url, JSONObject dataSet) {
+        boolean isChanged = true;
+        if (fingerprints != null) {
+            isChanged = fingerprints.list(url, getContentFingerprint(dataSet));
+        }
+        final Instant updatedAt = getUpdatedAt(dataSet);
+        if (updatedAt != null) {
+            return updatedAt.isAfter(lastModified);
+        }
+        return isChanged;
+    }
+
+    private static Request newDataSetRequest(String uri) {
         LOGGER.debug("Fetching data set: {}", uri);
-        Request.Builder builder = new Request.Builder()
+        return new Request.Builder()
                 .method("GET", null)
                 .header("Accept", "application/json")
-                .url(uri);
-        Request request = builder.build();
-        try (Response response = getClient().newCall(request).execute()) {
-            final String bodyStr = response.body().string();
-            if (response.code() == 200) {
-                JSONObject jobj = new JSONObject(bodyStr);
-                return jobj.getBoolean("is_test") ? null : new DataSet(jobj);
-            } else {
-                throw new HTTPException(
-                        "GET", uri, response.code(), null, bodyStr);
-            }
+                .url(uri)
+                .build();
+    }
+
+    /**
+     * @return Data set, or {@code null} if the data set at the given URI is
+     *         a test data set.
+     */
+    /**
+     * @return {@link DataSet}, or a {@link TestDataSet} if the representation
+     *         says that it is one.
+     */
+    private static Entity parseDataSet(String uri,
+                                       Response response) throws IOException {
+        final String bodyStr = response.body().string();
+        if (response.code() == 200) {
+            JSONObject jobj = new JSONObject(bodyStr);
+            return jobj.getBoolean("is_test") ?
+                    new TestDataSet(jobj.optString("identifier", null), uri) :
+                    new DataSet(jobj);
+        } else {
+            throw new HTTPException(
+                    "GET", uri, response.code(), null, bodyStr);
         }
     }
 
+    /**
+     * @param uri Endpoint URI to use instead of {@literal
+     *            SERVICE_SOURCE_IDB_ENDPOINT}.
+     */
+    void setEndpointURI(String uri) {
+        this.endpointURI = uri;
+        this.dataSetURIs = null;
+    }
+
+    /**
+     * The snapshot keys data sets by URI, with the {@literal updated_at} of
+     * their {@literal /datasets} representations as fingerprints.
+     */
+    @Override
+    public void setListingSnapshot(Path file) throws IOException {
+        this.snapshot    = ListingSnapshot.open(file);
+        this.dataSetURIs = null;
+    }
+
+    /**
+     * Data sets whose listing entries lack an {@literal updated_at} are
+     * compared against the fingerprint store at {@literal
+     * SERVICE_SOURCE_IDB_FINGERPRINT_FILE}, if set, and otherwise always
+     * harvested.
+     */
     @Override
     public void setLastModified(Instant lastModified) {
-        // This service doesn't support incremental harvesting, but that's OK
-        // since it contains so little content.
+        this.lastModified = lastModified;
+        this.dataSetURIs  = null;
+        final Path file = getFingerprintFile();
+        if (file != null && fingerprints == null) {
+            try {
+                fingerprints = ListingSnapshot.open(file);
+                // Incremental harvests don't delete anything.
+                fingerprints.setWritingDeletedKeys(false);
+            } catch (IOException e) {
+                LOGGER.error("Failed to open {}; data sets without an " +
+                        "updated_at will all be harvested: {}",
+                        file, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Each shard gets every {@literal N}th data set.
+     */
+    @Override
+    public void setShard(Shard shard) {
+        this.shard = shard;
     }
 
     @Override
@@ -0,0 +1,144 @@
+package edu.illinois.library.metaslurper.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * <p>Fetches the pages of a listing by key ("keyset pagination"): each page
+ * after the first is requested as the results after the key of the last
+ * result of the previous page, instead of at an offset. Unlike offsets, keys
+ * don't shift when results are added or removed during a harvest, so results
+ * aren't skipped or returned twice, and deep pages are as cheap for the
+ * server as shallow ones.</p>
+ *
+ * <p>Servers that don't support the key parameter ignore it and return the
+ * first page again. This is detected on the second page, after which pages
+ * are fetched by offset instead.</p>
+ *
+ * <p>Each page depends on the previous one, so pages must be fetched in
+ * order, one at a time, starting at page {@literal 0}, for as long as the
+ * instance is {@link #isSequential() sequential}. A {@link PagePrefetcher}
+ * does so, and then fetches several pages at a time if the server turns out
+ * not to support keys.</p>
+ *
+ * @param <T> Element type.
+ */
+final class KeysetPageFetcher<T> implements PagePrefetcher.PageFetcher<T> {
+
+    /**
+     * One page of results.
+     */
+    static final class Page<T> {
+
+        private final List<T> elements;
+        private final String firstKey, lastKey;
+
+        /**
+         * @param elements Elements on the page.
+         * @param firstKey Key of the first element, or {@code null} if the
+         *                 page is empty or the results have no keys.
+         * @param lastKey  Key of the last element, or {@code null} if the
+         *                 page is empty or the results have no keys.
+         */
+        Page(List<T> elements, String firstKey, String lastKey) {
+            this.elements = elements;
+            this.firstKey = firstKey;
+            this.lastKey  = lastKey;
+        }
+
+        List<T> getElements() {
+            return elements;
+        }
+
+    }
+
+    /**
+     * Fetches a page by offset or by key.
+     */
+    @FunctionalInterface
+    interface PageSource<T> {
+
+        /**
+         * @param pageIndex Zero-based page index.
+         * @param afterKey  Key after which to return results, or {@code null}
+         *                  to return the page at the offset corresponding to
+         *                  the index.
+         * @return          Page.
+         */
+        Page<T> fetch(int pageIndex, String afterKey) throws IOException;
+
+    }
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(KeysetPageFetcher.class);
+
+    private final String name;
+    private final PageSource<T> source;
+    private String firstKey, lastKey;
+
+    /**
+     * {@code null} until it is known.
+     */
+    private volatile Boolean isKeysetSupported;
+
+    /**
+     * @param name   Name of the listing, used in log messages.
+     * @param source Fetches each page.
+     */
+    KeysetPageFetcher(String name, PageSource<T> source) {
+        this.name   = name;
+        this.source = source;
+    }
+
+    @Override
+    public List<T> fetch(int pageIndex) throws IOException {
+        if (Boolean.FALSE.equals(isKeysetSupported) ||
+                (pageIndex > 0 && lastKey == null)) {
+            if (isKeysetSupported == null) {
+                LOGGER.info("{}: results have no keys; paginating by offset",
+                        name);
+                isKeysetSupported = false;
+            }
+            return source.fetch(pageIndex, null).elements;
+        }
+        final Page<T> page = source.fetch(pageIndex,
+                (pageIndex > 0) ? lastKey : null);
+        if (pageIndex > 0 && isKeysetSupported == null) {
+            if (firstKey != null && firstKey.equals(page.firstKey)) {
+                LOGGER.info("{}: the server ignored the key parameter; " +
+                        "paginating by offset", name);
+                isKeysetSupported = false;
+                return source.fetch(pageIndex, null).elements;
+            }
+            isKeysetSupported = true;
+        }
+        if (pageIndex == 0) {
+            firstKey = page.firstKey;
+        }
+        if (!page.elements.isEmpty()) {
+            lastKey = page.lastKey;
+        }
+        return page.elements;
+    }
+
+    /**
+     * @return Whether pages are being fetched by key, which is {@code true}
+     *         until the second page has shown otherwise.
+     */
+    boolean isKeysetSupported() {
+        return !Boolean.FALSE.equals(isKeysetSupported);
+    }
+
+    /**
+     * @return Whether pages are being fetched by key, as each one then
+     *         depends on the previous one.
+     */
+    @Override
+    public boolean isSequential() {
+        return isKeysetSupported();
+    }
+
+}
@@ -0,0 +1,246 @@
+package edu.illinois.library.metaslurper.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>Compact record of a source service's listing&mdash;the key (e.g. URI) of
+ * each entity along with a fingerprint of its version (e.g. its last-modified
+ * time)&mdash;as of the last harvest, used to fetch only the entities that
+ * are new or have changed since then.</p>
+ *
+ * <p>Usage:</p>
+ *
+ * <ol>
+ *     <li>{@link #open(Path) Open} the snapshot.</li>
+ *     <li>{@link #list(String, String) List} every entity in the current
+ *     listing, and then {@link #completeListing() complete} it.</li>
+ *     <li>Fetch the entities that are changed.</li>
+ *     <li>{@link #record(String) Record} each changed entity once it has
+ *     been fetched.</li>
+ *     <li>{@link #save() Save} the snapshot. Changed entities that were not
+ *     recorded, e.g. because they failed, are left out, so that they are
+ *     fetched again next time.</li>
+ * </ol>
+ *
+ * <p>Entities in the previous snapshot that are missing from the current
+ * listing have been deleted from the source. They are available from {@link
+ * #getDeletedKeys()} and are written to a file alongside the snapshot, with
+ * the extension {@literal .deleted}, one key per line, unless {@link
+ * #setWritingDeletedKeys(boolean) disabled}.</p>
+ *
+ * <p>Fingerprints are stored as 64-bit hashes. The file is a gzipped stream of
+ * keys and hashes.</p>
+ */
+final class ListingSnapshot {
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(ListingSnapshot.class);
+
+    private static final int MAGIC   = 0x4d534c53; // "MSLS"
+    private static final int VERSION = 1;
+
+    private final Path file;
+
+    private volatile boolean isListingComplete;
+    private boolean isWritingDeletedKeys = true;
+
+    /**
+     * Keys and fingerprint hashes from the previous harvest.
+     */
+    private final Map<String, Long> previous;
+
+    /**
+     * Keys and fingerprint hashes of the current listing, including entities
+     * that are changed but have not been recorded.
+     */
+    private final Map<String, Long> listed = new ConcurrentHashMap<>();
+
+    /**
+     * Keys and fingerprint hashes to save.
+     */
+    private final Map<String, Long> current = new ConcurrentHashMap<>();
+
+    /**
+     * @param file Snapshot file, which may not exist yet.
+     * @return     New instance containing the contents of the file, if any.
+     * @throws IOException if the file exists but is not a snapshot.
+     */
+    static ListingSnapshot open(Path file) throws IOException {
+        final Map<String, Long> previous = new HashMap<>();
+        if (Files.exists(file)) {
+            try (InputStream is = Files.newInputStream(file);
+                 DataInputStream dis = new DataInputStream(
+                         new BufferedInputStream(new GZIPInputStream(is)))) {
+                if (dis.readInt() != MAGIC || dis.readInt() != VERSION) {
+                    throw new IOException(file + " is not a listing snapshot");
+                }
+                final int size = dis.readInt();
+                for (int i = 0; i < size; i++) {
+                    previous.put(dis.readUTF(), dis.readLong());
+                }
+            }
+        }
+        LOGGER.debug("Opened {} with {} entries", file, previous.size());
+        return new ListingSnapshot(file, previous);
+    }
+
+    /**
+     * FNV-1a hash of a fingerprint. {@code 0} is reserved for entities
+     * without one, which are always considered changed, but are still
+     * recorded so that their deletion can be detected.
+     */
+    private static long hash(String fingerprint) {
+        if (fingerprint == null) {
+            return 0;
+        }
+        long h = 0xcbf29ce484222325L;
+        for (byte b : fingerprint.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return (h != 0) ? h : 1;
+    }
+
+    private ListingSnapshot(Path file, Map<String, Long> previous) {
+        this.file     = file;
+        this.previous = previous;
+    }
+
+    /**
+     * @return Keys in the previous snapshot that have not been {@link
+     *         #list(String, String) listed}, in sorted order. This is only
+     *         meaningful once the listing is {@link #completeListing()
+     *         complete}.
+     */
+    List<String> getDeletedKeys() {
+        final List<String> keys = new ArrayList<>();
+        for (String key : previous.keySet()) {
+            if (!listed.containsKey(key)) {
+                keys.add(key);
+            }
+        }
+        Collections.sort(keys);
+        return keys;
+    }
+
+    /**
+     * Marks the whole listing as having been {@link #list(String, String)
+     * listed}, which allows the snapshot to be {@link #save() saved}.
+     */
+    void completeListing() {
+        isListingComplete = true;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Adds an entity from the current listing.
+     *
+     * @param key         Key of the entity.
+     * @param fingerprint Fingerprint of the entity's current version, or
+     *                    {@code null} if the listing doesn't provide one.
+     * @return            Whether the entity is new or has changed since the
+     *                    previous snapshot, and so needs to be fetched.
+     */
+    boolean list(String key, String fingerprint) {
+        final long hash = hash(fingerprint);
+        listed.put(key, hash);
+        if (hash != 0 && previous.containsKey(key) && previous.get(key) == hash) {
+            current.put(key, hash);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of entities in the previous snapshot.
+     */
+    int numPrevious() {
+        return previous.size();
+    }
+
+    /**
+     * Records that a changed entity has been fetched, so that it will be in
+     * the saved snapshot.
+     *
+     * @param key Key previously passed to {@link #list(String, String)}.
+     */
+    void record(String key) {
+        final Long hash = listed.get(key);
+        if (hash != null) {
+            current.put(key, hash);
+        }
+    }
+
+    /**
+     * @param isWritingDeletedKeys Whether {@link #save()} writes the file of
+     *                             deleted keys. Users that only use the
+     *                             snapshot to tell which entities have
+     *                             changed, and don't delete anything, can
+     *                             disable it.
+     */
+    void setWritingDeletedKeys(boolean isWritingDeletedKeys) {
+        this.isWritingDeletedKeys = isWritingDeletedKeys;
+    }
+
+    /**
+     * Writes the snapshot file, replacing the previous one, and the file of
+     * deleted keys, if {@link #setWritingDeletedKeys(boolean) enabled}. Nothing is written unless the listing is {@link
+     * #completeListing() complete}, as otherwise, the entities that didn't
+     * get listed would look deleted.
+     */
+    void save() throws IOException {
+        if (!isListingComplete) {
+            return;
+        }
+        final Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream os = Files.newOutputStream(tmpFile);
+             DataOutputStream dos = new DataOutputStream(
+                     new BufferedOutputStream(new GZIPOutputStream(os)))) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            // Copy the map, as it could be modified while being written.
+            final Map<String, Long> entries = new HashMap<>(current);
+            dos.writeInt(entries.size());
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                dos.writeUTF(entry.getKey());
+                dos.writeLong(entry.getValue());
+            }
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+
+        if (!isWritingDeletedKeys) {
+            LOGGER.info("Saved {} with {} entries", file, current.size());
+            return;
+        }
+        final List<String> deletedKeys = getDeletedKeys();
+        Files.write(file.resolveSibling(file.getFileName() + ".deleted"),
+                deletedKeys, StandardCharsets.UTF_8);
+        LOGGER.info("Saved {} with {} entries; {} deleted since the " +
+                "previous snapshot", file, current.size(), deletedKeys.size());
+    }
+
+}
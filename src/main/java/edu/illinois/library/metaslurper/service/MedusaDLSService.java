@@ -3,23 +3,27 @@ package edu.illinois.library.metaslurper.service;
 import edu.illinois.library.metaslurper.config.Configuration;
 import edu.illinois.library.metaslurper.entity.Entity;
 import okhttp3.Credentials;
+import okhttp3.Dispatcher;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Instant;
-import java.util.NoSuchElementException;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Alex Dolski UIUC
@@ -45,12 +49,52 @@ final class MedusaDLSService implements SourceService {
 
     private static OkHttpClient client;
 
+    /**
+     * Overrides the endpoint URI from the configuration.
+     */
+    private String endpointURI;
+
     private final AtomicBoolean isClosed = new AtomicBoolean();
 
-    private int numEntities = -1, windowSize = -1;
+    /**
+     * Fetcher of the most recent {@link #entities()} iterator.
+     */
+    private volatile AsyncFetcher<Entity> fetcher;
+
+    /**
+     * Total number of results, regardless of {@link #shard}.
+     */
+    private int numResults = -1, windowSize = -1;
 
     private Instant lastModified;
 
+    private Shard shard = Shard.ALL;
+
+    /**
+     * Number of entities to skip in {@link #entities()}.
+     */
+    private int startOffset;
+
+    /**
+     * Offsets after {@link #startOffset} of entities that were returned
+     * before resuming.
+     */
+    private Set<Long> skippedOffsets = Set.of();
+
+    private ListingSnapshot snapshot;
+
+    /**
+     * URIs of entities that are new or changed since the {@link #snapshot},
+     * populated by {@link #fetchChangedURIs()}.
+     */
+    private List<String> changedURIs;
+
+    /**
+     * Last-modified times of listed entities by URI, populated by {@link
+     * #fetchBatch(int, String)} while listing for the {@link #snapshot}.
+     */
+    private final Map<String, String> listedTimes = new ConcurrentHashMap<>();
+
     static synchronized OkHttpClient getClient() {
         if (client == null) {
             // N.B.: if an Authenticator is supplied to the Builder, the client
@@ -58,11 +102,21 @@ final class MedusaDLSService implements SourceService {
             // WWW-Authenticate header) for every request. Instead, we supply
             // credentials in request Authorization headers in order to
             // enable pre-emptive auth, which is more efficient.
+            // Entities are fetched asynchronously, so the dispatcher has to
+            // allow the whole in-flight window to the one host.
+            Dispatcher dispatcher = new Dispatcher();
+            dispatcher.setMaxRequests(getMaxInFlight());
+            dispatcher.setMaxRequestsPerHost(getMaxInFlight());
             OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                    .dispatcher(dispatcher)
                     .followRedirects(true)
                     .connectTimeout(REQUEST_TIMEOUT, TimeUnit.SECONDS)
                     .readTimeout(REQUEST_TIMEOUT, TimeUnit.SECONDS)
                     .writeTimeout(REQUEST_TIMEOUT, TimeUnit.SECONDS);
+            final String key = getServiceKey();
+            if (key != null) {
+                HTTPCache.forSource(key).configure(builder);
+            }
             client = builder.build();
         }
         return client;
@@ -71,9 +125,12 @@ final class MedusaDLSService implements SourceService {
     /**
      * @return Base URI of the service.
      */
-    private static String getEndpointURI() {
-        Configuration config = Configuration.getInstance();
-        String endpoint = config.getString("SERVICE_SOURCE_DLS_ENDPOINT");
+    private String getEndpointURI() {
+        String endpoint = endpointURI;
+        if (endpoint == null) {
+            Configuration config = Configuration.getInstance();
+            endpoint = config.getString("SERVICE_SOURCE_DLS_ENDPOINT");
+        }
         return (endpoint.endsWith("/")) ?
                 endpoint.substring(0, endpoint.length() - 1) : endpoint;
     }
@@ -82,7 +139,7 @@ final class MedusaDLSService implements SourceService {
      * Contains a paginated list of all available entities: items, collections,
      * and agents.
      */
-    private static String getHarvestURI() {
+    private String getHarvestURI() {
         return getEndpointURI() + "/harvest";
     }
 
@@ -96,19 +153,72 @@ final class MedusaDLSService implements SourceService {
         return config.getString("SERVICE_SOURCE_DLS_SECRET");
     }
 
+    /**
+     * @return Maximum number of entity requests to have in flight at once.
+     */
+    private static int getMaxInFlight() {
+        Configuration config = Configuration.getInstance();
+        String value = config.getString("SERVICE_SOURCE_DLS_MAX_IN_FLIGHT");
+        if (value != null) {
+            try {
+                return Math.max(Integer.parseInt(value.trim()), 1);
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid SERVICE_SOURCE_DLS_MAX_IN_FLIGHT: {}", value);
+            }
+        }
+        return AsyncFetcher.DEFAULT_MAX_IN_FLIGHT;
+    }
+
+    /**
+     * @return Number of results pages to fetch ahead of the entities being
+     *         harvested.
+     */
+    private static int getNumPrefetchPages() {
+        Configuration config = Configuration.getInstance();
+        String value = config.getString("SERVICE_SOURCE_DLS_PREFETCH_PAGES");
+        if (value != null) {
+            try {
+                return Math.max(Integer.parseInt(value.trim()), 1);
+            } catch (NumberFormatException e) {
+                LOGGER.warn("Invalid SERVICE_SOURCE_DLS_PREFETCH_PAGES: {}", value);
+            }
+        }
+        return PagePrefetcher.DEFAULT_NUM_PAGES_AHEAD;
+    }
+
     static String getServiceKey() {
         Configuration config = Configuration.getInstance();
         return config.getString("SERVICE_SOURCE_DLS_KEY");
     }
 
-    @Override
-    public void close() {
-        isClosed.set(true);
+    /**
+     * Shuts down the client, if it has been created, so that the next call
+     * to {@link #getClient()} creates a new one.
+     */
+    private static synchronized void shutdownClient() {
         if (client != null) {
             // If OkHttp isn't shut down manually, it will keep the app running
             // for a time after a harvest instead of immediately exiting.
             client.dispatcher().executorService().shutdown();
             client.connectionPool().evictAll();
+            client = null;
+        }
+    }
+
+    @Override
+    public void close() {
+        isClosed.set(true);
+        if (fetcher != null) {
+            fetcher.close();
+        }
+        shutdownClient();
+        if (snapshot != null) {
+            try {
+                snapshot.save();
+            } catch (IOException e) {
+                LOGGER.error("Failed to save {}: {}",
+                        snapshot.getFile(), e.getMessage(), e);
+            }
         }
     }
 
@@ -124,143 +234,383 @@ final class MedusaDLSService implements SourceService {
 
     @Override
     public int numEntities() throws IOException {
-        if (numEntities < 0) {
+        if (snapshot != null) {
+            fetchChangedURIs();
+            return changedURIs.size();
+        }
+        fetchCounts();
+        if (shard.isAll()) {
+            return numResults;
+        }
+        return Math.min(getEndBatch() * windowSize, numResults) -
+                getStartBatch() * windowSize;
+    }
+
+    /**
+     * Populates {@link #numResults} and {@link #windowSize} if they haven't
+     * been already.
+     */
+    private void fetchCounts() throws IOException {
+        if (numResults < 0) {
             String uri = getHarvestURI();
             if (lastModified != null) {
                 uri += "?last_modified_after=" + lastModified.getEpochSecond();
             }
-            Request.Builder builder = new Request.Builder()
-                    .method("GET", null)
-                    .header("Accept", "application/json")
-                    .header("Authorization", Credentials.basic(getUsername(), getSecret()))
-                    .url(uri);
-            Request request = builder.build();
+            Request request = newRequest(uri);
             try (Response response = getClient().newCall(request).execute()) {
-                final String bodyStr = response.body().string();
+                if (response.code() != 200) {
+                    throw new HTTPException("GET", uri, response.code(), null,
+                            response.body().string());
+                }
                 try {
-                    JSONObject jobj = new JSONObject(bodyStr);
-                    numEntities     = jobj.getInt("numResults");
+                    // Only the counts are needed, not the results.
+                    JSONObject jobj = StreamingJSONParser.parseObject(
+                            response.body().charStream(), "results", result -> {});
+                    numResults      = jobj.getInt("numResults");
                     windowSize      = jobj.getInt("windowSize");
                 } catch (JSONException e) {
                     throw new HTTPException(
-                            "GET", uri, response.code(), null, bodyStr, e);
+                            "GET", uri, response.code(), null, null, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetches the whole listing, several pages at a time, and populates
+     * {@link #changedURIs} with the entities that are new or changed since
+     * the {@link #snapshot}, if it hasn't been already.
+     */
+    private void fetchChangedURIs() throws IOException {
+        if (changedURIs != null) {
+            return;
+        } else if (!shard.isAll() || lastModified != null) {
+            throw new IllegalStateException("Listing snapshots are not " +
+                    "compatible with sharding or incremental harvesting");
+        }
+        fetchCounts();
+        final int numPagesAhead = getNumPrefetchPages();
+        final List<String> changed = new ArrayList<>();
+        int numListed = 0;
+        try (PagePrefetcher<String> pages = new PagePrefetcher<>(
+                getClass().getSimpleName() + "-listing",
+                batchIndex -> fetchBatch(batchIndex, null).getElements(),
+                0, getNumBatches(), true, numPagesAhead,
+                numPagesAhead * windowSize)) {
+            pages.start();
+            while (true) {
+                final String uri;
+                try {
+                    uri = pages.take();
+                } catch (EndOfIterationException e) {
+                    break;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+                numListed++;
+                if (snapshot.list(uri, listedTimes.remove(uri))) {
+                    changed.add(uri);
                 }
             }
         }
-        return numEntities;
+        snapshot.completeListing();
+        LOGGER.info("Listed {} entities, of which {} are new or changed " +
+                "since the last snapshot of {}", numListed, changed.size(),
+                snapshot.numPrevious());
+        changedURIs = changed;
+    }
+
+    private int getNumBatches() {
+        return (int) Math.ceil(numResults / (double) windowSize);
     }
 
     /**
-     * Provides an iterator of all entities in the service. Results pages and
-     * entity representations are fetched on-demand during iteration.
+     * @return Index of the first batch in the {@link #shard}.
+     */
+    private int getStartBatch() {
+        return shard.getStart(getNumBatches());
+    }
+
+    /**
+     * @return Index after the last batch in the {@link #shard}. When not
+     *         sharding, iteration continues until an empty batch is returned
+     *         instead, in case entities were added during the harvest.
+     */
+    private int getEndBatch() {
+        return shard.isAll() ?
+                Integer.MAX_VALUE : shard.getEnd(getNumBatches());
+    }
+
+    /**
+     * Provides an iterator of all entities in the service, or of the
+     * contiguous range of results pages in the {@link #setShard(Shard)
+     * shard}. Results pages are fetched in the background ahead of the
+     * iterator by a {@link PagePrefetcher}, and entity representations are
+     * fetched asynchronously by an {@link AsyncFetcher} and returned in the
+     * order in which they arrive.
+     *
+     * <p>A full harvest that isn't resuming paginates by {@link
+     * KeysetPageFetcher key}, so that entities added or removed during the
+     * harvest don't shift the pages, unless the server doesn't support it.
+     * Each page then depends on the previous one, so pages are fetched one
+     * at a time instead of several, until the second page shows that the
+     * server doesn't support it.</p>
+     *
+     * <p>With a {@link #setListingSnapshot(Path) listing snapshot}, the whole
+     * listing is fetched first, and only the entities that are new or
+     * changed are iterated.</p>
      */
     @Override
-    public ConcurrentIterator<? extends Entity> entities() {
-        // Queue of entity URIs.
-        final Queue<String> batch = new ConcurrentLinkedQueue<>();
-        final AtomicInteger batchIndex = new AtomicInteger();
+    public ConcurrentIterator<? extends Entity> entities() throws IOException {
+        if (snapshot != null) {
+            return changedEntities();
+        }
+        fetchCounts();
+        final int firstOffset = Math.max(startOffset,
+                getStartBatch() * windowSize);
+        final int firstBatch  = firstOffset / windowSize;
+        // Number of URIs to discard from the first batch when resuming.
+        final int numToSkip   = firstOffset % windowSize;
+        final boolean isKeyset = (firstOffset == 0 && shard.isAll());
+        final int numPagesAhead = getNumPrefetchPages();
+
+        if (fetcher != null) {
+            fetcher.close();
+        }
+        final PagePrefetcher.PageFetcher<String> pageFetcher = isKeyset ?
+                new KeysetPageFetcher<>(getClass().getSimpleName(), this::fetchBatch) :
+                batchIndex -> {
+                    List<String> uris = fetchBatch(batchIndex, null).getElements();
+                    return (batchIndex == firstBatch && numToSkip > 0) ?
+                            uris.subList(Math.min(numToSkip, uris.size()), uris.size()) :
+                            uris;
+                };
+        final PagePrefetcher<String> pages = new PagePrefetcher<>(
+                getClass().getSimpleName(),
+                pageFetcher,
+                firstBatch,
+                Math.min(getEndBatch(), getNumBatches()),
+                shard.isAll(),
+                numPagesAhead,
+                numPagesAhead * windowSize);
+        return iterate(new AsyncFetcher<>(
+                getClass().getSimpleName(),
+                pages.start(),
+                firstOffset,
+                getClient(),
+                MedusaDLSService::newEntityRequest,
+                MedusaDLSService::parseEntity,
+                getMaxInFlight()));
+    }
+
+    /**
+     * @return Iterator of the entities in {@link #changedURIs}, which are
+     *         recorded in the {@link #snapshot} as they are returned, so that
+     *         any that are fetched ahead but not returned before the harvest
+     *         ends are still new or changed the next time. The cursor is an
+     *         offset into them.
+     */
+    private ConcurrentIterator<? extends Entity> changedEntities()
+            throws IOException {
+        fetchChangedURIs();
+        final List<String> uris = changedURIs;
+        final int firstOffset   = Math.min(startOffset, uris.size());
+        final int numBatches    =
+                (int) Math.ceil(uris.size() / (double) windowSize);
+        if (fetcher != null) {
+            fetcher.close();
+        }
+        final PagePrefetcher<String> pages = new PagePrefetcher<>(
+                getClass().getSimpleName(),
+                batchIndex -> uris.subList(
+                        Math.max(batchIndex * windowSize, firstOffset),
+                        Math.min((batchIndex + 1) * windowSize, uris.size())),
+                firstOffset / windowSize, numBatches, false, 1, windowSize);
+        return iterate(new AsyncFetcher<>(
+                getClass().getSimpleName(),
+                pages.start(),
+                firstOffset,
+                getClient(),
+                MedusaDLSService::newEntityRequest,
+                MedusaDLSService::parseEntity,
+                getMaxInFlight()).setTakeListener(snapshot::record));
+    }
+
+    /**
+     * @param entities Fetcher to start and iterate.
+     */
+    private ConcurrentIterator<Entity> iterate(AsyncFetcher<Entity> entities) {
+        fetcher = entities.setSkippedPositions(skippedOffsets).start();
 
-        // Return an iterator that consumes the queue.
+        // Return an iterator that consumes the fetcher's results.
         return new ConcurrentIterator<>() {
             @Override
             public Entity next() throws Exception {
-                // If the queue is empty, fetch the next batch.
-                synchronized (this) {
-                    if (batch.peek() == null) {
-                        fetchBatch(batch, batchIndex.getAndIncrement());
-                    }
-                }
-                try {
-                    return fetchEntity(batch.remove());
-                } catch (NoSuchElementException e) {
-                    throw new EndOfIterationException();
-                }
+                return entities.take();
+            }
+
+            /**
+             * Entities are returned out of order, so the cursor is an offset
+             * followed by the offsets after it of the entities that have
+             * already been returned.
+             */
+            @Override
+            public String cursor() {
+                return entities.cursor();
             }
         };
     }
 
     /**
-     * @param batch      Queue of entity URIs.
      * @param batchIndex Zero-based batch index.
+     * @param afterID    ID of the last result of the previous batch, if
+     *                   paginating by key, or {@code null} to paginate by
+     *                   offset.
+     * @return           Entity URIs in the batch, which is empty if the
+     *                   instance has been closed, keyed by result ID.
      */
-    private void fetchBatch(final Queue<String> batch,
-                            final int batchIndex) throws IOException {
+    private KeysetPageFetcher.Page<String> fetchBatch(final int batchIndex,
+                                                      final String afterID)
+            throws IOException {
+        final List<String> batch = new ArrayList<>(windowSize);
+        String firstID = null, lastID = null;
         if (isClosed.get()) {
             LOGGER.debug("fetchBatch(): stopping");
-            return;
+            return new KeysetPageFetcher.Page<>(batch, null, null);
         }
 
-        final int numResults = numEntities();
-        final int numBatches = (int) Math.ceil(numResults / (double) windowSize);
+        final int numBatches = getNumBatches();
         final int offset = batchIndex * windowSize;
 
-        String uri = String.format("%s?start=%d", getHarvestURI(), offset);
+        String uri = (afterID != null) ?
+                String.format("%s?after_id=%s", getHarvestURI(),
+                        URLEncoder.encode(afterID, StandardCharsets.UTF_8)) :
+                String.format("%s?start=%d", getHarvestURI(), offset);
         if (lastModified != null) {
             uri += "&last_modified_after=" + lastModified.getEpochSecond();
         }
         LOGGER.debug("Fetching batch {} of {}: {}",
                 batchIndex + 1, numBatches, uri);
 
-        Request.Builder builder = new Request.Builder()
-                .method("GET", null)
-                .header("Accept", "application/json")
-                .header("Authorization", Credentials.basic(getUsername(), getSecret()))
-                .url(uri);
-        Request request = builder.build();
+        Request request = newRequest(uri);
+        final List<String> ids = new ArrayList<>(windowSize);
         try (Response response = getClient().newCall(request).execute()) {
-            String bodyStr = response.body().string();
             if (response.code() == 200) {
-                JSONObject jobj = new JSONObject(bodyStr);
-                JSONArray jarr = jobj.getJSONArray("results");
-                for (int i = 0; i < jarr.length(); i++) {
-                    batch.add(jarr.getJSONObject(i).getString("uri"));
+                StreamingJSONParser.parseObject(response.body().charStream(),
+                        "results", result -> {
+                    batch.add(result.getString("uri"));
+                    if (snapshot != null && result.has("updated_at")) {
+                        listedTimes.put(result.getString("uri"),
+                                result.get("updated_at").toString());
+                    }
+                    ids.add(result.optString("id", null));
+                });
+                if (!ids.isEmpty()) {
+                    firstID = ids.get(0);
+                    lastID  = ids.get(ids.size() - 1);
                 }
             } else {
-                throw new HTTPException(
-                        "GET", uri, response.code(), null, bodyStr);
+                HTTPException e = new HTTPException("GET", uri,
+                        response.code(), null, response.body().string());
+                e.setRetryAfter(HTTPException.parseRetryAfter(
+                        response.header("Retry-After")));
+                throw e;
             }
         }
         LOGGER.debug("Fetched {} results", batch.size());
+        return new KeysetPageFetcher.Page<>(batch, firstID, lastID);
     }
 
-    private Entity fetchEntity(String uri) throws IOException {
-        LOGGER.debug("Fetching entity: {}", uri);
-
+    /**
+     * @return Request for the JSON representation at the given URI, with
+     *         pre-emptive basic auth if a username is configured.
+     */
+    private static Request newRequest(String uri) {
         Request.Builder builder = new Request.Builder()
                 .method("GET", null)
                 .header("Accept", "application/json")
-                .header("Authorization", Credentials.basic(getUsername(), getSecret()))
                 .url(uri);
-        Request request = builder.build();
-        try (Response response = getClient().newCall(request).execute()) {
-            final String bodyStr = response.body().string();
-            switch (response.code()) {
-                case 200:
-                    JSONObject jobj = new JSONObject(bodyStr);
-                    String variant = jobj.getString("class");
-                    switch (variant) {
-                        case "Agent":
-                            return new MedusaDLSAgent(jobj, uri);
-                        case "Collection":
-                            return new MedusaDLSCollection(jobj);
-                        case "Item":
-                            return new MedusaDLSItem(jobj);
-                        default:
-                            throw new IllegalArgumentException(
-                                    "Unrecognized variant: " + variant);
-                    }
-                default:
-                    throw new HTTPException(
-                            "GET", uri, response.code(), null, bodyStr);
-            }
+        if (getUsername() != null) {
+            builder.header("Authorization",
+                    Credentials.basic(getUsername(), getSecret()));
+        }
+        return builder.build();
+    }
+
+    private static Request newEntityRequest(String uri) {
+        LOGGER.debug("Fetching entity: {}", uri);
+        return newRequest(uri);
+    }
+
+    private static Entity parseEntity(String uri,
+                                      Response response) throws IOException {
+        final String bodyStr = response.body().string();
+        switch (response.code()) {
+            case 200:
+                JSONObject jobj = new JSONObject(bodyStr);
+                String variant = jobj.getString("class");
+                switch (variant) {
+                    case "Agent":
+                        return new MedusaDLSAgent(jobj, uri);
+                    case "Collection":
+                        return new MedusaDLSCollection(jobj);
+                    case "Item":
+                        return new MedusaDLSItem(jobj);
+                    default:
+                        throw new IllegalArgumentException(
+                                "Unrecognized variant: " + variant);
+                }
+            default:
+                throw new HTTPException(
+                        "GET", uri, response.code(), null, bodyStr);
         }
     }
 
+    /**
+     * @param cursor Offset into the harvest results, optionally followed by
+     *               the offsets after it of entities to skip, as returned by
+     *               the iterator's {@link ConcurrentIterator#cursor()}.
+     */
+    @Override
+    public void setCursor(String cursor) {
+        this.startOffset    = (int) AsyncFetcher.parseFirstPosition(cursor);
+        this.skippedOffsets = AsyncFetcher.parseSkippedPositions(cursor);
+    }
+
+    /**
+     * The snapshot keys entities by URI, with the {@literal updated_at} of
+     * their {@literal /harvest} results as fingerprints. Entities whose
+     * results lack it are always fetched.
+     */
+    @Override
+    public void setListingSnapshot(Path file) throws IOException {
+        this.snapshot    = ListingSnapshot.open(file);
+        this.changedURIs = null;
+    }
+
+    /**
+     * @param uri Base URI of the service, overriding the one in the
+     *            configuration.
+     */
+    void setEndpointURI(String uri) {
+        this.endpointURI = uri;
+        this.numResults  = -1;
+    }
+
     @Override
     public void setLastModified(Instant lastModified)
             throws UnsupportedOperationException {
         this.lastModified = lastModified;
-        this.numEntities  = -1;
+        this.numResults   = -1;
+    }
+
+    /**
+     * Each shard gets a contiguous range of results pages.
+     */
+    @Override
+    public void setShard(Shard shard) {
+        this.shard = shard;
     }
 
     @Override
@@ -4,6 +4,7 @@ import edu.illinois.library.metaslurper.harvest.Harvest;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -15,6 +16,18 @@ final class MetaslurpHarvest {
     private String key;
     private Harvest harvest;
 
+    /**
+     * Sequence number of the last {@link Harvest.Message} that has been sent
+     * successfully.
+     */
+    private long lastSentMessageSequence;
+
+    /**
+     * Sequence number of the last {@link Harvest.Message} included in the
+     * most recent return value of {@link #toJSON()}.
+     */
+    private long lastPendingMessageSequence;
+
     MetaslurpHarvest(String key, int numEntities) {
         this.key = key;
         this.numEntities.set(numEntities);
@@ -56,20 +69,62 @@ final class MetaslurpHarvest {
         }
     }
 
+    /**
+     * To be called after the return value of {@link #toJSON()} has been sent
+     * successfully, so that the messages in it won't be sent again.
+     */
+    synchronized void markSent() {
+        lastSentMessageSequence = lastPendingMessageSequence;
+    }
+
     void setHarvest(Harvest harvest) {
         this.harvest = harvest;
     }
 
-    String toJSON() {
+    /**
+     * @return JSON representation of the harvest, including only those
+     *         messages that have not yet been {@link #markSent() sent}.
+     */
+    synchronized String toJSON() {
         JSONObject jobj = new JSONObject();
         jobj.put("status", getStatusCode());
         jobj.put("num_items", numEntities.get());
         jobj.put("num_succeeded", harvest.getNumSucceeded());
         jobj.put("num_failed", harvest.getNumFailed());
+        jobj.put("num_skipped", harvest.getNumSkipped());
+        jobj.put("throughput",
+                Math.round(harvest.getThroughput() * 100) / 100.0);
+        harvest.getETA().ifPresent(eta -> jobj.put("eta", eta.toString()));
+        if (!harvest.getShard().isAll()) {
+            // The counts are for this shard only, for the web app to sum up
+            // with those of the other shards.
+            jobj.put("shard_index", harvest.getShard().getIndex());
+            jobj.put("num_shards", harvest.getShard().getCount());
+        }
+        final HTTPCache.Counts cacheCounts = harvest.getCacheCounts();
+        if (!cacheCounts.isEmpty()) {
+            jobj.put("num_cache_hits", cacheCounts.getNumHits());
+            jobj.put("num_cache_misses", cacheCounts.getNumMisses());
+            jobj.put("cache_bytes_saved", cacheCounts.getNumBytesSaved());
+        }
+        if (harvest.getConcurrencyLimit() > 0) {
+            jobj.put("concurrency_limit", harvest.getConcurrencyLimit());
+        }
+        harvest.getQueueDepths().ifPresent(depths -> {
+            jobj.put("fetched_queue_depth", depths.getNumFetched());
+            jobj.put("prepared_queue_depth", depths.getNumPrepared());
+            jobj.put("max_fetched_queue_depth", depths.getMaxNumFetched());
+            jobj.put("max_prepared_queue_depth", depths.getMaxNumPrepared());
+        });
         JSONArray jmessages = new JSONArray();
-        for (String message : harvest.getMessages()) {
-            jmessages.put(message);
+        List<Harvest.Message> messages =
+                harvest.getMessagesSince(lastSentMessageSequence);
+        for (Harvest.Message message : messages) {
+            jmessages.put(message.getText());
         }
+        lastPendingMessageSequence = messages.isEmpty() ?
+                lastSentMessageSequence :
+                messages.get(messages.size() - 1).getSequence();
         jobj.put("messages", jmessages);
         return jobj.toString();
     }
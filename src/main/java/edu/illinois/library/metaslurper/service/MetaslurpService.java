@@ -2,7 +2,9 @@ package edu.illinois.library.metaslurper.service;
 
 import edu.illinois.library.metaslurper.config.Configuration;
 import edu.illinois.library.metaslurper.entity.ConcreteEntity;
+import edu.illinois.library.metaslurper.entity.Element;
 import edu.illinois.library.metaslurper.entity.Entity;
+import edu.illinois.library.metaslurper.entity.Image;
 import edu.illinois.library.metaslurper.entity.Variant;
 import edu.illinois.library.metaslurper.harvest.HarvestClosedException;
 import edu.illinois.library.metaslurper.harvest.Harvest;
@@ -22,6 +24,7 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.StandardCharsets;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -31,13 +34,106 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 final class MetaslurpService implements SinkService {
 
+    /**
+     * Entity that has already been serialized by {@link
+     * #prepare(ConcreteEntity)}.
+     */
+    private static final class SerializedEntity implements ConcreteEntity {
+
+        private final ConcreteEntity entity;
+        private final String json;
+
+        private SerializedEntity(ConcreteEntity entity, String json) {
+            this.entity = entity;
+            this.json   = json;
+        }
+
+        @Override
+        public Set<Image> getAccessImages() {
+            return entity.getAccessImages();
+        }
+
+        @Override
+        public String getContainerName() {
+            return entity.getContainerName();
+        }
+
+        @Override
+        public String getContainerSinkID() {
+            return entity.getContainerSinkID();
+        }
+
+        @Override
+        public Set<Element> getElements() {
+            return entity.getElements();
+        }
+
+        @Override
+        public String getFullText() {
+            return entity.getFullText();
+        }
+
+        @Override
+        public String getMediaType() {
+            return entity.getMediaType();
+        }
+
+        @Override
+        public String getParentSinkID() {
+            return entity.getParentSinkID();
+        }
+
+        @Override
+        public String getServiceKey() {
+            return entity.getServiceKey();
+        }
+
+        @Override
+        public String getSinkID() {
+            return entity.getSinkID();
+        }
+
+        @Override
+        public String getSourceID() {
+            return entity.getSourceID();
+        }
+
+        @Override
+        public String getSourceURI() {
+            return entity.getSourceURI();
+        }
+
+        @Override
+        public Variant getVariant() {
+            return entity.getVariant();
+        }
+
+        @Override
+        public String toString() {
+            return entity.toString();
+        }
+
+    }
+
     private static final Logger LOGGER =
             LoggerFactory.getLogger(MetaslurpService.class);
 
     private static final String NAME = "Metaslurp";
     private static final long REQUEST_TIMEOUT = 30;
 
-    private OkHttpClient client;
+    /**
+     * Shared by all instances, so that several harvests running at once use
+     * the same connection pool.
+     */
+    private static OkHttpClient client;
+
+    /**
+     * Number of instances that have used {@link #client} and not yet been
+     * closed.
+     */
+    private static int numClientUsers;
+
+    private boolean isUsingClient;
     private final AtomicBoolean isClosed = new AtomicBoolean();
     private MetaslurpHarvest harvest;
     private int numEntities;
@@ -71,30 +167,44 @@ final class MetaslurpService implements SinkService {
         return getEndpointURI().resolve("/api/v1/items/" + entity.getSinkID());
     }
 
-    private synchronized OkHttpClient getClient() {
-        if (client == null) {
-            // N.B.: if an Authenticator is supplied to the Builder, the client
-            // will use reactive auth (i.e. waiting for HTTP 401 +
-            // WWW-Authenticate header) for every request. Instead, we supply
-            // credentials in request Authorization headers in order to
-            // enable pre-emptive auth, which is more efficient.
-            OkHttpClient.Builder builder = new OkHttpClient.Builder()
-                    .followRedirects(true)
-                    .connectTimeout(REQUEST_TIMEOUT, TimeUnit.SECONDS)
-                    .readTimeout(REQUEST_TIMEOUT, TimeUnit.SECONDS)
-                    .writeTimeout(REQUEST_TIMEOUT, TimeUnit.SECONDS);
-            client = builder.build();
+    private OkHttpClient getClient() {
+        synchronized (MetaslurpService.class) {
+            if (!isUsingClient) {
+                isUsingClient = true;
+                numClientUsers++;
+            }
+            if (client == null) {
+                // N.B.: if an Authenticator is supplied to the Builder, the
+                // client will use reactive auth (i.e. waiting for HTTP 401 +
+                // WWW-Authenticate header) for every request. Instead, we
+                // supply credentials in request Authorization headers in order
+                // to enable pre-emptive auth, which is more efficient.
+                OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                        .followRedirects(true)
+                        .connectTimeout(REQUEST_TIMEOUT, TimeUnit.SECONDS)
+                        .readTimeout(REQUEST_TIMEOUT, TimeUnit.SECONDS)
+                        .writeTimeout(REQUEST_TIMEOUT, TimeUnit.SECONDS);
+                client = builder.build();
+            }
+            return client;
         }
-        return client;
     }
 
     @Override
     public void close() {
-        if (client != null) {
-            // If OkHttp isn't shut down manually, it will keep the app running
-            // for a time after a harvest instead of immediately exiting.
-            client.dispatcher().executorService().shutdown();
-            client.connectionPool().evictAll();
+        synchronized (MetaslurpService.class) {
+            if (!isUsingClient) {
+                return;
+            }
+            isUsingClient = false;
+            if (--numClientUsers == 0 && client != null) {
+                // If OkHttp isn't shut down manually, it will keep the app
+                // running for a time after a harvest instead of immediately
+                // exiting.
+                client.dispatcher().executorService().shutdown();
+                client.connectionPool().evictAll();
+                client = null;
+            }
         }
     }
 
@@ -142,7 +252,8 @@ final class MetaslurpService implements SinkService {
         }
 
         final String uri = getURI(entity).toString();
-        final String json = toJSON(entity);
+        final String json = (entity instanceof SerializedEntity) ?
+                ((SerializedEntity) entity).json : toJSON(entity);
 
         LOGGER.debug("Ingesting {} {}: {}",
                 entity.getVariant().name().toLowerCase(), entity, json);
@@ -173,12 +284,27 @@ final class MetaslurpService implements SinkService {
                     throw new HarvestClosedException(
                             "Harvest " + harvest + " has been aborted.");
                 default:
-                    throw new HTTPException("PUT",
+                    HTTPException e = new HTTPException("PUT",
                             uri, response.code(), json, response.body().string());
+                    e.setRetryAfter(HTTPException.parseRetryAfter(
+                            response.header("Retry-After")));
+                    throw e;
             }
         }
     }
 
+    /**
+     * Serializes the given entity into the JSON that {@link
+     * #ingest(ConcreteEntity)} will send.
+     */
+    @Override
+    public ConcreteEntity prepare(ConcreteEntity entity) {
+        if (entity instanceof SerializedEntity) {
+            return entity;
+        }
+        return new SerializedEntity(entity, toJSON(entity));
+    }
+
     /**
      * Populates {@link #harvest}.
      */
@@ -251,6 +377,7 @@ final class MetaslurpService implements SinkService {
                 throw new HTTPException("PATCH",
                         uri, response.code(), json, response.body().string());
             }
+            this.harvest.markSent();
         }
     }
 
@@ -7,7 +7,9 @@ import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Transforms an IDEALS {@code native} element in OAI-PMH to a local
@@ -15,6 +17,9 @@ import java.util.List;
  */
 final class NativeElementTransformer implements ElementTransformer {
 
+    private static final String[] NAME_ATTRIBUTES =
+            { "schema", "element", "qualifier" };
+
     /**
      * Transforms the given node into an element whose value corresponds to
      * the node's text content and name corresponds to the string
@@ -24,26 +29,43 @@ final class NativeElementTransformer implements ElementTransformer {
      */
     @Override
     public Element transform(Node pmhNode) {
+        final Map<String,String> attributes = new HashMap<>();
         final NamedNodeMap attrs = pmhNode.getAttributes();
-        if (attrs.getLength() > 0) {
-            final List<String> nameParts = new ArrayList<>();
-            for (String s : new String[] { "schema", "element", "qualifier"}) {
+        if (attrs != null) {
+            for (String s : NAME_ATTRIBUTES) {
                 Node attr = attrs.getNamedItem(s);
                 if (attr != null) {
-                    String value = attr.getNodeValue();
-                    if (value != null && !value.isEmpty()) {
-                        nameParts.add(value);
-                    }
+                    attributes.put(s, attr.getNodeValue());
+                }
+            }
+        }
+        return transform(pmhNode.getNodeName(), attributes,
+                pmhNode.getTextContent());
+    }
+
+    /**
+     * Streaming counterpart of {@link #transform(Node)}.
+     */
+    @Override
+    public Element transform(String name,
+                             Map<String,String> attributes,
+                             String textContent) {
+        if (!attributes.isEmpty()) {
+            final List<String> nameParts = new ArrayList<>();
+            for (String s : NAME_ATTRIBUTES) {
+                String value = attributes.get(s);
+                if (value != null && !value.isEmpty()) {
+                    nameParts.add(value);
                 }
             }
-            String name  = String.join(":", nameParts);
-            String value = pmhNode.getTextContent();
-            if (name != null && !name.isEmpty() &&
-                    value != null && !value.isEmpty()) {
-                return new Element(name, value);
+            String joinedName = String.join(":", nameParts);
+            if (!joinedName.isEmpty() &&
+                    textContent != null && !textContent.isEmpty()) {
+                return new Element(joinedName, textContent);
             }
         }
-        return new DefaultElementTransformer().transform(pmhNode);
+        return new DefaultElementTransformer()
+                .transform(name, attributes, textContent);
     }
 
 }
@@ -0,0 +1,357 @@
+package edu.illinois.library.metaslurper.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Fetches the pages of a paginated listing in the background, several at a
+ * time, and queues up their elements in order for any number of consumers to
+ * {@link #take() take}, so that consumers don't all have to wait for a full
+ * round trip at every page boundary.</p>
+ *
+ * <p>Up to {@literal numPagesAhead} pages are fetched concurrently, or only
+ * one at a time while the fetcher is {@link PageFetcher#isSequential()
+ * sequential}. The element queue is bounded, so fetching pauses when consumers fall behind.
+ * Pages are queued up in page order by default, or, if {@link
+ * #setOrdered(boolean) ordering} is turned off, as soon as they arrive, so
+ * that a slow page doesn't hold up the ones after it. Either way, the end of
+ * the listing is decided by the page count (and, if open-ended, by the first
+ * empty page after it), not by the queue running dry.</p>
+ *
+ * <p>A page that fails with a transient error is retried. If it still fails,
+ * its error is thrown from {@link #take()} once, in place of its elements,
+ * and fetching continues with the next page.</p>
+ *
+ * @param <T> Element type.
+ */
+final class PagePrefetcher<T> implements Closeable {
+
+    /**
+     * Fetches one page of a listing.
+     */
+    @FunctionalInterface
+    interface PageFetcher<T> {
+
+        /**
+         * @param pageIndex Zero-based page index.
+         * @return          Elements on the page, which is empty past the end
+         *                  of the listing.
+         */
+        List<T> fetch(int pageIndex) throws IOException;
+
+        /**
+         * @return Whether each page depends on the previous one, so that
+         *         pages have to be fetched in order, one at a time. This is
+         *         checked before each page is requested, so it may change
+         *         from {@code true} to {@code false} during the listing.
+         */
+        default boolean isSequential() {
+            return false;
+        }
+
+    }
+
+    /**
+     * Page that has been fetched, or has failed.
+     */
+    private static final class FetchedPage<T> {
+
+        private final int index;
+        private final List<T> elements;
+        private final IOException error;
+
+        private FetchedPage(int index, List<T> elements, IOException error) {
+            this.index    = index;
+            this.elements = elements;
+            this.error    = error;
+        }
+
+    }
+
+    /**
+     * Element of the queue: an element of a page, a page's error, or the end
+     * of the listing.
+     */
+    private static final class Slot<T> {
+
+        private final T element;
+        private final IOException error;
+
+        private Slot(T element, IOException error) {
+            this.element = element;
+            this.error   = error;
+        }
+
+        private boolean isEnd() {
+            return element == null && error == null;
+        }
+
+    }
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(PagePrefetcher.class);
+
+    static final int DEFAULT_NUM_PAGES_AHEAD = 4;
+
+    /**
+     * Number of times a page is attempted before its error is passed on.
+     */
+    static final int MAX_ATTEMPTS = 3;
+
+    private static final Duration MAX_RETRY_DELAY = Duration.ofMinutes(1);
+
+    private final String name;
+    private final PageFetcher<T> fetcher;
+    private final int startPage, knownEndPage, numPagesAhead;
+    private final boolean isOpenEnded;
+    private final BlockingQueue<Slot<T>> queue;
+    private final Slot<T> endSlot = new Slot<>(null, null);
+    private final AtomicBoolean isClosed = new AtomicBoolean();
+    private final ExecutorService pageExecutor;
+    private final Thread feeder;
+    private Duration retryDelay = Duration.ofSeconds(1);
+    private boolean isOrdered = true;
+
+    /**
+     * @param name          Name of the listing, used in thread names and log
+     *                      messages.
+     * @param fetcher       Fetches each page.
+     * @param startPage     Index of the first page to fetch.
+     * @param knownEndPage  Index after the last page known to exist.
+     * @param isOpenEnded   Whether to keep fetching pages after {@literal
+     *                      knownEndPage}, one at a time, until an empty one is
+     *                      returned, in case the listing grew after its size
+     *                      was obtained.
+     * @param numPagesAhead Maximum number of pages to fetch concurrently.
+     * @param capacity      Maximum number of elements to queue up.
+     */
+    PagePrefetcher(String name,
+                   PageFetcher<T> fetcher,
+                   int startPage,
+                   int knownEndPage,
+                   boolean isOpenEnded,
+                   int numPagesAhead,
+                   int capacity) {
+        this.name          = name;
+        this.fetcher       = fetcher;
+        this.startPage     = startPage;
+        this.knownEndPage  = knownEndPage;
+        this.isOpenEnded   = isOpenEnded;
+        this.numPagesAhead = Math.max(numPagesAhead, 1);
+        this.queue         = new LinkedBlockingQueue<>(Math.max(capacity, 1));
+        this.pageExecutor  = Executors.newFixedThreadPool(this.numPagesAhead, r -> {
+            Thread thread = new Thread(r, name + "-page");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.feeder = new Thread(this::feed, name + "-prefetch");
+        this.feeder.setDaemon(true);
+    }
+
+    /**
+     * Starts fetching.
+     *
+     * @return The instance.
+     */
+    PagePrefetcher<T> start() {
+        feeder.start();
+        return this;
+    }
+
+    /**
+     * Stops fetching. Consumers blocked in {@link #take()} are released with
+     * an {@link EndOfIterationException}.
+     */
+    @Override
+    public void close() {
+        if (isClosed.getAndSet(true)) {
+            return;
+        }
+        feeder.interrupt();
+        pageExecutor.shutdownNow();
+        queue.clear();
+        queue.offer(endSlot);
+    }
+
+    /**
+     * Blocks until the next element is available.
+     *
+     * @return Next element.
+     * @throws EndOfIterationException if there are no more elements.
+     * @throws IOException if the page that would have contained the next
+     *         element could not be fetched.
+     */
+    T take() throws EndOfIterationException, IOException,
+            InterruptedException {
+        final Slot<T> slot = queue.take();
+        if (slot.isEnd()) {
+            // Put it back for any other consumers. It is the last slot, so
+            // there is room for it.
+            queue.offer(endSlot);
+            throw new EndOfIterationException();
+        } else if (slot.error != null) {
+            throw slot.error;
+        }
+        return slot.element;
+    }
+
+    /**
+     * @param isOrdered Whether to queue up pages in page order, which is the
+     *                  default, rather than in the order in which they
+     *                  arrive. Must be called before {@link #start()}.
+     */
+    void setOrdered(boolean isOrdered) {
+        this.isOrdered = isOrdered;
+    }
+
+    /**
+     * @param delay Delay before the first retry of a page, which doubles with
+     *              each subsequent retry.
+     */
+    void setRetryDelay(Duration delay) {
+        this.retryDelay = delay;
+    }
+
+    /**
+     * Runs in the feeder thread, keeping up to {@link #numPagesAhead} pages
+     * in flight and queueing up their elements in page order, or in arrival
+     * order if not {@link #isOrdered ordered}.
+     */
+    private void feed() {
+        final CompletionService<FetchedPage<T>> completion =
+                new ExecutorCompletionService<>(pageExecutor);
+        final Set<Future<FetchedPage<T>>> inFlight = new HashSet<>();
+        // Pages that have arrived ahead of an earlier one, when ordered.
+        final SortedMap<Integer, FetchedPage<T>> arrived = new TreeMap<>();
+        int nextPage = startPage, nextPageToQueue = startPage;
+        try {
+            boolean isEnd = false;
+            while (!isEnd && !isClosed.get()) {
+                // Pages past the known end are fetched one at a time, after
+                // all of the ones before them, as only the first empty one
+                // is needed.
+                final int window = (nextPage < knownEndPage &&
+                        !fetcher.isSequential()) ? numPagesAhead : 1;
+                while (inFlight.size() + arrived.size() < window &&
+                        (nextPage < knownEndPage || isOpenEnded)) {
+                    final int pageIndex = nextPage++;
+                    inFlight.add(completion.submit(() -> {
+                        try {
+                            return new FetchedPage<>(pageIndex,
+                                    fetchWithRetry(pageIndex), null);
+                        } catch (Exception e) {
+                            return new FetchedPage<>(pageIndex, null,
+                                    (e instanceof IOException) ?
+                                            (IOException) e : new IOException(e));
+                        }
+                    }));
+                }
+                if (inFlight.isEmpty()) {
+                    break;
+                }
+                final Future<FetchedPage<T>> future = completion.take();
+                inFlight.remove(future);
+                final FetchedPage<T> page;
+                try {
+                    page = future.get();
+                } catch (ExecutionException e) {
+                    // Only an Error can get here. Pass it on and stop.
+                    queue.put(new Slot<>(null, new IOException(e.getCause())));
+                    break;
+                }
+                if (!isOrdered) {
+                    isEnd = queue(page);
+                    continue;
+                }
+                arrived.put(page.index, page);
+                while (!isEnd && arrived.containsKey(nextPageToQueue)) {
+                    isEnd = queue(arrived.remove(nextPageToQueue++));
+                }
+            }
+            queue.put(endSlot);
+        } catch (InterruptedException | CancellationException e) {
+            LOGGER.debug("{}: stopping", name);
+        } finally {
+            inFlight.forEach(f -> f.cancel(true));
+            pageExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Queues up the elements of a page, or its error.
+     *
+     * @return Whether the page marks the end of the listing.
+     */
+    private boolean queue(FetchedPage<T> page) throws InterruptedException {
+        final boolean isPastKnownEnd = page.index >= knownEndPage;
+        if (page.error != null) {
+            queue.put(new Slot<>(null, page.error));
+            return isPastKnownEnd; // Don't keep going forever.
+        } else if (page.elements.isEmpty() && isPastKnownEnd) {
+            return true;
+        }
+        for (T element : page.elements) {
+            queue.put(new Slot<>(element, null));
+        }
+        return false;
+    }
+
+    private List<T> fetchWithRetry(int pageIndex)
+            throws IOException, InterruptedException {
+        long delayMsec = retryDelay.toMillis();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return fetcher.fetch(pageIndex);
+            } catch (IOException e) {
+                if (attempt >= MAX_ATTEMPTS || !isRetryable(e) || isClosed.get()) {
+                    throw e;
+                }
+                long waitMsec = delayMsec;
+                if (e instanceof HTTPException) {
+                    waitMsec = Math.max(waitMsec, ((HTTPException) e)
+                            .getRetryAfter().map(Duration::toMillis).orElse(0L));
+                }
+                waitMsec = Math.min(waitMsec, MAX_RETRY_DELAY.toMillis());
+                LOGGER.warn("{}: page {} failed (attempt {} of {}); retrying " +
+                                "in {} ms: {}",
+                        name, pageIndex, attempt, MAX_ATTEMPTS, waitMsec,
+                        e.getMessage());
+                Thread.sleep(waitMsec);
+                delayMsec *= 2;
+            }
+        }
+    }
+
+    /**
+     * @return Whether the given error is likely to be temporary: any I/O
+     *         error other than an HTTP 4xx response other than 408 or 429.
+     */
+    private static boolean isRetryable(IOException e) {
+        if (e instanceof HTTPException) {
+            return ((HTTPException) e).getStatusCode()
+                    .map(code -> code == 408 || code == 429 || code >= 500)
+                    .orElse(true);
+        }
+        return true;
+    }
+
+}
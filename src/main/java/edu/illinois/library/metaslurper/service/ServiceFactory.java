@@ -59,6 +59,28 @@ public final class ServiceFactory {
                 .orElse(null);
     }
 
+    /**
+     * Unlike {@link #getSinkService(String)}, which always returns the same
+     * instance for a given key, this method returns a new instance. This is
+     * needed when harvesting several sources at once, as a sink service
+     * instance keeps track of only one harvest.
+     *
+     * @param key {@link SinkService#getKey() Service key}.
+     * @return    New service with the given key, or {@literal null}.
+     */
+    public static SinkService newSinkService(String key) {
+        SinkService sink = getSinkService(key);
+        if (sink == null) {
+            return null;
+        }
+        try {
+            return sink.getClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(
+                    "Unable to instantiate " + sink.getClass(), e);
+        }
+    }
+
     /**
      * For testing only.
      *
@@ -0,0 +1,109 @@
+package edu.illinois.library.metaslurper.service;
+
+/**
+ * <p>One of several disjoint parts of a source service's content, which
+ * together contain all of it, so that several processes can split up one
+ * harvest.</p>
+ *
+ * <p>Services divide their content in whatever way suits them; this class
+ * provides the arithmetic for the two usual ways: contiguous ranges (e.g. of
+ * results pages) and every {@literal N}th element.</p>
+ *
+ * @see SourceService#setShard(Shard)
+ */
+public final class Shard {
+
+    /**
+     * The one shard containing all content.
+     */
+    public static final Shard ALL = new Shard(0, 1);
+
+    private final int index, count;
+
+    /**
+     * @param index Zero-based index of the shard.
+     * @param count Total number of shards.
+     * @throws IllegalArgumentException if the index is out of range.
+     */
+    public Shard(int index, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        } else if (index < 0 || index >= count) {
+            throw new IllegalArgumentException(
+                    "Shard index must be between 0 and " + (count - 1));
+        }
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * @param position Zero-based position of an element.
+     * @return         Whether every-{@literal N}th-element sharding assigns
+     *                 the element at the given position to this shard.
+     */
+    public boolean contains(long position) {
+        return Math.floorMod(position, count) == index;
+    }
+
+    /**
+     * @return Total number of shards.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param size Number of elements to divide into contiguous ranges.
+     * @return     Exclusive end of this shard's range.
+     */
+    public int getEnd(int size) {
+        return (int) ((long) size * (index + 1) / count);
+    }
+
+    /**
+     * @return Zero-based index of the shard.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @param size Number of elements to divide into contiguous ranges.
+     * @return     Inclusive start of this shard's range.
+     */
+    public int getStart(int size) {
+        return (int) ((long) size * index / count);
+    }
+
+    /**
+     * @return Whether this is the only shard.
+     */
+    public boolean isAll() {
+        return count == 1;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        } else if (obj instanceof Shard) {
+            Shard other = (Shard) obj;
+            return other.index == index && other.count == count;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * index + count;
+    }
+
+    /**
+     * @return Index and count separated by a slash, e.g. {@literal 2/4}.
+     */
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+
+}
@@ -45,6 +45,24 @@ public interface SinkService extends Service {
      */
     void ingest(ConcreteEntity entity) throws IOException;
 
+    /**
+     * <p>Does whatever CPU-bound work (mapping, serialization, etc.) is needed
+     * to get the given entity ready for {@link #ingest(ConcreteEntity)}, so
+     * that it can be done in a different thread from the one that does the
+     * I/O. The return value is passed to {@link #ingest(ConcreteEntity)} in
+     * place of the argument.</p>
+     *
+     * <p>Like {@link #ingest(ConcreteEntity)}, invocations may occur from
+     * different threads. This default implementation returns the argument
+     * unmodified.</p>
+     *
+     * @param entity Entity to prepare.
+     * @return       Entity ready to ingest.
+     */
+    default ConcreteEntity prepare(ConcreteEntity entity) {
+        return entity;
+    }
+
     /**
      * Sends a status update to the service.
      *
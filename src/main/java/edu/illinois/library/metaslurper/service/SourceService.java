@@ -3,6 +3,7 @@ package edu.illinois.library.metaslurper.service;
 import edu.illinois.library.metaslurper.entity.Entity;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Instant;
 
 /**
@@ -38,7 +39,10 @@ public interface SourceService extends Service {
      * <p>If an entity cannot be provided during iteration for some reason, the
      * iterator returns a {@link
      * edu.illinois.library.metaslurper.entity.PlaceholderEntity} in its
-     * place.</p>
+     * place. If an entity that was included in the {@link #numEntities()
+     * count} turns out not to be meant for harvesting, the iterator returns
+     * a {@link edu.illinois.library.metaslurper.entity.SkippedEntity} in its
+     * place, so that the harvest still adds up.</p>
      *
      * <p>If {@link #setLastModified(Instant)} did not throw an exception, the
      * only entities last modified after the argument passed to it are
@@ -58,6 +62,63 @@ public interface SourceService extends Service {
      */
     ConcurrentIterator<? extends Entity> entities() throws IOException;
 
+    /**
+     * Sets a position, previously obtained from {@link
+     * ConcurrentIterator#cursor()}, from which a subsequent invocation of
+     * {@link #entities()} should resume. {@link #numEntities()} is not
+     * affected.
+     *
+     * @param cursor Cursor from an iterator of the same service.
+     * @throws UnsupportedOperationException if the service does not support
+     *         resuming.
+     */
+    default void setCursor(String cursor) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * <p>Sets a file in which to keep a snapshot of the service's listing of
+     * entities, so that {@link #numEntities()} and {@link #entities()}
+     * include only the entities that are new or have changed since the last
+     * harvest that used the same file. The snapshot is updated when the
+     * instance is {@link #close() closed}.</p>
+     *
+     * <p>Entities that have been deleted since the last harvest are written
+     * to a file alongside the snapshot with the extension {@literal
+     * .deleted}.</p>
+     *
+     * <p>This is incompatible with {@link #setShard(Shard)} and {@link
+     * #setLastModified(Instant)}, as the whole listing is needed to tell
+     * which entities have been deleted.</p>
+     *
+     * @param file Snapshot file, which is created if it does not exist.
+     * @throws UnsupportedOperationException if the service does not support
+     *         snapshots.
+     * @throws IOException if the file exists but cannot be read.
+     */
+    default void setListingSnapshot(Path file) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * <p>Restricts subsequent invocations of {@link #numEntities()} and
+     * {@link #entities()} to one of several disjoint parts of the service's
+     * content, so that a harvest can be split among processes that each
+     * harvest a different shard. The shards of an instance with the same
+     * {@link #setLastModified(Instant) last-modified date} together contain
+     * all of its entities.</p>
+     *
+     * <p>{@link ConcurrentIterator#cursor() Cursors} are only valid for the
+     * shard they were obtained from.</p>
+     *
+     * @param shard Shard to harvest.
+     * @throws UnsupportedOperationException if the service does not support
+     *         sharding.
+     */
+    default void setShard(Shard shard) {
+        throw new UnsupportedOperationException();
+    }
+
     /**
      * Sets a last-modified date. Subsequent invocations of {@link
      * #numEntities()} and {@link #entities()} should omit any entities last
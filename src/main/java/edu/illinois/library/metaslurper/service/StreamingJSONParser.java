@@ -0,0 +1,107 @@
+package edu.illinois.library.metaslurper.service;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.Reader;
+import java.util.function.Consumer;
+
+/**
+ * <p>Parses a listing document&mdash;an array of objects, or an object
+ * containing one&mdash;directly from a reader, handing out each object in the
+ * array as soon as it has been parsed. Unlike reading the whole document into
+ * a string and parsing it into a {@link org.json.JSONArray}, neither the
+ * document nor the tree of all of its results is ever held in memory at once,
+ * and results are available before the rest of the document has been
+ * received.</p>
+ *
+ * <p>Only the array is streamed; each of its elements, and any other members
+ * of the enclosing object, are parsed into {@link JSONObject}s as usual.</p>
+ */
+final class StreamingJSONParser {
+
+    /**
+     * Parses a document consisting of an array of objects.
+     *
+     * @param reader  Reader positioned at the start of the document.
+     * @param handler Receives each element of the array, in order.
+     * @throws JSONException if the document is not an array of objects.
+     */
+    static void parseArray(Reader reader, Consumer<JSONObject> handler) {
+        streamArray(new JSONTokener(reader), handler);
+    }
+
+    /**
+     * Parses a document consisting of an object with a member that is an
+     * array of objects.
+     *
+     * @param reader   Reader positioned at the start of the document.
+     * @param arrayKey Key of the member whose elements to stream.
+     * @param handler  Receives each element of the array, in order.
+     * @return         All of the other members of the object.
+     * @throws JSONException if the document is not an object, or the member
+     *         with the given key is not an array of objects.
+     */
+    static JSONObject parseObject(Reader reader,
+                                  String arrayKey,
+                                  Consumer<JSONObject> handler) {
+        final JSONTokener tokener = new JSONTokener(reader);
+        final JSONObject members  = new JSONObject();
+        if (tokener.nextClean() != '{') {
+            throw tokener.syntaxError("A JSONObject text must begin with '{'");
+        }
+        if (tokener.nextClean() == '}') {
+            return members;
+        }
+        tokener.back();
+        while (true) {
+            final String key = tokener.nextValue().toString();
+            if (tokener.nextClean() != ':') {
+                throw tokener.syntaxError("Expected a ':' after a key");
+            }
+            if (key.equals(arrayKey)) {
+                streamArray(tokener, handler);
+            } else {
+                members.put(key, tokener.nextValue());
+            }
+            switch (tokener.nextClean()) {
+                case ',':
+                    break;
+                case '}':
+                    return members;
+                default:
+                    throw tokener.syntaxError("Expected a ',' or '}'");
+            }
+        }
+    }
+
+    private static void streamArray(JSONTokener tokener,
+                                    Consumer<JSONObject> handler) {
+        if (tokener.nextClean() != '[') {
+            throw tokener.syntaxError("A JSONArray text must start with '['");
+        }
+        if (tokener.nextClean() == ']') {
+            return;
+        }
+        tokener.back();
+        while (true) {
+            final Object element = tokener.nextValue();
+            if (!(element instanceof JSONObject)) {
+                throw tokener.syntaxError("Expected an object");
+            }
+            handler.accept((JSONObject) element);
+            switch (tokener.nextClean()) {
+                case ',':
+                    break;
+                case ']':
+                    return;
+                default:
+                    throw tokener.syntaxError("Expected a ',' or ']'");
+            }
+        }
+    }
+
+    private StreamingJSONParser() {}
+
+}
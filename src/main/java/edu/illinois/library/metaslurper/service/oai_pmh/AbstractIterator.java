@@ -5,34 +5,43 @@ import okhttp3.Request;
 import okhttp3.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicInteger;
 
 abstract class AbstractIterator<T> {
 
+    /**
+     * Parses a response body.
+     */
+    interface ResponseParser {
+        ListResponseParser.Result parse(InputStream is) throws XMLStreamException;
+    }
+
     private static final Logger LOGGER =
             LoggerFactory.getLogger(AbstractIterator.class);
 
-    final AtomicInteger numEntities = new AtomicInteger(-1);
-    final Queue<T> batch = new ConcurrentLinkedQueue<>();
     ElementTransformer elementTransformer;
 
     private final OkHttpClient client;
+    private FirstPageCache firstPages;
 
     AbstractIterator(OkHttpClient client, ElementTransformer tx) {
         this.client = client;
         this.elementTransformer = tx;
     }
 
-    Document fetchDocument(String uri) throws IOException {
-        LOGGER.debug("fetchDocument(): requesting {}", uri);
+    /**
+     * Requests the given URI and feeds the response body to the given parser
+     * as it is received.
+     *
+     * @return Return value of the parser.
+     */
+    ListResponseParser.Result fetchList(String uri,
+                                        ResponseParser parser) throws IOException {
+        LOGGER.debug("fetchList(): requesting {}", uri);
 
         Request.Builder builder = new Request.Builder()
                 .method("GET", null)
@@ -41,12 +50,8 @@ abstract class AbstractIterator<T> {
         try (Response response = client.newCall(request).execute()) {
             if (response.code() == 200) {
                 try (InputStream is = response.body().byteStream()) {
-                    final DocumentBuilderFactory factory =
-                            DocumentBuilderFactory.newInstance();
-                    factory.setNamespaceAware(true);
-                    final DocumentBuilder docBuilder = factory.newDocumentBuilder();
-                    return docBuilder.parse(is);
-                } catch (Exception e) {
+                    return parser.parse(is);
+                } catch (XMLStreamException e) {
                     throw new IOException(e);
                 }
             } else {
@@ -56,4 +61,38 @@ abstract class AbstractIterator<T> {
         }
     }
 
+    /**
+     * Variant of {@link #fetchList} for the first page of a list, which uses
+     * the page in the {@link #setFirstPageCache(FirstPageCache) cache}, if
+     * there is one, instead of requesting it, and caches the size of the list.
+     */
+    ListResponseParser.Result fetchFirstPage(String uri,
+                                             ResponseParser parser) throws IOException {
+        if (firstPages == null) {
+            return fetchList(uri, parser);
+        }
+        final byte[] body = firstPages.takeBody(uri);
+        final ListResponseParser.Result result;
+        if (body != null) {
+            LOGGER.debug("fetchFirstPage(): using cached {}", uri);
+            try (InputStream is = new ByteArrayInputStream(body)) {
+                result = parser.parse(is);
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        } else {
+            result = fetchList(uri, parser);
+        }
+        firstPages.putListSize(uri, result.getListSize());
+        return result;
+    }
+
+    /**
+     * @param cache Cache of first pages to use. Must be called before
+     *              iteration starts.
+     */
+    void setFirstPageCache(FirstPageCache cache) {
+        this.firstPages = cache;
+    }
+
 }
@@ -0,0 +1,286 @@
+package edu.illinois.library.metaslurper.service.oai_pmh;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Range of record datestamps that is harvested by its own {@literal
+ * ListRecords} resumption token chain. Its bounds are whole units of the
+ * repository's {@link Granularity granularity}, so that they can be
+ * expressed in {@literal from} and {@literal until} arguments without
+ * overlapping or leaving gaps between adjacent windows.</p>
+ *
+ * <p>{@link #plan} divides a range into windows that contain roughly equal
+ * numbers of records, so that their chains take roughly equally long.</p>
+ */
+final class DateWindow {
+
+    /**
+     * Counts the records in a window, e.g. using the {@literal
+     * completeListSize} of the first page of a list response.
+     */
+    @FunctionalInterface
+    interface Counter {
+
+        /**
+         * @param from  Inclusive start.
+         * @param until Inclusive end, or {@code null} for no end.
+         * @return      Number of records, or {@literal -1} if unknown.
+         */
+        int count(Instant from, Instant until) throws IOException;
+
+    }
+
+    /**
+     * A window is split when it has more than this many times the target
+     * number of records.
+     */
+    private static final double SPLIT_THRESHOLD = 1.5;
+
+    /**
+     * Maximum number of rounds of splitting.
+     */
+    private static final int MAX_SPLIT_ROUNDS = 8;
+
+    private final Instant from, until;
+    private final boolean isOpenEnded;
+    private final ChronoUnit unit;
+    private int count = -1;
+
+    /**
+     * Invokes {@link #plan(Instant, Instant, boolean, int, Granularity,
+     * Counter)} with second granularity.
+     */
+    static List<DateWindow> plan(Instant from,
+                                 Instant until,
+                                 boolean isOpenEnded,
+                                 int numWindows,
+                                 Counter counter) throws IOException {
+        return plan(from, until, isOpenEnded, numWindows, Granularity.SECOND,
+                counter);
+    }
+
+    /**
+     * <p>Divides the given range into up to {@literal numWindows} windows.
+     * It is first divided into windows of equal duration, which are counted.
+     * Windows with considerably more than their share of the records are
+     * then split in half and counted again, repeatedly. Finally, empty
+     * windows are dropped, and adjacent windows with the fewest records
+     * between them are merged until there are no more than
+     * {@literal numWindows}.</p>
+     *
+     * <p>If any window can't be counted, the windows of equal duration are
+     * returned.</p>
+     *
+     * @param from        Inclusive start.
+     * @param until       Inclusive end. If {@literal isOpenEnded}, this is
+     *                    only used to divide the range, and the last window
+     *                    has no end.
+     * @param isOpenEnded Whether the last window has no end.
+     * @param numWindows  Maximum number of windows. There can be no more
+     *                    than one per unit of the granularity.
+     * @param granularity Granularity of the window bounds. With day
+     *                    granularity, the range is widened to whole UTC
+     *                    days.
+     * @param counter     Counts the records in windows. It is invoked
+     *                    concurrently.
+     * @return            Windows in chronological order, which may be empty
+     *                    if there are no records.
+     */
+    static List<DateWindow> plan(Instant from,
+                                 Instant until,
+                                 boolean isOpenEnded,
+                                 int numWindows,
+                                 Granularity granularity,
+                                 Counter counter) throws IOException {
+        final ChronoUnit unit = granularity.getUnit();
+        from  = from.truncatedTo(unit);
+        until = until.truncatedTo(unit);
+        if (until.isBefore(from)) {
+            until = from;
+        }
+        final List<DateWindow> initial =
+                new DateWindow(from, until, isOpenEnded, unit)
+                        .divide(Math.max(numWindows, 1));
+        if (initial.size() < 2) {
+            return initial;
+        }
+        final ExecutorService executor =
+                Executors.newFixedThreadPool(initial.size(), r -> {
+                    Thread thread = new Thread(r, "DateWindow-count");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        try {
+            if (!count(initial, counter, executor)) {
+                return initial;
+            }
+            List<DateWindow> windows = initial;
+            final int total = windows.stream().mapToInt(w -> w.count).sum();
+            final double target = Math.ceil(total / (double) numWindows);
+            for (int round = 0; round < MAX_SPLIT_ROUNDS; round++) {
+                final List<DateWindow> halves = new ArrayList<>();
+                final List<DateWindow> next = new ArrayList<>();
+                for (DateWindow window : windows) {
+                    if (window.count > target * SPLIT_THRESHOLD &&
+                            window.isSplittable()) {
+                        List<DateWindow> split = window.divide(2);
+                        halves.addAll(split);
+                        next.addAll(split);
+                    } else {
+                        next.add(window);
+                    }
+                }
+                if (halves.isEmpty() || !count(halves, counter, executor)) {
+                    break;
+                }
+                windows = next;
+            }
+            return consolidate(windows, numWindows);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Counts the given windows concurrently.
+     *
+     * @return Whether all of them could be counted.
+     */
+    private static boolean count(List<DateWindow> windows,
+                                 Counter counter,
+                                 ExecutorService executor) throws IOException {
+        final List<Future<Integer>> futures = new ArrayList<>();
+        for (DateWindow window : windows) {
+            futures.add(executor.submit(() ->
+                    counter.count(window.getFrom(), window.getUntil())));
+        }
+        boolean isAllCounted = true;
+        for (int i = 0; i < windows.size(); i++) {
+            try {
+                windows.get(i).count = futures.get(i).get();
+                isAllCounted &= (windows.get(i).count >= 0);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+        return isAllCounted;
+    }
+
+    /**
+     * Drops empty windows and merges the adjacent pairs with the fewest
+     * records between them until there are no more than {@literal
+     * numWindows}. An open-ended last window is kept even if empty, as it
+     * will contain any records added during the harvest.
+     */
+    private static List<DateWindow> consolidate(List<DateWindow> windows,
+                                                int numWindows) {
+        final List<DateWindow> result = new ArrayList<>();
+        for (DateWindow window : windows) {
+            if (window.count != 0 || window.isOpenEnded) {
+                result.add(window);
+            }
+        }
+        while (result.size() > numWindows) {
+            int smallest = 0;
+            for (int i = 1; i < result.size() - 1; i++) {
+                if (result.get(i).count + result.get(i + 1).count <
+                        result.get(smallest).count + result.get(smallest + 1).count) {
+                    smallest = i;
+                }
+            }
+            final DateWindow a = result.get(smallest);
+            final DateWindow b = result.remove(smallest + 1);
+            final DateWindow merged = new DateWindow(a.from, b.until,
+                    b.isOpenEnded, a.unit);
+            merged.count = a.count + b.count;
+            result.set(smallest, merged);
+        }
+        return result;
+    }
+
+    /**
+     * @param from        Inclusive start.
+     * @param until       Inclusive end, or {@code null} if open-ended.
+     */
+    DateWindow(Instant from, Instant until) {
+        this(from, (until != null) ? until : from, until == null,
+                ChronoUnit.SECONDS);
+    }
+
+    private DateWindow(Instant from,
+                       Instant until,
+                       boolean isOpenEnded,
+                       ChronoUnit unit) {
+        this.from        = from;
+        this.until       = until;
+        this.isOpenEnded = isOpenEnded;
+        this.unit        = unit;
+    }
+
+    /**
+     * @return Number of records counted in the window, or {@literal -1} if
+     *         it hasn't been counted.
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * @return Inclusive start.
+     */
+    Instant getFrom() {
+        return from;
+    }
+
+    /**
+     * @return Inclusive end, or {@code null} if open-ended. With day
+     *         granularity, this is the start of the last day.
+     */
+    Instant getUntil() {
+        return isOpenEnded ? null : until;
+    }
+
+    /**
+     * Divides the window into up to the given number of windows of (as
+     * nearly as possible) equal duration, in whole units.
+     */
+    private List<DateWindow> divide(int numParts) {
+        final long numUnits = Duration.between(from, until).getSeconds() /
+                unit.getDuration().getSeconds() + 1;
+        numParts = (int) Math.min(numParts, numUnits);
+        final List<DateWindow> parts = new ArrayList<>(numParts);
+        for (int i = 0; i < numParts; i++) {
+            final Instant start = from.plus(numUnits * i / numParts, unit);
+            final Instant end   = from.plus(numUnits * (i + 1) / numParts, unit)
+                    .minus(1, unit);
+            parts.add(new DateWindow(start, end,
+                    isOpenEnded && i == numParts - 1, unit));
+        }
+        return parts;
+    }
+
+    private boolean isSplittable() {
+        return until.isAfter(from);
+    }
+
+    @Override
+    public String toString() {
+        return from + " - " + (isOpenEnded ? "" : until) + " (" + count + ")";
+    }
+
+}
@@ -3,6 +3,9 @@ package edu.illinois.library.metaslurper.service.oai_pmh;
 import edu.illinois.library.metaslurper.entity.Element;
 import org.w3c.dom.Node;
 
+import java.util.Collections;
+import java.util.Map;
+
 public class DefaultElementTransformer implements ElementTransformer {
 
     /**
@@ -12,11 +15,21 @@ public class DefaultElementTransformer implements ElementTransformer {
      */
     @Override
     public Element transform(Node pmhNode) {
-        final String name = pmhNode.getNodeName();
-        final String value = pmhNode.getTextContent();
+        return transform(pmhNode.getNodeName(), Collections.emptyMap(),
+                pmhNode.getTextContent());
+    }
 
-        if (name != null && !name.isEmpty() && value != null && !value.isEmpty()) {
-            return new Element(name, value);
+    /**
+     * @return Element with the given name and a value of the given text
+     *         content.
+     */
+    @Override
+    public Element transform(String name,
+                             Map<String,String> attributes,
+                             String textContent) {
+        if (name != null && !name.isEmpty() &&
+                textContent != null && !textContent.isEmpty()) {
+            return new Element(name, textContent);
         }
         return null;
     }
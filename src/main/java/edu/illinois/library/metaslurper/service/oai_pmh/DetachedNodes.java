@@ -0,0 +1,41 @@
+package edu.illinois.library.metaslurper.service.oai_pmh;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.util.Map;
+
+/**
+ * Creates DOM element nodes that don't belong to any document tree, for
+ * {@link ElementTransformer}s that only know how to transform nodes.
+ */
+final class DetachedNodes {
+
+    /**
+     * Owner of the created nodes. Documents aren't thread-safe, so there is
+     * one per thread.
+     */
+    private static final ThreadLocal<Document> OWNER =
+            ThreadLocal.withInitial(() -> {
+                try {
+                    return DocumentBuilderFactory.newInstance()
+                            .newDocumentBuilder().newDocument();
+                } catch (ParserConfigurationException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+
+    static Node newElement(String name,
+                           Map<String,String> attributes,
+                           String textContent) {
+        final org.w3c.dom.Element element = OWNER.get().createElement(name);
+        attributes.forEach(element::setAttribute);
+        element.setTextContent(textContent);
+        return element;
+    }
+
+    private DetachedNodes() {}
+
+}
@@ -3,6 +3,8 @@ package edu.illinois.library.metaslurper.service.oai_pmh;
 import edu.illinois.library.metaslurper.entity.Element;
 import org.w3c.dom.Node;
 
+import java.util.Map;
+
 public interface ElementTransformer {
 
     /**
@@ -12,4 +14,25 @@ public interface ElementTransformer {
      */
     Element transform(Node pmhNode);
 
+    /**
+     * <p>Variant of {@link #transform(Node)} that is invoked by the streaming
+     * response parser, which doesn't build a DOM.</p>
+     *
+     * <p>This implementation builds a detached node out of the arguments and
+     * passes it to {@link #transform(Node)}. Implementations should override
+     * it to avoid that overhead.</p>
+     *
+     * @param name        Qualified name of an element in an OAI-PMH record.
+     * @param attributes  Attributes of the element by qualified name.
+     * @param textContent Text content of the element, as returned by {@link
+     *                    Node#getTextContent()}.
+     * @return            Element, or {@literal null} if a valid element cannot
+     *                    be created from the given arguments.
+     */
+    default Element transform(String name,
+                              Map<String,String> attributes,
+                              String textContent) {
+        return transform(DetachedNodes.newElement(name, attributes, textContent));
+    }
+
 }
@@ -0,0 +1,51 @@
+package edu.illinois.library.metaslurper.service.oai_pmh;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Holds the first pages of list responses, and the sizes of the lists,
+ * keyed by the URI of the first page. As the URI contains the {@literal from}
+ * and {@literal until} arguments, so does the key.</p>
+ *
+ * <p>This enables a list to be counted using the same first page that its
+ * iterator is going to need anyway, and vice versa.</p>
+ */
+final class FirstPageCache {
+
+    private final Map<String,byte[]> bodies     = new ConcurrentHashMap<>();
+    private final Map<String,Integer> listSizes = new ConcurrentHashMap<>();
+
+    void clear() {
+        bodies.clear();
+        listSizes.clear();
+    }
+
+    /**
+     * @return Size of the list whose first page has the given URI, which is
+     *         {@literal -1} if the page didn't contain it, or {@code null} if
+     *         the page hasn't been fetched.
+     */
+    Integer getListSize(String uri) {
+        return listSizes.get(uri);
+    }
+
+    void putBody(String uri, byte[] body) {
+        bodies.put(uri, body);
+    }
+
+    void putListSize(String uri, int listSize) {
+        listSizes.put(uri, listSize);
+    }
+
+    /**
+     * Removes and returns the body of the first page with the given URI, so
+     * that it is only held until it has been used.
+     *
+     * @return Body, or {@code null} if it is not cached.
+     */
+    byte[] takeBody(String uri) {
+        return bodies.remove(uri);
+    }
+
+}
@@ -0,0 +1,56 @@
+package edu.illinois.library.metaslurper.service.oai_pmh;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Finest datestamp granularity supported by a repository for selective
+ * harvesting, as reported in its {@literal Identify} response.
+ */
+enum Granularity {
+
+    /**
+     * {@literal YYYY-MM-DD}
+     */
+    DAY(ChronoUnit.DAYS),
+
+    /**
+     * {@literal YYYY-MM-DDThh:mm:ssZ}
+     */
+    SECOND(ChronoUnit.SECONDS);
+
+    private final ChronoUnit unit;
+
+    /**
+     * @param value Value of the {@literal granularity} element of an
+     *              {@literal Identify} response.
+     * @return      Corresponding instance. Anything other than day
+     *              granularity is taken to be second granularity.
+     */
+    static Granularity fromIdentify(String value) {
+        return "YYYY-MM-DD".equals(value.trim()) ? DAY : SECOND;
+    }
+
+    Granularity(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * @param instant Instant to format.
+     * @return        Value of a {@literal from} or {@literal until}
+     *                argument.
+     */
+    String format(Instant instant) {
+        if (this == DAY) {
+            return LocalDate.ofInstant(instant, ZoneOffset.UTC).toString();
+        }
+        return instant.toString();
+    }
+
+    ChronoUnit getUnit() {
+        return unit;
+    }
+
+}
@@ -1,6 +1,7 @@
 package edu.illinois.library.metaslurper.service.oai_pmh;
 
 import edu.illinois.library.metaslurper.service.ConcurrentIterator;
+import edu.illinois.library.metaslurper.service.EndOfIterationException;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
@@ -10,12 +11,18 @@ import org.w3c.dom.Document;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathFactory;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -27,8 +34,8 @@ import java.util.concurrent.TimeUnit;
  * Harvester h = new Harvester();
  * h.setEndpointURI("http://...");
  *
- * int numSets = h.numSets();
- * int numRecords = h.numRecords();
+ * int numSets = h.numSets();       // -1 if unknown
+ * int numRecords = h.numRecords(); // -1 if unknown
  *
  * ConcurrentIterator&lt;PMHSet&gt; it = h.sets();
  * while (true) {
@@ -54,9 +61,32 @@ public final class Harvester implements AutoCloseable {
 
     private String endpointURI;
     private String metadataPrefix = DEFAULT_METADATA_PREFIX;
+    private int numPagesAhead = RecordIterator.DEFAULT_NUM_PAGES_AHEAD;
+    private int numWindows = 1;
+    private int numConcurrentSets;
+
+    private final List<AutoCloseable> recordIterators =
+            new CopyOnWriteArrayList<>();
+
+    /**
+     * Holds the first pages fetched by {@link #numRecords()} and {@link
+     * #numSets()} until the iterators need them.
+     */
+    private final FirstPageCache firstPages = new FirstPageCache();
 
     private Instant from, until;
 
+    /**
+     * Cached {@literal Identify} response.
+     */
+    private Document identifyDocument;
+
+    /**
+     * Granularity in which datestamps are sent in partitioned harvests. Set
+     * by {@link #partitionedRecords}.
+     */
+    private volatile Granularity granularity = Granularity.SECOND;
+
     private synchronized OkHttpClient getClient() {
         if (client == null) {
             OkHttpClient.Builder builder = new OkHttpClient.Builder()
@@ -71,6 +101,15 @@ public final class Harvester implements AutoCloseable {
 
     @Override
     public void close() {
+        for (AutoCloseable it : recordIterators) {
+            try {
+                it.close();
+            } catch (Exception e) {
+                LOGGER.warn("close(): {}", e.getMessage());
+            }
+        }
+        recordIterators.clear();
+        firstPages.clear();
         if (client != null) {
             // If OkHttp isn't shut down manually, it will keep the app running
             // for a time after a harvest instead of immediately exiting.
@@ -80,35 +119,159 @@ public final class Harvester implements AutoCloseable {
     }
 
     /**
-     * @return Total number of records available via the endpoint.
+     * <p>Counts the records using the first page of the {@literal
+     * ListRecords} response, which is then held for {@link #records()}
+     * instead of being requested again. The count is cached per {@link
+     * #setFrom(Instant) from} and {@link #setUntil(Instant) until}
+     * datestamp.</p>
+     *
+     * <p>When harvesting {@link #setNumWindows(int) windows} or {@link
+     * #setNumConcurrentSets(int) sets}, the page is not used by the
+     * iterator, so it costs an extra request.</p>
+     *
+     * @return Total number of records available via the endpoint, or
+     *         {@literal -1} if the first page has a resumption token without
+     *         a {@literal completeListSize}.
      */
     public int numRecords() throws IOException {
-        String uri = String.format("%s?verb=ListIdentifiers&metadataPrefix=%s",
-                endpointURI, metadataPrefix);
-        if (from != null) {
-            uri += "&from=" + from;
+        final String uri = RecordIterator.firstPageURI(endpointURI,
+                metadataPrefix, from, until, null);
+        return fetchListSize(uri, "record", !isPartitioned());
+    }
+
+    /**
+     * Counts the sets using the first page of the {@literal ListSets}
+     * response, which is then held for {@link #sets()} instead of being
+     * requested again.
+     *
+     * @return Total number of sets available via the endpoint, or {@literal
+     *         -1} if the first page has a resumption token without a
+     *         {@literal completeListSize}.
+     */
+    public int numSets() throws IOException {
+        return fetchListSize(SetIterator.firstPageURI(endpointURI), "set",
+                true);
+    }
+
+    /**
+     * @param uri         URI of the first page of a list.
+     * @param entityName  Local name of the list's entity elements.
+     * @param isCaching   Whether to cache the page for an iterator.
+     * @return            Size of the list, or {@literal -1} if unknown.
+     */
+    private int fetchListSize(String uri,
+                              String entityName,
+                              boolean isCaching) throws IOException {
+        Integer size = firstPages.getListSize(uri);
+        if (size == null) {
+            final byte[] body = fetchBody(uri);
+            try {
+                size = ListResponseParser.scan(new ByteArrayInputStream(body),
+                        entityName).getListSize();
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+            firstPages.putListSize(uri, size);
+            if (isCaching) {
+                firstPages.putBody(uri, body);
+            }
         }
+        return size;
+    }
+
+    /**
+     * Counts the records in a range of datestamps using the first page of a
+     * {@literal ListIdentifiers} response, for {@link DateWindow#plan}.
+     *
+     * @return Number of records, or {@literal -1} if the response has a
+     *         resumption token without a {@literal completeListSize}.
+     */
+    private int countRecords(Instant from, Instant until) throws IOException {
+        String uri = String.format("%s?verb=ListIdentifiers&metadataPrefix=%s&from=%s",
+                endpointURI, metadataPrefix, granularity.format(from));
         if (until != null) {
-            uri += "&until=" + until;
+            uri += "&until=" + granularity.format(until);
+        }
+        try {
+            return ListResponseParser.scan(
+                    new ByteArrayInputStream(fetchBody(uri)), "header")
+                    .getListSize();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
         }
-        return fetchCountFromListResponse(uri, "header");
     }
 
     /**
-     * @return Total number of sets available via the endpoint.
+     * @return Earliest datestamp of any record, according to the {@literal
+     *         Identify} response.
      */
-    public int numSets() throws IOException {
-        String uri = String.format("%s?verb=ListSets", endpointURI);
-        return fetchCountFromListResponse(uri, "set");
+    public Instant earliestDatestamp() throws IOException {
+        final String value = fetchIdentifyValue("earliestDatestamp");
+        try {
+            // The granularity may be either days or seconds.
+            return (value.length() == 10) ?
+                    LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant() :
+                    Instant.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IOException("Invalid earliestDatestamp in " +
+                    identifyURI() + ": " + value, e);
+        }
+    }
+
+    /**
+     * @return Finest datestamp granularity supported by the repository,
+     *         according to the {@literal Identify} response.
+     */
+    Granularity fetchGranularity() throws IOException {
+        return Granularity.fromIdentify(fetchIdentifyValue("granularity"));
+    }
+
+    /**
+     * @param localName Local name of an element in the {@literal Identify}
+     *                  response.
+     * @return          Its trimmed text content, which is empty if there is
+     *                  no such element.
+     */
+    private String fetchIdentifyValue(String localName) throws IOException {
+        final Document doc;
+        synchronized (this) {
+            if (identifyDocument == null) {
+                identifyDocument = fetchDocument(identifyURI());
+            }
+            doc = identifyDocument;
+        }
+        try {
+            XPath xpath = XPathFactory.newInstance().newXPath();
+            return xpath.compile("//*[local-name()='" + localName + "']")
+                    .evaluate(doc).trim();
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private String identifyURI() {
+        return String.format("%s?verb=Identify", endpointURI);
     }
 
-    private int fetchCountFromListResponse(final String uri,
-                                           final String elementToCount) throws IOException {
+    private Document fetchDocument(final String uri) throws IOException {
+        final byte[] body = fetchBody(uri);
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            DocumentBuilder docBuilder = factory.newDocumentBuilder();
+            return docBuilder.parse(new ByteArrayInputStream(body));
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private byte[] fetchBody(final String uri) throws IOException {
         if (endpointURI == null) {
             throw new IllegalStateException("Endpoint URI is not set");
         }
 
-        LOGGER.debug("fetchCountFromListResponse(): requesting {}", uri);
+        LOGGER.debug("fetchBody(): requesting {}", uri);
 
         Request.Builder builder = new Request.Builder()
                 .method("GET", null)
@@ -116,27 +279,7 @@ public final class Harvester implements AutoCloseable {
         Request request = builder.build();
         try (Response response = getClient().newCall(request).execute()) {
             if (response.code() == 200) {
-                try (InputStream is = response.body().byteStream()) {
-                    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-                    DocumentBuilder docBuilder = factory.newDocumentBuilder();
-                    Document doc = docBuilder.parse(is);
-                    XPathFactory xPathfactory = XPathFactory.newInstance();
-                    XPath xpath = xPathfactory.newXPath();
-                    XPathExpression expr =
-                            xpath.compile("//resumptionToken/@completeListSize");
-                    int value;
-                    try {
-                        value = Integer.parseInt(expr.evaluate(doc));
-                    } catch (NumberFormatException e) {
-                        expr = xpath.compile("count(//" + elementToCount + ")");
-                        value = Integer.parseInt(expr.evaluate(doc));
-                    }
-                    return value;
-                } catch (IOException e) {
-                    throw e;
-                } catch (Exception e) {
-                    throw new IOException(e);
-                }
+                return response.body().bytes();
             } else {
                 throw new IOException("Received HTTP " + response.code() +
                         " for " + uri);
@@ -144,16 +287,154 @@ public final class Harvester implements AutoCloseable {
         }
     }
 
+    /**
+     * @return Whether {@link #records()} harvests the records in partitions.
+     */
+    private boolean isPartitioned() {
+        return numConcurrentSets > 0 || numWindows > 1;
+    }
+
     public ConcurrentIterator<PMHRecord> records() throws IOException {
         return records(new DefaultElementTransformer());
     }
 
     public ConcurrentIterator<PMHRecord> records(ElementTransformer tx) throws IOException {
+        return records(tx, null);
+    }
+
+    /**
+     * @param tx     Element transformer.
+     * @param cursor Value of {@link ConcurrentIterator#cursor()} from a
+     *               previous iterator to resume from, or {@code null} to
+     *               start at the beginning. The resumption token it contains
+     *               must not have expired.
+     */
+    public ConcurrentIterator<PMHRecord> records(ElementTransformer tx,
+                                                 String cursor) throws IOException {
         if (endpointURI == null) {
             throw new IllegalStateException("Endpoint URI is not set");
         }
-        return new RecordIterator<>(getClient(), endpointURI, metadataPrefix,
-                from, until, numRecords(), tx);
+        if (PartitionedRecordIterator.isCursor(cursor) ||
+                (cursor == null && isPartitioned())) {
+            return partitionedRecords(tx, cursor);
+        }
+        final RecordIterator<PMHRecord> it = new RecordIterator<>(getClient(),
+                endpointURI, metadataPrefix, from, until, cursor,
+                numPagesAhead, tx);
+        it.setFirstPageCache(firstPages);
+        recordIterators.add(it);
+        return it;
+    }
+
+    /**
+     * <p>Windows are planned in whole units of the repository's {@link
+     * #fetchGranularity() granularity}, whose {@literal from} and {@literal
+     * until} arguments are expressed in it as well. So, a repository with day
+     * granularity can't be divided into more windows than there are days.</p>
+     *
+     * @param cursor Cursor of a previous {@link PartitionedRecordIterator},
+     *               or {@code null} to partition the records by set, if
+     *               {@link #numConcurrentSets} is set, or else into {@link
+     *               DateWindow#plan planned} windows.
+     */
+    private ConcurrentIterator<PMHRecord> partitionedRecords(ElementTransformer tx,
+                                                             String cursor) throws IOException {
+        if (numConcurrentSets < 1) {
+            granularity = fetchGranularity();
+        }
+        final Granularity partGranularity = granularity;
+        final PartitionedRecordIterator.IteratorFactory factory =
+                (partFrom, partUntil, setSpec, partCursor, queue) -> {
+                    RecordIterator<PMHRecord> it = new RecordIterator<>(
+                            getClient(), endpointURI, metadataPrefix,
+                            partFrom, partUntil, partCursor, numPagesAhead,
+                            tx, queue);
+                    it.setSetSpec(setSpec);
+                    it.setGranularity(partGranularity);
+                    return it;
+                };
+        final PartitionedRecordIterator it;
+        if (cursor != null) {
+            it = PartitionedRecordIterator.fromCursor(cursor,
+                    numConcurrentSets, factory);
+        } else if (numConcurrentSets > 0) {
+            final List<String> setSpecs = new ArrayList<>();
+            final ConcurrentIterator<PMHSet> sets = sets();
+            while (true) {
+                try {
+                    setSpecs.add(sets.next().getSpec());
+                } catch (EndOfIterationException e) {
+                    break;
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            }
+            LOGGER.debug("partitionedRecords(): harvesting {} sets, {} at a time",
+                    setSpecs.size(), numConcurrentSets);
+            it = PartitionedRecordIterator.fromSets(setSpecs, from, until,
+                    numConcurrentSets, factory);
+        } else {
+            final Instant start = (from != null) ? from : earliestDatestamp();
+            final Instant end   = (until != null) ? until : Instant.now();
+            final List<DateWindow> windows = DateWindow.plan(start, end,
+                    until == null, numWindows, granularity,
+                    this::countRecords);
+            LOGGER.debug("partitionedRecords(): harvesting {} windows: {}",
+                    windows.size(), windows);
+            it = PartitionedRecordIterator.fromWindows(windows, factory);
+        }
+        recordIterators.add(it);
+        return it;
+    }
+
+    /**
+     * If this method is not called, {@link
+     * RecordIterator#DEFAULT_NUM_PAGES_AHEAD} will be used.
+     *
+     * @param numPagesAhead Maximum number of {@literal ListRecords} pages
+     *                      that {@link #records() record iterators} buffer
+     *                      ahead of their consumers, including the one being
+     *                      consumed.
+     */
+    public void setNumPagesAhead(int numPagesAhead) {
+        this.numPagesAhead = Math.max(numPagesAhead, 1);
+    }
+
+    /**
+     * <p>Makes {@link #records()} harvest each set with its own resumption
+     * token chain, up to the given number at a time, instead of harvesting
+     * {@link #setNumWindows(int) windows}. Records that are in several sets
+     * are returned once, but records that aren't in any are not
+     * returned.</p>
+     *
+     * <p>If this method is not called, records are not harvested by
+     * set.</p>
+     *
+     * @param numConcurrentSets Maximum number of sets to harvest
+     *                          concurrently, or {@literal 0} to not harvest
+     *                          by set.
+     */
+    public void setNumConcurrentSets(int numConcurrentSets) {
+        this.numConcurrentSets = Math.max(numConcurrentSets, 0);
+    }
+
+    /**
+     * If this method is not called, records are harvested in one resumption
+     * token chain.
+     *
+     * @param numWindows Number of windows of datestamps into which to divide
+     *                   the range between the {@link #setFrom(Instant) from}
+     *                   (or earliest) and {@link #setUntil(Instant) until}
+     *                   (or current) datestamps, each of which is harvested by
+     *                   its own, concurrent, chain. The windows are adjusted
+     *                   to contain roughly equal numbers of records. If the
+     *                   repository has day granularity, windows are whole
+     *                   days, so there may be fewer of them.
+     */
+    public void setNumWindows(int numWindows) {
+        this.numWindows = Math.max(numWindows, 1);
     }
 
     public void setFrom(Instant from) {
@@ -172,7 +453,10 @@ public final class Harvester implements AutoCloseable {
         if (endpointURI == null) {
             throw new IllegalStateException("Endpoint URI is not set");
         }
-        return new SetIterator<>(getClient(), endpointURI, numSets(), tx);
+        final SetIterator<PMHSet> it =
+                new SetIterator<>(getClient(), endpointURI, tx);
+        it.setFirstPageCache(firstPages);
+        return it;
     }
 
     /**
@@ -0,0 +1,324 @@
+package edu.illinois.library.metaslurper.service.oai_pmh;
+
+import edu.illinois.library.metaslurper.entity.Element;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * <p>Parses a {@literal ListRecords} or {@literal ListSets} response directly
+ * from a stream, handing out each {@link PMHRecord} or {@link PMHSet} as soon
+ * as its closing tag has been read. Unlike parsing the response into a DOM
+ * and querying it with XPath, only one entity is held in memory at a time,
+ * and entities are available before the rest of the response has been
+ * received.</p>
+ *
+ * <p>Metadata elements are passed to {@link
+ * ElementTransformer#transform(String, Map, String)}.</p>
+ */
+final class ListResponseParser {
+
+    /**
+     * Information about a list response other than its entities.
+     */
+    static final class Result {
+
+        private final String resumptionToken;
+        private final int completeListSize, numEntities;
+
+        private Result(String resumptionToken,
+                       int completeListSize,
+                       int numEntities) {
+            this.resumptionToken  = resumptionToken;
+            this.completeListSize = completeListSize;
+            this.numEntities      = numEntities;
+        }
+
+        /**
+         * @return Resumption token, which is empty if there are no more
+         *         entities.
+         */
+        String getResumptionToken() {
+            return resumptionToken;
+        }
+
+        /**
+         * Only meaningful for the first page of a list.
+         *
+         * @return The resumption token's {@literal completeListSize}, or, if
+         *         there is no resumption token, the number of entities in the
+         *         response, as it contains the whole list. {@literal -1} if
+         *         there is a resumption token without a size.
+         */
+        int getListSize() {
+            if (completeListSize >= 0) {
+                return completeListSize;
+            }
+            return resumptionToken.isEmpty() ? numEntities : -1;
+        }
+
+    }
+
+    private static final String OAI_NAMESPACE =
+            "http://www.openarchives.org/OAI/2.0/";
+
+    private static final XMLInputFactory FACTORY = newFactory();
+
+    private static XMLInputFactory newFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                false);
+        return factory;
+    }
+
+    /**
+     * Parses a {@literal ListRecords} response.
+     *
+     * @param is      Response body.
+     * @param tx      Transforms the children of each record's metadata
+     *                element.
+     * @param handler Receives each record, in document order.
+     */
+    static Result parseRecords(InputStream is,
+                               ElementTransformer tx,
+                               Consumer<PMHRecord> handler) throws XMLStreamException {
+        return parse(is, "record", reader ->
+                handler.accept(readRecord(reader, tx)));
+    }
+
+    /**
+     * Parses a {@literal ListSets} response.
+     *
+     * @param is      Response body.
+     * @param tx      Transforms the children of each set's description
+     *                element.
+     * @param handler Receives each set, in document order.
+     */
+    static Result parseSets(InputStream is,
+                            ElementTransformer tx,
+                            Consumer<PMHSet> handler) throws XMLStreamException {
+        return parse(is, "set", reader ->
+                handler.accept(readSet(reader, tx)));
+    }
+
+    /**
+     * Reads a list response without building any of its entities.
+     *
+     * @param is         Response body.
+     * @param entityName Local name of the list's entity elements, e.g.
+     *                   {@literal record}.
+     */
+    static Result scan(InputStream is,
+                       String entityName) throws XMLStreamException {
+        return parse(is, entityName, reader -> readTextContent(reader));
+    }
+
+    @FunctionalInterface
+    private interface EntityReader {
+        /**
+         * @param reader Reader positioned at the start of an entity element,
+         *               to be left positioned at its end.
+         */
+        void read(XMLStreamReader reader) throws XMLStreamException;
+    }
+
+    private static Result parse(InputStream is,
+                                String entityName,
+                                EntityReader entityReader) throws XMLStreamException {
+        final XMLStreamReader reader = FACTORY.createXMLStreamReader(is);
+        try {
+            String resumptionToken = "";
+            int completeListSize = -1, numEntities = 0;
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT &&
+                        isOAI(reader)) {
+                    final String name = reader.getLocalName();
+                    if (name.equals(entityName)) {
+                        entityReader.read(reader);
+                        numEntities++;
+                    } else if (name.equals("resumptionToken")) {
+                        final String size =
+                                reader.getAttributeValue(null, "completeListSize");
+                        if (size != null) {
+                            try {
+                                completeListSize = Integer.parseInt(size.trim());
+                            } catch (NumberFormatException ignore) {
+                            }
+                        }
+                        resumptionToken = readTextContent(reader).trim();
+                    }
+                }
+            }
+            return new Result(resumptionToken, completeListSize, numEntities);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static boolean isOAI(XMLStreamReader reader) {
+        return OAI_NAMESPACE.equals(reader.getNamespaceURI());
+    }
+
+    /**
+     * @param reader Reader positioned at the start of a {@literal record}
+     *               element, which is left positioned at its end.
+     */
+    private static PMHRecord readRecord(XMLStreamReader reader,
+                                        ElementTransformer tx) throws XMLStreamException {
+        final PMHRecord record = new PMHRecord();
+        String section = "";
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    if (depth == 2) {
+                        section = isOAI(reader) ? reader.getLocalName() : "";
+                    } else if (depth == 3 && "header".equals(section) &&
+                            isOAI(reader)) {
+                        final String name = reader.getLocalName();
+                        final String value = readTextContent(reader);
+                        depth--;
+                        if ("identifier".equals(name) &&
+                                record.getIdentifier() == null) {
+                            record.setIdentifier(value);
+                        } else if ("datestamp".equals(name) &&
+                                record.getDatestamp() == null) {
+                            record.setDatestamp(value);
+                        } else if ("setSpec".equals(name) &&
+                                record.getSetSpec() == null) {
+                            record.setSetSpec(value);
+                        }
+                    } else if (depth == 4 && "metadata".equals(section)) {
+                        readElement(reader, tx, record);
+                        depth--;
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+            }
+        }
+        // Missing header elements are empty, as they would be when queried
+        // with XPath.
+        if (record.getIdentifier() == null) {
+            record.setIdentifier("");
+        }
+        if (record.getDatestamp() == null) {
+            record.setDatestamp("");
+        }
+        if (record.getSetSpec() == null) {
+            record.setSetSpec("");
+        }
+        return record;
+    }
+
+    /**
+     * @param reader Reader positioned at the start of a {@literal set}
+     *               element, which is left positioned at its end.
+     */
+    private static PMHSet readSet(XMLStreamReader reader,
+                                  ElementTransformer tx) throws XMLStreamException {
+        final PMHSet set = new PMHSet();
+        String section = "";
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    if (depth == 2) {
+                        section = isOAI(reader) ? reader.getLocalName() : "";
+                        if ("setSpec".equals(section) && set.getSpec() == null) {
+                            set.setSpec(readTextContent(reader));
+                            depth--;
+                        } else if ("setName".equals(section) &&
+                                set.getName() == null) {
+                            set.setName(readTextContent(reader));
+                            depth--;
+                        }
+                    } else if (depth == 4 && "setDescription".equals(section)) {
+                        readElement(reader, tx, set);
+                        depth--;
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+            }
+        }
+        if (set.getSpec() == null) {
+            set.setSpec("");
+        }
+        if (set.getName() == null) {
+            set.setName("");
+        }
+        return set;
+    }
+
+    /**
+     * Transforms the metadata element at which the given reader is
+     * positioned, and adds the result to the given entity.
+     *
+     * @param reader Reader positioned at the start of a metadata element,
+     *               which is left positioned at its end.
+     */
+    private static void readElement(XMLStreamReader reader,
+                                    ElementTransformer tx,
+                                    PMHEntity entity) throws XMLStreamException {
+        final String prefix = reader.getPrefix();
+        final String name = (prefix != null && !prefix.isEmpty()) ?
+                prefix + ":" + reader.getLocalName() : reader.getLocalName();
+        final Map<String,String> attributes = new LinkedHashMap<>();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String attrPrefix = reader.getAttributePrefix(i);
+            final String attrName = (attrPrefix != null && !attrPrefix.isEmpty()) ?
+                    attrPrefix + ":" + reader.getAttributeLocalName(i) :
+                    reader.getAttributeLocalName(i);
+            attributes.put(attrName, reader.getAttributeValue(i));
+        }
+        final Element e = tx.transform(name, attributes, readTextContent(reader));
+        if (e != null) {
+            entity.getElements().add(e);
+        }
+    }
+
+    /**
+     * Equivalent of {@link org.w3c.dom.Node#getTextContent()}.
+     *
+     * @param reader Reader positioned at the start of an element, which is
+     *               left positioned at its end.
+     * @return       Concatenation of all of the text within the element.
+     */
+    private static String readTextContent(XMLStreamReader reader) throws XMLStreamException {
+        final StringBuilder builder = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    builder.append(reader.getText());
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+
+    private ListResponseParser() {}
+
+}
@@ -0,0 +1,289 @@
+package edu.illinois.library.metaslurper.service.oai_pmh;
+
+import edu.illinois.library.metaslurper.service.ConcurrentIterator;
+import edu.illinois.library.metaslurper.service.EndOfIterationException;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Iterates over the records in several partitions of a list&mdash;either
+ * {@link DateWindow date windows} or sets&mdash;each with its own {@link
+ * RecordIterator}, merging them in the order in which they arrive. Up to
+ * {@literal maxActive} partitions are harvested concurrently, and the next
+ * one is started whenever one ends. The iterators all queue up their records
+ * in one queue, so a consumer never waits on one partition while another has
+ * records available.</p>
+ *
+ * <p>Sets may overlap, so when partitioning by set, records whose identifiers
+ * have already been returned are skipped. (This only holds within an
+ * instance; records returned before a resumption may be returned again
+ * after it.)</p>
+ *
+ * <p>The {@link #cursor() cursor} is a JSON array with an object for each
+ * partition, containing its {@literal from} and {@literal until} datestamps
+ * and {@literal set} spec, if any, and either the cursor of its iterator or,
+ * once it has been exhausted, {@literal done}. It is recognized by {@link
+ * #isCursor(String)}.</p>
+ */
+final class PartitionedRecordIterator implements ConcurrentIterator<PMHRecord>,
+        AutoCloseable {
+
+    private static final class Partition {
+
+        private final Instant from, until;
+        private final String setSpec;
+        private final RecordIterator<PMHRecord> iterator;
+        private final AtomicBoolean isEnded = new AtomicBoolean();
+
+        private Partition(Instant from, Instant until, String setSpec,
+                          RecordIterator<PMHRecord> iterator) {
+            this.from     = from;
+            this.until    = until;
+            this.setSpec  = setSpec;
+            this.iterator = iterator;
+        }
+
+        /**
+         * @return Whether all of the partition's records have been returned.
+         */
+        private boolean isDone() {
+            return isEnded.get() && iterator.isComplete();
+        }
+
+    }
+
+    /**
+     * Creates the iterator of a partition.
+     */
+    @FunctionalInterface
+    interface IteratorFactory {
+
+        /**
+         * @param from    Inclusive start, or {@code null}.
+         * @param until   Inclusive end, or {@code null}.
+         * @param setSpec Set spec, or {@code null}.
+         * @param cursor  Cursor to resume from, or {@code null}.
+         * @param queue   Queue in which to queue up records.
+         */
+        RecordIterator<PMHRecord> newIterator(
+                Instant from,
+                Instant until,
+                String setSpec,
+                String cursor,
+                BlockingQueue<RecordIterator.Slot<PMHRecord>> queue);
+
+    }
+
+    private final BlockingQueue<RecordIterator.Slot<PMHRecord>> queue =
+            new LinkedBlockingQueue<>();
+    private final List<Partition> partitions = new ArrayList<>();
+    private final int maxActive;
+    private final AtomicInteger numUnendedPartitions = new AtomicInteger();
+    private final AtomicInteger nextPartitionToStart = new AtomicInteger();
+    private final AtomicBoolean isStarted = new AtomicBoolean();
+
+    /**
+     * Identifiers of the records returned so far, if deduplicating.
+     */
+    private final Set<String> returnedIdentifiers;
+
+    /**
+     * Sentinel that all partitions have ended. It is never passed to a
+     * partition.
+     */
+    private final RecordIterator.Slot<PMHRecord> endSlot =
+            RecordIterator.newSentinel();
+
+    /**
+     * @return Whether the given string is a cursor of an instance, as opposed
+     *         to one of a {@link RecordIterator}.
+     */
+    static boolean isCursor(String cursor) {
+        return cursor != null && cursor.startsWith("[");
+    }
+
+    /**
+     * @param windows Windows to iterate over concurrently.
+     * @param factory Creates the windows' iterators.
+     */
+    static PartitionedRecordIterator fromWindows(List<DateWindow> windows,
+                                                 IteratorFactory factory) {
+        final PartitionedRecordIterator instance =
+                new PartitionedRecordIterator(windows.size(), false);
+        for (DateWindow window : windows) {
+            instance.addPartition(window.getFrom(), window.getUntil(), null,
+                    null, factory);
+        }
+        return instance;
+    }
+
+    /**
+     * @param setSpecs  Specs of the sets to iterate over.
+     * @param from      Inclusive start of all sets, or {@code null}.
+     * @param until     Inclusive end of all sets, or {@code null}.
+     * @param maxActive Maximum number of sets to iterate over concurrently.
+     * @param factory   Creates the sets' iterators.
+     */
+    static PartitionedRecordIterator fromSets(List<String> setSpecs,
+                                              Instant from,
+                                              Instant until,
+                                              int maxActive,
+                                              IteratorFactory factory) {
+        final PartitionedRecordIterator instance =
+                new PartitionedRecordIterator(maxActive, true);
+        for (String setSpec : setSpecs) {
+            instance.addPartition(from, until, setSpec, null, factory);
+        }
+        return instance;
+    }
+
+    /**
+     * @param cursor    Value of {@link #cursor()} from a previous instance.
+     * @param maxActive Maximum number of set partitions to iterate over
+     *                  concurrently. Window partitions are all iterated over
+     *                  concurrently.
+     * @param factory   Creates the partitions' iterators.
+     * @throws IllegalArgumentException if the cursor is invalid.
+     */
+    static PartitionedRecordIterator fromCursor(String cursor,
+                                                int maxActive,
+                                                IteratorFactory factory) {
+        final List<JSONObject> jpartitions = new ArrayList<>();
+        boolean isSets = false;
+        try {
+            final JSONArray array = new JSONArray(cursor);
+            for (int i = 0; i < array.length(); i++) {
+                final JSONObject jpartition = array.getJSONObject(i);
+                isSets |= jpartition.has("set");
+                if (!jpartition.optBoolean("done")) {
+                    jpartitions.add(jpartition);
+                }
+            }
+            final PartitionedRecordIterator instance =
+                    new PartitionedRecordIterator(
+                            isSets ? maxActive : jpartitions.size(), isSets);
+            for (JSONObject jpartition : jpartitions) {
+                instance.addPartition(
+                        jpartition.has("from") ?
+                                Instant.parse(jpartition.getString("from")) : null,
+                        jpartition.has("until") ?
+                                Instant.parse(jpartition.getString("until")) : null,
+                        jpartition.optString("set", null),
+                        jpartition.optString("cursor", null),
+                        factory);
+            }
+            return instance;
+        } catch (JSONException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    private PartitionedRecordIterator(int maxActive, boolean isDeduplicating) {
+        this.maxActive = Math.max(maxActive, 1);
+        this.returnedIdentifiers = isDeduplicating ?
+                ConcurrentHashMap.newKeySet() : null;
+    }
+
+    private void addPartition(Instant from, Instant until, String setSpec,
+                              String cursor, IteratorFactory factory) {
+        partitions.add(new Partition(from, until, setSpec,
+                factory.newIterator(from, until, setSpec, cursor, queue)));
+        numUnendedPartitions.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+        partitions.forEach(p -> p.iterator.close());
+    }
+
+    @Override
+    public String cursor() {
+        final JSONArray array = new JSONArray();
+        for (Partition partition : partitions) {
+            final JSONObject jpartition = new JSONObject();
+            if (partition.from != null) {
+                jpartition.put("from", partition.from.toString());
+            }
+            if (partition.until != null) {
+                jpartition.put("until", partition.until.toString());
+            }
+            if (partition.setSpec != null) {
+                jpartition.put("set", partition.setSpec);
+            }
+            if (partition.isDone()) {
+                jpartition.put("done", true);
+            } else {
+                jpartition.put("cursor", partition.iterator.cursor());
+            }
+            array.put(jpartition);
+        }
+        return array.toString();
+    }
+
+    @Override
+    public PMHRecord next() throws EndOfIterationException, IOException,
+            InterruptedException {
+        if (!isStarted.getAndSet(true)) {
+            if (partitions.isEmpty()) {
+                queue.add(endSlot);
+            }
+            for (int i = 0; i < maxActive; i++) {
+                startNextPartition();
+            }
+        }
+        while (true) {
+            final RecordIterator.Slot<PMHRecord> slot = queue.take();
+            if (slot == endSlot) {
+                // Put it back for any other consumers.
+                queue.add(endSlot);
+                throw new EndOfIterationException();
+            }
+            final RecordIterator<PMHRecord> owner = slot.owner();
+            if (owner.isEnd(slot)) {
+                onEnd(owner);
+                continue;
+            }
+            final PMHRecord record = owner.handle(slot);
+            if (record != null && (returnedIdentifiers == null ||
+                    returnedIdentifiers.add(record.getIdentifier()))) {
+                return record;
+            }
+        }
+    }
+
+    private void onEnd(RecordIterator<PMHRecord> iterator) {
+        final Partition partition = partitions.stream()
+                .filter(p -> p.iterator == iterator)
+                .findFirst()
+                .orElseThrow();
+        // An iterator may queue up its end more than once if it is closed
+        // after it has ended.
+        if (!partition.isEnded.getAndSet(true)) {
+            startNextPartition();
+            if (numUnendedPartitions.decrementAndGet() == 0) {
+                queue.add(endSlot);
+            }
+        }
+    }
+
+    private void startNextPartition() {
+        final int index = nextPartitionToStart.getAndIncrement();
+        if (index < partitions.size()) {
+            partitions.get(index).iterator.start();
+        }
+    }
+
+}
@@ -1,129 +1,442 @@
 package edu.illinois.library.metaslurper.service.oai_pmh;
 
-import edu.illinois.library.metaslurper.entity.Element;
 import edu.illinois.library.metaslurper.service.ConcurrentIterator;
 import edu.illinois.library.metaslurper.service.EndOfIterationException;
 import okhttp3.OkHttpClient;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-
-import javax.xml.xpath.XPath;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
-import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
+/**
+ * <p>Iterates over the records in a {@literal ListRecords} response.</p>
+ *
+ * <p>The {@link #cursor() cursor} has the form {@literal <n> <m> <token>},
+ * where {@literal n} is the number of records returned, {@literal m} is the
+ * number of them that came from the current batch, and {@literal token} is
+ * the resumption token with which the current batch was fetched (empty for the
+ * first batch).</p>
+ *
+ * <p>Batches are fetched in the background by a feeder thread, which follows
+ * the chain of resumption tokens as soon as each one is known, keeping up to
+ * {@literal numPagesAhead} batches buffered ahead of the consumers. Batches
+ * are parsed as they are received, and each record is available to consumers
+ * as soon as it has been parsed. Iteration ends when a batch without a
+ * resumption token has been exhausted.</p>
+ *
+ * <p>A batch that fails is retried, skipping the records of it that were
+ * already queued up. If it still fails, its error is thrown from {@link
+ * #next()} once, after which iteration ends, as the rest of the chain can't be
+ * reached without its resumption token. The cursor can be used to resume from
+ * that batch later.</p>
+ */
 class RecordIterator<T> extends AbstractIterator<T>
-        implements ConcurrentIterator<T> {
+        implements ConcurrentIterator<T>, AutoCloseable {
+
+    /**
+     * Element of the queue: a record, the end of a batch, an error, or the
+     * end of iteration.
+     */
+    static final class Slot<T> {
+
+        /**
+         * Iterator that queued up the slot.
+         */
+        private final RecordIterator<T> owner;
+
+        private final T record;
+        private final IOException error;
+
+        /**
+         * Resumption token with which the record's batch was fetched.
+         */
+        private final String batchToken;
+
+        /**
+         * One-based position of the record within its batch.
+         */
+        private final int batchPosition;
+
+        /**
+         * Zero-based position of the record within the whole list.
+         */
+        private final int index;
+
+        private Slot(RecordIterator<T> owner, T record, IOException error,
+                     String batchToken, int batchPosition, int index) {
+            this.owner         = owner;
+            this.record        = record;
+            this.error         = error;
+            this.batchToken    = batchToken;
+            this.batchPosition = batchPosition;
+            this.index         = index;
+        }
+
+        /**
+         * @return Iterator that queued up the slot, or {@code null} if it is
+         *         a {@link #newSentinel() sentinel}.
+         */
+        RecordIterator<T> owner() {
+            return owner;
+        }
+
+    }
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(RecordIterator.class);
+
+    static final int DEFAULT_NUM_PAGES_AHEAD = 2;
+
+    /**
+     * Number of times a batch is attempted before its error is passed on.
+     */
+    static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * @return Slot that doesn't belong to any instance, for use as a marker
+     *         in a shared queue.
+     */
+    static <T> Slot<T> newSentinel() {
+        return new Slot<>(null, null, null, null, 0, 0);
+    }
+
+    /**
+     * @param from    Inclusive start, or {@code null}.
+     * @param until   Inclusive end, or {@code null}.
+     * @param setSpec Set spec, or {@code null}.
+     * @return        URI of the first page of a {@literal ListRecords}
+     *                response.
+     */
+    static String firstPageURI(String endpointURI,
+                               String metadataPrefix,
+                               Instant from,
+                               Instant until,
+                               String setSpec) {
+        return firstPageURI(endpointURI, metadataPrefix, from, until, setSpec,
+                Granularity.SECOND);
+    }
 
-    private final AtomicInteger index = new AtomicInteger();
-    private String endpointURI, resumptionToken, metadataPrefix;
-    private Instant from, until;
+    /**
+     * @param from        Inclusive start, or {@code null}.
+     * @param until       Inclusive end, or {@code null}.
+     * @param setSpec     Set spec, or {@code null}.
+     * @param granularity Granularity in which to express {@literal from} and
+     *                    {@literal until}.
+     * @return            URI of the first page of a {@literal ListRecords}
+     *                    response.
+     */
+    static String firstPageURI(String endpointURI,
+                               String metadataPrefix,
+                               Instant from,
+                               Instant until,
+                               String setSpec,
+                               Granularity granularity) {
+        String uri = String.format("%s?verb=ListRecords&metadataPrefix=%s",
+                endpointURI, metadataPrefix);
+        if (from != null) {
+            uri += "&from=" + granularity.format(from);
+        }
+        if (until != null) {
+            uri += "&until=" + granularity.format(until);
+        }
+        if (setSpec != null) {
+            uri += "&set=" + URLEncoder.encode(setSpec, StandardCharsets.UTF_8);
+        }
+        return uri;
+    }
+
+    private final Slot<T> batchEndSlot = new Slot<>(this, null, null, null, 0, 0);
+    private final Slot<T> endSlot      = new Slot<>(this, null, null, null, 0, 0);
 
+    private final String endpointURI, metadataPrefix;
+    private final Instant from, until;
+    private String setSpec;
+    private Granularity granularity = Granularity.SECOND;
+    private final BlockingQueue<Slot<T>> queue;
+    private final Semaphore batchPermits;
+    private final Thread feeder;
+    private final AtomicBoolean isStarted = new AtomicBoolean();
+    private final AtomicBoolean isClosed  = new AtomicBoolean();
+    private volatile boolean isComplete;
+    private Duration retryDelay = Duration.ofSeconds(1);
+
+    // These support resuming and cursor().
+    private final String initialCursor, initialToken;
+    private final int initialNumReturned, initialNumToSkip;
+    private final AtomicReference<Slot<T>> lastReturned =
+            new AtomicReference<>();
+
+    /**
+     * @param cursor        Cursor to resume from, or {@code null} to start at
+     *                      the beginning.
+     * @param numPagesAhead Maximum number of batches to buffer, including the
+     *                      one being consumed.
+     */
     RecordIterator(OkHttpClient client,
                    String endpointURI,
                    String metadataPrefix,
                    Instant from,
                    Instant until,
-                   int numRecords,
+                   String cursor,
+                   int numPagesAhead,
                    ElementTransformer tx) {
+        this(client, endpointURI, metadataPrefix, from, until, cursor,
+                numPagesAhead, tx, new LinkedBlockingQueue<>());
+    }
+
+    /**
+     * Variant that queues up its records in the given queue, which may be
+     * shared with other instances, for consumption by {@link
+     * #handle(Slot)} instead of {@link #next()}.
+     */
+    RecordIterator(OkHttpClient client,
+                   String endpointURI,
+                   String metadataPrefix,
+                   Instant from,
+                   Instant until,
+                   String cursor,
+                   int numPagesAhead,
+                   ElementTransformer tx,
+                   BlockingQueue<Slot<T>> queue) {
         super(client, tx);
+        this.queue = queue;
         this.endpointURI = endpointURI;
         this.metadataPrefix = metadataPrefix;
         this.from = from;
         this.until = until;
-        numEntities.set(numRecords);
+        this.batchPermits = new Semaphore(Math.max(numPagesAhead, 1));
+        this.initialCursor = cursor;
+        if (cursor != null) {
+            final String[] parts = cursor.split(" ", 3);
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            initialNumReturned = Integer.parseInt(parts[0]);
+            initialNumToSkip   = Integer.parseInt(parts[1]);
+            initialToken       = parts[2];
+        } else {
+            initialNumReturned = 0;
+            initialNumToSkip   = 0;
+            initialToken       = "";
+        }
+        this.feeder = new Thread(this::feed, "ListRecords-prefetch");
+        this.feeder.setDaemon(true);
     }
 
+    /**
+     * Stops fetching. Consumers blocked in {@link #next()} are released with
+     * an {@link EndOfIterationException}.
+     */
     @Override
-    public T next() throws EndOfIterationException, IOException {
-        if (numEntities.get() >= 0 &&
-                index.incrementAndGet() >= numEntities.get()) {
-            throw new EndOfIterationException();
+    public void close() {
+        if (isClosed.getAndSet(true)) {
+            return;
         }
+        feeder.interrupt();
+        queue.removeIf(slot -> slot.owner == this);
+        queue.add(endSlot);
+    }
 
-        // If the queue is empty, fetch the next batch.
-        synchronized (this) {
-            if (batch.peek() == null) {
-                resumptionToken = fetchBatch(resumptionToken, batch);
-            }
+    @Override
+    public String cursor() {
+        final Slot<T> last = lastReturned.get();
+        if (last == null) {
+            return (initialCursor != null) ? initialCursor : "0 0 ";
         }
-
-        return batch.remove();
+        return (last.index + 1) + " " + last.batchPosition + " " +
+                last.batchToken;
     }
 
     /**
-     * @param resumptionToken Current resumption token.
-     * @param batch           Queue to add results to.
-     * @return                Next resumption token.
+     * Blocks until the next record is available.
+     *
+     * @throws EndOfIterationException if there are no more records.
+     * @throws IOException if the batch that would have contained the next
+     *         record could not be fetched.
      */
-    private String fetchBatch(String resumptionToken,
-                              Queue<T> batch) throws IOException {
-        String uri;
-        if (resumptionToken != null && !resumptionToken.isEmpty()) {
-            uri = String.format("%s?verb=ListRecords&resumptionToken=%s",
-                    endpointURI, resumptionToken);
-        } else {
-            uri = String.format("%s?verb=ListRecords&metadataPrefix=%s",
-                    endpointURI, metadataPrefix);
-            if (from != null) {
-                uri += "&from=" + from;
+    @Override
+    public T next() throws EndOfIterationException, IOException,
+            InterruptedException {
+        start();
+        while (true) {
+            final Slot<T> slot = queue.take();
+            if (slot == endSlot) {
+                // Put it back for any other consumers.
+                queue.add(endSlot);
+                throw new EndOfIterationException();
             }
-            if (until != null) {
-                uri += "&until=" + until;
+            final T record = handle(slot);
+            if (record != null) {
+                return record;
             }
         }
+    }
+
+    /**
+     * Starts fetching, if it hasn't started already.
+     */
+    void start() {
+        if (!isStarted.getAndSet(true)) {
+            feeder.start();
+        }
+    }
+
+    /**
+     * Processes a slot that the instance queued up, other than the {@link
+     * #isEnd(Slot) end}.
+     *
+     * @return The slot's record, or {@code null} if it is the end of a batch.
+     * @throws IOException if the slot contains an error.
+     */
+    T handle(Slot<T> slot) throws IOException {
+        if (slot == batchEndSlot) {
+            batchPermits.release();
+            return null;
+        } else if (slot.error != null) {
+            throw slot.error;
+        }
+        lastReturned.accumulateAndGet(slot, (a, b) ->
+                (a == null || b.index > a.index) ? b : a);
+        return slot.record;
+    }
+
+    /**
+     * @return Whether the given slot marks the end of the instance's
+     *         iteration. It is queued up after all of the others.
+     */
+    boolean isEnd(Slot<T> slot) {
+        return slot == endSlot;
+    }
 
-        final Document doc = fetchDocument(uri);
-        final XPathFactory xPathFactory = XPathFactory.newInstance();
-        final XPath xpath = xPathFactory.newXPath();
-        xpath.setNamespaceContext(new OAINamespaceContext());
+    /**
+     * @return Whether the end of the resumption token chain has been reached
+     *         without error. (The last batch's records may not have all been
+     *         consumed yet.)
+     */
+    boolean isComplete() {
+        return isComplete;
+    }
+
+    /**
+     * @param granularity Granularity in which to express the {@literal from}
+     *                    and {@literal until} datestamps. Must be called
+     *                    before iteration starts.
+     */
+    void setGranularity(Granularity granularity) {
+        this.granularity = granularity;
+    }
 
+    /**
+     * @param setSpec Spec of the set to which to restrict the list. Must be
+     *                called before iteration starts.
+     */
+    void setSetSpec(String setSpec) {
+        this.setSpec = setSpec;
+    }
+
+    /**
+     * @param delay Delay before the first retry of a batch, which doubles
+     *              with each subsequent retry.
+     */
+    void setRetryDelay(Duration delay) {
+        this.retryDelay = delay;
+    }
+
+    /**
+     * Runs in the feeder thread, following the resumption token chain and
+     * queueing up records until the end of the chain, an unrecoverable error,
+     * or {@link #close()}.
+     */
+    private void feed() {
+        final AtomicInteger numQueued = new AtomicInteger(initialNumReturned);
+        String token   = initialToken;
+        int numToSkip  = initialNumToSkip;
         try {
-            // Transform each <record> element into a PMHRecord and add
-            // it to the batch queue.
-            XPathExpression expr = xpath.compile("//oai:record");
-
-            final NodeList nodes = (NodeList) expr.evaluate(
-                    doc, XPathConstants.NODESET);
-            for (int i = 0; i < nodes.getLength(); i++) {
-                final Node recordNode = nodes.item(i);
-                final PMHRecord record = new PMHRecord();
-                // identifier
-                XPathExpression recordExpr = xpath.compile(
-                        "oai:header/oai:identifier");
-                record.setIdentifier(recordExpr.evaluate(recordNode));
-                // datestamp
-                recordExpr = xpath.compile("oai:header/oai:datestamp");
-                record.setDatestamp(recordExpr.evaluate(recordNode));
-                // setSpec
-                recordExpr = xpath.compile("oai:header/oai:setSpec");
-                record.setSetSpec(recordExpr.evaluate(recordNode));
-                // metadata
-                recordExpr = xpath.compile("oai:metadata/*/*");
-                NodeList mdnodes = (NodeList) recordExpr.evaluate(
-                        recordNode, XPathConstants.NODESET);
-                for (int j = 0; j < mdnodes.getLength(); j++) {
-                    Node mdnode = mdnodes.item(j);
-                    Element e = elementTransformer.transform(mdnode);
-                    if (e != null) {
-                        record.getElements().add(e);
+            while (!isClosed.get()) {
+                batchPermits.acquire();
+                final String batchToken = token;
+                // Position within the batch of the last record that was
+                // parsed or skipped during the current attempt, and of the
+                // last one that was queued up during any attempt.
+                final AtomicInteger position = new AtomicInteger();
+                final AtomicInteger numPositionsQueued = new AtomicInteger(numToSkip);
+                final Consumer<PMHRecord> handler = record -> {
+                    final int pos = position.incrementAndGet();
+                    if (pos > numPositionsQueued.get()) {
+                        numPositionsQueued.set(pos);
+                        queue.add(new Slot<>(this, (T) record, null, batchToken,
+                                pos, numQueued.getAndIncrement()));
+                    }
+                };
+                long delayMsec = retryDelay.toMillis();
+                String nextToken;
+                for (int attempt = 1; ; attempt++) {
+                    position.set(0);
+                    try {
+                        nextToken = fetchBatch(batchToken, handler);
+                        break;
+                    } catch (IOException e) {
+                        if (attempt >= MAX_ATTEMPTS || isClosed.get()) {
+                            queue.add(new Slot<>(this, null, e, batchToken, 0, 0));
+                            return;
+                        }
+                        LOGGER.warn("Batch {} failed (attempt {} of {}); " +
+                                        "retrying in {} ms: {}",
+                                batchToken.isEmpty() ? "(first)" : batchToken,
+                                attempt, MAX_ATTEMPTS, delayMsec,
+                                e.getMessage());
+                        Thread.sleep(delayMsec);
+                        delayMsec *= 2;
                     }
                 }
-                batch.add((T) record);
+                queue.add(batchEndSlot);
+                numToSkip = 0;
+                if (nextToken.isEmpty()) {
+                    isComplete = true;
+                    break;
+                }
+                token = nextToken;
             }
+        } catch (InterruptedException e) {
+            LOGGER.debug("feed(): stopping");
+        } finally {
+            if (!isClosed.get()) {
+                queue.add(endSlot);
+            }
+        }
+    }
 
-            // Pluck out the resumptionToken and return it.
-            expr = xpath.compile("//oai:resumptionToken");
-            return expr.evaluate(doc);
-        } catch (XPathExpressionException e) {
-            throw new IOException(e);
+    /**
+     * @param resumptionToken Resumption token of the batch to fetch, or an
+     *                        empty string to fetch the first one.
+     * @param handler         Receives each record of the batch as it is
+     *                        parsed.
+     * @return                Next resumption token, which is empty if this
+     *                        is the last batch.
+     */
+    private String fetchBatch(String resumptionToken,
+                              Consumer<PMHRecord> handler) throws IOException {
+        final ResponseParser parser = is -> ListResponseParser.parseRecords(
+                is, elementTransformer, handler);
+        if (resumptionToken.isEmpty()) {
+            return fetchFirstPage(firstPageURI(endpointURI, metadataPrefix,
+                    from, until, setSpec, granularity), parser)
+                    .getResumptionToken();
         }
+        final String uri = String.format("%s?verb=ListRecords&resumptionToken=%s",
+                endpointURI, resumptionToken);
+        return fetchList(uri, parser).getResumptionToken();
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,127 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.service.HTTPException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveLimiterTest {
+
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void testConstructorClampsInitialLimit() {
+        assertEquals(1, new AdaptiveLimiter(0, 1, 4, null).getLimit());
+        assertEquals(4, new AdaptiveLimiter(9, 1, 4, null).getLimit());
+    }
+
+    @Test
+    public void testConstructorNotifiesListener() {
+        AtomicInteger limit = new AtomicInteger();
+        new AdaptiveLimiter(3, 1, 4, limit::set);
+        assertEquals(3, limit.get());
+    }
+
+    @Test
+    public void testIsOverload() {
+        assertTrue(AdaptiveLimiter.isOverload(
+                new HTTPException("GET", "/", 500, null, null)));
+        assertTrue(AdaptiveLimiter.isOverload(
+                new HTTPException("GET", "/", 503, null, null)));
+        assertTrue(AdaptiveLimiter.isOverload(
+                new HTTPException("GET", "/", 429, null, null)));
+        assertTrue(AdaptiveLimiter.isOverload(new SocketTimeoutException()));
+        assertTrue(AdaptiveLimiter.isOverload(
+                new IOException(new SocketTimeoutException())));
+        assertFalse(AdaptiveLimiter.isOverload(
+                new HTTPException("GET", "/", 404, null, null)));
+        assertFalse(AdaptiveLimiter.isOverload(new IOException("nope")));
+    }
+
+    @Test
+    public void testOnSuccessIncreasesLimitAdditively() {
+        AdaptiveLimiter instance = new AdaptiveLimiter(2, 1, 10, null);
+        instance.onSuccess(LATENCY);
+        assertEquals(2, instance.getLimit());
+        instance.onSuccess(LATENCY);
+        assertEquals(3, instance.getLimit());
+        for (int i = 0; i < 3; i++) {
+            instance.onSuccess(LATENCY);
+        }
+        assertEquals(4, instance.getLimit());
+    }
+
+    @Test
+    public void testOnSuccessDoesNotExceedMaxLimit() {
+        AdaptiveLimiter instance = new AdaptiveLimiter(1, 1, 3, null);
+        for (int i = 0; i < 100; i++) {
+            instance.onSuccess(LATENCY);
+        }
+        assertEquals(3, instance.getLimit());
+    }
+
+    @Test
+    public void testOnSuccessWithHighLatencyDoesNotIncreaseLimit() {
+        AdaptiveLimiter instance = new AdaptiveLimiter(2, 1, 10, null);
+        instance.onSuccess(LATENCY);
+        for (int i = 0; i < 20; i++) {
+            instance.onSuccess(LATENCY * 100);
+        }
+        assertTrue(instance.getLimit() <= 3);
+    }
+
+    @Test
+    public void testOnFailureWithOverloadDecreasesLimitMultiplicatively() {
+        AtomicInteger limit = new AtomicInteger();
+        AdaptiveLimiter instance = new AdaptiveLimiter(8, 1, 10, limit::set);
+        instance.onFailure(new HTTPException("POST", "/", 503, null, null));
+        assertEquals(4, instance.getLimit());
+        assertEquals(4, limit.get());
+    }
+
+    @Test
+    public void testOnFailureWithinCooldownDoesNotDecreaseLimitAgain() {
+        AdaptiveLimiter instance = new AdaptiveLimiter(8, 1, 10, null);
+        instance.onFailure(new SocketTimeoutException());
+        instance.onFailure(new SocketTimeoutException());
+        assertEquals(4, instance.getLimit());
+    }
+
+    @Test
+    public void testOnFailureWithNonOverloadDoesNotDecreaseLimit() {
+        AdaptiveLimiter instance = new AdaptiveLimiter(8, 1, 10, null);
+        instance.onFailure(new HTTPException("POST", "/", 400, null, null));
+        assertEquals(8, instance.getLimit());
+    }
+
+    @Test
+    public void testOnFailureDoesNotGoBelowMinLimit() {
+        AdaptiveLimiter instance = new AdaptiveLimiter(1, 1, 10, null);
+        instance.onFailure(new SocketTimeoutException());
+        assertEquals(1, instance.getLimit());
+    }
+
+    @Test
+    public void testAcquireBlocksAtLimit() throws Exception {
+        AdaptiveLimiter instance = new AdaptiveLimiter(1, 1, 1, null);
+        instance.acquire();
+        Thread thread = new Thread(() -> {
+            try {
+                instance.acquire();
+            } catch (InterruptedException ignore) {
+            }
+        });
+        thread.start();
+        thread.join(200);
+        assertTrue(thread.isAlive());
+        instance.release();
+        thread.join(2000);
+        assertFalse(thread.isAlive());
+    }
+
+}
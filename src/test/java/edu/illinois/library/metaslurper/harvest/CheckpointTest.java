@@ -0,0 +1,170 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.entity.Entity;
+import edu.illinois.library.metaslurper.service.ConcurrentIterator;
+import edu.illinois.library.metaslurper.service.MockSourceService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CheckpointTest {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile(getClass().getSimpleName(), ".txt");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    private static List<Checkpoint.Ticket> take(Checkpoint checkpoint,
+                                                ConcurrentIterator<? extends Entity> it,
+                                                int count) throws Exception {
+        final List<Checkpoint.Ticket> tickets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            tickets.add(checkpoint.next(it));
+        }
+        return tickets;
+    }
+
+    @Test
+    public void testNewCheckpointIsEmpty() throws Exception {
+        try (Checkpoint checkpoint = Checkpoint.open(file, false)) {
+            assertNull(checkpoint.getCursor());
+            assertEquals(0, checkpoint.getNumResumed());
+            assertFalse(checkpoint.isAcknowledged("ID 1"));
+        }
+    }
+
+    @Test
+    public void testCursorIsConfirmedAfterAllEarlierEntitiesComplete()
+            throws Exception {
+        try (MockSourceService source = new MockSourceService();
+             Checkpoint checkpoint = Checkpoint.open(file, false)) {
+            source.setNumEntities(250);
+            ConcurrentIterator<? extends Entity> it = source.entities();
+            List<Checkpoint.Ticket> tickets =
+                    take(checkpoint, it, Checkpoint.CURSOR_INTERVAL);
+            // Complete all but the first one.
+            for (int i = 1; i < tickets.size(); i++) {
+                checkpoint.complete(tickets.get(i),
+                        tickets.get(i).getEntity().getSinkID());
+            }
+            assertNull(checkpoint.getCursor());
+
+            checkpoint.complete(tickets.get(0), null);
+            assertEquals("100", checkpoint.getCursor());
+        }
+    }
+
+    @Test
+    public void testResume() throws Exception {
+        try (MockSourceService source = new MockSourceService()) {
+            source.setNumEntities(250);
+            try (Checkpoint checkpoint = Checkpoint.open(file, false)) {
+                ConcurrentIterator<? extends Entity> it = source.entities();
+                // Complete 105 entities, and leave 1 in flight.
+                for (Checkpoint.Ticket ticket : take(checkpoint, it, 105)) {
+                    checkpoint.complete(ticket,
+                            ticket.getEntity().getSinkID());
+                }
+                checkpoint.next(it);
+            }
+            try (Checkpoint checkpoint = Checkpoint.open(file, true)) {
+                assertEquals("100", checkpoint.getCursor());
+                assertEquals(105, checkpoint.getNumResumed());
+                assertTrue(checkpoint.isAcknowledged("ID 101"));
+                assertTrue(checkpoint.isAcknowledged("ID 105"));
+                assertFalse(checkpoint.isAcknowledged("ID 106"));
+            }
+        }
+    }
+
+    @Test
+    public void testResumeSkipsEntitiesAcknowledgedAheadOfCursor()
+            throws Exception {
+        try (MockSourceService source = new MockSourceService()) {
+            source.setNumEntities(250);
+            try (Checkpoint checkpoint = Checkpoint.open(file, false)) {
+                ConcurrentIterator<? extends Entity> it = source.entities();
+                List<Checkpoint.Ticket> tickets = take(checkpoint, it, 240);
+                // Complete the first 105 entities and one far ahead of them,
+                // and leave the rest in flight.
+                for (int i = 0; i < 105; i++) {
+                    checkpoint.complete(tickets.get(i),
+                            tickets.get(i).getEntity().getSinkID());
+                }
+                checkpoint.complete(tickets.get(230), "ID 231");
+            }
+            try (Checkpoint checkpoint = Checkpoint.open(file, true)) {
+                assertEquals("100", checkpoint.getCursor());
+                assertEquals(106, checkpoint.getNumResumed());
+                source.setCursor(checkpoint.getCursor());
+                ConcurrentIterator<? extends Entity> it = source.entities();
+                int numIngested = 0;
+                for (int i = 0; i < 150; i++) {
+                    Checkpoint.Ticket ticket = checkpoint.next(it);
+                    String sinkID = ticket.getEntity().getSinkID();
+                    if (checkpoint.isAcknowledged(sinkID)) {
+                        sinkID = null;
+                    } else {
+                        numIngested++;
+                    }
+                    checkpoint.complete(ticket, sinkID);
+                    if (i == 120) {
+                        // A cursor has been confirmed in this run, but the
+                        // iterator hasn't reached the entity yet.
+                        assertEquals("200", checkpoint.getCursor());
+                        assertTrue(checkpoint.isAcknowledged("ID 231"));
+                    }
+                }
+                // Entities 101-105 and 231 were not ingested again.
+                assertEquals(144, numIngested);
+            }
+            try (Checkpoint checkpoint = Checkpoint.open(file, true)) {
+                assertEquals(250, checkpoint.getNumResumed());
+            }
+        }
+    }
+
+    @Test
+    public void testOpenWithoutResumeOverwritesJournal() throws Exception {
+        Files.writeString(file, "A ID 1\n");
+        try (Checkpoint checkpoint = Checkpoint.open(file, false)) {
+            assertFalse(checkpoint.isAcknowledged("ID 1"));
+        }
+        assertEquals(0, Files.size(file));
+    }
+
+    @Test
+    public void testJournalIsCompacted() throws Exception {
+        final int numEntities = Checkpoint.COMPACTION_INTERVAL * 2;
+        try (MockSourceService source = new MockSourceService();
+             Checkpoint checkpoint = Checkpoint.open(file, false)) {
+            source.setNumEntities(numEntities);
+            ConcurrentIterator<? extends Entity> it = source.entities();
+            for (int i = 0; i < numEntities; i++) {
+                Checkpoint.Ticket ticket = checkpoint.next(it);
+                checkpoint.complete(ticket, ticket.getEntity().getSinkID());
+            }
+        }
+        assertTrue(Files.readAllLines(file).size() <
+                Checkpoint.COMPACTION_INTERVAL);
+        try (Checkpoint checkpoint = Checkpoint.open(file, true)) {
+            assertEquals(String.valueOf(numEntities), checkpoint.getCursor());
+            assertEquals(numEntities, checkpoint.getNumResumed());
+        }
+    }
+
+}
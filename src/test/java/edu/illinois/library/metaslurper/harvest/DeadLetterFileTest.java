@@ -0,0 +1,116 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.entity.ConcreteEntity;
+import edu.illinois.library.metaslurper.entity.Element;
+import edu.illinois.library.metaslurper.entity.Entity;
+import edu.illinois.library.metaslurper.entity.GenericEntity;
+import edu.illinois.library.metaslurper.entity.Image;
+import edu.illinois.library.metaslurper.entity.Variant;
+import edu.illinois.library.metaslurper.service.ConcurrentIterator;
+import edu.illinois.library.metaslurper.service.EndOfIterationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.junit.Assert.*;
+
+public class DeadLetterFileTest {
+
+    private Path file;
+
+    private static GenericEntity newEntity(String sinkID) {
+        GenericEntity entity = new GenericEntity();
+        entity.setServiceKey("test");
+        entity.setSinkID(sinkID);
+        entity.setSourceID("source-" + sinkID);
+        entity.setSourceURI("http://example.org/" + sinkID);
+        entity.setParentSinkID("parent");
+        entity.setContainerName("container");
+        entity.setMediaType("image/jpeg");
+        entity.setVariant(Variant.ITEM);
+        entity.getElements().add(new Element("title", "Cats"));
+        entity.addAccessImage(new Image("http://example.org/image.jpg",
+                Image.Crop.SQUARE, 512, false));
+        return entity;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile(getClass().getSimpleName(), ".jsonl");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testJSONRoundTrip() {
+        GenericEntity expected = newEntity("1");
+        ConcreteEntity actual =
+                DeadLetterFile.fromJSON(DeadLetterFile.toJSON(expected));
+        assertEquals(expected.getServiceKey(), actual.getServiceKey());
+        assertEquals(expected.getSinkID(), actual.getSinkID());
+        assertEquals(expected.getSourceID(), actual.getSourceID());
+        assertEquals(expected.getSourceURI(), actual.getSourceURI());
+        assertEquals(expected.getParentSinkID(), actual.getParentSinkID());
+        assertEquals(expected.getContainerName(), actual.getContainerName());
+        assertNull(actual.getContainerSinkID());
+        assertNull(actual.getFullText());
+        assertEquals(expected.getMediaType(), actual.getMediaType());
+        assertEquals(expected.getVariant(), actual.getVariant());
+        assertEquals(expected.getElements(), actual.getElements());
+        assertEquals(expected.getAccessImages(), actual.getAccessImages());
+    }
+
+    @Test
+    public void testReplayWithDeadLetterSource() throws Exception {
+        try (DeadLetterFile instance = DeadLetterFile.open(file)) {
+            instance.add(newEntity("1"), "test", new IOException("oops"));
+            instance.add(newEntity("2"), "test", new IOException("oops"));
+        }
+        try (DeadLetterSource source = new DeadLetterSource(file)) {
+            assertEquals("test", source.getKey());
+            assertEquals(2, source.numEntities());
+            ConcurrentIterator<? extends Entity> it = source.entities();
+            assertEquals("1", it.next().getSinkID());
+            assertEquals("2", it.next().getSinkID());
+            try {
+                it.next();
+                fail("Expected exception");
+            } catch (EndOfIterationException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testDeadLetterSourceIgnoresLastModified() throws Exception {
+        try (DeadLetterFile instance = DeadLetterFile.open(file)) {
+            instance.add(newEntity("1"), "test", new IOException("oops"));
+        }
+        try (DeadLetterSource source = new DeadLetterSource(file)) {
+            source.setLastModified(Instant.now());
+            assertEquals(1, source.numEntities());
+            assertEquals("1", source.entities().next().getSinkID());
+        }
+    }
+
+    @Test
+    public void testOpenAppends() throws Exception {
+        try (DeadLetterFile instance = DeadLetterFile.open(file)) {
+            instance.add(newEntity("1"), "test", new IOException("oops"));
+        }
+        try (DeadLetterFile instance = DeadLetterFile.open(file)) {
+            instance.add(newEntity("2"), "test", new IOException("oops"));
+        }
+        try (DeadLetterSource source = new DeadLetterSource(file)) {
+            assertEquals(2, source.numEntities());
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.service.MockAbortingSourceService;
+import edu.illinois.library.metaslurper.service.MockErroringSinkService;
+import edu.illinois.library.metaslurper.service.MockSinkService;
+import edu.illinois.library.metaslurper.service.MockSourceService;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class HarvestJobTest {
+
+    private HarvestJob instance;
+
+    @Before
+    public void setUp() {
+        instance = new HarvestJob();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddLaneWithSameSinkInstance() {
+        MockSinkService sink = new MockSinkService();
+        instance.addLane(new MockSourceService(), sink, new Harvest(), 1, 0, 1);
+        instance.addLane(new MockSourceService(), sink, new Harvest(), 1, 0, 1);
+    }
+
+    @Test
+    public void testRunWithNoFailures() {
+        MockSourceService source1 = new MockSourceService();
+        MockSourceService source2 = new MockSourceService();
+        source1.setNumEntities(50);
+        source2.setNumEntities(10);
+        MockSinkService sink1 = new MockSinkService();
+        MockSinkService sink2 = new MockSinkService();
+        instance.addLane(source1, sink1, new Harvest(), 4, 0, 1);
+        instance.addLane(source2, sink2, new Harvest(), 2, 0, 1);
+        instance.run(6);
+
+        assertEquals(50, sink1.getIngestedEntities().size());
+        assertEquals(10, sink2.getIngestedEntities().size());
+        List<Harvest> harvests = instance.getHarvests();
+        assertEquals(50, harvests.get(0).getNumSucceeded());
+        assertEquals(10, harvests.get(1).getNumSucceeded());
+        for (Harvest harvest : harvests) {
+            assertEquals(0, harvest.getNumFailed());
+            assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+        }
+    }
+
+    @Test
+    public void testRunWithFewerThreadsThanLanes() {
+        for (int i = 0; i < 4; i++) {
+            instance.addLane(new MockSourceService(), new MockSinkService(),
+                    new Harvest(), 1, 0, 1);
+        }
+        instance.run(1);
+        for (Harvest harvest : instance.getHarvests()) {
+            assertEquals(5, harvest.getNumSucceeded());
+            assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+        }
+    }
+
+    @Test
+    public void testRunWithMaxNumEntities() {
+        MockSourceService source = new MockSourceService();
+        source.setNumEntities(20);
+        MockSinkService sink = new MockSinkService();
+        Harvest harvest = new Harvest();
+        harvest.setMaxNumEntities(5);
+        instance.addLane(source, sink, harvest, 1, 0, 1);
+        instance.run(1);
+        assertEquals(5, sink.getIngestedEntities().size());
+        assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+    }
+
+    @Test
+    public void testRunWithFailingLanes() {
+        MockSinkService okSink       = new MockSinkService();
+        MockSinkService erroringSink = new MockErroringSinkService();
+        instance.addLane(new MockAbortingSourceService(), new MockSinkService(),
+                new Harvest(), 2, 0, 1);
+        instance.addLane(new MockSourceService(), erroringSink,
+                new Harvest(), 2, 0, 1);
+        instance.addLane(new MockSourceService(), okSink,
+                new Harvest(), 2, 0, 1);
+        instance.run(4);
+
+        List<Harvest> harvests = instance.getHarvests();
+        assertEquals(Lifecycle.ABORTED, harvests.get(0).getLifecycle());
+        assertEquals(5, harvests.get(1).getNumFailed());
+        assertEquals(Lifecycle.SUCCEEDED, harvests.get(1).getLifecycle());
+        assertEquals(5, okSink.getIngestedEntities().size());
+        assertEquals(Lifecycle.SUCCEEDED, harvests.get(2).getLifecycle());
+    }
+
+}
@@ -3,6 +3,10 @@ package edu.illinois.library.metaslurper.harvest;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
 import static org.junit.Assert.*;
 
 public class HarvestTest {
@@ -51,6 +55,42 @@ public class HarvestTest {
         assertEquals(100, instance.numMessages());
     }
 
+    @Test
+    public void testAddMessageAssignsIncreasingSequences() {
+        instance.addMessage("a");
+        instance.addMessage("b");
+        List<Harvest.Message> messages = instance.getMessagesSince(0);
+        assertEquals(2, messages.size());
+        assertTrue(messages.get(0).getSequence() <
+                messages.get(1).getSequence());
+    }
+
+    @Test
+    public void testGetETAWithUnknownThroughput() {
+        assertFalse(instance.getETA().isPresent());
+    }
+
+    @Test
+    public void testGetETA() {
+        instance.setThroughput(10);
+        Instant eta = instance.getETA().orElseThrow();
+        // 50 entities at 10 per second
+        long seconds = Duration.between(Instant.now(), eta).getSeconds();
+        assertTrue(seconds >= 4 && seconds <= 5);
+    }
+
+    @Test
+    public void testGetMessagesSince() {
+        instance.addMessage("a");
+        instance.addMessage("b");
+        instance.addMessage("c");
+        long sequence = instance.getMessagesSince(0).get(0).getSequence();
+        List<Harvest.Message> messages = instance.getMessagesSince(sequence);
+        assertEquals(2, messages.size());
+        assertEquals("b", messages.get(0).getText());
+        assertEquals("c", messages.get(1).getText());
+    }
+
     @Test
     public void testEndPrematurely1() {
         instance.end();
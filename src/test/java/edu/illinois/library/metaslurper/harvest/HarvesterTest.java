@@ -1,5 +1,7 @@
 package edu.illinois.library.metaslurper.harvest;
 
+import edu.illinois.library.metaslurper.entity.ConcreteEntity;
+import edu.illinois.library.metaslurper.service.HTTPException;
 import edu.illinois.library.metaslurper.service.MockAbortingSourceService;
 import edu.illinois.library.metaslurper.service.MockErroringSinkService;
 import edu.illinois.library.metaslurper.service.MockErroringSourceService1;
@@ -7,14 +9,21 @@ import edu.illinois.library.metaslurper.service.MockErroringSourceService2;
 import edu.illinois.library.metaslurper.service.MockNonCountingSourceService;
 import edu.illinois.library.metaslurper.service.MockOvercountingSourceService;
 import edu.illinois.library.metaslurper.service.MockSinkService;
+import edu.illinois.library.metaslurper.service.MockSkippingSourceService;
 import edu.illinois.library.metaslurper.service.MockSourceService;
 import edu.illinois.library.metaslurper.service.MockUndercountingSourceService;
 import edu.illinois.library.metaslurper.service.MockUnreliableSourceService;
+import edu.illinois.library.metaslurper.service.Shard;
 import edu.illinois.library.metaslurper.service.SourceService;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static org.junit.Assert.*;
 
@@ -86,6 +95,20 @@ public class HarvesterTest {
         }
     }
 
+    @Test
+    public void testHarvestWithSkippedEntities() {
+        Harvest harvest = new Harvest();
+        try (MockSourceService source = new MockSkippingSourceService();
+             MockSinkService sink = new MockSinkService()) {
+            instance.harvest(source, sink, harvest);
+            assertEquals(4, sink.getIngestedEntities().size());
+            assertEquals(4, harvest.getNumSucceeded());
+            assertEquals(1, harvest.getNumSkipped());
+            assertEquals(0, harvest.getNumFailed());
+            assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+        }
+    }
+
     @Test
     public void testHarvestWithOverCountingSource() throws Exception {
         Harvest harvest = new Harvest();
@@ -175,4 +198,359 @@ public class HarvesterTest {
         }
     }
 
+    @Test
+    public void testHarvestPipelinedWithNoFailures() throws Exception {
+        instance.setPipelined(true);
+        instance.setNumFetchThreads(2);
+        instance.setNumTransformThreads(2);
+        instance.setNumIngestThreads(3);
+        Harvest harvest = new Harvest();
+        try (MockSourceService source = new MockSourceService();
+             MockSinkService sink = new MockSinkService()) {
+            source.setNumEntities(50);
+            instance.harvest(source, sink, harvest);
+            assertEquals(source.numEntities(), sink.getIngestedEntities().size());
+            assertEquals(source.numEntities(), harvest.getNumSucceeded());
+            assertEquals(0, harvest.getNumFailed());
+            assertEquals(0, harvest.numMessages());
+            assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+        }
+    }
+
+    @Test
+    public void testHarvestPipelinedReportsQueueDepths() throws Exception {
+        instance.setPipelined(true);
+        Harvest harvest = new Harvest();
+        try (MockSourceService source = new MockSourceService();
+             MockSinkService sink = new MockSinkService()) {
+            source.setNumEntities(50);
+            instance.harvest(source, sink, harvest);
+            Harvest.QueueDepths depths = harvest.getQueueDepths().orElseThrow();
+            assertEquals(0, depths.getNumFetched());
+            assertEquals(0, depths.getNumPrepared());
+            assertTrue(depths.getMaxNumFetched() > 0);
+            assertTrue(depths.getMaxNumPrepared() > 0);
+        }
+    }
+
+    @Test
+    public void testHarvestWithoutPipelineReportsNoQueueDepths() throws Exception {
+        Harvest harvest = new Harvest();
+        try (MockSourceService source = new MockSourceService();
+             MockSinkService sink = new MockSinkService()) {
+            source.setNumEntities(5);
+            instance.harvest(source, sink, harvest);
+            assertFalse(harvest.getQueueDepths().isPresent());
+        }
+    }
+
+    @Test
+    public void testHarvestPipelinedWithMaxNumEntities() {
+        instance.setPipelined(true);
+        Harvest harvest = new Harvest();
+        harvest.setMaxNumEntities(5);
+        try (MockSourceService source = new MockSourceService();
+             MockSinkService sink = new MockSinkService()) {
+            source.setNumEntities(10);
+            instance.harvest(source, sink, harvest);
+            assertEquals(5, sink.getIngestedEntities().size());
+            assertEquals(5, harvest.getNumSucceeded());
+            assertEquals(0, harvest.getNumFailed());
+            assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+        }
+    }
+
+    @Test
+    public void testHarvestPipelinedWithSourceFailures() {
+        instance.setPipelined(true);
+        Harvest harvest = new Harvest();
+        try (MockSourceService source = new MockUnreliableSourceService();
+             MockSinkService sink = new MockSinkService()) {
+            instance.harvest(source, sink, harvest);
+            assertEquals(4, sink.getIngestedEntities().size());
+            assertEquals(4, harvest.getNumSucceeded());
+            assertEquals(1, harvest.getNumFailed());
+            assertEquals(1, harvest.numMessages());
+            assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+        }
+    }
+
+    @Test
+    public void testHarvestPipelinedWithSkippedEntities() {
+        instance.setPipelined(true);
+        Harvest harvest = new Harvest();
+        try (MockSourceService source = new MockSkippingSourceService();
+             MockSinkService sink = new MockSinkService()) {
+            instance.harvest(source, sink, harvest);
+            assertEquals(4, sink.getIngestedEntities().size());
+            assertEquals(4, harvest.getNumSucceeded());
+            assertEquals(1, harvest.getNumSkipped());
+            assertEquals(0, harvest.getNumFailed());
+            assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+        }
+    }
+
+    @Test
+    public void testHarvestPipelinedWithSinkFailures() {
+        instance.setPipelined(true);
+        Harvest harvest = new Harvest();
+        try (MockSourceService source = new MockSourceService();
+             MockSinkService sink = new MockErroringSinkService()) {
+            instance.harvest(source, sink, harvest);
+            assertEquals(0, sink.getIngestedEntities().size());
+            assertEquals(0, harvest.getNumSucceeded());
+            assertEquals(5, harvest.getNumFailed());
+            assertEquals(5, harvest.numMessages());
+            assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+        }
+    }
+
+    @Test
+    public void testHarvestPipelinedWithAbortingHarvest() throws IOException {
+        instance.setPipelined(true);
+        Harvest harvest = new Harvest();
+        try (MockSourceService source = new MockAbortingSourceService();
+             MockSinkService sink = new MockSinkService()) {
+            instance.harvest(source, sink, harvest);
+            assertEquals(0, sink.getIngestedEntities().size());
+            assertEquals(0, harvest.getNumSucceeded());
+            assertEquals(source.numEntities(), harvest.getNumFailed());
+            assertEquals(Lifecycle.ABORTED, harvest.getLifecycle());
+        }
+    }
+
+    @Test
+    public void testHarvestVirtualThreadedWithNoFailures() throws Exception {
+        instance.setVirtualThreaded(true);
+        instance.setMaxSourceRequests(20);
+        instance.setMaxSinkRequests(10);
+        Harvest harvest = new Harvest();
+        try (MockSourceService source = new MockSourceService();
+             MockSinkService sink = new MockSinkService()) {
+            source.setNumEntities(100);
+            instance.harvest(source, sink, harvest);
+            assertEquals(source.numEntities(), sink.getIngestedEntities().size());
+            assertEquals(source.numEntities(), harvest.getNumSucceeded());
+            assertEquals(0, harvest.getNumFailed());
+            assertEquals(0, harvest.numMessages());
+            assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+        }
+    }
+
+    @Test
+    public void testHarvestVirtualThreadedWithMaxNumEntities() {
+        instance.setVirtualThreaded(true);
+        instance.setMaxSourceRequests(4);
+        Harvest harvest = new Harvest();
+        harvest.setMaxNumEntities(5);
+        try (MockSourceService source = new MockSourceService();
+             MockSinkService sink = new MockSinkService()) {
+            source.setNumEntities(10);
+            instance.harvest(source, sink, harvest);
+            assertEquals(5, sink.getIngestedEntities().size());
+            assertEquals(5, harvest.getNumSucceeded());
+            assertEquals(0, harvest.getNumFailed());
+            assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+        }
+    }
+
+    @Test
+    public void testHarvestVirtualThreadedWithSinkFailures() {
+        instance.setVirtualThreaded(true);
+        Harvest harvest = new Harvest();
+        try (MockSourceService source = new MockSourceService();
+             MockSinkService sink = new MockErroringSinkService()) {
+            instance.harvest(source, sink, harvest);
+            assertEquals(0, harvest.getNumSucceeded());
+            assertEquals(5, harvest.getNumFailed());
+            assertEquals(5, harvest.numMessages());
+            assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+        }
+    }
+
+    @Test
+    public void testHarvestVirtualThreadedWithAbortingHarvest() throws IOException {
+        instance.setVirtualThreaded(true);
+        Harvest harvest = new Harvest();
+        try (MockSourceService source = new MockAbortingSourceService();
+             MockSinkService sink = new MockSinkService()) {
+            instance.harvest(source, sink, harvest);
+            assertEquals(0, harvest.getNumSucceeded());
+            assertEquals(source.numEntities(), harvest.getNumFailed());
+            assertEquals(Lifecycle.ABORTED, harvest.getLifecycle());
+        }
+    }
+
+    @Test
+    public void testHarvestAdaptiveWithNoFailures() throws Exception {
+        instance.setAdaptiveMaxThreads(8);
+        Harvest harvest = new Harvest();
+        try (MockSourceService source = new MockSourceService();
+             MockSinkService sink = new MockSinkService()) {
+            source.setNumEntities(100);
+            instance.harvest(source, sink, harvest);
+            assertEquals(source.numEntities(), sink.getIngestedEntities().size());
+            assertEquals(source.numEntities(), harvest.getNumSucceeded());
+            assertEquals(0, harvest.getNumFailed());
+            assertTrue(harvest.getConcurrencyLimit() > 1);
+            assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+        }
+    }
+
+    @Test
+    public void testHarvestAdaptiveWithSinkFailures() {
+        instance.setAdaptiveMaxThreads(8);
+        Harvest harvest = new Harvest();
+        try (MockSourceService source = new MockSourceService();
+             MockSinkService sink = new MockErroringSinkService()) {
+            instance.harvest(source, sink, harvest);
+            assertEquals(0, harvest.getNumSucceeded());
+            assertEquals(5, harvest.getNumFailed());
+            assertEquals(5, harvest.numMessages());
+            assertEquals(1, harvest.getConcurrencyLimit());
+            assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+        }
+    }
+
+    @Test
+    public void testHarvestWithoutAdaptiveConcurrency() {
+        Harvest harvest = new Harvest();
+        try (MockSourceService source = new MockSourceService();
+             MockSinkService sink = new MockSinkService()) {
+            instance.harvest(source, sink, harvest);
+            assertEquals(-1, harvest.getConcurrencyLimit());
+        }
+    }
+
+    @Test
+    public void testHarvestResumesFromCheckpoint() throws Exception {
+        final Path file = Files.createTempFile(getClass().getSimpleName(), ".txt");
+        try (MockSourceService source = new MockSourceService()) {
+            source.setNumEntities(250);
+            // Harvest part of the source.
+            Harvest harvest = new Harvest();
+            harvest.setMaxNumEntities(150);
+            try (Checkpoint checkpoint = Checkpoint.open(file, false);
+                 MockSinkService sink = new MockSinkService()) {
+                instance.setCheckpoint(checkpoint);
+                instance.harvest(source, sink, harvest);
+                assertEquals(150, sink.getIngestedEntities().size());
+            }
+            // Resume.
+            harvest = new Harvest();
+            try (Checkpoint checkpoint = Checkpoint.open(file, true);
+                 MockSinkService sink = new MockSinkService()) {
+                instance.setCheckpoint(checkpoint);
+                instance.harvest(source, sink, harvest);
+                assertEquals(100, sink.getIngestedEntities().size());
+                assertEquals(250, harvest.getNumSucceeded());
+                assertEquals(0, harvest.getNumFailed());
+                assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testHarvestWithRetries() {
+        instance.setRetryPolicy(new RetryPolicy(3, Duration.ofMillis(1),
+                Duration.ofMillis(1)));
+        Harvest harvest = new Harvest();
+        final Set<String> failedIDs = ConcurrentHashMap.newKeySet();
+        try (MockSourceService source = new MockSourceService();
+             MockSinkService sink = new MockSinkService() {
+                 @Override
+                 public void ingest(ConcreteEntity entity) throws IOException {
+                     // Fail the first attempt for each entity.
+                     if (failedIDs.add(entity.getSinkID())) {
+                         throw new HTTPException("PUT", "http://example.org/",
+                                 503, null, null);
+                     }
+                     super.ingest(entity);
+                 }
+             }) {
+            instance.harvest(source, sink, harvest);
+            assertEquals(5, sink.getIngestedEntities().size());
+            assertEquals(5, harvest.getNumSucceeded());
+            assertEquals(0, harvest.getNumFailed());
+        }
+    }
+
+    @Test
+    public void testHarvestWithDeadLetterFile() throws Exception {
+        final Path file = Files.createTempFile(getClass().getSimpleName(), ".jsonl");
+        try (MockSourceService source = new MockSourceService();
+             MockSinkService sink = new MockErroringSinkService();
+             DeadLetterFile deadLetters = DeadLetterFile.open(file)) {
+            instance.setDeadLetterFile(deadLetters);
+            Harvest harvest = new Harvest();
+            instance.harvest(source, sink, harvest);
+            assertEquals(5, harvest.getNumFailed());
+            assertEquals(5, Files.readAllLines(file).size());
+        }
+        try (DeadLetterSource source = new DeadLetterSource(file);
+             MockSinkService sink = new MockSinkService()) {
+            instance.setDeadLetterFile(null);
+            Harvest harvest = new Harvest();
+            instance.harvest(source, sink, harvest);
+            assertEquals(5, sink.getIngestedEntities().size());
+            assertEquals(5, harvest.getNumSucceeded());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testHarvestWithHashLedgerSkipsUnchangedEntities()
+            throws Exception {
+        final Path file = Files.createTempFile(getClass().getSimpleName(), ".ledger");
+        try (HashLedger ledger = HashLedger.open(file)) {
+            instance.setHashLedger(ledger);
+            try (MockSourceService source = new MockSourceService();
+                 MockSinkService sink = new MockSinkService()) {
+                Harvest harvest = new Harvest();
+                instance.harvest(source, sink, harvest);
+                assertEquals(5, harvest.getNumSucceeded());
+                assertEquals(0, harvest.getNumSkipped());
+            }
+            try (MockSourceService source = new MockSourceService();
+                 MockSinkService sink = new MockSinkService()) {
+                Harvest harvest = new Harvest();
+                instance.harvest(source, sink, harvest);
+                assertEquals(0, sink.getIngestedEntities().size());
+                assertEquals(0, harvest.getNumSucceeded());
+                assertEquals(0, harvest.getNumFailed());
+                assertEquals(5, harvest.getNumSkipped());
+                assertEquals(Lifecycle.SUCCEEDED, harvest.getLifecycle());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testHarvestShards() {
+        final int numEntities = 10, numShards = 3;
+        final Set<String> sinkIDs = ConcurrentHashMap.newKeySet();
+        int numSucceeded = 0;
+        for (int i = 0; i < numShards; i++) {
+            Harvest harvest = new Harvest();
+            harvest.setShard(new Shard(i, numShards));
+            try (MockSourceService source = new MockSourceService();
+                 MockSinkService sink = new MockSinkService()) {
+                source.setNumEntities(numEntities);
+                source.setShard(harvest.getShard());
+                instance.harvest(source, sink, harvest);
+                for (ConcreteEntity entity : sink.getIngestedEntities()) {
+                    assertTrue(sinkIDs.add(entity.getSinkID()));
+                }
+                assertEquals(0, harvest.getNumFailed());
+                numSucceeded += harvest.getNumSucceeded();
+            }
+        }
+        assertEquals(numEntities, sinkIDs.size());
+        assertEquals(numEntities, numSucceeded);
+    }
+
 }
@@ -0,0 +1,93 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.entity.Element;
+import edu.illinois.library.metaslurper.entity.GenericEntity;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class HashLedgerTest {
+
+    private Path file;
+
+    private static GenericEntity newEntity(String sinkID, String title) {
+        GenericEntity entity = new GenericEntity();
+        entity.setSinkID(sinkID);
+        entity.getElements().add(new Element("title", title));
+        return entity;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile(getClass().getSimpleName(), ".ledger");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void testHashIsIndependentOfElementOrder() {
+        GenericEntity entity1 = newEntity("ID 1", "Title");
+        entity1.getElements().add(new Element("creator", "Creator"));
+        GenericEntity entity2 = new GenericEntity();
+        entity2.setSinkID("ID 1");
+        entity2.getElements().add(new Element("creator", "Creator"));
+        entity2.getElements().add(new Element("title", "Title"));
+        assertEquals(HashLedger.hash(entity1), HashLedger.hash(entity2));
+    }
+
+    @Test
+    public void testIsUnchanged() throws Exception {
+        try (HashLedger ledger = HashLedger.open(file)) {
+            assertFalse(ledger.isUnchanged(newEntity("ID 1", "Title")));
+            ledger.record(newEntity("ID 1", "Title"));
+            assertTrue(ledger.isUnchanged(newEntity("ID 1", "Title")));
+            assertFalse(ledger.isUnchanged(newEntity("ID 1", "New Title")));
+            assertFalse(ledger.isUnchanged(newEntity("ID 2", "Title")));
+            assertEquals(1, ledger.size());
+        }
+    }
+
+    @Test
+    public void testRecordOverwritesPreviousHash() throws Exception {
+        try (HashLedger ledger = HashLedger.open(file)) {
+            ledger.record(newEntity("ID 1", "Title"));
+            ledger.record(newEntity("ID 1", "New Title"));
+            assertTrue(ledger.isUnchanged(newEntity("ID 1", "New Title")));
+            assertFalse(ledger.isUnchanged(newEntity("ID 1", "Title")));
+            assertEquals(1, ledger.size());
+        }
+    }
+
+    @Test
+    public void testLedgerIsPersistentAndGrows() throws Exception {
+        final int numEntities = (int) HashLedger.INITIAL_CAPACITY;
+        try (HashLedger ledger = HashLedger.open(file)) {
+            for (int i = 0; i < numEntities; i++) {
+                ledger.record(newEntity("ID " + i, "Title " + i));
+            }
+        }
+        try (HashLedger ledger = HashLedger.open(file)) {
+            assertEquals(numEntities, ledger.size());
+            for (int i = 0; i < numEntities; i++) {
+                assertTrue(ledger.isUnchanged(newEntity("ID " + i, "Title " + i)));
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenWithInvalidFile() throws Exception {
+        Files.writeString(file, "This is not a ledger, but it is long enough " +
+                "to contain a header.");
+        HashLedger.open(file);
+    }
+
+}
@@ -0,0 +1,53 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JobFileTest {
+
+    @Test
+    public void testParse() {
+        List<JobFile.Entry> entries = JobFile.parse(List.of(
+                "# comment",
+                "",
+                "dls   threads=4 rate=2.5 burst=5",
+                "  idnc threads=8",
+                "ideals"));
+        assertEquals(3, entries.size());
+
+        JobFile.Entry entry = entries.get(0);
+        assertEquals("dls", entry.getSourceKey());
+        assertEquals(4, entry.getNumThreads());
+        assertEquals(2.5, entry.getRate(), 0.00001);
+        assertEquals(5, entry.getBurst());
+
+        entry = entries.get(1);
+        assertEquals("idnc", entry.getSourceKey());
+        assertEquals(8, entry.getNumThreads());
+
+        entry = entries.get(2);
+        assertEquals("ideals", entry.getSourceKey());
+        assertEquals(0, entry.getNumThreads());
+        assertTrue(entry.getRate() < 0);
+        assertEquals(0, entry.getBurst());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseWithDuplicateSource() {
+        JobFile.parse(List.of("dls", "DLS threads=2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseWithUnknownSetting() {
+        JobFile.parse(List.of("dls cats=2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseWithInvalidValue() {
+        JobFile.parse(List.of("dls threads=many"));
+    }
+
+}
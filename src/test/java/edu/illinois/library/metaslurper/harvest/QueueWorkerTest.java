@@ -0,0 +1,102 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.entity.ConcreteEntity;
+import edu.illinois.library.metaslurper.service.MockSinkService;
+import edu.illinois.library.metaslurper.service.MockSourceService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class QueueWorkerTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRunWithSeveralWorkers() throws Exception {
+        final int numEntities = 20, numUnits = 4, numWorkers = 3;
+        WorkQueue.create(dir, "mock", numUnits);
+
+        final List<MockSinkService> sinks = new ArrayList<>();
+        final List<Future<Integer>> results = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+        try {
+            for (int i = 0; i < numWorkers; i++) {
+                final MockSinkService sink = new MockSinkService();
+                sinks.add(sink);
+                final QueueWorker worker = new QueueWorker(
+                        WorkQueue.open(dir), new Harvester(), "worker" + i);
+                worker.setPollInterval(Duration.ofMillis(10));
+                results.add(executor.submit(() -> {
+                    try (MockSourceService source = new MockSourceService()) {
+                        source.setNumEntities(numEntities);
+                        return worker.run(source, sink, Harvest::new);
+                    }
+                }));
+            }
+            int numCompleted = 0;
+            for (Future<Integer> result : results) {
+                numCompleted += result.get();
+            }
+            assertEquals(numUnits, numCompleted);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        final List<String> sinkIDs = new ArrayList<>();
+        for (MockSinkService sink : sinks) {
+            for (ConcreteEntity entity : sink.getIngestedEntities()) {
+                sinkIDs.add(entity.getSinkID());
+            }
+            sink.close();
+        }
+        assertEquals(numEntities, sinkIDs.size());
+        assertEquals(numEntities, sinkIDs.stream().distinct().count());
+        assertTrue(WorkQueue.open(dir).isFinished());
+    }
+
+    @Test
+    public void testRunFinishesUnitOfDeadWorker() throws Exception {
+        final int numEntities = 10, numUnits = 2;
+        final WorkQueue queue = WorkQueue.create(dir, "mock", numUnits);
+        // Claim a unit and never renew it, as if the worker had died.
+        queue.claim("deadWorker").orElseThrow();
+
+        final QueueWorker worker =
+                new QueueWorker(queue, new Harvester(), "worker");
+        worker.setLeaseTimeout(Duration.ofMillis(100));
+        worker.setPollInterval(Duration.ofMillis(10));
+        try (MockSourceService source = new MockSourceService();
+             MockSinkService sink = new MockSinkService()) {
+            source.setNumEntities(numEntities);
+            assertEquals(numUnits, worker.run(source, sink, Harvest::new));
+            assertEquals(numEntities, sink.getIngestedEntities().size());
+        }
+        assertTrue(queue.isFinished());
+    }
+
+}
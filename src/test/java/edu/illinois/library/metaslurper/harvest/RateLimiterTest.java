@@ -0,0 +1,73 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testIsUnlimited() {
+        assertTrue(RateLimiter.UNLIMITED.isUnlimited());
+        assertTrue(new RateLimiter(0, 5).isUnlimited());
+        assertTrue(new RateLimiter(-1, 5).isUnlimited());
+        assertFalse(new RateLimiter(1, 1).isUnlimited());
+    }
+
+    @Test
+    public void testReserveWithBurst() {
+        RateLimiter instance = new RateLimiter(1, 3);
+        final long now = 0;
+        assertTrue(instance.reserve(now) <= 0);
+        assertTrue(instance.reserve(now) <= 0);
+        assertTrue(instance.reserve(now) <= 0);
+        assertEquals(SECOND, instance.reserve(now));
+        assertEquals(2 * SECOND, instance.reserve(now));
+    }
+
+    @Test
+    public void testReserveRefillsAfterInactivity() {
+        RateLimiter instance = new RateLimiter(1, 2);
+        assertTrue(instance.reserve(0) <= 0);
+        assertTrue(instance.reserve(0) <= 0);
+        assertEquals(SECOND, instance.reserve(0));
+        // After the bucket has had time to refill completely, a full burst
+        // is available again.
+        final long later = 10 * SECOND;
+        assertTrue(instance.reserve(later) <= 0);
+        assertTrue(instance.reserve(later) <= 0);
+        assertEquals(SECOND, instance.reserve(later));
+    }
+
+    @Test
+    public void testAcquireWithUnlimitedRateDoesNotWait() {
+        final long start = System.nanoTime();
+        for (int i = 0; i < 100000; i++) {
+            RateLimiter.UNLIMITED.acquire();
+        }
+        assertTrue(System.nanoTime() - start < SECOND);
+    }
+
+    @Test
+    public void testAcquireIsSharedAcrossThreads() throws Exception {
+        final RateLimiter instance = new RateLimiter(50, 1);
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        final long start = System.nanoTime();
+        for (int i = 0; i < 11; i++) {
+            pool.submit(instance::acquire);
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        // 11 permits at 50/s with no burst take at least 200 msec no matter
+        // how many threads are acquiring them.
+        final long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(190));
+    }
+
+}
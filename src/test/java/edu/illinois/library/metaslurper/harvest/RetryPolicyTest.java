@@ -0,0 +1,82 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.service.HTTPException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+
+    private static HTTPException newHTTPException(int status) {
+        return new HTTPException("PUT", "http://example.org/", status, null,
+                null);
+    }
+
+    @Test
+    public void testIsRetryable() {
+        assertTrue(RetryPolicy.isRetryable(new IOException()));
+        assertTrue(RetryPolicy.isRetryable(newHTTPException(408)));
+        assertTrue(RetryPolicy.isRetryable(newHTTPException(429)));
+        assertTrue(RetryPolicy.isRetryable(newHTTPException(502)));
+        assertFalse(RetryPolicy.isRetryable(newHTTPException(400)));
+        assertFalse(RetryPolicy.isRetryable(newHTTPException(404)));
+        assertFalse(RetryPolicy.isRetryable(new HarvestClosedException()));
+        assertFalse(RetryPolicy.isRetryable(new IllegalStateException()));
+    }
+
+    @Test
+    public void testShouldRetryRespectsMaxRetries() {
+        RetryPolicy instance = new RetryPolicy(2);
+        IOException e = new IOException();
+        assertTrue(instance.shouldRetry(e, 1));
+        assertTrue(instance.shouldRetry(e, 2));
+        assertFalse(instance.shouldRetry(e, 3));
+    }
+
+    @Test
+    public void testShouldRetryRespectsBudget() {
+        RetryPolicy instance = new RetryPolicy(1);
+        IOException e = new IOException();
+        for (int i = 0; i < RetryPolicy.BUDGET_CAPACITY; i++) {
+            assertTrue(instance.shouldRetry(e, 1));
+        }
+        assertFalse(instance.shouldRetry(e, 1));
+
+        // Each first attempt deposits a fraction of a retry.
+        for (int i = 0; i < Math.round(1 / RetryPolicy.BUDGET_RATIO); i++) {
+            instance.onFirstAttempt();
+        }
+        assertTrue(instance.shouldRetry(e, 1));
+        assertFalse(instance.shouldRetry(e, 1));
+    }
+
+    @Test
+    public void testGetDelayIsWithinExponentialBounds() {
+        RetryPolicy instance = new RetryPolicy(10, Duration.ofMillis(100),
+                Duration.ofMillis(1000));
+        IOException e = new IOException();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(instance.getDelay(e, 1).toMillis() <= 100);
+            assertTrue(instance.getDelay(e, 3).toMillis() <= 400);
+            assertTrue(instance.getDelay(e, 10).toMillis() <= 1000);
+            assertTrue(instance.getDelay(e, 40).toMillis() <= 1000);
+            assertFalse(instance.getDelay(e, 1).isNegative());
+        }
+    }
+
+    @Test
+    public void testGetDelayHonorsRetryAfter() {
+        RetryPolicy instance = new RetryPolicy(10, Duration.ofMillis(100),
+                Duration.ofMillis(1000));
+        HTTPException e = newHTTPException(503);
+        e.setRetryAfter(Duration.ofSeconds(30));
+        assertEquals(Duration.ofSeconds(30), instance.getDelay(e, 1));
+
+        e.setRetryAfter(Duration.ofDays(1));
+        assertEquals(RetryPolicy.MAX_RETRY_AFTER, instance.getDelay(e, 1));
+    }
+
+}
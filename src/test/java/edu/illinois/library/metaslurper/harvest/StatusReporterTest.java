@@ -0,0 +1,51 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.service.MockSinkService;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class StatusReporterTest {
+
+    private static class CountingSinkService extends MockSinkService {
+        private final AtomicInteger numUpdates = new AtomicInteger();
+
+        @Override
+        public void updateHarvest(Harvest harvest) {
+            numUpdates.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void testReportsPeriodically() throws Exception {
+        Harvest harvest = new Harvest();
+        harvest.setNumEntities(1000);
+        try (CountingSinkService sink = new CountingSinkService()) {
+            try (StatusReporter reporter = new StatusReporter(
+                    sink, harvest, Duration.ofMillis(20))) {
+                for (int i = 0; i < 10; i++) {
+                    harvest.incrementNumSucceeded();
+                    Thread.sleep(15);
+                }
+            }
+            assertTrue(sink.numUpdates.get() >= 2);
+            assertTrue(harvest.getThroughput() > 0);
+            assertTrue(harvest.getETA().isPresent());
+        }
+    }
+
+    @Test
+    public void testCloseStopsReporting() throws Exception {
+        Harvest harvest = new Harvest();
+        try (CountingSinkService sink = new CountingSinkService()) {
+            new StatusReporter(sink, harvest, Duration.ofMillis(10)).close();
+            int numUpdates = sink.numUpdates.get();
+            Thread.sleep(50);
+            assertEquals(numUpdates, sink.numUpdates.get());
+        }
+    }
+
+}
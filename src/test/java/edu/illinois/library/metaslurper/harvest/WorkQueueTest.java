@@ -0,0 +1,97 @@
+package edu.illinois.library.metaslurper.harvest;
+
+import edu.illinois.library.metaslurper.service.Shard;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class WorkQueueTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory(getClass().getSimpleName());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testCreate() throws Exception {
+        WorkQueue.create(dir, "mock", 3);
+        WorkQueue queue = WorkQueue.open(dir);
+        assertEquals("mock", queue.getSourceKey());
+        assertEquals(3, queue.numUnits());
+        assertEquals(0, queue.numDone());
+        assertFalse(queue.isFinished());
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void testCreateWithExistingQueue() throws Exception {
+        WorkQueue.create(dir, "mock", 3);
+        WorkQueue.create(dir, "mock", 3);
+    }
+
+    @Test
+    public void testClaimAndComplete() throws Exception {
+        WorkQueue queue = WorkQueue.create(dir, "mock", 3);
+        Set<Shard> units = new HashSet<>();
+        Optional<WorkQueue.Lease> lease;
+        while ((lease = queue.claim("worker" + units.size())).isPresent()) {
+            assertTrue(units.add(lease.get().getUnit()));
+            assertFalse(queue.isFinished());
+            assertTrue(lease.get().complete());
+        }
+        assertEquals(Set.of(new Shard(0, 3), new Shard(1, 3), new Shard(2, 3)),
+                units);
+        assertEquals(3, queue.numDone());
+        assertTrue(queue.isFinished());
+    }
+
+    @Test
+    public void testRelease() throws Exception {
+        WorkQueue queue = WorkQueue.create(dir, "mock", 1);
+        WorkQueue.Lease lease = queue.claim("worker").orElseThrow();
+        assertTrue(queue.claim("worker").isEmpty());
+        lease.release();
+        assertEquals(lease.getUnit(), queue.claim("worker").orElseThrow().getUnit());
+    }
+
+    @Test
+    public void testReissueExpired() throws Exception {
+        WorkQueue queue = WorkQueue.create(dir, "mock", 2);
+        WorkQueue.Lease lease1 = queue.claim("worker1").orElseThrow();
+        WorkQueue.Lease lease2 = queue.claim("worker2").orElseThrow();
+        assertEquals(0, queue.reissueExpired(Duration.ofMinutes(1)));
+
+        Thread.sleep(50);
+        assertTrue(lease2.heartbeat());
+        assertEquals(1, queue.reissueExpired(Duration.ofMillis(40)));
+        assertFalse(lease1.heartbeat());
+        assertFalse(lease1.complete());
+
+        WorkQueue.Lease lease3 = queue.claim("worker3").orElseThrow();
+        assertEquals(lease1.getUnit(), lease3.getUnit());
+        assertTrue(lease2.complete());
+        assertTrue(lease3.complete());
+        assertTrue(queue.isFinished());
+    }
+
+}
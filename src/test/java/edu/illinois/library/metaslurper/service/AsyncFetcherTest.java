@@ -0,0 +1,231 @@
+package edu.illinois.library.metaslurper.service;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AsyncFetcherTest {
+
+    private static final int PAGE_SIZE = 10;
+    private static final int MAX_IN_FLIGHT = 8;
+
+    private HttpServer server;
+    private OkHttpClient client;
+    private final AtomicInteger numInFlight = new AtomicInteger();
+    private final AtomicInteger maxNumInFlight = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        // Responds to /n with n after a short random delay, or with HTTP 404
+        // if n is negative.
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            maxNumInFlight.accumulateAndGet(numInFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextInt(1, 20));
+            } catch (InterruptedException ignore) {
+            }
+            final String n = exchange.getRequestURI().getPath().substring(1);
+            final byte[] body = n.getBytes(StandardCharsets.UTF_8);
+            numInFlight.decrementAndGet();
+            exchange.sendResponseHeaders(n.startsWith("-") ? 404 : 200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_IN_FLIGHT);
+        dispatcher.setMaxRequestsPerHost(MAX_IN_FLIGHT);
+        client = new OkHttpClient.Builder().dispatcher(dispatcher).build();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    /**
+     * @param numPages  Number of pages of URIs.
+     * @param errorPath Value to put in the path of one URI in place of its
+     *                  position, or {@code null}.
+     */
+    private AsyncFetcher<Integer> newInstance(int numPages, String errorPath) {
+        return newInstance(numPages, errorPath, null);
+    }
+
+    /**
+     * @param cursor Cursor to resume from, or {@code null}.
+     */
+    private AsyncFetcher<Integer> newInstance(int numPages,
+                                              String errorPath,
+                                              String cursor) {
+        final int firstPosition = (cursor != null) ?
+                (int) AsyncFetcher.parseFirstPosition(cursor) : 0;
+        final String baseURI = "http://localhost:" +
+                server.getAddress().getPort() + "/";
+        final PagePrefetcher<String> uris = new PagePrefetcher<>("test",
+                pageIndex -> {
+                    List<String> page = new ArrayList<>();
+                    for (int i = 0; i < PAGE_SIZE; i++) {
+                        int position = pageIndex * PAGE_SIZE + i;
+                        if (position < firstPosition) {
+                            continue;
+                        }
+                        page.add(baseURI + ((position == 5 && errorPath != null) ?
+                                errorPath : position));
+                    }
+                    return page;
+                }, 0, numPages, false, 2, PAGE_SIZE * 2);
+        final AsyncFetcher<Integer> instance = new AsyncFetcher<>("test",
+                uris.start(), firstPosition, client,
+                uri -> new Request.Builder().url(uri).build(),
+                (uri, response) -> {
+                    String body = response.body().string();
+                    if (response.code() != 200) {
+                        throw new HTTPException("GET", uri, response.code(), null, body);
+                    }
+                    return Integer.parseInt(body);
+                },
+                MAX_IN_FLIGHT);
+        if (cursor != null) {
+            instance.setSkippedPositions(AsyncFetcher.parseSkippedPositions(cursor));
+        }
+        return instance.start();
+    }
+
+    @Test
+    public void testTakeWithConcurrentConsumers() throws Exception {
+        final int numPages = 10, numConsumers = 3;
+        final List<Integer> results = Collections.synchronizedList(new ArrayList<>());
+        final ExecutorService executor = Executors.newFixedThreadPool(numConsumers);
+        try (AsyncFetcher<Integer> instance = newInstance(numPages, null)) {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numConsumers; i++) {
+                futures.add(executor.submit(() -> {
+                    while (true) {
+                        try {
+                            results.add(instance.take());
+                        } catch (EndOfIterationException e) {
+                            return null;
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            assertEquals(numPages * PAGE_SIZE, instance.lowWaterMark());
+        } finally {
+            executor.shutdownNow();
+        }
+        Collections.sort(results);
+        final List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < numPages * PAGE_SIZE; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, results);
+        // The window was used, but not exceeded.
+        assertTrue(maxNumInFlight.get() > numConsumers);
+        assertTrue(maxNumInFlight.get() <= MAX_IN_FLIGHT);
+    }
+
+    @Test
+    public void testTakeWithFailedRequest() throws Exception {
+        int numResults = 0, numErrors = 0;
+        try (AsyncFetcher<Integer> instance = newInstance(2, "-1")) {
+            while (true) {
+                try {
+                    instance.take();
+                    numResults++;
+                } catch (HTTPException e) {
+                    assertEquals(404, (int) e.getStatusCode().orElseThrow());
+                    numErrors++;
+                } catch (EndOfIterationException e) {
+                    break;
+                }
+            }
+        }
+        assertEquals(2 * PAGE_SIZE - 1, numResults);
+        assertEquals(1, numErrors);
+    }
+
+    @Test
+    public void testLowWaterMark() throws Exception {
+        try (AsyncFetcher<Integer> instance = newInstance(1, null)) {
+            assertEquals(0, instance.lowWaterMark());
+            final List<Integer> taken = new ArrayList<>();
+            for (int i = 0; i < PAGE_SIZE / 2; i++) {
+                taken.add(instance.take());
+            }
+            // Every position before the mark has been taken.
+            final long mark = instance.lowWaterMark();
+            for (int i = 0; i < mark; i++) {
+                assertTrue(taken.contains(i));
+            }
+            assertFalse(taken.contains((int) mark));
+        }
+    }
+
+    @Test
+    public void testResumeFromCursor() throws Exception {
+        final int numPages = 3;
+        final List<Integer> taken = new ArrayList<>();
+        String cursor;
+        try (AsyncFetcher<Integer> instance = newInstance(numPages, null)) {
+            for (int i = 0; i < PAGE_SIZE + 3; i++) {
+                taken.add(instance.take());
+            }
+            cursor = instance.cursor();
+        }
+        // Every position before the first one in the cursor has been taken,
+        // and so has every other one in it.
+        final long first = AsyncFetcher.parseFirstPosition(cursor);
+        for (int position = 0; position < first; position++) {
+            assertTrue(taken.contains(position));
+        }
+        for (long position : AsyncFetcher.parseSkippedPositions(cursor)) {
+            assertTrue(position > first);
+            assertTrue(taken.contains((int) position));
+        }
+
+        try (AsyncFetcher<Integer> instance = newInstance(numPages, null, cursor)) {
+            while (true) {
+                try {
+                    taken.add(instance.take());
+                } catch (EndOfIterationException e) {
+                    break;
+                }
+            }
+        }
+        // Every result was taken exactly once.
+        Collections.sort(taken);
+        final List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < numPages * PAGE_SIZE; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, taken);
+    }
+
+}
@@ -1,11 +1,14 @@
 package edu.illinois.library.metaslurper.service;
 
 import edu.illinois.library.metaslurper.entity.Entity;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -18,6 +21,11 @@ public class BookTrackerServiceTest {
         instance = new BookTrackerService();
     }
 
+    @After
+    public void tearDown() {
+        instance.close();
+    }
+
     @Test
     public void testNumEntities() throws Exception {
         assertTrue(instance.numEntities() > 50000);
@@ -49,4 +57,41 @@ public class BookTrackerServiceTest {
         assertNotNull(it.next());
     }
 
+    @Test
+    public void testEntitiesFetchesPagesOneAtATimeByKey() throws Exception {
+        try (StandInListingServer server = new StandInListingServer(100, 10)) {
+            server.setResponseDelay(50);
+            instance.setEndpointURI(server.getEndpointURI());
+
+            assertEquals(100, iterateSourceIDs().size());
+            assertEquals(1, server.getMaxConcurrentRequests());
+        }
+    }
+
+    @Test
+    public void testEntitiesFetchesPagesConcurrentlyWithoutKeysetSupport()
+            throws Exception {
+        try (StandInListingServer server = new StandInListingServer(100, 10)) {
+            server.setKeysetSupported(false);
+            server.setResponseDelay(200);
+            instance.setEndpointURI(server.getEndpointURI());
+
+            assertEquals(100, iterateSourceIDs().size());
+            assertTrue(server.getMaxConcurrentRequests() > 1);
+        }
+    }
+
+    private Set<String> iterateSourceIDs() throws Exception {
+        final ConcurrentIterator<? extends Entity> it = instance.entities();
+        final Set<String> sourceIDs = new HashSet<>();
+        while (true) {
+            try {
+                sourceIDs.add(it.next().getSourceID());
+            } catch (EndOfIterationException e) {
+                break;
+            }
+        }
+        return sourceIDs;
+    }
+
 }
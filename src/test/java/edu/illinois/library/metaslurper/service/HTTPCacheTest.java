@@ -0,0 +1,132 @@
+package edu.illinois.library.metaslurper.service;
+
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class HTTPCacheTest {
+
+    private static final String BODY = "{\"cats\":\"yes\"}";
+
+    private Path dir;
+    private HttpServer server;
+    private Cache cache;
+    private final AtomicInteger numFullResponses = new AtomicInteger();
+    private final AtomicReference<String> etag = new AtomicReference<>("\"1\"");
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory(getClass().getSimpleName());
+        cache = new Cache(dir.toFile(), 1024 * 1024);
+
+        // Requires revalidation of every response, and responds with HTTP 304
+        // when the client's ETag is current.
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            final String current = etag.get();
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.getResponseHeaders().set("ETag", current);
+            if (current.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                numFullResponses.incrementAndGet();
+                final byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+        cache.close();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private String get(OkHttpClient client) throws Exception {
+        Request request = new Request.Builder()
+                .url("http://localhost:" + server.getAddress().getPort() + "/entity")
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            assertEquals(200, response.code());
+            return response.body().string();
+        }
+    }
+
+    @Test
+    public void testCountsWithoutCache() {
+        assertEquals(HTTPCache.Counts.ZERO, HTTPCache.counts("nonexistent"));
+    }
+
+    @Test
+    public void testConditionalGet() throws Exception {
+        HTTPCache instance = HTTPCache.forSource("testConditionalGet");
+        OkHttpClient client = instance.configure(
+                new OkHttpClient.Builder(), cache).build();
+
+        assertEquals(BODY, get(client));
+        assertEquals(BODY, get(client));
+        assertEquals(BODY, get(client));
+        assertEquals(1, numFullResponses.get());
+
+        HTTPCache.Counts counts = HTTPCache.counts("testConditionalGet");
+        assertEquals(2, counts.getNumHits());
+        assertEquals(1, counts.getNumMisses());
+        assertEquals(2L * BODY.length(), counts.getNumBytesSaved());
+    }
+
+    @Test
+    public void testChangedRepresentation() throws Exception {
+        HTTPCache instance = HTTPCache.forSource("testChangedRepresentation");
+        OkHttpClient client = instance.configure(
+                new OkHttpClient.Builder(), cache).build();
+
+        get(client);
+        etag.set("\"2\"");
+        get(client);
+        get(client);
+        assertEquals(2, numFullResponses.get());
+
+        HTTPCache.Counts counts = instance.counts();
+        assertEquals(1, counts.getNumHits());
+        assertEquals(2, counts.getNumMisses());
+    }
+
+    @Test
+    public void testCountsMinus() throws Exception {
+        HTTPCache instance = HTTPCache.forSource("testCountsMinus");
+        OkHttpClient client = instance.configure(
+                new OkHttpClient.Builder(), cache).build();
+        get(client);
+        HTTPCache.Counts baseline = instance.counts();
+        get(client);
+
+        HTTPCache.Counts counts = instance.counts().minus(baseline);
+        assertEquals(1, counts.getNumHits());
+        assertEquals(0, counts.getNumMisses());
+        assertFalse(counts.isEmpty());
+    }
+
+}
@@ -0,0 +1,40 @@
+package edu.illinois.library.metaslurper.service;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.Assert.*;
+
+public class HTTPExceptionTest {
+
+    @Test
+    public void testParseRetryAfterWithSeconds() {
+        assertEquals(Duration.ofSeconds(120),
+                HTTPException.parseRetryAfter("120"));
+        assertEquals(Duration.ZERO, HTTPException.parseRetryAfter("-5"));
+    }
+
+    @Test
+    public void testParseRetryAfterWithDate() {
+        String value = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.now(ZoneOffset.UTC).plusMinutes(10));
+        Duration duration = HTTPException.parseRetryAfter(value);
+        assertTrue(duration.compareTo(Duration.ofMinutes(9)) > 0);
+        assertTrue(duration.compareTo(Duration.ofMinutes(10)) <= 0);
+
+        value = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.now(ZoneOffset.UTC).minusMinutes(10));
+        assertEquals(Duration.ZERO, HTTPException.parseRetryAfter(value));
+    }
+
+    @Test
+    public void testParseRetryAfterWithInvalidValue() {
+        assertNull(HTTPException.parseRetryAfter(null));
+        assertNull(HTTPException.parseRetryAfter("soon"));
+    }
+
+}
@@ -1,9 +1,19 @@
 package edu.illinois.library.metaslurper.service;
 
+import edu.illinois.library.metaslurper.entity.ConcreteEntity;
 import edu.illinois.library.metaslurper.entity.Entity;
+import edu.illinois.library.metaslurper.entity.SkippedEntity;
+import org.json.JSONObject;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
 import static org.junit.Assert.*;
 
 public class IllinoisDataBankServiceTest {
@@ -15,6 +25,11 @@ public class IllinoisDataBankServiceTest {
         instance = new IllinoisDataBankService();
     }
 
+    @After
+    public void tearDown() {
+        instance.close();
+    }
+
     @Test
     public void testNumEntities() throws Exception {
         assertTrue(instance.numEntities() > 250);
@@ -28,7 +43,9 @@ public class IllinoisDataBankServiceTest {
         while (true) {
             try {
                 Entity entity = it.next();
-                assertFalse(entity.getSinkID().isEmpty());
+                if (!(entity instanceof SkippedEntity)) {
+                    assertFalse(entity.getSinkID().isEmpty());
+                }
                 i++;
             } catch (HTTPException e) {
                 // Some items are restricted; that's OK.
@@ -42,4 +59,168 @@ public class IllinoisDataBankServiceTest {
         assertEquals(count, i);
     }
 
+    @Test
+    public void testEntitiesFromStandInServer() throws Exception {
+        final int numDataSets = 250;
+        try (StandInListingServer server =
+                     new StandInListingServer(numDataSets, 100)) {
+            instance.setEndpointURI(server.getEndpointURI());
+            assertEquals(numDataSets, instance.numEntities());
+
+            final ConcurrentIterator<? extends Entity> it = instance.entities();
+            final Set<String> sourceIDs = new HashSet<>();
+            while (true) {
+                try {
+                    sourceIDs.add(it.next().getSourceID());
+                } catch (EndOfIterationException e) {
+                    break;
+                }
+            }
+            assertEquals(numDataSets, sourceIDs.size());
+            assertTrue(sourceIDs.contains("10.5072/FK2/249"));
+        }
+    }
+
+    @Test
+    public void testEntitiesKeepsTheInFlightWindowBusy() throws Exception {
+        // OkHttp's default dispatcher would allow only 5 requests to the host.
+        final int maxInFlight = 8;
+        try (StandInListingServer server = new StandInListingServer(40, 100)) {
+            server.setResponseDelay(200);
+            instance.setEndpointURI(server.getEndpointURI());
+            final ConcurrentIterator<? extends Entity> it = instance.entities();
+            int count = 0;
+            while (true) {
+                try {
+                    it.next();
+                    count++;
+                } catch (EndOfIterationException e) {
+                    break;
+                }
+            }
+            assertEquals(40, count);
+            assertTrue(server.getMaxConcurrentRequests() > 5);
+            assertTrue(server.getMaxConcurrentRequests() <= maxInFlight);
+        }
+    }
+
+    @Test
+    public void testEntitiesLeavesOutTestDataSetsInTheListing()
+            throws Exception {
+        try (StandInListingServer server = new StandInListingServer(20, 100)) {
+            server.addTestID(3);
+            server.addTestID(11);
+            instance.setEndpointURI(server.getEndpointURI());
+            assertEquals(18, instance.numEntities());
+
+            final ConcurrentIterator<? extends Entity> it = instance.entities();
+            final Set<String> sourceIDs = new HashSet<>();
+            while (true) {
+                try {
+                    sourceIDs.add(it.next().getSourceID());
+                } catch (EndOfIterationException e) {
+                    break;
+                }
+            }
+            assertEquals(18, sourceIDs.size());
+            assertFalse(sourceIDs.contains("10.5072/FK2/3"));
+            assertFalse(sourceIDs.contains("10.5072/FK2/11"));
+            // The test data sets weren't even requested.
+            assertEquals(18, server.getNumDataSetRequests());
+        }
+    }
+
+    @Test
+    public void testEntitiesSkipsTestDataSetsNotInTheListing()
+            throws Exception {
+        try (StandInListingServer server = new StandInListingServer(20, 100)) {
+            server.addTestID(3);
+            server.addTestID(11);
+            server.setIncludingIsTest(false);
+            instance.setEndpointURI(server.getEndpointURI());
+            assertEquals(20, instance.numEntities());
+
+            final ConcurrentIterator<? extends Entity> it = instance.entities();
+            final Set<String> concreteIDs = new HashSet<>();
+            final Set<String> skippedIDs  = new HashSet<>();
+            while (true) {
+                try {
+                    Entity entity = it.next();
+                    if (entity instanceof SkippedEntity) {
+                        skippedIDs.add(entity.getSourceID());
+                    } else if (entity instanceof ConcreteEntity) {
+                        concreteIDs.add(entity.getSourceID());
+                    }
+                } catch (EndOfIterationException e) {
+                    break;
+                }
+            }
+            assertEquals(18, concreteIDs.size());
+            assertEquals(Set.of("10.5072/FK2/3", "10.5072/FK2/11"), skippedIDs);
+        }
+    }
+
+    @Test
+    public void testEntitiesWithListingSnapshotRecordsOnlyReturnedDataSets()
+            throws Exception {
+        final Path file = Files.createTempFile(getClass().getSimpleName(), null);
+        Files.delete(file);
+        try (StandInListingServer server = new StandInListingServer(30, 100)) {
+            instance.setEndpointURI(server.getEndpointURI());
+            instance.setListingSnapshot(file);
+            assertEquals(30, instance.numEntities());
+
+            // Stop after a few, leaving the rest fetched ahead but not
+            // returned.
+            final ConcurrentIterator<? extends Entity> it = instance.entities();
+            final Set<String> returnedIDs = new HashSet<>();
+            for (int i = 0; i < 5; i++) {
+                returnedIDs.add(it.next().getSourceID());
+            }
+            Thread.sleep(200);
+            instance.close();
+
+            instance = new IllinoisDataBankService();
+            instance.setEndpointURI(server.getEndpointURI());
+            instance.setListingSnapshot(file);
+            assertEquals(25, instance.numEntities());
+
+            final ConcurrentIterator<? extends Entity> it2 = instance.entities();
+            final Set<String> remainingIDs = new HashSet<>();
+            while (true) {
+                try {
+                    remainingIDs.add(it2.next().getSourceID());
+                } catch (EndOfIterationException e) {
+                    break;
+                }
+            }
+            assertEquals(25, remainingIDs.size());
+            remainingIDs.retainAll(returnedIDs);
+            assertTrue(remainingIDs.isEmpty());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testIsModifiedWithUpdatedAt() {
+        instance.setLastModified(Instant.parse("2020-01-01T00:00:00Z"));
+        assertTrue(instance.isModified("http://example.org/1", new JSONObject()
+                .put("updated_at", "2020-01-02T00:00:00.000Z")));
+        assertTrue(instance.isModified("http://example.org/2", new JSONObject()
+                .put("updated_at", "2020-01-01T12:00:00.000-06:00")));
+        assertFalse(instance.isModified("http://example.org/3", new JSONObject()
+                .put("updated_at", "2019-12-31T00:00:00.000Z")));
+    }
+
+    @Test
+    public void testIsModifiedWithoutUpdatedAt() {
+        // Without a fingerprint store, there is no way to tell.
+        instance.setLastModified(Instant.parse("2020-01-01T00:00:00Z"));
+        assertTrue(instance.isModified("http://example.org/1",
+                new JSONObject().put("title", "Cats")));
+        assertTrue(instance.isModified("http://example.org/2", new JSONObject()
+                .put("updated_at", "not a date")));
+    }
+
 }
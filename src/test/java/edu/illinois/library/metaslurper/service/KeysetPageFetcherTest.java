@@ -0,0 +1,166 @@
+package edu.illinois.library.metaslurper.service;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class KeysetPageFetcherTest {
+
+    private static final int NUM_RESULTS = 25;
+    private static final int WINDOW_SIZE = 10;
+
+    private StandInListingServer server;
+    private OkHttpClient client;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StandInListingServer(NUM_RESULTS, WINDOW_SIZE);
+        client = new OkHttpClient();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    /**
+     * Fetches a page of IDs from the stand-in server, the same way that the
+     * services do.
+     */
+    private KeysetPageFetcher.Page<Integer> fetchPage(int pageIndex,
+                                                      String afterID)
+            throws IOException {
+        final String uri = server.getListingURI() + ((afterID != null) ?
+                "?after_id=" + afterID : "?page=" + (pageIndex + 1));
+        final Request request = new Request.Builder().url(uri).build();
+        try (Response response = client.newCall(request).execute()) {
+            final JSONArray jarr = new JSONObject(response.body().string())
+                    .getJSONArray("results");
+            final List<Integer> ids = new ArrayList<>();
+            String firstID = null, lastID = null;
+            for (int i = 0; i < jarr.length(); i++) {
+                JSONObject result = jarr.getJSONObject(i);
+                ids.add(Integer.parseInt(result.getString("uri")
+                        .replaceAll(".*/", "")));
+                lastID = result.optString("id", null);
+                if (i == 0) {
+                    firstID = lastID;
+                }
+            }
+            return new KeysetPageFetcher.Page<>(ids, firstID, lastID);
+        }
+    }
+
+    /**
+     * Fetches pages until an empty one, removing the first result after the
+     * first page, as if it had been deleted during the harvest.
+     */
+    private List<Integer> fetchAllRemovingFirst(
+            PagePrefetcher.PageFetcher<Integer> fetcher) throws IOException {
+        final List<Integer> ids = new ArrayList<>();
+        for (int i = 0; ; i++) {
+            List<Integer> page = fetcher.fetch(i);
+            if (page.isEmpty()) {
+                return ids;
+            }
+            ids.addAll(page);
+            if (i == 0) {
+                server.remove(0);
+            }
+        }
+    }
+
+    private static List<Integer> range(int start, int end) {
+        final List<Integer> list = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    @Test
+    public void testOffsetPaginationSkipsResultsWhenOneIsRemoved()
+            throws Exception {
+        // This is the problem that keyset pagination solves.
+        final List<Integer> ids =
+                fetchAllRemovingFirst(i -> fetchPage(i, null).getElements());
+        assertEquals(NUM_RESULTS - 1, ids.size());
+        assertFalse(ids.contains(WINDOW_SIZE));
+    }
+
+    @Test
+    public void testFetchDoesNotSkipResultsWhenOneIsRemoved()
+            throws Exception {
+        final KeysetPageFetcher<Integer> instance =
+                new KeysetPageFetcher<>("test", this::fetchPage);
+        assertEquals(range(0, NUM_RESULTS), fetchAllRemovingFirst(instance));
+        assertTrue(instance.isKeysetSupported());
+    }
+
+    @Test
+    public void testFetchPicksUpResultsAddedDuringTheHarvest()
+            throws Exception {
+        final KeysetPageFetcher<Integer> instance =
+                new KeysetPageFetcher<>("test", this::fetchPage);
+        final List<Integer> ids = new ArrayList<>(instance.fetch(0));
+        server.add(NUM_RESULTS);
+        for (int i = 1; ; i++) {
+            List<Integer> page = instance.fetch(i);
+            if (page.isEmpty()) {
+                break;
+            }
+            ids.addAll(page);
+        }
+        assertEquals(range(0, NUM_RESULTS + 1), ids);
+    }
+
+    @Test
+    public void testFetchFallsBackToOffsetsWhenKeysAreIgnored()
+            throws Exception {
+        server.setKeysetSupported(false);
+        final KeysetPageFetcher<Integer> instance =
+                new KeysetPageFetcher<>("test", this::fetchPage);
+        final List<Integer> ids = new ArrayList<>();
+        for (int i = 0; ; i++) {
+            List<Integer> page = instance.fetch(i);
+            if (page.isEmpty()) {
+                break;
+            }
+            ids.addAll(page);
+        }
+        assertEquals(range(0, NUM_RESULTS), ids);
+        assertFalse(instance.isKeysetSupported());
+    }
+
+    @Test
+    public void testFetchFallsBackToOffsetsWhenResultsHaveNoKeys()
+            throws Exception {
+        server.setIncludingIDs(false);
+        final KeysetPageFetcher<Integer> instance =
+                new KeysetPageFetcher<>("test", this::fetchPage);
+        final List<Integer> ids = new ArrayList<>();
+        for (int i = 0; ; i++) {
+            List<Integer> page = instance.fetch(i);
+            if (page.isEmpty()) {
+                break;
+            }
+            ids.addAll(page);
+        }
+        assertEquals(range(0, NUM_RESULTS), ids);
+        assertFalse(instance.isKeysetSupported());
+    }
+
+}
@@ -0,0 +1,140 @@
+package edu.illinois.library.metaslurper.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class ListingSnapshotTest {
+
+    private Path dir;
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        dir  = Files.createTempDirectory(getClass().getSimpleName());
+        file = dir.resolve("test.snapshot");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testOpenWithNonexistentFile() throws Exception {
+        ListingSnapshot snapshot = ListingSnapshot.open(file);
+        assertEquals(0, snapshot.numPrevious());
+        assertTrue(snapshot.list("a", "1"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenWithInvalidFile() throws Exception {
+        Files.writeString(file, "cats");
+        ListingSnapshot.open(file);
+    }
+
+    @Test
+    public void testListSkipsUnchangedEntities() throws Exception {
+        ListingSnapshot snapshot = ListingSnapshot.open(file);
+        for (String key : List.of("a", "b", "c")) {
+            assertTrue(snapshot.list(key, "1"));
+            snapshot.record(key);
+        }
+        snapshot.completeListing();
+        snapshot.save();
+
+        snapshot = ListingSnapshot.open(file);
+        assertEquals(3, snapshot.numPrevious());
+        assertFalse(snapshot.list("a", "1"));
+        assertTrue(snapshot.list("b", "2"));
+        assertFalse(snapshot.list("c", "1"));
+        assertTrue(snapshot.list("d", "1"));
+    }
+
+    @Test
+    public void testListWithNullFingerprint() throws Exception {
+        ListingSnapshot snapshot = ListingSnapshot.open(file);
+        assertTrue(snapshot.list("a", null));
+        snapshot.record("a");
+        snapshot.completeListing();
+        snapshot.save();
+
+        snapshot = ListingSnapshot.open(file);
+        assertEquals(1, snapshot.numPrevious());
+        assertTrue(snapshot.list("a", null));
+        assertTrue(snapshot.getDeletedKeys().isEmpty());
+    }
+
+    @Test
+    public void testSaveOmitsUnrecordedEntities() throws Exception {
+        ListingSnapshot snapshot = ListingSnapshot.open(file);
+        snapshot.list("a", "1");
+        snapshot.list("b", "1"); // e.g. failed to fetch
+        snapshot.record("a");
+        snapshot.completeListing();
+        snapshot.save();
+
+        snapshot = ListingSnapshot.open(file);
+        assertEquals(1, snapshot.numPrevious());
+        assertFalse(snapshot.list("a", "1"));
+        assertTrue(snapshot.list("b", "1"));
+    }
+
+    @Test
+    public void testSaveWithIncompleteListing() throws Exception {
+        ListingSnapshot snapshot = ListingSnapshot.open(file);
+        snapshot.list("a", "1");
+        snapshot.record("a");
+        snapshot.save();
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void testDeletedKeys() throws Exception {
+        ListingSnapshot snapshot = ListingSnapshot.open(file);
+        for (String key : List.of("a", "b", "c")) {
+            snapshot.list(key, "1");
+            snapshot.record(key);
+        }
+        snapshot.completeListing();
+        snapshot.save();
+
+        snapshot = ListingSnapshot.open(file);
+        snapshot.list("b", "1");
+        snapshot.completeListing();
+        assertEquals(List.of("a", "c"), snapshot.getDeletedKeys());
+        snapshot.save();
+
+        Path deletedFile = dir.resolve("test.snapshot.deleted");
+        assertEquals(List.of("a", "c"),
+                Files.readAllLines(deletedFile, StandardCharsets.UTF_8));
+        snapshot = ListingSnapshot.open(file);
+        assertEquals(1, snapshot.numPrevious());
+    }
+
+    @Test
+    public void testSaveWithoutWritingDeletedKeys() throws Exception {
+        ListingSnapshot snapshot = ListingSnapshot.open(file);
+        snapshot.setWritingDeletedKeys(false);
+        snapshot.list("a", "1");
+        snapshot.record("a");
+        snapshot.completeListing();
+        snapshot.save();
+
+        assertTrue(Files.exists(file));
+        assertFalse(Files.exists(dir.resolve("test.snapshot.deleted")));
+    }
+
+}
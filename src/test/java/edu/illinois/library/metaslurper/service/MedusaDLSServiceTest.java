@@ -5,7 +5,11 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -53,4 +57,68 @@ public class MedusaDLSServiceTest {
         assertTrue(entity.getSinkID().startsWith(MedusaDLSService.ENTITY_ID_PREFIX));
     }
 
+    @Test
+    public void testEntitiesFetchesPagesConcurrentlyWithoutKeysetSupport()
+            throws Exception {
+        try (StandInListingServer server = new StandInListingServer(100, 10)) {
+            server.setKeysetSupported(false);
+            server.setResponseDelay(200);
+            instance.setEndpointURI(server.getEndpointURI());
+
+            final ConcurrentIterator<? extends Entity> it = instance.entities();
+            final Set<String> sourceIDs = new HashSet<>();
+            while (true) {
+                try {
+                    sourceIDs.add(it.next().getSourceID());
+                } catch (EndOfIterationException e) {
+                    break;
+                }
+            }
+            assertEquals(100, sourceIDs.size());
+            assertTrue(server.getMaxConcurrentRequests() > 1);
+        }
+    }
+
+    @Test
+    public void testEntitiesWithListingSnapshotRecordsOnlyReturnedEntities()
+            throws Exception {
+        final Path file = Files.createTempFile(getClass().getSimpleName(), null);
+        Files.delete(file);
+        try (StandInListingServer server = new StandInListingServer(30, 10)) {
+            instance.setEndpointURI(server.getEndpointURI());
+            instance.setListingSnapshot(file);
+            assertEquals(30, instance.numEntities());
+
+            // Stop after a few, leaving the rest fetched ahead but not
+            // returned.
+            final ConcurrentIterator<? extends Entity> it = instance.entities();
+            final Set<String> returnedIDs = new HashSet<>();
+            for (int i = 0; i < 5; i++) {
+                returnedIDs.add(it.next().getSourceID());
+            }
+            Thread.sleep(200);
+            instance.close();
+
+            instance = new MedusaDLSService();
+            instance.setEndpointURI(server.getEndpointURI());
+            instance.setListingSnapshot(file);
+            assertEquals(25, instance.numEntities());
+
+            final ConcurrentIterator<? extends Entity> it2 = instance.entities();
+            final Set<String> remainingIDs = new HashSet<>();
+            while (true) {
+                try {
+                    remainingIDs.add(it2.next().getSourceID());
+                } catch (EndOfIterationException e) {
+                    break;
+                }
+            }
+            assertEquals(25, remainingIDs.size());
+            remainingIDs.retainAll(returnedIDs);
+            assertTrue(remainingIDs.isEmpty());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
 }
@@ -0,0 +1,73 @@
+package edu.illinois.library.metaslurper.service;
+
+import edu.illinois.library.metaslurper.harvest.Harvest;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetaslurpHarvestTest {
+
+    private Harvest harvest;
+    private MetaslurpHarvest instance;
+
+    @Before
+    public void setUp() {
+        harvest  = new Harvest();
+        instance = new MetaslurpHarvest("key", 10);
+        instance.setHarvest(harvest);
+    }
+
+    @Test
+    public void testToJSONIncludesOnlyUnsentMessages() {
+        harvest.addMessage("a");
+        harvest.addMessage("b");
+        JSONObject json = new JSONObject(instance.toJSON());
+        assertEquals(2, json.getJSONArray("messages").length());
+        instance.markSent();
+
+        harvest.addMessage("c");
+        json = new JSONObject(instance.toJSON());
+        assertEquals(1, json.getJSONArray("messages").length());
+        assertEquals("c", json.getJSONArray("messages").getString(0));
+    }
+
+    @Test
+    public void testToJSONResendsMessagesWhenNotMarkedSent() {
+        harvest.addMessage("a");
+        instance.toJSON();
+        JSONObject json = new JSONObject(instance.toJSON());
+        assertEquals(1, json.getJSONArray("messages").length());
+    }
+
+    @Test
+    public void testToJSONWithoutETA() {
+        JSONObject json = new JSONObject(instance.toJSON());
+        assertEquals(0, json.getDouble("throughput"), 0.0001);
+        assertFalse(json.has("eta"));
+    }
+
+    @Test
+    public void testToJSONWithoutQueueDepths() {
+        JSONObject json = new JSONObject(instance.toJSON());
+        assertFalse(json.has("fetched_queue_depth"));
+        assertFalse(json.has("max_prepared_queue_depth"));
+    }
+
+    @Test
+    public void testToJSONWithoutShard() {
+        JSONObject json = new JSONObject(instance.toJSON());
+        assertFalse(json.has("shard_index"));
+        assertFalse(json.has("num_shards"));
+    }
+
+    @Test
+    public void testToJSONWithShard() {
+        harvest.setShard(new Shard(1, 3));
+        JSONObject json = new JSONObject(instance.toJSON());
+        assertEquals(1, json.getInt("shard_index"));
+        assertEquals(3, json.getInt("num_shards"));
+    }
+
+}
@@ -5,12 +5,14 @@ import edu.illinois.library.metaslurper.harvest.Harvest;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 public class MockSinkService implements SinkService {
 
     private int numEntitiesToIngest;
-    private final List<ConcreteEntity> ingestedEntities = new ArrayList<>();
+    private final List<ConcreteEntity> ingestedEntities =
+            Collections.synchronizedList(new ArrayList<>());
 
     @Override
     public String getKey() {
@@ -0,0 +1,76 @@
+package edu.illinois.library.metaslurper.service;
+
+import edu.illinois.library.metaslurper.entity.Entity;
+import edu.illinois.library.metaslurper.entity.SkippedEntity;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Source service whose {@link #entities()} method returns a {@link
+ * SkippedEntity} in place of its first entity.
+ */
+public class MockSkippingSourceService extends MockSourceService
+        implements SourceService {
+
+    private static class MockSkippedEntity implements SkippedEntity {
+
+        @Override
+        public String getServiceKey() {
+            return null;
+        }
+
+        @Override
+        public String getSourceID() {
+            return "skipped";
+        }
+
+        @Override
+        public String getSourceURI() {
+            return null;
+        }
+
+        @Override
+        public String getSinkID() {
+            return null;
+        }
+
+        @Override
+        public String getParentSinkID() {
+            return null;
+        }
+
+        @Override
+        public String getContainerSinkID() {
+            return null;
+        }
+
+        @Override
+        public String getContainerName() {
+            return null;
+        }
+
+    }
+
+    @Override
+    public String getKey() {
+        return MockSkippingSourceService.class.getSimpleName().toLowerCase();
+    }
+
+    @Override
+    public String getName() {
+        return MockSkippingSourceService.class.getSimpleName();
+    }
+
+    @Override
+    public ConcurrentIterator<Entity> entities() throws IOException {
+        final ConcurrentIterator<Entity> it = super.entities();
+        final AtomicInteger index = new AtomicInteger();
+        return () -> {
+            Entity entity = it.next();
+            return (index.getAndIncrement() == 0) ?
+                    new MockSkippedEntity() : entity;
+        };
+    }
+
+}
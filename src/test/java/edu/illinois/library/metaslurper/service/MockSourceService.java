@@ -6,13 +6,14 @@ import edu.illinois.library.metaslurper.entity.Entity;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class MockSourceService implements SourceService {
 
     private int numEntities = 5;
+    private int startIndex;
+    private Shard shard = Shard.ALL;
 
     @Override
     public String getKey() {
@@ -30,13 +31,22 @@ public class MockSourceService implements SourceService {
 
     @Override
     public int numEntities() throws IOException {
-        return numEntities;
+        int count = 0;
+        for (int i = 0; i < numEntities; i++) {
+            if (shard.contains(i)) {
+                count++;
+            }
+        }
+        return count;
     }
 
     @Override
     public ConcurrentIterator<Entity> entities() throws IOException {
         List<Entity> entities = new ArrayList<>();
-        for (int i = 0; i < numEntities(); i++) {
+        for (int i = 0; i < numEntities; i++) {
+            if (!shard.contains(i)) {
+                continue;
+            }
             GenericEntity item = new GenericEntity();
             item.setSinkID("ID " + (i + 1));
             entities.add(item);
@@ -44,20 +54,35 @@ public class MockSourceService implements SourceService {
 
         return new ConcurrentIterator<>() {
             private final int numEntities     = numEntities();
-            private final AtomicInteger index = new AtomicInteger();
-            private final Iterator<Entity> it = entities.iterator();
+            private final AtomicInteger index = new AtomicInteger(startIndex);
 
             @Override
             public Entity next() throws EndOfIterationException {
-                if (index.getAndIncrement() < numEntities) {
-                    return it.next();
+                final int i = index.getAndIncrement();
+                if (i < numEntities) {
+                    return entities.get(i);
                 } else {
                     throw new EndOfIterationException();
                 }
             }
+
+            @Override
+            public String cursor() {
+                return String.valueOf(Math.min(index.get(), numEntities));
+            }
         };
     }
 
+    @Override
+    public void setCursor(String cursor) {
+        startIndex = Integer.parseInt(cursor);
+    }
+
+    @Override
+    public void setShard(Shard shard) {
+        this.shard = shard;
+    }
+
     @Override
     public void setLastModified(Instant lastModified)
             throws UnsupportedOperationException {
@@ -16,6 +16,7 @@ import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathFactory;
 
 import java.io.File;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -53,4 +54,21 @@ public class NativeElementTransformerTest {
         assertEquals("2005-09-21T17:43:50Z", e.getValue());
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void testTransformWithStreamedElement() {
+        Element e = instance.transform("dim:field",
+                Map.of("schema", "dc", "element", "date", "qualifier", "issued"),
+                "2004-04-07");
+        assertEquals("dc:date:issued", e.getName());
+        assertEquals("2004-04-07", e.getValue());
+    }
+
+    @Test
+    public void testTransformWithStreamedElementWithoutNameAttributes() {
+        Element e = instance.transform("dc:title", Map.of("lang", "en"), "Cats");
+        assertEquals("dc:title", e.getName());
+        assertEquals("Cats", e.getValue());
+    }
+
+}
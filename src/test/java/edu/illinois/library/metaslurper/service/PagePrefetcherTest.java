@@ -0,0 +1,220 @@
+package edu.illinois.library.metaslurper.service;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PagePrefetcherTest {
+
+    private static final int PAGE_SIZE = 5;
+
+    /**
+     * @return Page of consecutive integers, or an empty page if the index is
+     *         not less than the given number of pages.
+     */
+    private static List<Integer> page(int pageIndex, int numPages) {
+        final List<Integer> page = new ArrayList<>();
+        if (pageIndex < numPages) {
+            for (int i = 0; i < PAGE_SIZE; i++) {
+                page.add(pageIndex * PAGE_SIZE + i);
+            }
+        }
+        return page;
+    }
+
+    private static List<Integer> drain(PagePrefetcher<Integer> instance)
+            throws Exception {
+        final List<Integer> elements = new ArrayList<>();
+        while (true) {
+            try {
+                elements.add(instance.take());
+            } catch (EndOfIterationException e) {
+                return elements;
+            }
+        }
+    }
+
+    private static List<Integer> range(int start, int end) {
+        final List<Integer> list = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    @Test
+    public void testTakeReturnsElementsInPageOrder() throws Exception {
+        // Make later pages return sooner to try to get them out of order.
+        try (PagePrefetcher<Integer> instance = new PagePrefetcher<>("test",
+                i -> {
+                    try {
+                        Thread.sleep(5L * (10 - i));
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return page(i, 10);
+                }, 0, 10, false, 4, 8).start()) {
+            assertEquals(range(0, 10 * PAGE_SIZE), drain(instance));
+        }
+    }
+
+    @Test
+    public void testTakeWhenUnorderedReturnsPagesAsTheyArrive()
+            throws Exception {
+        // The first page is held up until all of the others have arrived.
+        final CountDownLatch othersArrived = new CountDownLatch(3);
+        try (PagePrefetcher<Integer> instance = new PagePrefetcher<>("test",
+                i -> {
+                    if (i == 0) {
+                        try {
+                            othersArrived.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            throw new IOException(e);
+                        }
+                    } else {
+                        othersArrived.countDown();
+                    }
+                    return page(i, 4);
+                }, 0, 4, false, 4, 100)) {
+            instance.setOrdered(false);
+            instance.start();
+            List<Integer> elements = drain(instance);
+            assertEquals(range(0, PAGE_SIZE),
+                    elements.subList(3 * PAGE_SIZE, 4 * PAGE_SIZE));
+            Collections.sort(elements);
+            assertEquals(range(0, 4 * PAGE_SIZE), elements);
+        }
+    }
+
+    @Test
+    public void testTakeWithStartAndEndPages() throws Exception {
+        try (PagePrefetcher<Integer> instance = new PagePrefetcher<>("test",
+                i -> page(i, 10), 3, 6, false, 4, 100).start()) {
+            assertEquals(range(3 * PAGE_SIZE, 6 * PAGE_SIZE), drain(instance));
+        }
+    }
+
+    @Test
+    public void testOpenEndedContinuesUntilEmptyPage() throws Exception {
+        final AtomicInteger maxPage = new AtomicInteger(-1);
+        try (PagePrefetcher<Integer> instance = new PagePrefetcher<>("test",
+                i -> {
+                    maxPage.accumulateAndGet(i, Math::max);
+                    return page(i, 7);
+                }, 0, 5, true, 4, 100).start()) {
+            assertEquals(range(0, 7 * PAGE_SIZE), drain(instance));
+        }
+        // Pages past the known end are fetched one at a time.
+        assertEquals(7, maxPage.get());
+    }
+
+    @Test
+    public void testTransientErrorsAreRetried() throws Exception {
+        final AtomicInteger numAttempts = new AtomicInteger();
+        try (PagePrefetcher<Integer> instance = new PagePrefetcher<>("test",
+                i -> {
+                    if (i == 1 && numAttempts.incrementAndGet() < PagePrefetcher.MAX_ATTEMPTS) {
+                        throw new HTTPException("GET", "http://example.org/", 503, null, null);
+                    }
+                    return page(i, 3);
+                }, 0, 3, false, 2, 100)) {
+            instance.setRetryDelay(Duration.ofMillis(1));
+            instance.start();
+            assertEquals(range(0, 3 * PAGE_SIZE), drain(instance));
+        }
+        assertEquals(PagePrefetcher.MAX_ATTEMPTS, numAttempts.get());
+    }
+
+    @Test
+    public void testPageErrorIsThrownOnceAndIterationContinues()
+            throws Exception {
+        final AtomicInteger numAttempts = new AtomicInteger();
+        try (PagePrefetcher<Integer> instance = new PagePrefetcher<>("test",
+                i -> {
+                    if (i == 1) {
+                        numAttempts.incrementAndGet();
+                        throw new HTTPException("GET", "http://example.org/", 404, null, null);
+                    }
+                    return page(i, 3);
+                }, 0, 3, false, 2, 100).start()) {
+            final List<Integer> elements = new ArrayList<>();
+            int numErrors = 0;
+            while (true) {
+                try {
+                    elements.add(instance.take());
+                } catch (HTTPException e) {
+                    numErrors++;
+                } catch (EndOfIterationException e) {
+                    break;
+                }
+            }
+            final List<Integer> expected = range(0, PAGE_SIZE);
+            expected.addAll(range(2 * PAGE_SIZE, 3 * PAGE_SIZE));
+            assertEquals(expected, elements);
+            assertEquals(1, numErrors);
+        }
+        // 4xx errors are not retried.
+        assertEquals(1, numAttempts.get());
+    }
+
+    @Test
+    public void testConcurrentConsumers() throws Exception {
+        final int numPages = 50, numConsumers = 8;
+        final List<Integer> elements = Collections.synchronizedList(new ArrayList<>());
+        final ExecutorService executor = Executors.newFixedThreadPool(numConsumers);
+        try (PagePrefetcher<Integer> instance = new PagePrefetcher<>("test",
+                i -> page(i, numPages), 0, numPages, true, 4, 10).start()) {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < numConsumers; i++) {
+                futures.add(executor.submit(() -> {
+                    elements.addAll(drain(instance));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(numPages * PAGE_SIZE, elements.size());
+        assertEquals(numPages * PAGE_SIZE, elements.stream().distinct().count());
+    }
+
+    @Test
+    public void testCloseReleasesBlockedConsumers() throws Exception {
+        final CountDownLatch fetching = new CountDownLatch(1);
+        final PagePrefetcher<Integer> instance = new PagePrefetcher<>("test",
+                i -> {
+                    fetching.countDown();
+                    try {
+                        Thread.sleep(60000);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                    return page(i, 1);
+                }, 0, 1, false, 1, 10).start();
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<List<Integer>> future = executor.submit(() -> drain(instance));
+            assertTrue(fetching.await(10, TimeUnit.SECONDS));
+            instance.close();
+            assertTrue(future.get(10, TimeUnit.SECONDS).isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
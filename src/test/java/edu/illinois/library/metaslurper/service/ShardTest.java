@@ -0,0 +1,61 @@
+package edu.illinois.library.metaslurper.service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ShardTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorWithZeroCount() {
+        new Shard(0, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorWithIndexOutOfRange() {
+        new Shard(3, 3);
+    }
+
+    @Test
+    public void testContainsAssignsEachPositionToOneShard() {
+        final int count = 3;
+        for (int position = 0; position < 20; position++) {
+            int numContaining = 0;
+            for (int index = 0; index < count; index++) {
+                if (new Shard(index, count).contains(position)) {
+                    numContaining++;
+                }
+            }
+            assertEquals(1, numContaining);
+        }
+    }
+
+    @Test
+    public void testRangesAreContiguousAndComplete() {
+        final int count = 4;
+        for (int size : new int[] { 0, 1, 3, 10, 1001 }) {
+            int expectedStart = 0;
+            for (int index = 0; index < count; index++) {
+                Shard shard = new Shard(index, count);
+                assertEquals(expectedStart, shard.getStart(size));
+                assertTrue(shard.getEnd(size) >= shard.getStart(size));
+                expectedStart = shard.getEnd(size);
+            }
+            assertEquals(size, expectedStart);
+        }
+    }
+
+    @Test
+    public void testAll() {
+        assertTrue(Shard.ALL.isAll());
+        assertTrue(Shard.ALL.contains(12));
+        assertEquals(0, Shard.ALL.getStart(12));
+        assertEquals(12, Shard.ALL.getEnd(12));
+    }
+
+    @Test
+    public void testToString() {
+        assertEquals("2/4", new Shard(2, 4).toString());
+    }
+
+}
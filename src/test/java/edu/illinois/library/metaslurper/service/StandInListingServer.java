@@ -0,0 +1,267 @@
+package edu.illinois.library.metaslurper.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local HTTP server that stands in for a paginated JSON listing endpoint like
+ * those of Book Tracker and the DLS, for testing pagination without network
+ * access.
+ *
+ * <p>{@literal GET /listing} (or {@literal /harvest} or {@literal /books},
+ * as the DLS and Book Tracker call it) returns {@literal numResults},
+ * {@literal windowSize}, and a page of {@literal results}, each with an
+ * {@literal id}, a {@literal uri}, and an {@literal updated_at}, in ascending
+ * order of ID. Pages are selected by {@literal page} (one-based) or {@literal
+ * start} (zero-based offset), or, if keyset pagination is enabled, by
+ * {@literal after_id}. {@literal GET /listing/:id} returns a DLS agent
+ * representation of a result.</p>
+ *
+ * <p>{@literal GET /datasets} returns all results at once in the manner of
+ * the Illinois Data Bank, as an array of objects with a {@literal url}, an
+ * {@literal updated_at}, and optionally an {@literal is_test}, and {@literal GET
+ * /datasets/:id} returns the representation of one of them.</p>
+ *
+ * <p>Listing pages and data set representations are served after an optional
+ * {@link #setResponseDelay(long) delay}. The greatest number of them that
+ * were being served at once is available from {@link
+ * #getMaxConcurrentRequests()}.</p>
+ */
+class StandInListingServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final TreeSet<Integer> ids = new TreeSet<>();
+    private final Set<Integer> testIDs = new HashSet<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final int windowSize;
+    private final AtomicInteger numConcurrentRequests = new AtomicInteger();
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+    private final AtomicInteger numDataSetRequests    = new AtomicInteger();
+    private volatile boolean isKeysetSupported = true;
+    private volatile boolean isIncludingIDs = true;
+    private volatile boolean isIncludingIsTest = true;
+    private volatile long responseDelayMsec;
+
+    /**
+     * @param numResults Number of results, whose IDs will be {@literal 0} to
+     *                   {@literal numResults - 1}.
+     * @param windowSize Page size.
+     */
+    StandInListingServer(int numResults, int windowSize) throws IOException {
+        this.windowSize = windowSize;
+        for (int i = 0; i < numResults; i++) {
+            ids.add(i);
+        }
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/listing", this::handle);
+        server.createContext("/harvest", this::handle);
+        server.createContext("/books", this::handle);
+        server.createContext("/datasets", this::handleDataSets);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    synchronized void add(int id) {
+        ids.add(id);
+    }
+
+    synchronized void remove(int id) {
+        ids.remove(id);
+    }
+
+    /**
+     * @param id ID of a result to mark as a test data set.
+     */
+    synchronized void addTestID(int id) {
+        testIDs.add(id);
+    }
+
+    String getEndpointURI() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    int getMaxConcurrentRequests() {
+        return maxConcurrentRequests.get();
+    }
+
+    int getNumDataSetRequests() {
+        return numDataSetRequests.get();
+    }
+
+    String getListingURI() {
+        return "http://localhost:" + server.getAddress().getPort() + "/listing";
+    }
+
+    void setIncludingIDs(boolean isIncludingIDs) {
+        this.isIncludingIDs = isIncludingIDs;
+    }
+
+    /**
+     * @param isIncludingIsTest Whether the {@literal /datasets} listing says
+     *                          which results are test data sets. Their
+     *                          representations always do.
+     */
+    void setIncludingIsTest(boolean isIncludingIsTest) {
+        this.isIncludingIsTest = isIncludingIsTest;
+    }
+
+    void setKeysetSupported(boolean isKeysetSupported) {
+        this.isKeysetSupported = isKeysetSupported;
+    }
+
+    void setResponseDelay(long msec) {
+        this.responseDelayMsec = msec;
+    }
+
+    /**
+     * Waits out the {@link #setResponseDelay(long) response delay}, counting
+     * the request toward the {@link #getMaxConcurrentRequests() concurrent
+     * requests}.
+     */
+    private void delay() {
+        maxConcurrentRequests.accumulateAndGet(
+                numConcurrentRequests.incrementAndGet(), Math::max);
+        try {
+            Thread.sleep(responseDelayMsec);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            numConcurrentRequests.decrementAndGet();
+        }
+    }
+
+    private void handleDataSets(HttpExchange exchange) throws IOException {
+        final String path = exchange.getRequestURI().getPath();
+        final String body;
+        if ("/datasets".equals(path)) {
+            final JSONArray results = new JSONArray();
+            synchronized (this) {
+                for (int id : ids) {
+                    JSONObject result = new JSONObject()
+                            .put("url", getEndpointURI() + "/datasets/" + id)
+                            .put("updated_at", "2020-01-01T00:00:00Z");
+                    if (isIncludingIsTest) {
+                        result.put("is_test", testIDs.contains(id));
+                    }
+                    results.put(result);
+                }
+            }
+            body = results.toString();
+        } else {
+            numDataSetRequests.incrementAndGet();
+            delay();
+            final int id = Integer.parseInt(
+                    path.substring(path.lastIndexOf('/') + 1));
+            final boolean isTest;
+            synchronized (this) {
+                isTest = testIDs.contains(id);
+            }
+            body = new JSONObject()
+                    .put("identifier", "10.5072/FK2/" + id)
+                    .put("url", getEndpointURI() + "/datasets/" + id + ".json")
+                    .put("title", "Data set " + id)
+                    .put("is_test", isTest)
+                    .put("datafiles", new JSONArray().put(
+                            new JSONObject().put("binary_name", id + ".csv")))
+                    .toString();
+        }
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        final String path = exchange.getRequestURI().getPath();
+        if (path.startsWith("/listing/")) {
+            handleResult(exchange,
+                    Integer.parseInt(path.substring(path.lastIndexOf('/') + 1)));
+            return;
+        }
+        delay();
+        final Map<String, String> params = new HashMap<>();
+        final String query = exchange.getRequestURI().getQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                String[] parts = pair.split("=", 2);
+                params.put(parts[0], (parts.length > 1) ? parts[1] : "");
+            }
+        }
+        final JSONObject jobj = new JSONObject();
+        final JSONArray results = new JSONArray();
+        synchronized (this) {
+            List<Integer> page;
+            if (isKeysetSupported && params.containsKey("after_id")) {
+                page = new ArrayList<>(ids.tailSet(
+                        Integer.parseInt(params.get("after_id")), false));
+            } else {
+                final List<Integer> all = new ArrayList<>(ids);
+                int offset = 0;
+                if (params.containsKey("page")) {
+                    offset = (Integer.parseInt(params.get("page")) - 1) * windowSize;
+                } else if (params.containsKey("start")) {
+                    offset = Integer.parseInt(params.get("start"));
+                }
+                page = all.subList(Math.min(offset, all.size()), all.size());
+            }
+            page = page.subList(0, Math.min(windowSize, page.size()));
+            for (int id : page) {
+                JSONObject result = new JSONObject();
+                if (isIncludingIDs) {
+                    result.put("id", id);
+                }
+                result.put("uri", getListingURI() + "/" + id);
+                result.put("updated_at", "2020-01-01T00:00:00Z");
+                results.put(result);
+            }
+            jobj.put("numResults", ids.size());
+        }
+        jobj.put("windowSize", windowSize);
+        jobj.put("results", results);
+
+        final byte[] body = jobj.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+    private void handleResult(HttpExchange exchange,
+                              int id) throws IOException {
+        final byte[] body = new JSONObject()
+                .put("class", "Agent")
+                .put("id", id)
+                .put("name", "Result " + id)
+                .put("description", "")
+                .toString()
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        exchange.getResponseBody().write(body);
+        exchange.close();
+    }
+
+}
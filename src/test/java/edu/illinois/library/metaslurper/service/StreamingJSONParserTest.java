@@ -0,0 +1,81 @@
+package edu.illinois.library.metaslurper.service;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StreamingJSONParserTest {
+
+    @Test
+    public void testParseArray() {
+        List<JSONObject> results = new ArrayList<>();
+        StreamingJSONParser.parseArray(
+                new StringReader(" [ {\"id\": 1}, {\"id\": 2, \"tags\": [\"a\"]} ] "),
+                results::add);
+        assertEquals(2, results.size());
+        assertEquals(1, results.get(0).getInt("id"));
+        assertEquals("a", results.get(1).getJSONArray("tags").getString(0));
+    }
+
+    @Test
+    public void testParseArrayWithEmptyArray() {
+        List<JSONObject> results = new ArrayList<>();
+        StreamingJSONParser.parseArray(new StringReader("[]"), results::add);
+        assertTrue(results.isEmpty());
+    }
+
+    @Test(expected = JSONException.class)
+    public void testParseArrayWithNonObjectElement() {
+        StreamingJSONParser.parseArray(new StringReader("[{}, 2]"), r -> {});
+    }
+
+    @Test
+    public void testParseObject() {
+        List<JSONObject> results = new ArrayList<>();
+        JSONObject members = StreamingJSONParser.parseObject(
+                new StringReader("{\"numResults\": 2, " +
+                        "\"results\": [{\"uri\": \"a\"}, {\"uri\": \"b\"}], " +
+                        "\"windowSize\": 100}"),
+                "results", results::add);
+        assertEquals(2, results.size());
+        assertEquals("b", results.get(1).getString("uri"));
+        assertEquals(2, members.getInt("numResults"));
+        assertEquals(100, members.getInt("windowSize"));
+        assertFalse(members.has("results"));
+    }
+
+    @Test
+    public void testParseObjectWithEmptyObject() {
+        JSONObject members = StreamingJSONParser.parseObject(
+                new StringReader("{}"), "results", r -> fail());
+        assertEquals(0, members.length());
+    }
+
+    @Test
+    public void testParseObjectHandsOutResultsBeforeTheEnd() {
+        // The document is truncated, but the results before the break are
+        // handed out before the error is noticed.
+        List<JSONObject> results = new ArrayList<>();
+        try {
+            StreamingJSONParser.parseObject(
+                    new StringReader("{\"results\": [{\"uri\": \"a\"}, {\"uri\": \"b\"}, {\"ur"),
+                    "results", results::add);
+            fail("Expected exception");
+        } catch (JSONException e) {
+            assertEquals(2, results.size());
+        }
+    }
+
+    @Test(expected = JSONException.class)
+    public void testParseObjectWithNonArrayMember() {
+        StreamingJSONParser.parseObject(
+                new StringReader("{\"results\": {}}"), "results", r -> {});
+    }
+
+}
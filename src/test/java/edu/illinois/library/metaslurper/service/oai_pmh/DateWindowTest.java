@@ -0,0 +1,149 @@
+package edu.illinois.library.metaslurper.service.oai_pmh;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DateWindowTest {
+
+    private static final Instant START = Instant.parse("2020-01-01T00:00:00Z");
+
+    /**
+     * @return Counter of the given datestamps.
+     */
+    private static DateWindow.Counter counter(List<Instant> datestamps) {
+        return (from, until) -> (int) datestamps.stream()
+                .filter(d -> !d.isBefore(from) && (until == null || !d.isAfter(until)))
+                .count();
+    }
+
+    private static void assertContiguous(List<DateWindow> windows) {
+        for (int i = 1; i < windows.size(); i++) {
+            assertEquals(windows.get(i - 1).getUntil().plusSeconds(1),
+                    windows.get(i).getFrom());
+        }
+    }
+
+    @Test
+    public void testPlanWithOneWindow() throws Exception {
+        List<DateWindow> windows = DateWindow.plan(START,
+                START.plusSeconds(999), false, 1, (from, until) -> {
+                    fail("Should not count");
+                    return 0;
+                });
+        assertEquals(1, windows.size());
+        assertEquals(START, windows.get(0).getFrom());
+        assertEquals(START.plusSeconds(999), windows.get(0).getUntil());
+    }
+
+    @Test
+    public void testPlanWithUncountableWindows() throws Exception {
+        List<DateWindow> windows = DateWindow.plan(START,
+                START.plusSeconds(999), true, 4, (from, until) -> -1);
+        assertEquals(4, windows.size());
+        assertEquals(START, windows.get(0).getFrom());
+        assertEquals(START.plusSeconds(250), windows.get(1).getFrom());
+        assertContiguous(windows.subList(0, 3));
+        assertNull(windows.get(3).getUntil());
+    }
+
+    @Test
+    public void testPlanBalancesSkewedRecords() throws Exception {
+        // 10 records spread over the first 900 seconds, and 90 crammed into
+        // the last 100.
+        final List<Instant> datestamps = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            datestamps.add(START.plusSeconds(i * 90));
+        }
+        for (int i = 0; i < 90; i++) {
+            datestamps.add(START.plusSeconds(900 + i));
+        }
+        final AtomicInteger numCounts = new AtomicInteger();
+        final DateWindow.Counter counter = counter(datestamps);
+        List<DateWindow> windows = DateWindow.plan(START,
+                START.plusSeconds(999), false, 4, (from, until) -> {
+                    numCounts.incrementAndGet();
+                    return counter.count(from, until);
+                });
+
+        assertEquals(4, windows.size());
+        assertEquals(START, windows.get(0).getFrom());
+        assertEquals(START.plusSeconds(999), windows.get(3).getUntil());
+        assertContiguous(windows);
+        int total = 0;
+        for (DateWindow window : windows) {
+            assertTrue(window.toString(), window.getCount() <= 40);
+            total += window.getCount();
+        }
+        assertEquals(100, total);
+        assertTrue(numCounts.get() > 4);
+    }
+
+    @Test
+    public void testPlanDropsEmptyWindows() throws Exception {
+        final List<Instant> datestamps = List.of(
+                START.plusSeconds(10), START.plusSeconds(990));
+        List<DateWindow> windows = DateWindow.plan(START,
+                START.plusSeconds(999), false, 4, counter(datestamps));
+        assertEquals(2, windows.size());
+        assertEquals(1, windows.get(0).getCount());
+        assertEquals(1, windows.get(1).getCount());
+    }
+
+    @Test
+    public void testPlanKeepsEmptyOpenEndedWindow() throws Exception {
+        final List<Instant> datestamps = List.of(START.plusSeconds(10));
+        List<DateWindow> windows = DateWindow.plan(START,
+                START.plusSeconds(999), true, 4, counter(datestamps));
+        assertEquals(2, windows.size());
+        assertNull(windows.get(1).getUntil());
+        assertEquals(0, windows.get(1).getCount());
+    }
+
+    @Test
+    public void testPlanWithDayGranularity() throws Exception {
+        List<DateWindow> windows = DateWindow.plan(START.plusSeconds(3600),
+                START.plus(9, ChronoUnit.DAYS).plusSeconds(3600), false, 4,
+                Granularity.DAY, (from, until) -> -1);
+        assertEquals(4, windows.size());
+        assertEquals(START, windows.get(0).getFrom());
+        assertEquals(START.plus(9, ChronoUnit.DAYS), windows.get(3).getUntil());
+        for (int i = 0; i < windows.size(); i++) {
+            DateWindow window = windows.get(i);
+            assertEquals(window.getFrom(),
+                    window.getFrom().truncatedTo(ChronoUnit.DAYS));
+            if (i > 0) {
+                assertEquals(windows.get(i - 1).getUntil()
+                        .plus(1, ChronoUnit.DAYS), window.getFrom());
+            }
+        }
+    }
+
+    @Test
+    public void testPlanWithDayGranularityAndShortRange() throws Exception {
+        List<DateWindow> windows = DateWindow.plan(START.plusSeconds(60),
+                START.plusSeconds(7200), false, 4, Granularity.DAY,
+                (from, until) -> {
+                    fail("Should not count");
+                    return 0;
+                });
+        assertEquals(1, windows.size());
+        assertEquals(START, windows.get(0).getFrom());
+        assertEquals(START, windows.get(0).getUntil());
+    }
+
+    @Test
+    public void testPlanWithShortRange() throws Exception {
+        List<DateWindow> windows = DateWindow.plan(START, START.plusSeconds(1),
+                false, 4, (from, until) -> 1);
+        assertEquals(2, windows.size());
+        assertEquals(windows.get(0).getFrom(), windows.get(0).getUntil());
+    }
+
+}
@@ -10,6 +10,8 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.w3c.dom.UserDataHandler;
 
+import java.util.Map;
+
 import static org.junit.Assert.*;
 
 public class DefaultElementTransformerTest {
@@ -215,4 +217,16 @@ public class DefaultElementTransformerTest {
         assertEquals("value", e.getValue());
     }
 
+    @Test
+    public void testTransformWithStreamedElement() {
+        Element e = instance.transform("dc:title", Map.of("lang", "en"), "value");
+        assertEquals("dc:title", e.getName());
+        assertEquals("value", e.getValue());
+    }
+
+    @Test
+    public void testTransformWithStreamedElementWithEmptyValue() {
+        assertNull(instance.transform("dc:title", Map.of(), ""));
+    }
+
 }
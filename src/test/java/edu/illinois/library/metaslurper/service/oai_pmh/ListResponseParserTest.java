@@ -0,0 +1,185 @@
+package edu.illinois.library.metaslurper.service.oai_pmh;
+
+import edu.illinois.library.metaslurper.entity.Element;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ListResponseParserTest {
+
+    private static final Path FIXTURES = Path.of(
+            "src/test/resources/edu/illinois/library/metaslurper/service/oai_pmh");
+
+    private static InputStream newStream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testParseRecords() throws Exception {
+        final List<PMHRecord> records = new ArrayList<>();
+        final ListResponseParser.Result result;
+        try (InputStream is = Files.newInputStream(FIXTURES.resolve("ListRecords.xml"))) {
+            result = ListResponseParser.parseRecords(
+                    is, new DefaultElementTransformer(), records::add);
+        }
+        assertEquals("fgneg:655|zrgnqngnCersvk:bnv_qp",
+                result.getResumptionToken());
+        assertEquals(19091, result.getListSize());
+        assertEquals(100, records.size());
+
+        PMHRecord record = records.get(0);
+        assertEquals("oai:digital.library.illinois.edu:2ac46220-e946-0133-1d3d-0050569601ca-5",
+                record.getIdentifier());
+        assertEquals("2018-03-22", record.getDatestamp());
+        assertEquals("8132f520-e3fb-012f-c5b6-0019b9e633c5-f",
+                record.getSetSpec());
+        assertTrue(record.getElements().contains(
+                new Element("dc:title", "Africa")));
+        assertTrue(record.getElements().contains(
+                new Element("dc:description", "Itinerarium Portugallesium")));
+    }
+
+    @Test
+    public void testParseRecordsWithError() throws Exception {
+        final List<PMHRecord> records = new ArrayList<>();
+        final String token;
+        try (InputStream is = Files.newInputStream(FIXTURES.resolve("ListRecords-error.xml"))) {
+            token = ListResponseParser.parseRecords(
+                    is, new DefaultElementTransformer(), records::add)
+                    .getResumptionToken();
+        }
+        assertEquals("", token);
+        assertTrue(records.isEmpty());
+    }
+
+    @Test
+    public void testParseRecordsWithMissingHeaderElementsAndTextContent()
+            throws Exception {
+        final String xml = "<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\">" +
+                "<ListRecords><record><header status=\"deleted\">" +
+                "<identifier>oai:x:1</identifier></header>" +
+                "<metadata><md xmlns=\"urn:md\"><field lang=\"en\">a<b>b</b><![CDATA[c]]></field>" +
+                "</md></metadata></record>" +
+                "<resumptionToken completeListSize=\"1\"/></ListRecords></OAI-PMH>";
+        final List<PMHRecord> records = new ArrayList<>();
+        final ListResponseParser.Result result =
+                ListResponseParser.parseRecords(newStream(xml),
+                        new DefaultElementTransformer(), records::add);
+        assertEquals("", result.getResumptionToken());
+        assertEquals(1, result.getListSize());
+        assertEquals(1, records.size());
+        PMHRecord record = records.get(0);
+        assertEquals("oai:x:1", record.getIdentifier());
+        assertEquals("", record.getDatestamp());
+        assertEquals("", record.getSetSpec());
+        assertEquals(1, record.getElements().size());
+        assertTrue(record.getElements().contains(new Element("field", "abc")));
+    }
+
+    @Test
+    public void testParseRecordsHandsOutRecordsBeforeTheEnd() {
+        // The document is truncated, but the records before the break are
+        // handed out before the error is noticed.
+        final String xml = "<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\">" +
+                "<ListRecords><record><header><identifier>oai:x:1</identifier>" +
+                "</header></record><record><header><identi";
+        final List<PMHRecord> records = new ArrayList<>();
+        try {
+            ListResponseParser.parseRecords(newStream(xml),
+                    new DefaultElementTransformer(), records::add);
+            fail("Expected exception");
+        } catch (Exception e) {
+            assertEquals(1, records.size());
+        }
+    }
+
+    @Test
+    public void testParseRecordsWithNodeOnlyElementTransformer()
+            throws Exception {
+        final ElementTransformer tx = new ElementTransformer() {
+            @Override
+            public Element transform(Node pmhNode) {
+                return new Element(pmhNode.getNodeName() + ":" +
+                        pmhNode.getAttributes().getNamedItem("lang").getNodeValue(),
+                        pmhNode.getTextContent());
+            }
+        };
+        final String xml = "<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\">" +
+                "<ListRecords><record><header><identifier>oai:x:1</identifier>" +
+                "</header><metadata><md xmlns:dc=\"urn:dc\">" +
+                "<dc:title lang=\"en\">Cats</dc:title></md></metadata>" +
+                "</record></ListRecords></OAI-PMH>";
+        final List<PMHRecord> records = new ArrayList<>();
+        ListResponseParser.parseRecords(newStream(xml), tx, records::add);
+        assertTrue(records.get(0).getElements().contains(
+                new Element("dc:title:en", "Cats")));
+    }
+
+    @Test
+    public void testParseSets() throws Exception {
+        final List<PMHSet> sets = new ArrayList<>();
+        final ListResponseParser.Result result;
+        try (InputStream is = Files.newInputStream(FIXTURES.resolve("ListSets.xml"))) {
+            result = ListResponseParser.parseSets(
+                    is, new DefaultElementTransformer(), sets::add);
+        }
+        assertEquals("", result.getResumptionToken());
+        // Without a resumption token, the page contains the whole list.
+        assertEquals(21, result.getListSize());
+        assertEquals(21, sets.size());
+
+        PMHSet set = sets.get(0);
+        assertEquals("0a8c7970-a6da-0131-4a42-0050569601ca-b", set.getSpec());
+        assertEquals("James B. Reston Papers (Digital Surrogates), ca.1943-1989",
+                set.getName());
+        assertTrue(set.getElements().stream()
+                .anyMatch(e -> e.getName().equals("dc:description")));
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        try (InputStream is = Files.newInputStream(FIXTURES.resolve("ListRecords.xml"))) {
+            ListResponseParser.Result result = ListResponseParser.scan(is, "record");
+            assertEquals("fgneg:655|zrgnqngnCersvk:bnv_qp",
+                    result.getResumptionToken());
+            assertEquals(19091, result.getListSize());
+        }
+    }
+
+    @Test
+    public void testScanWithResumptionTokenWithoutCompleteListSize()
+            throws Exception {
+        // The number of records on the page is not the size of the list.
+        final String xml = "<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\">" +
+                "<ListIdentifiers><header><identifier>oai:x:1</identifier></header>" +
+                "<header><identifier>oai:x:2</identifier></header>" +
+                "<resumptionToken>abc</resumptionToken></ListIdentifiers></OAI-PMH>";
+        ListResponseParser.Result result =
+                ListResponseParser.scan(newStream(xml), "header");
+        assertEquals("abc", result.getResumptionToken());
+        assertEquals(-1, result.getListSize());
+    }
+
+    @Test
+    public void testParseSetsWithError() throws Exception {
+        final List<PMHSet> sets = new ArrayList<>();
+        final String token;
+        try (InputStream is = Files.newInputStream(FIXTURES.resolve("ListSets-error.xml"))) {
+            token = ListResponseParser.parseSets(
+                    is, new DefaultElementTransformer(), sets::add)
+                    .getResumptionToken();
+        }
+        assertEquals("", token);
+        assertTrue(sets.isEmpty());
+    }
+
+}
@@ -0,0 +1,318 @@
+package edu.illinois.library.metaslurper.service.oai_pmh;
+
+import com.sun.net.httpserver.HttpServer;
+import edu.illinois.library.metaslurper.service.ConcurrentIterator;
+import edu.illinois.library.metaslurper.service.EndOfIterationException;
+import org.json.JSONArray;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+public class PartitionedRecordIteratorTest {
+
+    private static final Instant START = Instant.parse("2020-01-01T00:00:00Z");
+    private static final int NUM_RECORDS = 30;
+    private static final int PAGE_SIZE   = 4;
+
+    private HttpServer server;
+    private Harvester harvester;
+    private final AtomicInteger numListRecordsRequests = new AtomicInteger();
+    private final Set<String> setsRequested = ConcurrentHashMap.newKeySet();
+    private final Set<String> invalidArguments = ConcurrentHashMap.newKeySet();
+    private volatile boolean isDayGranularity;
+
+    /**
+     * @return Datestamp of the record with the given index. Two thirds of the
+     *         records are in the last tenth of the range, or, with day
+     *         granularity, there are three records a day for ten days.
+     */
+    private Instant datestamp(int index) {
+        if (isDayGranularity) {
+            return START.plus(index / 3, ChronoUnit.DAYS)
+                    .plusSeconds(3600L * (index % 3));
+        }
+        return (index < 10) ?
+                START.plusSeconds(index * 90L) :
+                START.plusSeconds(900 + (index - 10) * 4L);
+    }
+
+    /**
+     * Sets, which overlap.
+     */
+    private static final Map<String, Predicate<Integer>> SETS = new TreeMap<>(Map.of(
+            "a", i -> i < 20,
+            "b", i -> i >= 10,
+            "c", i -> i % 2 == 0));
+
+    private static Map<String, String> parseQuery(String query) {
+        final Map<String, String> params = new HashMap<>();
+        for (String pair : query.split("&")) {
+            String[] parts = pair.split("=", 2);
+            params.put(parts[0], URLDecoder.decode(parts[1], StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    /**
+     * Serves ListSets responses with two sets per page.
+     */
+    private String respondToListSets(Map<String, String> params) {
+        final List<String> specs = new ArrayList<>(SETS.keySet());
+        final int offset = params.containsKey("resumptionToken") ?
+                Integer.parseInt(params.get("resumptionToken")) : 0;
+        final int end = Math.min(offset + 2, specs.size());
+        final StringBuilder builder = new StringBuilder(
+                "<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\"><ListSets>");
+        for (String spec : specs.subList(offset, end)) {
+            builder.append("<set><setSpec>").append(spec)
+                    .append("</setSpec><setName>").append(spec)
+                    .append("</setName></set>");
+        }
+        builder.append("<resumptionToken>")
+                .append(end < specs.size() ? String.valueOf(end) : "")
+                .append("</resumptionToken></ListSets></OAI-PMH>");
+        return builder.toString();
+    }
+
+    /**
+     * @param isUntil Whether the argument is an {@literal until}, which, with
+     *                day granularity, includes the whole day.
+     */
+    private Instant parseDatestampArgument(String value, boolean isUntil) {
+        if (value.length() == 10) {
+            Instant start = LocalDate.parse(value)
+                    .atStartOfDay(ZoneOffset.UTC).toInstant();
+            return isUntil ? start.plus(1, ChronoUnit.DAYS).minusSeconds(1) :
+                    start;
+        } else if (isDayGranularity) {
+            invalidArguments.add(value);
+        }
+        return Instant.parse(value);
+    }
+
+    /**
+     * Serves ListIdentifiers and ListRecords responses whose resumption
+     * tokens have the form {@literal <offset>,<from>,<until>,<set>}.
+     */
+    private String respond(Map<String, String> params) {
+        if ("ListSets".equals(params.get("verb"))) {
+            return respondToListSets(params);
+        } else if ("Identify".equals(params.get("verb"))) {
+            return "<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\">" +
+                    "<Identify><granularity>" +
+                    (isDayGranularity ? "YYYY-MM-DD" : "YYYY-MM-DDThh:mm:ssZ") +
+                    "</granularity></Identify></OAI-PMH>";
+        }
+        String from = params.get("from"), until = params.get("until"),
+                set = params.get("set");
+        int offset = 0;
+        if (params.containsKey("resumptionToken")) {
+            String[] parts = params.get("resumptionToken").split(",", -1);
+            offset = Integer.parseInt(parts[0]);
+            from   = parts[1].isEmpty() ? null : parts[1];
+            until  = parts[2].isEmpty() ? null : parts[2];
+            set    = parts[3].isEmpty() ? null : parts[3];
+        }
+        if (set != null) {
+            setsRequested.add(set);
+        }
+        final List<Integer> matches = new ArrayList<>();
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            Instant d = datestamp(i);
+            if ((from == null || !d.isBefore(parseDatestampArgument(from, false))) &&
+                    (until == null || !d.isAfter(parseDatestampArgument(until, true))) &&
+                    (set == null || SETS.get(set).test(i))) {
+                matches.add(i);
+            }
+        }
+        final boolean isRecords = "ListRecords".equals(params.get("verb"));
+        final StringBuilder builder = new StringBuilder(
+                "<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\"><" +
+                        params.get("verb") + ">");
+        final int end = Math.min(offset + PAGE_SIZE, matches.size());
+        for (int i = offset; i < end; i++) {
+            builder.append(isRecords ? "<record>" : "")
+                    .append("<header><identifier>")
+                    .append(matches.get(i))
+                    .append("</identifier><datestamp>")
+                    .append(datestamp(matches.get(i)))
+                    .append("</datestamp></header>")
+                    .append(isRecords ? "</record>" : "");
+        }
+        if (end < matches.size()) {
+            builder.append("<resumptionToken completeListSize=\"")
+                    .append(matches.size())
+                    .append("\">")
+                    .append(end).append(",")
+                    .append(from != null ? from : "").append(",")
+                    .append(until != null ? until : "").append(",")
+                    .append(set != null ? set : "")
+                    .append("</resumptionToken>");
+        } else if (offset > 0) {
+            builder.append("<resumptionToken completeListSize=\"")
+                    .append(matches.size())
+                    .append("\"/>");
+        }
+        builder.append("</").append(params.get("verb")).append("></OAI-PMH>");
+        return builder.toString();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            final Map<String, String> params =
+                    parseQuery(exchange.getRequestURI().getRawQuery());
+            if ("ListRecords".equals(params.get("verb"))) {
+                numListRecordsRequests.incrementAndGet();
+            }
+            final byte[] body = respond(params).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        harvester = newHarvester();
+    }
+
+    @After
+    public void tearDown() {
+        harvester.close();
+        server.stop(0);
+    }
+
+    private Harvester newHarvester() {
+        Harvester harvester = new Harvester();
+        harvester.setEndpointURI("http://localhost:" +
+                server.getAddress().getPort() + "/oai");
+        harvester.setFrom(START);
+        harvester.setUntil(START.plusSeconds(999));
+        harvester.setNumWindows(3);
+        return harvester;
+    }
+
+    private static List<String> drain(ConcurrentIterator<PMHRecord> it)
+            throws Exception {
+        final List<String> identifiers = new ArrayList<>();
+        while (true) {
+            try {
+                identifiers.add(it.next().getIdentifier());
+            } catch (EndOfIterationException e) {
+                return identifiers;
+            }
+        }
+    }
+
+    private static Set<String> allIdentifiers() {
+        final Set<String> identifiers = new HashSet<>();
+        for (int i = 0; i < NUM_RECORDS; i++) {
+            identifiers.add(String.valueOf(i));
+        }
+        return identifiers;
+    }
+
+    @Test
+    public void testNext() throws Exception {
+        ConcurrentIterator<PMHRecord> it = harvester.records();
+        assertTrue(it instanceof PartitionedRecordIterator);
+
+        List<String> identifiers = drain(it);
+        assertEquals(NUM_RECORDS, identifiers.size());
+        assertEquals(allIdentifiers(), new HashSet<>(identifiers));
+    }
+
+    @Test
+    public void testCursor() throws Exception {
+        ConcurrentIterator<PMHRecord> it = harvester.records();
+        final List<String> identifiers = new ArrayList<>();
+        for (int i = 0; i < 13; i++) {
+            identifiers.add(it.next().getIdentifier());
+        }
+        final String cursor = it.cursor();
+        assertTrue(PartitionedRecordIterator.isCursor(cursor));
+
+        try (Harvester resumed = newHarvester()) {
+            identifiers.addAll(drain(resumed.records(
+                    new DefaultElementTransformer(), cursor)));
+        }
+        assertEquals(NUM_RECORDS, identifiers.size());
+        assertEquals(allIdentifiers(), new HashSet<>(identifiers));
+    }
+
+    @Test
+    public void testCursorWithDoneWindows() throws Exception {
+        ConcurrentIterator<PMHRecord> it = harvester.records();
+        drain(it);
+        final String cursor = it.cursor();
+        assertFalse(cursor.contains("\"cursor\""));
+
+        numListRecordsRequests.set(0);
+        try (Harvester resumed = newHarvester()) {
+            assertTrue(drain(resumed.records(
+                    new DefaultElementTransformer(), cursor)).isEmpty());
+        }
+        assertEquals(0, numListRecordsRequests.get());
+    }
+
+    @Test
+    public void testNextWithDayGranularity() throws Exception {
+        isDayGranularity = true;
+        harvester.setUntil(START.plus(9, ChronoUnit.DAYS));
+        List<String> identifiers = drain(harvester.records());
+        assertEquals(NUM_RECORDS, identifiers.size());
+        assertEquals(allIdentifiers(), new HashSet<>(identifiers));
+        assertEquals(Set.of(), invalidArguments);
+    }
+
+    @Test
+    public void testNextWithSets() throws Exception {
+        harvester.setNumConcurrentSets(2);
+        List<String> identifiers = drain(harvester.records());
+        assertEquals(NUM_RECORDS, identifiers.size());
+        assertEquals(allIdentifiers(), new HashSet<>(identifiers));
+        assertEquals(SETS.keySet(), setsRequested);
+    }
+
+    @Test
+    public void testCursorWithSets() throws Exception {
+        harvester.setNumConcurrentSets(1);
+        ConcurrentIterator<PMHRecord> it = harvester.records();
+        final Set<String> identifiers = new HashSet<>();
+        for (int i = 0; i < 22; i++) {
+            identifiers.add(it.next().getIdentifier());
+        }
+        final String cursor = it.cursor();
+        final JSONArray jcursor = new JSONArray(cursor);
+        assertEquals("a", jcursor.getJSONObject(0).getString("set"));
+        assertTrue(jcursor.getJSONObject(0).getBoolean("done"));
+        assertFalse(jcursor.getJSONObject(1).has("done"));
+        assertEquals("c", jcursor.getJSONObject(2).getString("set"));
+
+        try (Harvester resumed = newHarvester()) {
+            identifiers.addAll(drain(resumed.records(
+                    new DefaultElementTransformer(), cursor)));
+        }
+        assertEquals(allIdentifiers(), identifiers);
+    }
+
+}
@@ -0,0 +1,286 @@
+package edu.illinois.library.metaslurper.service.oai_pmh;
+
+import com.sun.net.httpserver.HttpServer;
+import edu.illinois.library.metaslurper.service.EndOfIterationException;
+import okhttp3.OkHttpClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RecordIteratorTest {
+
+    private static final int NUM_RECORDS = 5;
+    private static final int PAGE_SIZE   = 2;
+
+    private HttpServer server;
+    private OkHttpClient client;
+    private RecordIterator<PMHRecord> instance;
+
+    /**
+     * Number of requests for each page offset.
+     */
+    private final Map<Integer, AtomicInteger> numRequests =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Number of times to respond to the page at {@link #failingOffset} with
+     * HTTP 500 before succeeding.
+     */
+    private final AtomicInteger numFailures = new AtomicInteger();
+    private volatile int failingOffset = -1;
+
+    /**
+     * @return ListRecords page starting at the given offset, whose resumption
+     *         token is the offset of the next page.
+     */
+    private static String page(int offset) {
+        final StringBuilder builder = new StringBuilder(
+                "<OAI-PMH xmlns=\"http://www.openarchives.org/OAI/2.0/\"><ListRecords>");
+        final int end = Math.min(offset + PAGE_SIZE, NUM_RECORDS);
+        for (int i = offset; i < end; i++) {
+            builder.append("<record><header><identifier>")
+                    .append(i)
+                    .append("</identifier></header></record>");
+        }
+        builder.append("<resumptionToken>")
+                .append(end < NUM_RECORDS ? String.valueOf(end) : "")
+                .append("</resumptionToken></ListRecords></OAI-PMH>");
+        return builder.toString();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            final String query = exchange.getRequestURI().getQuery();
+            int offset = 0;
+            if (query.contains("resumptionToken=")) {
+                offset = Integer.parseInt(
+                        query.replaceAll(".*resumptionToken=(\\d+).*", "$1"));
+            }
+            numRequests.computeIfAbsent(offset, o -> new AtomicInteger())
+                    .incrementAndGet();
+            if (offset == failingOffset && numFailures.getAndDecrement() > 0) {
+                exchange.sendResponseHeaders(500, -1);
+            } else {
+                final byte[] body = page(offset).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+            exchange.close();
+        });
+        server.start();
+        client = new OkHttpClient();
+    }
+
+    @After
+    public void tearDown() {
+        if (instance != null) {
+            instance.close();
+        }
+        server.stop(0);
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private RecordIterator<PMHRecord> newInstance(String cursor,
+                                                  int numPagesAhead) {
+        if (instance != null) {
+            instance.close();
+        }
+        instance = new RecordIterator<>(client,
+                "http://localhost:" + server.getAddress().getPort() + "/oai",
+                "oai_dc", null, null, cursor, numPagesAhead,
+                new DefaultElementTransformer());
+        instance.setRetryDelay(Duration.ofMillis(10));
+        return instance;
+    }
+
+    private static List<String> drain(RecordIterator<PMHRecord> it)
+            throws Exception {
+        final List<String> identifiers = new ArrayList<>();
+        while (true) {
+            try {
+                identifiers.add(it.next().getIdentifier());
+            } catch (EndOfIterationException e) {
+                return identifiers;
+            }
+        }
+    }
+
+    @Test
+    public void testNext() throws Exception {
+        assertEquals(List.of("0", "1", "2", "3", "4"),
+                drain(newInstance(null, 1)));
+        assertEquals(1, numRequests.get(4).get());
+    }
+
+    @Test
+    public void testFirstPageURIWithDayGranularity() {
+        final String uri = RecordIterator.firstPageURI("http://example.org/oai",
+                "oai_dc", Instant.parse("2020-01-01T00:00:00Z"),
+                Instant.parse("2020-01-05T00:00:00Z"), null, Granularity.DAY);
+        assertEquals("http://example.org/oai?verb=ListRecords&" +
+                "metadataPrefix=oai_dc&from=2020-01-01&until=2020-01-05", uri);
+    }
+
+    @Test
+    public void testNextWithCachedFirstPage() throws Exception {
+        final String uri = RecordIterator.firstPageURI(
+                "http://localhost:" + server.getAddress().getPort() + "/oai",
+                "oai_dc", null, null, null);
+        final FirstPageCache cache = new FirstPageCache();
+        cache.putBody(uri, page(0).getBytes(StandardCharsets.UTF_8));
+        RecordIterator<PMHRecord> it = newInstance(null, 2);
+        it.setFirstPageCache(cache);
+
+        assertEquals(List.of("0", "1", "2", "3", "4"), drain(it));
+        assertNull(numRequests.get(0));
+        assertNull(cache.takeBody(uri));
+        // The first page has a resumption token without a completeListSize.
+        assertEquals(-1, (int) cache.getListSize(uri));
+    }
+
+    @Test
+    public void testNumRecordsReusesTheFirstPage() throws Exception {
+        try (Harvester harvester = new Harvester()) {
+            harvester.setEndpointURI(
+                    "http://localhost:" + server.getAddress().getPort() + "/oai");
+            assertEquals(-1, harvester.numRecords());
+            assertEquals(-1, harvester.numRecords());
+
+            RecordIterator<PMHRecord> it =
+                    (RecordIterator<PMHRecord>) harvester.records();
+            it.setRetryDelay(Duration.ofMillis(10));
+            assertEquals(List.of("0", "1", "2", "3", "4"), drain(it));
+            assertEquals(1, numRequests.get(0).get());
+        }
+    }
+
+    @Test
+    public void testNextAfterEnd() throws Exception {
+        RecordIterator<PMHRecord> it = newInstance(null, 2);
+        drain(it);
+        try {
+            it.next();
+            fail("Expected exception");
+        } catch (EndOfIterationException expected) {
+        }
+    }
+
+    @Test
+    public void testNextWithConcurrentConsumers() throws Exception {
+        final RecordIterator<PMHRecord> it = newInstance(null, 2);
+        final List<String> identifiers =
+                Collections.synchronizedList(new ArrayList<>());
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(() -> {
+                    identifiers.addAll(drain(it));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Collections.sort(identifiers);
+        assertEquals(List.of("0", "1", "2", "3", "4"), identifiers);
+    }
+
+    @Test
+    public void testNextPrefetchesNextPage() throws Exception {
+        RecordIterator<PMHRecord> it = newInstance(null, 2);
+        assertEquals("0", it.next().getIdentifier());
+        // The second page is requested without waiting for the first one to
+        // be consumed.
+        for (int i = 0; i < 100 && !numRequests.containsKey(2); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(numRequests.containsKey(2));
+        // But the third one isn't, as two pages are already buffered.
+        Thread.sleep(100);
+        assertFalse(numRequests.containsKey(4));
+    }
+
+    @Test
+    public void testNextRetriesFailedPage() throws Exception {
+        failingOffset = 2;
+        numFailures.set(RecordIterator.MAX_ATTEMPTS - 1);
+        assertEquals(List.of("0", "1", "2", "3", "4"),
+                drain(newInstance(null, 2)));
+        assertEquals(RecordIterator.MAX_ATTEMPTS, numRequests.get(2).get());
+    }
+
+    @Test
+    public void testNextWithFailedPage() throws Exception {
+        failingOffset = 2;
+        numFailures.set(RecordIterator.MAX_ATTEMPTS);
+        RecordIterator<PMHRecord> it = newInstance(null, 2);
+        assertEquals("0", it.next().getIdentifier());
+        assertEquals("1", it.next().getIdentifier());
+        try {
+            it.next();
+            fail("Expected exception");
+        } catch (IOException expected) {
+        }
+        try {
+            it.next();
+            fail("Expected exception");
+        } catch (EndOfIterationException expected) {
+        }
+        // The cursor still resumes from the failed page.
+        assertEquals(List.of("2", "3", "4"), drain(newInstance(it.cursor(), 2)));
+    }
+
+    @Test
+    public void testCursor() throws Exception {
+        RecordIterator<PMHRecord> it = newInstance(null, 2);
+        assertEquals("0 0 ", it.cursor());
+        it.next();
+        it.next();
+        it.next();
+        final String cursor = it.cursor();
+        assertEquals("3 1 2", cursor);
+
+        it = newInstance(cursor, 2);
+        assertEquals(cursor, it.cursor());
+        assertEquals("3", it.next().getIdentifier());
+        assertEquals("4 2 2", it.cursor());
+        assertEquals(List.of("4"), drain(it));
+    }
+
+    @Test
+    public void testCursorAtEndOfPage() throws Exception {
+        RecordIterator<PMHRecord> it = newInstance(null, 2);
+        it.next();
+        it.next();
+        final String cursor = it.cursor();
+        assertEquals("2 2 ", cursor);
+
+        assertEquals(List.of("2", "3", "4"), drain(newInstance(cursor, 2)));
+    }
+
+}